@@ -0,0 +1,277 @@
+package com.compomics.psi_io.fasta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a compact, immutable set of protein accessions. The UTF-8 encoded accessions are packed
+ * (prefixed with their varint encoded length) in large byte array pages and referenced by a sorted array of offsets,
+ * so a lookup is a binary search and an accession takes about 9 bytes plus its length instead of the String and hash
+ * set entry overhead of a {@link java.util.HashSet}. The iteration order is the sorted order of the UTF-8 bytes.
+ */
+public class AccessionSet extends AbstractSet<String> {
+
+    private static final int PAGE_SHIFT = 30;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * The pages with the packed accessions.
+     */
+    private final byte[][] pages;
+    /**
+     * The sorted offsets (page index and offset in the page) of the distinct accessions.
+     */
+    private final long[] offsets;
+
+    private AccessionSet(byte[][] pages, long[] offsets) {
+        this.pages = pages;
+        this.offsets = offsets;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        byte[] accession = ((String) o).getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(pages, offsets[middle], accession);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < offsets.length;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long offset = offsets[index++];
+                byte[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+                int position = (int) (offset & PAGE_MASK);
+                int length = readLength(page, position);
+                position = skipLength(page, position);
+                return new String(page, position, length, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * Compare the packed accession at the given offset with the given accession bytes (unsigned lexicographic order).
+     */
+    private static int compare(byte[][] pages, long offset, byte[] accession) {
+        byte[] page = pages[(int) (offset >>> PAGE_SHIFT)];
+        int position = (int) (offset & PAGE_MASK);
+        int length = readLength(page, position);
+        position = skipLength(page, position);
+        int common = Math.min(length, accession.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (page[position + i] & 0xFF) - (accession[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - accession.length;
+    }
+
+    /**
+     * Compare the packed accessions at the given offsets (unsigned lexicographic order).
+     */
+    private static int compare(byte[][] pages, long left, long right) {
+        byte[] leftPage = pages[(int) (left >>> PAGE_SHIFT)];
+        byte[] rightPage = pages[(int) (right >>> PAGE_SHIFT)];
+        int leftPosition = (int) (left & PAGE_MASK);
+        int rightPosition = (int) (right & PAGE_MASK);
+        int leftLength = readLength(leftPage, leftPosition);
+        leftPosition = skipLength(leftPage, leftPosition);
+        int rightLength = readLength(rightPage, rightPosition);
+        rightPosition = skipLength(rightPage, rightPosition);
+        int common = Math.min(leftLength, rightLength);
+        for (int i = 0; i < common; i++) {
+            int difference = (leftPage[leftPosition + i] & 0xFF) - (rightPage[rightPosition + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return leftLength - rightLength;
+    }
+
+    /**
+     * Read the varint encoded length at the given position.
+     */
+    private static int readLength(byte[] page, int position) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = page[position++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Get the position following the varint encoded length at the given position.
+     */
+    private static int skipLength(byte[] page, int position) {
+        while (page[position++] < 0) {
+            //continuation byte
+        }
+        return position;
+    }
+
+    /**
+     * Collects the accessions of an {@link AccessionSet}, duplicates are removed when it's built.
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_PAGE_SIZE = 1 << 16;
+
+        private byte[][] pages = new byte[1][INITIAL_PAGE_SIZE];
+        /**
+         * The number of used bytes of the last page.
+         */
+        private int pageLength;
+        private long[] offsets = new long[1 << 10];
+        private int numberOfAccessions;
+
+        /**
+         * Add an accession.
+         *
+         * @param accession the accession
+         * @return this builder
+         */
+        public Builder add(String accession) {
+            byte[] bytes = accession.getBytes(StandardCharsets.UTF_8);
+            return add(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Add an UTF-8 encoded accession.
+         *
+         * @param bytes  the bytes
+         * @param offset the accession offset
+         * @param length the accession length
+         * @return this builder
+         */
+        public Builder add(byte[] bytes, int offset, int length) {
+            int required = length + 5;
+            if (required > PAGE_SIZE) {
+                throw new IllegalArgumentException("Accession too long (" + length + " bytes)");
+            }
+            byte[] page = pages[pages.length - 1];
+            if (page.length - pageLength < required) {
+                if ((long) pageLength + required <= PAGE_SIZE) {
+                    //grow the last page
+                    page = Arrays.copyOf(page, (int) Math.min(PAGE_SIZE, Math.max((long) page.length * 2, (long) pageLength + required)));
+                } else {
+                    //start a new page
+                    pages = Arrays.copyOf(pages, pages.length + 1);
+                    page = new byte[Math.max(INITIAL_PAGE_SIZE, required)];
+                    pageLength = 0;
+                }
+                pages[pages.length - 1] = page;
+            }
+            if (numberOfAccessions == offsets.length) {
+                if (offsets.length == Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Too many accessions");
+                }
+                offsets = Arrays.copyOf(offsets, (int) Math.min(Integer.MAX_VALUE - 8, offsets.length * 2L));
+            }
+            offsets[numberOfAccessions++] = ((long) (pages.length - 1) << PAGE_SHIFT) | pageLength;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                page[pageLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            page[pageLength++] = (byte) value;
+            System.arraycopy(bytes, offset, page, pageLength, length);
+            pageLength += length;
+
+            return this;
+        }
+
+        /**
+         * Sort the accessions, remove the duplicates and build the set.
+         *
+         * @return the {@link AccessionSet} instance
+         */
+        public AccessionSet build() {
+            //the set shares the pages, later additions only write beyond the used bytes or to new pages
+            byte[][] finalPages = pages.clone();
+            long[] sorted = Arrays.copyOf(offsets, numberOfAccessions);
+            sort(finalPages, sorted, new long[sorted.length], 0, sorted.length);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || compare(finalPages, sorted[distinct - 1], sorted[i]) != 0) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+
+            return new AccessionSet(finalPages, distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct));
+        }
+
+        /**
+         * Merge sort the given range of offsets by accession.
+         */
+        private static void sort(byte[][] pages, long[] offsets, long[] buffer, int from, int to) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    long offset = offsets[i];
+                    int j = i - 1;
+                    while (j >= from && compare(pages, offsets[j], offset) > 0) {
+                        offsets[j + 1] = offsets[j];
+                        j--;
+                    }
+                    offsets[j + 1] = offset;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(pages, offsets, buffer, from, middle);
+            sort(pages, offsets, buffer, middle, to);
+            if (compare(pages, offsets[middle - 1], offsets[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(offsets, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compare(pages, buffer[left], buffer[right]) <= 0)) {
+                    offsets[i] = buffer[left++];
+                } else {
+                    offsets[i] = buffer[right++];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.compomics.psi_io.fasta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+/**
+ * This class represents the block index of a BGZF file, in the .gzi format of bgzip: the compressed and decompressed
+ * offsets of the blocks. It converts decompressed offsets into virtual offsets (the compressed offset of the block,
+ * shifted 16 bits to the left, and the offset in the decompressed block) that can be read without decompressing the
+ * preceding blocks.
+ */
+public class BgzfIndex {
+
+    private static final String EXTENSION = ".gzi";
+
+    /**
+     * The compressed offsets of the blocks, the first one included.
+     */
+    private final long[] compressedOffsets;
+    /**
+     * The decompressed offsets of the blocks, the first one included.
+     */
+    private final long[] decompressedOffsets;
+
+    private BgzfIndex(long[] compressedOffsets, long[] decompressedOffsets) {
+        this.compressedOffsets = compressedOffsets;
+        this.decompressedOffsets = decompressedOffsets;
+    }
+
+    /**
+     * Build the index of the given BGZF file by walking the block headers and trailers, nothing is decompressed.
+     *
+     * @param bgzfPath the BGZF file path
+     * @return the {@link BgzfIndex} instance
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    public static BgzfIndex build(Path bgzfPath) throws IOException {
+        long[] compressedOffsets = new long[1024];
+        long[] decompressedOffsets = new long[1024];
+        int numberOfBlocks = 0;
+        byte[] block = new byte[BgzfInputStream.MAX_BLOCK_SIZE];
+        try (FileChannel channel = FileChannel.open(bgzfPath, StandardOpenOption.READ)) {
+            long compressedOffset = 0;
+            long decompressedOffset = 0;
+            int blockSize;
+            while ((blockSize = BgzfInputStream.readBlock(channel, compressedOffset, block, 0)) > 0) {
+                if (numberOfBlocks == compressedOffsets.length) {
+                    compressedOffsets = Arrays.copyOf(compressedOffsets, numberOfBlocks * 2);
+                    decompressedOffsets = Arrays.copyOf(decompressedOffsets, numberOfBlocks * 2);
+                }
+                compressedOffsets[numberOfBlocks] = compressedOffset;
+                decompressedOffsets[numberOfBlocks] = decompressedOffset;
+                numberOfBlocks++;
+                compressedOffset += blockSize;
+                decompressedOffset += Compression.getInt(block, blockSize - 4) & 0xFFFFFFFFL;
+            }
+        }
+        if (numberOfBlocks == 0) {
+            numberOfBlocks = 1;
+        }
+
+        return new BgzfIndex(Arrays.copyOf(compressedOffsets, numberOfBlocks), Arrays.copyOf(decompressedOffsets, numberOfBlocks));
+    }
+
+    /**
+     * Get the path of the index file next to the given BGZF file.
+     *
+     * @param bgzfPath the BGZF file path
+     * @return the index file path
+     */
+    public static Path getIndexPath(Path bgzfPath) {
+        return bgzfPath.resolveSibling(bgzfPath.getFileName() + EXTENSION);
+    }
+
+    public int getNumberOfBlocks() {
+        return compressedOffsets.length;
+    }
+
+    /**
+     * Convert the given decompressed offset into a virtual offset.
+     *
+     * @param decompressedOffset the decompressed offset
+     * @return the virtual offset
+     */
+    public long getVirtualOffset(long decompressedOffset) {
+        int block = Arrays.binarySearch(decompressedOffsets, decompressedOffset);
+        if (block < 0) {
+            block = -block - 2;
+        } else {
+            //empty blocks share their decompressed offset with the next block
+            while (block + 1 < decompressedOffsets.length && decompressedOffsets[block + 1] == decompressedOffset) {
+                block++;
+            }
+        }
+        return compressedOffsets[block] << 16 | (decompressedOffset - decompressedOffsets[block]);
+    }
+
+    /**
+     * Read the decompressed bytes starting at the given virtual offset, only the blocks that contain them are
+     * decompressed.
+     *
+     * @param channel       the channel of the BGZF file
+     * @param virtualOffset the virtual offset
+     * @param length        the number of bytes
+     * @return the bytes, fewer at the end of the file
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    public static byte[] readBytes(FileChannel channel, long virtualOffset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        byte[] block = new byte[BgzfInputStream.MAX_BLOCK_SIZE];
+        byte[] decompressed = new byte[BgzfInputStream.MAX_BLOCK_SIZE];
+        long compressedOffset = virtualOffset >>> 16;
+        int blockOffset = (int) (virtualOffset & 0xFFFF);
+        int read = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            while (read < length) {
+                int blockSize = BgzfInputStream.readBlock(channel, compressedOffset, block, 0);
+                if (blockSize < 0) {
+                    return Arrays.copyOf(bytes, read);
+                }
+                int size = BgzfInputStream.inflateBlock(inflater, block, 0, decompressed, 0);
+                int count = Math.min(length - read, size - blockOffset);
+                if (count > 0) {
+                    System.arraycopy(decompressed, blockOffset, bytes, read, count);
+                    read += count;
+                }
+                blockOffset = Math.max(0, blockOffset - size);
+                compressedOffset += blockSize;
+            }
+        } finally {
+            inflater.end();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Write the index in the .gzi format: the number of blocks after the first one, followed by the compressed and
+     * decompressed offset of each of them, as little endian 64-bit integers.
+     *
+     * @param indexPath the index file path
+     * @throws IOException in case of file writing related problem
+     */
+    public void write(Path indexPath) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(indexPath), 1 << 16)) {
+            writeLong(outputStream, compressedOffsets.length - 1);
+            for (int i = 1; i < compressedOffsets.length; i++) {
+                writeLong(outputStream, compressedOffsets[i]);
+                writeLong(outputStream, decompressedOffsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Read an index in the .gzi format.
+     *
+     * @param indexPath the index file path
+     * @return the {@link BgzfIndex} instance
+     * @throws IOException in case of file reading related problem or an invalid index file
+     */
+    public static BgzfIndex read(Path indexPath) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(indexPath), 1 << 16)) {
+            long numberOfEntries = readLong(inputStream);
+            if (numberOfEntries < 0 || numberOfEntries > (Files.size(indexPath) - 8) / 16) {
+                throw new IOException("Invalid BGZF index " + indexPath);
+            }
+            long[] compressedOffsets = new long[(int) numberOfEntries + 1];
+            long[] decompressedOffsets = new long[(int) numberOfEntries + 1];
+            for (int i = 1; i < compressedOffsets.length; i++) {
+                compressedOffsets[i] = readLong(inputStream);
+                decompressedOffsets[i] = readLong(inputStream);
+            }
+
+            return new BgzfIndex(compressedOffsets, decompressedOffsets);
+        }
+    }
+
+    private static void writeLong(OutputStream outputStream, long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            outputStream.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private static long readLong(InputStream inputStream) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = inputStream.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of the BGZF index");
+            }
+            value |= (long) b << (8 * i);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,295 @@
+package com.compomics.psi_io.fasta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class decompresses a BGZF file as a stream. The compressed blocks are read sequentially in chunks of about
+ * {@link #CHUNK_SIZE} bytes and the chunks are decompressed in parallel, a few chunks ahead of the reader.
+ */
+class BgzfInputStream extends InputStream {
+
+    /**
+     * The maximum size of a BGZF block, compressed or decompressed.
+     */
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+    /**
+     * The preferred number of compressed bytes decompressed by one task, the number of decompressed bytes is limited
+     * to four times this size.
+     */
+    private static final int CHUNK_SIZE = 1 << 22;
+
+    private final FileChannel channel;
+    private final MessageDigest digest;
+    private final ExecutorService executorService;
+    private final int maxPendingChunks;
+    private final Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+    /**
+     * The position of the next compressed block.
+     */
+    private long position;
+    private boolean endOfInput;
+    private byte[] current = new byte[0];
+    private int currentPosition;
+
+    /**
+     * Constructor.
+     *
+     * @param channel         the channel of the BGZF file, closed with this stream
+     * @param digest          the digest that is updated with the compressed bytes read, can be null
+     * @param numberOfThreads the number of decompression threads, the reading thread decompresses if 1
+     */
+    BgzfInputStream(FileChannel channel, MessageDigest digest, int numberOfThreads) {
+        this.channel = channel;
+        this.digest = digest;
+        if (numberOfThreads > 1) {
+            executorService = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+                Thread thread = new Thread(runnable, "bgzf-inflater");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maxPendingChunks = numberOfThreads * 2;
+        } else {
+            executorService = null;
+            maxPendingChunks = 1;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (currentPosition == current.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        return current[currentPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (currentPosition == current.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int read = Math.min(length, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, bytes, offset, read);
+        currentPosition += read;
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        channel.close();
+    }
+
+    /**
+     * Make the next decompressed chunk current.
+     *
+     * @return false at the end of the file
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    private boolean nextChunk() throws IOException {
+        while (!endOfInput && pendingChunks.size() < maxPendingChunks) {
+            Chunk chunk = readChunk();
+            if (chunk == null) {
+                endOfInput = true;
+            } else if (executorService == null) {
+                pendingChunks.add(CompletableFuture.completedFuture(chunk.inflate()));
+            } else {
+                pendingChunks.add(executorService.submit(chunk::inflate));
+            }
+        }
+        Future<byte[]> chunk = pendingChunks.poll();
+        if (chunk == null) {
+            return false;
+        }
+        try {
+            current = chunk.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing a BGZF block");
+        }
+        currentPosition = 0;
+        return true;
+    }
+
+    /**
+     * Read the next complete blocks.
+     *
+     * @return the chunk, null at the end of the file
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    private Chunk readChunk() throws IOException {
+        byte[] bytes = new byte[CHUNK_SIZE + MAX_BLOCK_SIZE];
+        int length = 0;
+        int[] blockOffsets = new int[64];
+        int numberOfBlocks = 0;
+        int decompressedSize = 0;
+        while (length < CHUNK_SIZE && decompressedSize < CHUNK_SIZE * 4) {
+            int blockSize = readBlock(channel, position, bytes, length);
+            if (blockSize < 0) {
+                break;
+            }
+            if (numberOfBlocks == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, numberOfBlocks * 2);
+            }
+            blockOffsets[numberOfBlocks++] = length;
+            decompressedSize += Compression.getInt(bytes, length + blockSize - 4);
+            length += blockSize;
+            position += blockSize;
+        }
+        if (numberOfBlocks == 0) {
+            return null;
+        }
+        if (digest != null) {
+            digest.update(bytes, 0, length);
+        }
+
+        return new Chunk(bytes, Arrays.copyOf(blockOffsets, numberOfBlocks + 1), length, decompressedSize);
+    }
+
+    /**
+     * Read the BGZF block at the given position into the given array.
+     *
+     * @param channel  the file channel
+     * @param position the block position
+     * @param bytes    the array, with room for {@link #MAX_BLOCK_SIZE} bytes from the offset
+     * @param offset   the array offset
+     * @return the block size, -1 at the end of the file
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    static int readBlock(FileChannel channel, long position, byte[] bytes, int offset) throws IOException {
+        int read = readFully(channel, position, bytes, offset, Compression.GZIP_HEADER_LENGTH);
+        if (read == 0) {
+            return -1;
+        }
+        if (read < Compression.GZIP_HEADER_LENGTH) {
+            throw new IOException("Truncated BGZF block at " + position);
+        }
+        int extraLength = Compression.getUnsignedShort(bytes, offset + 10);
+        if (Compression.GZIP_HEADER_LENGTH + extraLength > MAX_BLOCK_SIZE
+                || readFully(channel, position + Compression.GZIP_HEADER_LENGTH, bytes, offset + Compression.GZIP_HEADER_LENGTH, extraLength) < extraLength) {
+            throw new IOException("Truncated BGZF block at " + position);
+        }
+        int blockSize = Compression.getBgzfBlockSize(bytes, offset);
+        if (blockSize < Compression.GZIP_HEADER_LENGTH + extraLength + 8) {
+            throw new IOException("Invalid BGZF block at " + position);
+        }
+        int remaining = blockSize - Compression.GZIP_HEADER_LENGTH - extraLength;
+        if (readFully(channel, position + blockSize - remaining, bytes, offset + blockSize - remaining, remaining) < remaining) {
+            throw new IOException("Truncated BGZF block at " + position);
+        }
+        return blockSize;
+    }
+
+    /**
+     * Decompress the given BGZF block and check its CRC.
+     *
+     * @param inflater the inflater for raw deflate data
+     * @param bytes    the compressed bytes
+     * @param offset   the block offset
+     * @param output   the output array
+     * @param position the output offset
+     * @return the decompressed size
+     * @throws IOException in case of an invalid block
+     */
+    static int inflateBlock(Inflater inflater, byte[] bytes, int offset, byte[] output, int position) throws IOException {
+        int blockSize = Compression.getBgzfBlockSize(bytes, offset);
+        int dataOffset = offset + Compression.GZIP_HEADER_LENGTH + Compression.getUnsignedShort(bytes, offset + 10);
+        int size = Compression.getInt(bytes, offset + blockSize - 4);
+        inflater.reset();
+        inflater.setInput(bytes, dataOffset, offset + blockSize - 8 - dataOffset);
+        int inflated = 0;
+        try {
+            while (inflated < size && !inflater.finished()) {
+                int count = inflater.inflate(output, position + inflated, size - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid BGZF block data", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(output, position, inflated);
+        if (inflated != size || (int) crc.getValue() != Compression.getInt(bytes, offset + blockSize - 8)) {
+            throw new IOException("Corrupt BGZF block");
+        }
+        return size;
+    }
+
+    private static int readFully(FileChannel channel, long position, byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position() - offset);
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position() - offset;
+    }
+
+    /**
+     * This class holds a series of complete compressed blocks.
+     */
+    private static class Chunk {
+
+        private final byte[] bytes;
+        /**
+         * The block offsets, followed by the chunk length.
+         */
+        private final int[] blockOffsets;
+        private final int decompressedSize;
+
+        private Chunk(byte[] bytes, int[] blockOffsets, int length, int decompressedSize) {
+            this.bytes = bytes;
+            this.blockOffsets = blockOffsets;
+            this.blockOffsets[blockOffsets.length - 1] = length;
+            this.decompressedSize = decompressedSize;
+        }
+
+        private byte[] inflate() throws IOException {
+            byte[] output = new byte[decompressedSize];
+            Inflater inflater = new Inflater(true);
+            try {
+                int position = 0;
+                for (int i = 0; i < blockOffsets.length - 1; i++) {
+                    position += inflateBlock(inflater, bytes, blockOffsets[i], output, position);
+                }
+            } finally {
+                inflater.end();
+            }
+            return output;
+        }
+
+    }
+
+}
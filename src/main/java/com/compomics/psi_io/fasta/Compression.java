@@ -0,0 +1,127 @@
+package com.compomics.psi_io.fasta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This enum represents the compression of a FASTA DB file, detected from the first bytes of the file.
+ */
+public enum Compression {
+
+    /**
+     * An uncompressed file.
+     */
+    NONE,
+    /**
+     * A gzip file, possibly with multiple members; it can only be read sequentially.
+     */
+    GZIP,
+    /**
+     * A blocked gzip (BGZF) file, a series of gzip members of at most 64 KB that carry their compressed size in an
+     * extra field, as written by bgzip. The blocks can be decompressed in parallel and read at random.
+     */
+    BGZF;
+
+    /**
+     * The length of the fixed gzip member header.
+     */
+    static final int GZIP_HEADER_LENGTH = 12;
+
+    /**
+     * Detect the compression of the given file.
+     *
+     * @param path the file path
+     * @return the {@link Compression} instance
+     * @throws IOException in case of file reading related problem
+     */
+    public static Compression of(Path path) throws IOException {
+        byte[] header = new byte[18];
+        int length = 0;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            int read;
+            while (length < header.length && (read = inputStream.read(header, length, header.length - length)) > 0) {
+                length += read;
+            }
+        }
+        if (length < 2 || (header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B) {
+            return NONE;
+        }
+        return length == header.length && getBgzfBlockSize(header, 0) > 0 ? BGZF : GZIP;
+    }
+
+    /**
+     * Get the decompressed size of the given file. The sizes of the BGZF blocks are read from their trailers without
+     * decompressing them, a gzip file is decompressed once to count its bytes.
+     *
+     * @param path the file path
+     * @return the decompressed size in bytes
+     * @throws IOException in case of file reading related problem or an invalid block
+     */
+    public static long getDecompressedSize(Path path) throws IOException {
+        Compression compression = of(path);
+        long size = 0;
+        if (compression == BGZF) {
+            byte[] block = new byte[BgzfInputStream.MAX_BLOCK_SIZE];
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long position = 0;
+                int blockSize;
+                while ((blockSize = BgzfInputStream.readBlock(channel, position, block, 0)) > 0) {
+                    position += blockSize;
+                    size += getInt(block, blockSize - 4) & 0xFFFFFFFFL;
+                }
+            }
+        } else if (compression == GZIP) {
+            byte[] buffer = new byte[1 << 16];
+            try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path), 1 << 16)) {
+                int read;
+                while ((read = inputStream.read(buffer)) >= 0) {
+                    size += read;
+                }
+            }
+        } else {
+            size = Files.size(path);
+        }
+
+        return size;
+    }
+
+    /**
+     * Get the total size of the BGZF block with the header at the given offset, from the "BC" subfield of the extra
+     * field.
+     *
+     * @param bytes  the bytes containing at least the fixed header and the extra field
+     * @param offset the offset of the block
+     * @return the block size, -1 if the header isn't a BGZF block header
+     */
+    static int getBgzfBlockSize(byte[] bytes, int offset) {
+        //gzip magic, deflate and the FEXTRA flag
+        if ((bytes[offset] & 0xFF) != 0x1F || (bytes[offset + 1] & 0xFF) != 0x8B || bytes[offset + 2] != 8 || (bytes[offset + 3] & 4) == 0) {
+            return -1;
+        }
+        int extraLength = getUnsignedShort(bytes, offset + 10);
+        int position = offset + GZIP_HEADER_LENGTH;
+        int end = Math.min(position + extraLength, bytes.length);
+        while (position + 4 <= end) {
+            int subfieldLength = getUnsignedShort(bytes, position + 2);
+            if (bytes[position] == 'B' && bytes[position + 1] == 'C' && subfieldLength == 2 && position + 6 <= end) {
+                return getUnsignedShort(bytes, position + 4) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    static int getUnsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+}
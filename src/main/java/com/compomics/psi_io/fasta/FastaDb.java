@@ -100,4 +100,12 @@ public class FastaDb  {
         this.databaseName = databaseName;
     }
 
+    public Integer getTaxonomyID() {
+        return taxonomyID;
+    }
+
+    public void setTaxonomyID(Integer taxonomyID) {
+        this.taxonomyID = taxonomyID;
+    }
+
 }
@@ -0,0 +1,469 @@
+package com.compomics.psi_io.fasta;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class composes a search database from several FASTA DB files (e.g. target and contaminants) in one pass:
+ * records with a duplicate accession or an identical sequence are left out and decoys are generated on the fly and
+ * appended after the target records. The records that are kept are copied unchanged from the input files with {@link
+ * FileChannel#transferTo}, only the sequences needed for the deduplication and the decoys are held in memory, one
+ * record at a time. The input files therefore have to be uncompressed.
+ * <p>
+ * The accessions are deduplicated with a hash set, the sequences with a set of 128 bit sequence fingerprints. In case
+ * of a duplicate, the first record (in the order of the given FASTA DB files) is kept.
+ */
+public class FastaDbComposer {
+
+    /**
+     * The ways decoy sequences are generated.
+     */
+    public enum DecoyType {
+        /**
+         * No decoys.
+         */
+        NONE,
+        /**
+         * The reversed target sequence.
+         */
+        REVERSE,
+        /**
+         * The shuffled target sequence.
+         */
+        SHUFFLE
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int LINE_LENGTH = 60;
+
+    private boolean removeDuplicateAccessions = true;
+    private boolean removeDuplicateSequences = true;
+    private DecoyType decoyType = DecoyType.NONE;
+    private String decoyPrefix = "DECOY_";
+    private long seed = 42;
+
+    public boolean isRemoveDuplicateAccessions() {
+        return removeDuplicateAccessions;
+    }
+
+    public void setRemoveDuplicateAccessions(boolean removeDuplicateAccessions) {
+        this.removeDuplicateAccessions = removeDuplicateAccessions;
+    }
+
+    public boolean isRemoveDuplicateSequences() {
+        return removeDuplicateSequences;
+    }
+
+    public void setRemoveDuplicateSequences(boolean removeDuplicateSequences) {
+        this.removeDuplicateSequences = removeDuplicateSequences;
+    }
+
+    public DecoyType getDecoyType() {
+        return decoyType;
+    }
+
+    public void setDecoyType(DecoyType decoyType) {
+        this.decoyType = decoyType;
+    }
+
+    public String getDecoyPrefix() {
+        return decoyPrefix;
+    }
+
+    /**
+     * Set the prefix of the decoy accessions. The prefix is inserted in front of the accession in the decoy header, so
+     * the header parse rule of the target FASTA DB also parses the decoy accessions.
+     *
+     * @param decoyPrefix the decoy prefix
+     */
+    public void setDecoyPrefix(String decoyPrefix) {
+        this.decoyPrefix = decoyPrefix;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed of the random generator used for shuffled decoys, composing with the same seed gives the same
+     * decoys.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Compose the given FASTA DB files into one FASTA file. This method takes a {@link LinkedHashMap} so the first
+     * occurrence of a duplicate accession or sequence is consistently the one that is kept.
+     *
+     * @param fastaDbs   the FASTA files to compose (in order of precedence) and their associated (absolute) path
+     * @param outputPath the path of the composed FASTA file, an existing file is replaced
+     * @return the composition summary
+     * @throws IOException              thrown in case of an input/output related problem
+     * @throws IllegalArgumentException if a FASTA DB file is compressed
+     */
+    public Summary compose(LinkedHashMap<FastaDb, Path> fastaDbs, Path outputPath) throws IOException {
+        for (Path fastaPath : fastaDbs.values()) {
+            if (Compression.of(fastaPath) != Compression.NONE) {
+                throw new IllegalArgumentException("FASTA DB file " + fastaPath + " is compressed, only uncompressed files can be composed");
+            }
+        }
+        Summary summary = new Summary();
+        Set<String> accessions = new HashSet<>();
+        FingerprintSet fingerprints = new FingerprintSet();
+        Random random = new Random(seed);
+        Path decoyPath = decoyType == DecoyType.NONE ? null : Files.createTempFile(outputPath.toAbsolutePath().getParent(), outputPath.getFileName().toString(), ".decoys");
+        try (FileChannel outputChannel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream decoyStream = decoyPath == null ? null : new BufferedOutputStream(Files.newOutputStream(decoyPath), BUFFER_SIZE)) {
+            for (Map.Entry<FastaDb, Path> entry : fastaDbs.entrySet()) {
+                HeaderParseRule parseRule = HeaderParseRule.compile(entry.getKey().getHeaderParseRule());
+                try (RecordReader reader = new RecordReader(FileChannel.open(entry.getValue(), StandardOpenOption.READ))) {
+                    while (reader.next()) {
+                        summary.numberOfRecords++;
+                        String header = new String(reader.header, 0, reader.headerLength, StandardCharsets.UTF_8);
+                        String accession = parseRule.parseAccession(header);
+                        if (removeDuplicateAccessions && !accessions.add(accession)) {
+                            summary.numberOfDuplicateAccessions++;
+                            continue;
+                        }
+                        if (removeDuplicateSequences && !fingerprints.add(reader.sequence, reader.sequenceLength)) {
+                            summary.numberOfDuplicateSequences++;
+                            continue;
+                        }
+                        //copy the record as is
+                        transfer(reader.channel, reader.recordStart, reader.recordEnd - reader.recordStart, outputChannel);
+                        if (!reader.endsWithLineTerminator) {
+                            write(outputChannel, new byte[]{'\n'});
+                        }
+                        summary.numberOfTargets++;
+                        if (decoyStream != null) {
+                            writeDecoy(decoyStream, header, accession, reader.sequence, reader.sequenceLength, random);
+                            summary.numberOfDecoys++;
+                        }
+                    }
+                }
+            }
+            if (decoyStream != null) {
+                decoyStream.flush();
+                try (FileChannel decoyChannel = FileChannel.open(decoyPath, StandardOpenOption.READ)) {
+                    transfer(decoyChannel, 0, decoyChannel.size(), outputChannel);
+                }
+            }
+        } finally {
+            if (decoyPath != null) {
+                Files.deleteIfExists(decoyPath);
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * Write the decoy record of the given target record.
+     */
+    private void writeDecoy(OutputStream outputStream, String header, String accession, byte[] sequence, int sequenceLength, Random random) throws IOException {
+        int accessionStart = accession.isEmpty() ? -1 : header.indexOf(accession);
+        String decoyHeader = accessionStart < 0 ? decoyPrefix + header : header.substring(0, accessionStart) + decoyPrefix + header.substring(accessionStart);
+        outputStream.write('>');
+        outputStream.write(decoyHeader.getBytes(StandardCharsets.UTF_8));
+        outputStream.write('\n');
+        byte[] decoySequence = Arrays.copyOf(sequence, sequenceLength);
+        if (decoyType == DecoyType.REVERSE) {
+            for (int i = 0, j = sequenceLength - 1; i < j; i++, j--) {
+                byte residue = decoySequence[i];
+                decoySequence[i] = decoySequence[j];
+                decoySequence[j] = residue;
+            }
+        } else {
+            for (int i = sequenceLength - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte residue = decoySequence[i];
+                decoySequence[i] = decoySequence[j];
+                decoySequence[j] = residue;
+            }
+        }
+        for (int i = 0; i < sequenceLength; i += LINE_LENGTH) {
+            outputStream.write(decoySequence, i, Math.min(LINE_LENGTH, sequenceLength - i));
+            outputStream.write('\n');
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long bytes = source.transferTo(position + transferred, count - transferred, target);
+            if (bytes <= 0 && position + transferred >= source.size()) {
+                throw new IOException("Unexpected end of file while copying a FASTA record");
+            }
+            transferred += bytes;
+        }
+    }
+
+    private static void write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The summary of a composition.
+     */
+    public static final class Summary {
+
+        private long numberOfRecords;
+        private long numberOfDuplicateAccessions;
+        private long numberOfDuplicateSequences;
+        private long numberOfTargets;
+        private long numberOfDecoys;
+
+        /**
+         * Get the number of records read from the FASTA DB files.
+         *
+         * @return the number of records
+         */
+        public long getNumberOfRecords() {
+            return numberOfRecords;
+        }
+
+        public long getNumberOfDuplicateAccessions() {
+            return numberOfDuplicateAccessions;
+        }
+
+        public long getNumberOfDuplicateSequences() {
+            return numberOfDuplicateSequences;
+        }
+
+        /**
+         * Get the number of records copied to the composed FASTA file.
+         *
+         * @return the number of target records
+         */
+        public long getNumberOfTargets() {
+            return numberOfTargets;
+        }
+
+        public long getNumberOfDecoys() {
+            return numberOfDecoys;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "records=%d, duplicate accessions=%d, duplicate sequences=%d, targets=%d, decoys=%d",
+                    numberOfRecords, numberOfDuplicateAccessions, numberOfDuplicateSequences, numberOfTargets, numberOfDecoys);
+        }
+    }
+
+    /**
+     * Reads the records of a FASTA file: the byte range of the record in the file, the header and the sequence
+     * residues (without line terminators and white space).
+     */
+    private static final class RecordReader implements Closeable {
+
+        private final FileChannel channel;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        /**
+         * The file offset of the buffer start.
+         */
+        private long bufferStart;
+        private int limit;
+        private int position;
+        private boolean endOfFile;
+
+        private long recordStart;
+        private long recordEnd;
+        private boolean endsWithLineTerminator;
+        private byte[] header = new byte[256];
+        private int headerLength;
+        private byte[] sequence = new byte[1 << 12];
+        private int sequenceLength;
+        /**
+         * Whether the next record header has been reached.
+         */
+        private boolean atHeader;
+
+        private RecordReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return false if there are no more records
+         * @throws IOException in case of a file reading related problem
+         */
+        private boolean next() throws IOException {
+            if (!atHeader) {
+                //skip everything before the first header
+                while (!atHeader) {
+                    int b = read();
+                    if (b < 0) {
+                        return false;
+                    }
+                    atHeader = b == '>' && isLineStart();
+                }
+            }
+            recordStart = bufferStart + position - 1;
+            headerLength = 0;
+            sequenceLength = 0;
+            atHeader = false;
+            int b;
+            //the header line
+            while ((b = read()) >= 0 && b != '\n' && b != '\r') {
+                if (headerLength == header.length) {
+                    header = Arrays.copyOf(header, header.length * 2);
+                }
+                header[headerLength++] = (byte) b;
+            }
+            //the sequence lines, up to the next header
+            int last = b;
+            while (b >= 0) {
+                b = read();
+                if (b == '>' && (last == '\n' || last == '\r')) {
+                    atHeader = true;
+                    break;
+                }
+                if (b > ' ') {
+                    if (sequenceLength == sequence.length) {
+                        sequence = Arrays.copyOf(sequence, sequence.length * 2);
+                    }
+                    sequence[sequenceLength++] = (byte) b;
+                }
+                if (b >= 0) {
+                    last = b;
+                }
+            }
+            recordEnd = atHeader ? bufferStart + position - 1 : bufferStart + limit;
+            endsWithLineTerminator = last == '\n' || last == '\r';
+
+            return true;
+        }
+
+        /**
+         * Check if the byte before the last read one is a line terminator (or the start of the file).
+         */
+        private boolean isLineStart() throws IOException {
+            long offset = bufferStart + position - 2;
+            if (offset < 0) {
+                return true;
+            }
+            if (position >= 2) {
+                return buffer[position - 2] == '\n' || buffer[position - 2] == '\r';
+            }
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, offset);
+            return previous.get(0) == '\n' || previous.get(0) == '\r';
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                if (endOfFile) {
+                    return -1;
+                }
+                bufferStart += limit;
+                position = 0;
+                limit = 0;
+                int read;
+                while ((read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit))) == 0) {
+                    //nothing read yet
+                }
+                if (read < 0) {
+                    endOfFile = true;
+                    return -1;
+                }
+                limit = read;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Open addressing hash set of 128 bit sequence fingerprints.
+     */
+    private static final class FingerprintSet {
+
+        private long[] table = new long[2 << 12];
+        private int size;
+
+        /**
+         * Add the fingerprint of the given sequence.
+         *
+         * @return false if the fingerprint was already present
+         */
+        private boolean add(byte[] sequence, int length) {
+            long first = 0xcbf29ce484222325L;
+            long second = 0x84222325cbf29ce4L;
+            for (int i = 0; i < length; i++) {
+                first = (first ^ sequence[i]) * 0x100000001b3L;
+                second = Long.rotateLeft(second ^ sequence[i], 29) * 0x9e3779b97f4a7c15L;
+            }
+            first = mix(first ^ length);
+            second = mix(second ^ ((long) length << 32));
+            if (first == 0 && second == 0) {
+                first = 1;
+            }
+            if ((size + 1) * 4L > (table.length / 2) * 3L) {
+                resize();
+            }
+            return insert(table, first, second);
+        }
+
+        private boolean insert(long[] table, long first, long second) {
+            int mask = table.length / 2 - 1;
+            int slot = (int) first & mask;
+            while (table[2 * slot] != 0 || table[2 * slot + 1] != 0) {
+                if (table[2 * slot] == first && table[2 * slot + 1] == second) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[2 * slot] = first;
+            table[2 * slot + 1] = second;
+            size++;
+            return true;
+        }
+
+        private void resize() {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            size = 0;
+            for (int i = 0; i < oldTable.length; i += 2) {
+                if (oldTable[i] != 0 || oldTable[i + 1] != 0) {
+                    insert(table, oldTable[i], oldTable[i + 1]);
+                }
+            }
+        }
+
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+}
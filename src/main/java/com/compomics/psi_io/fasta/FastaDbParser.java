@@ -6,11 +6,20 @@ import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 
 /**
  * This class parses FASTA files (protein accession and sequence).
@@ -25,8 +34,82 @@ public class FastaDbParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(FastaDbParser.class);
 
     private static final String BLOCK_SEPARATOR = ">";
-    private static final String SPLITTER = " ";
-    private static final String PARSE_RULE_SPLITTER = ";";
+    /**
+     * The initial buffer size of the byte level accession scanner.
+     */
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The directory where the binary snapshots of the parsed FASTA DB files are stored, null if snapshots are
+     * disabled.
+     */
+    private final Path snapshotDirectory;
+    /**
+     * The way the MD5 checksum of the FASTA DB files is verified while parsing.
+     */
+    private Md5Verification md5Verification = Md5Verification.OFF;
+    /**
+     * The filter on the FASTA records, null if all records are parsed.
+     */
+    private HeaderFilter headerFilter;
+    /**
+     * The number of threads used to decompress a BGZF compressed FASTA DB file.
+     */
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Constructor, no snapshots of the parsed FASTA DB files are used.
+     */
+    public FastaDbParser() {
+        this(null);
+    }
+
+    /**
+     * Constructor. After the first parse of a {@link FastaDb} with a known MD5 checksum, a binary snapshot is written
+     * to the given directory, later parses of the same FASTA DB file read that snapshot instead.
+     *
+     * @param snapshotDirectory the snapshot directory, null to disable snapshots
+     */
+    public FastaDbParser(Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public Md5Verification getMd5Verification() {
+        return md5Verification;
+    }
+
+    /**
+     * Set the way the MD5 checksum of the FASTA DB files is verified while parsing. The checksum is computed over the
+     * bytes read by the parser; FASTA DB files read from a snapshot are not verified again.
+     *
+     * @param md5Verification the {@link Md5Verification} value
+     */
+    public void setMd5Verification(Md5Verification md5Verification) {
+        this.md5Verification = md5Verification;
+    }
+
+    public HeaderFilter getHeaderFilter() {
+        return headerFilter;
+    }
+
+    /**
+     * Set the filter on the FASTA records. The filter is evaluated on the header of every record, the sequence of a
+     * rejected record is skipped without being accumulated. Snapshots are not used while a filter is set since they
+     * contain all records.
+     *
+     * @param headerFilter the {@link HeaderFilter} instance, null to parse all records
+     */
+    public void setHeaderFilter(HeaderFilter headerFilter) {
+        this.headerFilter = headerFilter;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
 
     /**
      * Parse the given FASTA files into a map of protein accession -> sequence pairs. This method takes a {@link
@@ -44,12 +127,28 @@ public class FastaDbParser {
             for (Map.Entry<FastaDb, Path> entry : fastaDbs.entrySet()) {
                 FastaDb fastaDb = entry.getKey();
                 Path fastaPath = entry.getValue();
-                //check if the FASTA has an associated header parse rule and parse accordingly
-                //otherwise, use the Compomics Utilities library
-                if (fastaDb.getHeaderParseRule() == null || fastaDb.getHeaderParseRule().equals("") || fastaDb.getHeaderParseRule().equals("none")) {
-                    parseWithoutRule(proteinSequences, fastaPath);
-                } else {
-                    parseWithRule(proteinSequences, fastaDb, fastaPath);
+                //parse with the header parse rule associated with the FASTA,
+                //the first header token is used if there is none
+                HeaderParseRule parseRule = HeaderParseRule.compile(fastaDb.getHeaderParseRule());
+                FastaDbSnapshot snapshot = getSnapshot(fastaDb, parseRule);
+                if (snapshot == null || !readSnapshotSequences(snapshot, proteinSequences)) {
+                    MessageDigest digest = newDigest();
+                    if (snapshotDirectory == null) {
+                        parse(proteinSequences::putIfAbsent, null, fastaDb, parseRule, fastaPath, digest);
+                        verifyMd5CheckSum(fastaDb, fastaPath, digest);
+                    } else {
+                        //parse the file on its own and write the snapshot
+                        Map<String, String> fastaSequences = new LinkedHashMap<>();
+                        Set<String> accessions = new LinkedHashSet<>();
+                        parse(fastaSequences::putIfAbsent, accessions, fastaDb, parseRule, fastaPath, digest);
+                        verifyMd5CheckSum(fastaDb, fastaPath, digest);
+                        //the checksum might have been filled in by the verification
+                        snapshot = getSnapshot(fastaDb, parseRule);
+                        if (snapshot != null) {
+                            writeSnapshot(snapshot, fastaSequences, accessions);
+                        }
+                        fastaSequences.forEach(proteinSequences::putIfAbsent);
+                    }
                 }
                 if (proteinSequences.isEmpty()) {
                     throw new IllegalStateException("No accessions could be parsed from the FASTA DB file(s). Are you using the correct parse rule?");
@@ -63,6 +162,116 @@ public class FastaDbParser {
         return proteinSequences;
     }
 
+    /**
+     * Parse the given FASTA files record by record and pass the protein accession and sequence of each record to the
+     * given consumer, without collecting the sequences in memory. Like {@link #parse(LinkedHashMap)}, only the first
+     * entry of a duplicate accession is passed on, so the parsed accessions are kept in memory. Existing snapshots are
+     * read but no new ones are written. A failing MD5 checksum verification is only detected after all records of the
+     * FASTA DB file were passed on.
+     *
+     * @param fastaDbs       the FASTA files to parse and their associated (absolute) path
+     * @param recordConsumer the consumer of the protein accession and sequence pairs
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public void parse(LinkedHashMap<FastaDb, Path> fastaDbs, BiConsumer<String, String> recordConsumer) throws IOException {
+        Set<String> parsedAccessions = new HashSet<>();
+        parseRecords(fastaDbs, (accession, sequence) -> {
+            if (parsedAccessions.add(accession)) {
+                recordConsumer.accept(accession, sequence);
+            }
+        });
+    }
+
+    /**
+     * Parse the given FASTA files record by record and pass the protein accession and sequence of every record to the
+     * given consumer, duplicate accessions included.
+     *
+     * @param fastaDbs       the FASTA files to parse and their associated (absolute) path
+     * @param recordConsumer the consumer of the protein accession and sequence pairs
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    void parseRecords(LinkedHashMap<FastaDb, Path> fastaDbs, BiConsumer<String, String> recordConsumer) throws IOException {
+        parseRecords(fastaDbs, fastaDb -> recordConsumer);
+    }
+
+    /**
+     * Parse the given FASTA files record by record and pass the protein accession and sequence of every record to the
+     * consumer of its FASTA DB, duplicate accessions included.
+     *
+     * @param fastaDbs        the FASTA files to parse and their associated (absolute) path
+     * @param recordConsumers the function that returns the record consumer of a FASTA DB
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    private void parseRecords(LinkedHashMap<FastaDb, Path> fastaDbs, Function<FastaDb, BiConsumer<String, String>> recordConsumers) throws IOException {
+        long[] numberOfRecords = new long[1];
+        try {
+            for (Map.Entry<FastaDb, Path> entry : fastaDbs.entrySet()) {
+                FastaDb fastaDb = entry.getKey();
+                Path fastaPath = entry.getValue();
+                BiConsumer<String, String> recordConsumer = recordConsumers.apply(fastaDb);
+                BiConsumer<String, String> countingRecordConsumer = (accession, sequence) -> {
+                    numberOfRecords[0]++;
+                    recordConsumer.accept(accession, sequence);
+                };
+                HeaderParseRule parseRule = HeaderParseRule.compile(fastaDb.getHeaderParseRule());
+                FastaDbSnapshot snapshot = getSnapshot(fastaDb, parseRule);
+                boolean readFromSnapshot = false;
+                if (snapshot != null && snapshot.exists()) {
+                    try {
+                        snapshot.readSequences(countingRecordConsumer);
+                        readFromSnapshot = true;
+                    } catch (IOException e) {
+                        //the records that were already passed on are passed on again by the FASTA parse
+                        LOGGER.warn("Could not read FASTA DB snapshot " + snapshot.getSnapshotPath() + ", parsing the FASTA file instead", e);
+                    }
+                }
+                if (!readFromSnapshot) {
+                    MessageDigest digest = newDigest();
+                    parse(countingRecordConsumer, null, fastaDb, parseRule, fastaPath, digest);
+                    verifyMd5CheckSum(fastaDb, fastaPath, digest);
+                }
+                if (numberOfRecords[0] == 0) {
+                    throw new IllegalStateException("No accessions could be parsed from the FASTA DB file(s). Are you using the correct parse rule?");
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new IOException("Error parsing FASTA file, please check that it contains valid data");
+        }
+    }
+
+    /**
+     * Parse the given FASTA files into a {@link SequenceStore}, where identical sequences share one stored copy and
+     * keep the accessions and FASTA DBs that reference them. Duplicate accessions are handled like {@link
+     * #parse(LinkedHashMap)} for the protein sequences map of the store, but every record is counted in the duplicate
+     * statistics. Existing snapshots are read but no new ones are written.
+     *
+     * @param fastaDbs the FASTA files to parse and their associated (absolute) path
+     * @return the sequence store
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public SequenceStore parseDeduplicated(LinkedHashMap<FastaDb, Path> fastaDbs) throws IOException {
+        SequenceStore sequenceStore = new SequenceStore();
+        parseRecords(fastaDbs, fastaDb -> (accession, sequence) -> sequenceStore.add(fastaDb, accession, sequence));
+
+        return sequenceStore;
+    }
+
+    /**
+     * Parse the given FASTA files into an off-heap {@link FastaDbStore} at the given path and return it as a read-only
+     * protein sequences map, for FASTA DB files too large to parse into an on-heap map with {@link
+     * #parse(LinkedHashMap)}. Duplicate accessions are handled the same way. The caller is responsible for closing the
+     * store.
+     *
+     * @param fastaDbs  the FASTA files to parse and their associated (absolute) path
+     * @param storePath the path of the store file, an existing file is replaced
+     * @return the protein sequences store (key: protein accession; value: protein sequence)
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public FastaDbStore parseOffHeap(LinkedHashMap<FastaDb, Path> fastaDbs, Path storePath) throws IOException {
+        return FastaDbStore.build(storePath, recordConsumer -> parseRecords(fastaDbs, recordConsumer));
+    }
+
     /**
      * Parse the protein accessions from the given FASTA files into a map (key: the {@link FastaDb} instance; value: the
      * set of protein accessions). The argument is a {@link LinkedHashMap} to be able to return the the parsed
@@ -79,12 +288,15 @@ public class FastaDbParser {
             for (Map.Entry<FastaDb, Path> entry : fastaDbs.entrySet()) {
                 FastaDb fastaDb = entry.getKey();
                 Path fastaPath = entry.getValue();
-                Set<String> accessions;
-                //check if the FASTA has an associated header parse rule and parse accordingly
-                if (fastaDb.getHeaderParseRule() == null || fastaDb.getHeaderParseRule().equals("") || fastaDb.getHeaderParseRule().equals("none")) {
-                    accessions = parseAccessionsWithoutRule(fastaPath);
-                } else {
-                    accessions = parseAccessionsWithRule(fastaDb, fastaPath);
+                //parse with the header parse rule associated with the FASTA,
+                //the first header token is used if there is none
+                HeaderParseRule parseRule = HeaderParseRule.compile(fastaDb.getHeaderParseRule());
+                FastaDbSnapshot snapshot = getSnapshot(fastaDb, parseRule);
+                Set<String> accessions = snapshot != null ? readSnapshotAccessions(snapshot) : null;
+                if (accessions == null) {
+                    MessageDigest digest = newDigest();
+                    accessions = parseAccessions(fastaDb, parseRule, fastaPath, digest);
+                    verifyMd5CheckSum(fastaDb, fastaPath, digest);
                 }
                 //@TODO check if the utilties parser can be used when no parse rules are given
                 //accessions = parseAccessionsWithUtilities(fastaPath);
@@ -116,7 +328,7 @@ public class FastaDbParser {
         try {
             //check if the FASTA has an associated header parse rule and parse accordingly
             //otherwise, use the Compomics Utilities library
-            if (parseRule == null || parseRule.equals("") || parseRule.equals("none")) {
+            if (HeaderParseRule.isEmpty(parseRule)) {
                 headers = testParseWithoutRule(fastaPath, numberOfHeaders);
             } else {
                 headers = testParseWithRule(fastaPath, parseRule, numberOfHeaders);
@@ -133,144 +345,315 @@ public class FastaDbParser {
     }
 
     /**
-     * Parse the given FASTA file in case a header parse rule is present.
+     * Get the snapshot of the given FASTA DB, whether it exists or not.
+     *
+     * @param fastaDb the {@link FastaDb} instance
+     * @return the snapshot, null if snapshots are disabled or not used for the FASTA DB
+     */
+    public FastaDbSnapshot getSnapshot(FastaDb fastaDb) {
+        return getSnapshot(fastaDb, HeaderParseRule.compile(fastaDb.getHeaderParseRule()));
+    }
+
+    /**
+     * Get the snapshot for the given FASTA DB. Returns null if snapshots are disabled, a header filter is set or the MD5
+     * checksum of the FASTA DB is unknown.
+     *
+     * @param fastaDb   the {@link FastaDb} instance
+     * @param parseRule the compiled header parse rule
+     * @return the snapshot, null if not applicable
+     */
+    private FastaDbSnapshot getSnapshot(FastaDb fastaDb, HeaderParseRule parseRule) {
+        if (snapshotDirectory == null || headerFilter != null || fastaDb.getMd5CheckSum() == null || fastaDb.getMd5CheckSum().isEmpty()) {
+            return null;
+        }
+        return new FastaDbSnapshot(snapshotDirectory, fastaDb.getMd5CheckSum(), parseRule);
+    }
+
+    /**
+     * Read the protein sequences from the given snapshot if it exists. An unreadable snapshot is ignored so the FASTA
+     * file is parsed again.
      *
+     * @param snapshot         the snapshot
      * @param proteinSequences the protein sequences map
-     * @param fastaDb          the {@link FastaDb} instance
-     * @param fastaPath        the FASTA path
+     * @return whether the sequences were read from the snapshot
+     */
+    private boolean readSnapshotSequences(FastaDbSnapshot snapshot, Map<String, String> proteinSequences) {
+        if (!snapshot.exists()) {
+            return false;
+        }
+        //read into a separate map first to leave the given map untouched on failure
+        Map<String, String> snapshotSequences = new LinkedHashMap<>();
+        try {
+            snapshot.readSequences(snapshotSequences);
+        } catch (IOException e) {
+            LOGGER.warn("Could not read FASTA DB snapshot " + snapshot.getSnapshotPath() + ", parsing the FASTA file instead", e);
+            return false;
+        }
+        snapshotSequences.forEach(proteinSequences::putIfAbsent);
+
+        return true;
+    }
+
+    /**
+     * Read the protein accessions from the given snapshot if it exists. An unreadable snapshot is ignored so the FASTA
+     * file is parsed again.
+     *
+     * @param snapshot the snapshot
+     * @return the set of protein accessions, null if the snapshot doesn't exist or can't be read
+     */
+    private Set<String> readSnapshotAccessions(FastaDbSnapshot snapshot) {
+        if (!snapshot.exists()) {
+            return null;
+        }
+        try {
+            return snapshot.readAccessions();
+        } catch (IOException e) {
+            LOGGER.warn("Could not read FASTA DB snapshot " + snapshot.getSnapshotPath() + ", parsing the FASTA file instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot, a failure is logged but doesn't affect the parsing.
+     *
+     * @param snapshot         the snapshot
+     * @param proteinSequences the parsed protein sequences of the FASTA DB file
+     * @param accessions       the parsed protein accessions of the FASTA DB file
+     */
+    private void writeSnapshot(FastaDbSnapshot snapshot, Map<String, String> proteinSequences, Set<String> accessions) {
+        try {
+            snapshot.write(proteinSequences, accessions);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write FASTA DB snapshot " + snapshot.getSnapshotPath(), e);
+        }
+    }
+
+    /**
+     * Get a new MD5 digest if the checksum has to be verified.
+     *
+     * @return the digest, null if the checksum is not verified
+     */
+    private MessageDigest newDigest() {
+        if (md5Verification == Md5Verification.OFF) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The MD5 algorithm is not available", e);
+        }
+    }
+
+    /**
+     * Open a reader for the given FASTA file that updates the given digest with the bytes read.
+     *
+     * @param fastaPath the FASTA path
+     * @param digest    the digest, can be null
+     * @return the reader
      * @throws IOException in case of file reading related problem
      */
-    private void parseWithRule(Map<String, String> proteinSequences, FastaDb fastaDb, Path fastaPath) throws IOException {
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
-            //compile the pattern
-            Pattern pattern;
-            if (fastaDb.getHeaderParseRule().contains(PARSE_RULE_SPLITTER)) {
-                pattern = Pattern.compile(fastaDb.getHeaderParseRule().split(PARSE_RULE_SPLITTER)[1]);
-            } else {
-                pattern = Pattern.compile(fastaDb.getHeaderParseRule());
-            }
-            //start reading the file
-            final StringBuilder sequenceBuilder = new StringBuilder();
-            String fastaHeader = "";
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.startsWith(BLOCK_SEPARATOR)) {
-                    //add limiting check for protein store to avoid growing
-                    if (sequenceBuilder.length() > 0) {
-                        Matcher matcher = pattern.matcher(fastaHeader.substring(1));
-                        if (matcher.find()) {
-                            proteinSequences.putIfAbsent(matcher.group(1), sequenceBuilder.toString().trim());
-                        } else {
-                            proteinSequences.putIfAbsent(fastaHeader.substring(1).split(SPLITTER)[0], sequenceBuilder.toString().trim());
-                        }
-                        sequenceBuilder.setLength(0);
-                    }
-                    fastaHeader = line;
-                } else {
-                    sequenceBuilder.append(line);
-                }
-            }
-            //last line
-            if (sequenceBuilder.length() > 0) {
-                Matcher matcher = pattern.matcher(fastaHeader.substring(1).split(SPLITTER)[0]);
-                if (matcher.find()) {
-                    proteinSequences.putIfAbsent(matcher.group(1), sequenceBuilder.toString().trim());
-                } else {
-                    proteinSequences.putIfAbsent(fastaHeader.substring(1).split(SPLITTER)[0], sequenceBuilder.toString().trim());
-                }
-                sequenceBuilder.setLength(0);
+    private BufferedReader newBufferedReader(Path fastaPath, MessageDigest digest) throws IOException {
+        return new BufferedReader(new InputStreamReader(newInputStream(fastaPath, digest), StandardCharsets.UTF_8.newDecoder()));
+    }
+
+    /**
+     * Open an input stream of the decompressed bytes of the given FASTA file, gzip and BGZF compressed files are
+     * detected from their first bytes. The blocks of a BGZF file are decompressed in parallel. The digest is updated
+     * with the bytes of the file as stored.
+     *
+     * @param fastaPath the FASTA path
+     * @param digest    the digest, can be null
+     * @return the input stream
+     * @throws IOException in case of file reading related problem
+     */
+    private InputStream newInputStream(Path fastaPath, MessageDigest digest) throws IOException {
+        Compression compression = Compression.of(fastaPath);
+        if (compression == Compression.BGZF) {
+            return new BgzfInputStream(FileChannel.open(fastaPath, StandardOpenOption.READ), digest, numberOfThreads);
+        }
+        InputStream inputStream = Files.newInputStream(fastaPath);
+        if (digest != null) {
+            inputStream = new DigestInputStream(inputStream, digest);
+        }
+        if (compression == Compression.GZIP) {
+            inputStream = new GZIPInputStream(inputStream, 1 << 16);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Compare the computed MD5 checksum with the one of the given {@link FastaDb}, the computed checksum is filled in
+     * if the FASTA DB doesn't have one.
+     *
+     * @param fastaDb   the {@link FastaDb} instance
+     * @param fastaPath the FASTA path
+     * @param digest    the digest that was updated while parsing the complete file, can be null
+     * @throws IllegalStateException in case of a mismatch and {@link Md5Verification#FAIL}
+     */
+    private void verifyMd5CheckSum(FastaDb fastaDb, Path fastaPath, MessageDigest digest) {
+        if (digest == null) {
+            return;
+        }
+        StringBuilder md5CheckSum = new StringBuilder();
+        for (byte b : digest.digest()) {
+            md5CheckSum.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        if (fastaDb.getMd5CheckSum() == null || fastaDb.getMd5CheckSum().isEmpty()) {
+            fastaDb.setMd5CheckSum(md5CheckSum.toString());
+        } else if (!fastaDb.getMd5CheckSum().equalsIgnoreCase(md5CheckSum.toString())) {
+            String message = "The MD5 checksum of FASTA DB file " + fastaPath + " (" + md5CheckSum + ") doesn't match the expected one (" + fastaDb.getMd5CheckSum() + ")";
+            if (md5Verification == Md5Verification.FAIL) {
+                throw new IllegalStateException(message);
             }
+            LOGGER.warn(message);
         }
     }
 
     /**
-     * Parse the given FASTA file in case no header parse rule is present.
+     * Parse the given FASTA file with the given header parse rule. The records rejected by the header filter are
+     * skipped.
      *
-     * @param proteinSequences the protein sequences map
+     * @param recordConsumer   the consumer of the parsed protein accession and sequence pairs
+     * @param accessions       the set where the accessions of all accepted headers are collected, can be null
+     * @param fastaDb          the {@link FastaDb} instance
+     * @param parseRule        the compiled header parse rule
      * @param fastaPath        the FASTA path
+     * @param digest           the digest that is updated with the bytes read, can be null
      * @throws IOException in case of file reading related problem
      */
-    private void parseWithoutRule(Map<String, String> proteinSequences, Path fastaPath) throws IOException {
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
+    private void parse(BiConsumer<String, String> recordConsumer, Set<String> accessions, FastaDb fastaDb, HeaderParseRule parseRule, Path fastaPath, MessageDigest digest) throws IOException {
+        try (BufferedReader bufferedReader = newBufferedReader(fastaPath, digest)) {
             //start reading the file
             final StringBuilder sequenceBuilder = new StringBuilder();
             String fastaHeader = "";
+            boolean accepted = true;
             String line;
             while ((line = bufferedReader.readLine()) != null) {
                 if (line.startsWith(BLOCK_SEPARATOR)) {
                     //add limiting check for protein store to avoid growing
                     if (sequenceBuilder.length() > 0) {
-                        proteinSequences.putIfAbsent(fastaHeader.substring(1).split(SPLITTER)[0], sequenceBuilder.toString().trim());
+                        recordConsumer.accept(parseRule.parseAccession(fastaHeader.substring(1)), sequenceBuilder.toString().trim());
                         sequenceBuilder.setLength(0);
                     }
                     fastaHeader = line;
-                } else {
+                    accepted = accept(fastaDb, fastaHeader);
+                    if (accessions != null && accepted) {
+                        accessions.add(parseRule.parseAccession(fastaHeader.substring(1)));
+                    }
+                } else if (accepted) {
                     sequenceBuilder.append(line);
                 }
             }
             //last line
             if (sequenceBuilder.length() > 0) {
-                proteinSequences.putIfAbsent(fastaHeader.substring(1).split(SPLITTER)[0], sequenceBuilder.toString().trim());
+                recordConsumer.accept(parseRule.parseAccession(fastaHeader.substring(1)), sequenceBuilder.toString().trim());
                 sequenceBuilder.setLength(0);
             }
         }
     }
 
     /**
-     * Parse the given FASTA file in case a header parse rule is present.
+     * Check if the record with the given header passes the header filter.
+     *
+     * @param fastaDb the {@link FastaDb} instance
+     * @param header  the FASTA header
+     * @return whether the record is accepted, always true without filter
+     */
+    private boolean accept(FastaDb fastaDb, String header) {
+        return headerFilter == null || headerFilter.accept(fastaDb, new UniProtHeader(header));
+    }
+
+    /**
+     * Parse the protein accessions from the given FASTA file with the given header parse rule. The file is scanned as
+     * bytes in large buffers: the sequence lines are skipped by searching the next block separator at the start of a
+     * line and only the header lines are decoded. The records rejected by the header filter are skipped.
      *
      * @param fastaDb   the {@link FastaDb} instance
+     * @param parseRule the compiled header parse rule
      * @param fastaPath the FASTA path
-     * @return the set of parsed protein accessions
+     * @param digest    the digest that is updated with the bytes read, can be null
+     * @return the compact set of parsed protein accessions
      * @throws IOException in case of file reading related problem
      */
-    private Set<String> parseAccessionsWithRule(FastaDb fastaDb, Path fastaPath) throws IOException {
-        Set<String> accessions = new HashSet<>();
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
-            //compile the pattern
-            Pattern pattern;
-            if (fastaDb.getHeaderParseRule().contains(PARSE_RULE_SPLITTER)) {
-                pattern = Pattern.compile(fastaDb.getHeaderParseRule().split(PARSE_RULE_SPLITTER)[1]);
-            } else {
-                pattern = Pattern.compile(fastaDb.getHeaderParseRule());
-            }
-            //start reading the file
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.startsWith(BLOCK_SEPARATOR)) {
-                    Matcher matcher = pattern.matcher(line.substring(1));
-                    if (matcher.find()) {
-                        accessions.add(matcher.group(1));
+    private Set<String> parseAccessions(FastaDb fastaDb, HeaderParseRule parseRule, Path fastaPath, MessageDigest digest) throws IOException {
+        AccessionSet.Builder accessions = new AccessionSet.Builder();
+        try (InputStream inputStream = newInputStream(fastaPath, digest)) {
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            int limit = 0;
+            int position = 0;
+            //the start of the header being scanned, -1 if none
+            int headerStart = -1;
+            //the byte preceding the buffer
+            byte previous = '\n';
+            int read;
+            while (true) {
+                //keep the incomplete header and make room for the next bytes
+                if (headerStart >= 0) {
+                    if (headerStart == 0 && limit == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    } else {
+                        System.arraycopy(buffer, headerStart, buffer, 0, limit - headerStart);
+                        position -= headerStart;
+                        limit -= headerStart;
+                        headerStart = 0;
+                    }
+                } else {
+                    if (limit > 0) {
+                        previous = buffer[limit - 1];
+                    }
+                    position = 0;
+                    limit = 0;
+                }
+                read = inputStream.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    break;
+                }
+                limit += read;
+                while (position < limit) {
+                    if (headerStart < 0) {
+                        //look for a block separator at the start of a line
+                        while (position < limit && buffer[position] != '>') {
+                            position++;
+                        }
+                        if (position == limit) {
+                            break;
+                        }
+                        byte preceding = position > 0 ? buffer[position - 1] : previous;
+                        if (preceding == '\n' || preceding == '\r') {
+                            headerStart = position;
+                        }
+                        position++;
                     } else {
-                        accessions.add(line.substring(1).split(SPLITTER)[0]);
+                        //look for the end of the header line
+                        while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+                            position++;
+                        }
+                        if (position == limit) {
+                            break;
+                        }
+                        addAccession(accessions, fastaDb, parseRule, buffer, headerStart + 1, position - headerStart - 1);
+                        headerStart = -1;
                     }
                 }
             }
+            //last line
+            if (headerStart >= 0) {
+                addAccession(accessions, fastaDb, parseRule, buffer, headerStart + 1, limit - headerStart - 1);
+            }
         }
 
-        return accessions;
+        return accessions.build();
     }
 
     /**
-     * Parse the given FASTA file in case no header parse rule is present.
-     *
-     * @param fastaPath the FASTA path
-     * @return the set of parsed protein accessions
-     * @throws IOException in case of file reading related problem
+     * Add the accession of the given UTF-8 encoded header to the accessions if the record passes the header filter.
+     * The header is only decoded as a whole when there is a filter.
      */
-    private Set<String> parseAccessionsWithoutRule(Path fastaPath) throws IOException {
-        Set<String> accessions = new HashSet<>();
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
-            //start reading the file
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.startsWith(BLOCK_SEPARATOR)) {
-                    accessions.add(line.substring(1).split(SPLITTER)[0]);
-                }
-            }
+    private void addAccession(AccessionSet.Builder accessions, FastaDb fastaDb, HeaderParseRule parseRule, byte[] bytes, int offset, int length) {
+        if (headerFilter != null && !accept(fastaDb, new String(bytes, offset, length, StandardCharsets.UTF_8))) {
+            return;
         }
-
-        return accessions;
+        accessions.add(parseRule.parseAccession(bytes, offset, length));
     }
 
     /**
@@ -282,7 +665,7 @@ public class FastaDbParser {
      */
     private Set<String> parseAccessionsWithUtilities(Path fastaPath) throws IOException {
         Set<String> accessions = new HashSet<>();
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
+        try (BufferedReader bufferedReader = newBufferedReader(fastaPath, null)) {
             //start reading the file
             String line;
             while ((line = bufferedReader.readLine()) != null) {
@@ -307,24 +690,14 @@ public class FastaDbParser {
      */
     private LinkedHashMap<String, String> testParseWithRule(Path fastaPath, String parseRule, int numberOfHeaders) throws IOException {
         LinkedHashMap<String, String> headers = new LinkedHashMap<>();
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
-            //compile the pattern
-            Pattern pattern;
-            if (parseRule.contains(PARSE_RULE_SPLITTER)) {
-                pattern = Pattern.compile(parseRule.split(PARSE_RULE_SPLITTER)[1]);
-            } else {
-                pattern = Pattern.compile(parseRule);
-            }
+        //compile the rule
+        HeaderParseRule headerParseRule = HeaderParseRule.compile(parseRule);
+        try (BufferedReader bufferedReader = newBufferedReader(fastaPath, null)) {
             //start reading the file
             String line;
             while ((line = bufferedReader.readLine()) != null && headers.size() < numberOfHeaders) {
                 if (line.startsWith(BLOCK_SEPARATOR)) {
-                    Matcher matcher = pattern.matcher(line.substring(1));
-                    if (matcher.find()) {
-                        headers.put(matcher.group(1), line);
-                    } else {
-                        headers.put(line.substring(1).split(SPLITTER)[0], line);
-                    }
+                    headers.put(headerParseRule.parseAccession(line.substring(1)), line);
                 }
             }
         }
@@ -342,7 +715,7 @@ public class FastaDbParser {
      */
     private LinkedHashMap<String, String> testParseWithoutRule(Path fastaPath, int numberOfHeaders) throws IOException {
         LinkedHashMap<String, String> headers = new LinkedHashMap<>();
-        try (BufferedReader bufferedReader = Files.newBufferedReader(fastaPath)) {
+        try (BufferedReader bufferedReader = newBufferedReader(fastaPath, null)) {
             //start reading the file
             String line;
             while ((line = bufferedReader.readLine()) != null && headers.size() < numberOfHeaders) {
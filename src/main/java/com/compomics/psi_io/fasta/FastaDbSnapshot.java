@@ -0,0 +1,269 @@
+package com.compomics.psi_io.fasta;
+
+import com.compomics.psi_io.util.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents a binary snapshot of a parsed FASTA DB file, keyed by the MD5 checksum of the file and the
+ * header parse rule. The snapshot is read through a memory mapped file, so later parses of the same FASTA DB file
+ * don't have to process the FASTA text again.
+ * <p>
+ * Layout: magic number, version, parse rule, number of accessions, number of sequences, the accessions section (all
+ * parsed header accessions) and the sequences section (accession and sequence pairs in file order). Strings are stored
+ * as a length followed by the UTF-8 encoded bytes.
+ */
+public class FastaDbSnapshot {
+
+    private static final int MAGIC = 0x50534946;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".snapshot";
+    /**
+     * The size of the mapped windows, snapshots larger than this are mapped window by window.
+     */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * The snapshot file path.
+     */
+    private final Path snapshotPath;
+    /**
+     * The header parse rule used to parse the accessions.
+     */
+    private final HeaderParseRule parseRule;
+
+    /**
+     * Constructor.
+     *
+     * @param snapshotDirectory the directory where the snapshots are stored
+     * @param md5CheckSum       the MD5 checksum of the FASTA DB file
+     * @param parseRule         the header parse rule
+     */
+    public FastaDbSnapshot(Path snapshotDirectory, String md5CheckSum, HeaderParseRule parseRule) {
+        this.snapshotPath = snapshotDirectory.resolve(md5CheckSum.toLowerCase(Locale.US) + "_" + Integer.toHexString(parseRule.getRegex().hashCode()) + EXTENSION);
+        this.parseRule = parseRule;
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Get the path of a file that belongs with the snapshot, e.g. data derived from the parsed FASTA DB file. It has
+     * the same key as the snapshot and the given extension.
+     *
+     * @param extension the file extension, including the dot
+     * @return the companion file path
+     */
+    public Path getCompanionPath(String extension) {
+        String fileName = snapshotPath.getFileName().toString();
+        return snapshotPath.resolveSibling(fileName.substring(0, fileName.length() - EXTENSION.length()) + extension);
+    }
+
+    /**
+     * Check if the snapshot file exists.
+     *
+     * @return the exists boolean
+     */
+    public boolean exists() {
+        return Files.isRegularFile(snapshotPath);
+    }
+
+    /**
+     * Write the snapshot. The file is written to a temporary file first and then moved in place, so concurrent readers
+     * never see a partial snapshot.
+     *
+     * @param proteinSequences the parsed protein sequences of the FASTA DB file (key: protein accession; value: protein
+     *                         sequence)
+     * @param accessions       the parsed protein accessions of the FASTA DB file
+     * @throws IOException in case of a file writing related problem
+     */
+    public void write(Map<String, String> proteinSequences, Set<String> accessions) throws IOException {
+        Files.createDirectories(snapshotPath.getParent());
+        Path tempPath = FileUtils.createTempFile(snapshotPath.getParent(), snapshotPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                writeString(outputStream, parseRule.getRegex());
+                outputStream.writeInt(accessions.size());
+                outputStream.writeInt(proteinSequences.size());
+                for (String accession : accessions) {
+                    writeString(outputStream, accession);
+                }
+                for (Map.Entry<String, String> entry : proteinSequences.entrySet()) {
+                    writeString(outputStream, entry.getKey());
+                    writeString(outputStream, entry.getValue());
+                }
+            }
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Read the protein sequences from the snapshot and put them in the given map. In case of a duplicate accession, the
+     * sequence already present in the map is kept.
+     *
+     * @param proteinSequences the protein sequences map
+     * @throws IOException in case of a file reading related problem or an invalid snapshot
+     */
+    public void readSequences(Map<String, String> proteinSequences) throws IOException {
+        readSequences(proteinSequences::putIfAbsent);
+    }
+
+    /**
+     * Read the protein sequences from the snapshot and pass them one by one, in file order, to the given consumer.
+     *
+     * @param recordConsumer the consumer of the protein accession and sequence pairs
+     * @throws IOException in case of a file reading related problem or an invalid snapshot
+     */
+    public void readSequences(BiConsumer<String, String> recordConsumer) throws IOException {
+        try (MappedInput input = open()) {
+            int numberOfAccessions = input.readInt();
+            int numberOfSequences = input.readInt();
+            for (int i = 0; i < numberOfAccessions; i++) {
+                input.skipString();
+            }
+            for (int i = 0; i < numberOfSequences; i++) {
+                recordConsumer.accept(input.readString(), input.readString());
+            }
+        }
+    }
+
+    /**
+     * Read the protein accessions from the snapshot.
+     *
+     * @return the compact set of protein accessions
+     * @throws IOException in case of a file reading related problem or an invalid snapshot
+     */
+    public Set<String> readAccessions() throws IOException {
+        try (MappedInput input = open()) {
+            int numberOfAccessions = input.readInt();
+            input.readInt();
+            AccessionSet.Builder accessions = new AccessionSet.Builder();
+            for (int i = 0; i < numberOfAccessions; i++) {
+                byte[] accession = input.readBytes();
+                accessions.add(accession, 0, accession.length);
+            }
+
+            return accessions.build();
+        }
+    }
+
+    /**
+     * Open the snapshot and check its header.
+     *
+     * @return the input positioned after the parse rule
+     * @throws IOException in case of a file reading related problem or an invalid snapshot
+     */
+    private MappedInput open() throws IOException {
+        MappedInput input = new MappedInput(FileChannel.open(snapshotPath, StandardOpenOption.READ));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Invalid FASTA DB snapshot " + snapshotPath);
+            }
+            if (!input.readString().equals(parseRule.getRegex())) {
+                throw new IOException("FASTA DB snapshot " + snapshotPath + " was made with a different parse rule");
+            }
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+
+        return input;
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Sequential reader over a memory mapped file, the file is mapped in windows of at most {@link #WINDOW_SIZE}
+     * bytes.
+     */
+    private static final class MappedInput implements Closeable {
+
+        private final FileChannel channel;
+        private final long size;
+        /**
+         * The file position of the start of the current window.
+         */
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0, 0);
+        }
+
+        private void map(long position, int required) throws IOException {
+            long length = Math.min(Math.max(WINDOW_SIZE, required), size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+        }
+
+        /**
+         * Make sure the given number of bytes can be read from the current window.
+         */
+        private ByteBuffer ensure(int required) throws IOException {
+            if (required < 0) {
+                throw new IOException("Invalid FASTA DB snapshot record length");
+            }
+            if (window.remaining() < required) {
+                long position = windowStart + window.position();
+                if (size - position < required) {
+                    throw new IOException("Unexpected end of FASTA DB snapshot");
+                }
+                map(position, required);
+            }
+            return window;
+        }
+
+        private int readInt() throws IOException {
+            return ensure(Integer.BYTES).getInt();
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = readInt();
+            byte[] bytes = new byte[length];
+            ensure(length).get(bytes);
+            return bytes;
+        }
+
+        private String readString() throws IOException {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        private void skipString() throws IOException {
+            int length = readInt();
+            ByteBuffer buffer = ensure(length);
+            buffer.position(buffer.position() + length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,459 @@
+package com.compomics.psi_io.fasta;
+
+import com.compomics.psi_io.util.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents an off-heap store of parsed FASTA DB data, backed by a memory mapped file, for FASTA DB files
+ * that don't fit in an on-heap protein sequences map. The store is a read-only {@link Map} (key: protein accession;
+ * value: protein sequence), the sequence strings are only created on lookup.
+ * <p>
+ * Layout: a header, the records region (accession and sequence pairs in file order, duplicates included) and an open
+ * addressing hash table with linear probing. Every table slot holds the offset of a record in the records region and a
+ * tag of the accession hash, so most probes of other accessions are rejected without reading the record. In case of a
+ * duplicate accession, the first record is in the table.
+ * <p>
+ * The store is immutable once built and all reads are absolute, so any number of threads can read concurrently
+ * without locking.
+ */
+public class FastaDbStore extends AbstractMap<String, String> implements Closeable {
+
+    private static final int MAGIC = 0x50534953;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    /**
+     * The size of the mapped windows, a multiple of the table slot size so slots never span two windows.
+     */
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+    /**
+     * The number of bits of a table slot used for the record offset (plus one, 0 is an empty slot), the other bits hold
+     * the hash tag.
+     */
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final Path storePath;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    /**
+     * The number of distinct accessions.
+     */
+    private final long numberOfEntries;
+    /**
+     * The number of records, duplicate accessions included.
+     */
+    private final long numberOfRecords;
+    private final long recordsEnd;
+    private final long tableStart;
+    private final long tableMask;
+
+    private FastaDbStore(Path storePath, FileChannel channel, boolean writable) throws IOException {
+        this.storePath = storePath;
+        this.channel = channel;
+        long size = channel.size();
+        windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+        for (int i = 0; i < windows.length; i++) {
+            long position = (long) i << WINDOW_SHIFT;
+            windows[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        }
+        if (size < HEADER_SIZE || getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Invalid FASTA DB store " + storePath);
+        }
+        numberOfEntries = getLong(8);
+        numberOfRecords = getLong(16);
+        recordsEnd = getLong(24);
+        tableStart = getLong(32);
+        long capacity = getLong(40);
+        tableMask = capacity - 1;
+        if (Long.bitCount(capacity) != 1 || tableStart + capacity * Long.BYTES != size) {
+            throw new IOException("Invalid FASTA DB store " + storePath);
+        }
+    }
+
+    /**
+     * Open an existing store.
+     *
+     * @param storePath the store file path
+     * @return the {@link FastaDbStore} instance
+     * @throws IOException in case of a file reading related problem or an invalid store
+     */
+    public static FastaDbStore open(Path storePath) throws IOException {
+        FileChannel channel = FileChannel.open(storePath, StandardOpenOption.READ);
+        try {
+            return new FastaDbStore(storePath, channel, false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Build a store from the records of the given source. The store is written to a temporary file first and then
+     * moved in place.
+     *
+     * @param storePath    the store file path, an existing file is replaced
+     * @param recordSource the source of the protein accession and sequence pairs
+     * @return the opened {@link FastaDbStore} instance
+     * @throws IOException in case of a file reading or writing related problem
+     */
+    static FastaDbStore build(Path storePath, RecordSource recordSource) throws IOException {
+        Path directory = storePath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempPath = FileUtils.createTempFile(directory, storePath.getFileName().toString(), ".tmp");
+        try {
+            //write the records
+            long[] numberOfRecords = new long[1];
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.write(new byte[HEADER_SIZE]);
+                try {
+                    recordSource.parse((accession, sequence) -> {
+                        try {
+                            writeBytes(outputStream, accession.getBytes(StandardCharsets.UTF_8));
+                            writeBytes(outputStream, sequence.getBytes(StandardCharsets.ISO_8859_1));
+                            numberOfRecords[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            long recordsEnd = Files.size(tempPath);
+            if (recordsEnd >= OFFSET_MASK) {
+                throw new IllegalStateException("The FASTA DB data is too large to store (" + recordsEnd + " bytes)");
+            }
+
+            //size the table for a load factor of at most 3/4 and fill it
+            long capacity = Long.highestOneBit(Math.max(2, numberOfRecords[0] + numberOfRecords[0] / 3) * 2 - 1);
+            long tableStart = (recordsEnd + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+            try (RandomAccessFile file = new RandomAccessFile(tempPath.toFile(), "rw")) {
+                file.setLength(tableStart + capacity * Long.BYTES);
+                file.seek(0);
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeLong(0);
+                file.writeLong(numberOfRecords[0]);
+                file.writeLong(recordsEnd);
+                file.writeLong(tableStart);
+                file.writeLong(capacity);
+            }
+            try (FastaDbStore store = new FastaDbStore(tempPath, FileChannel.open(tempPath, StandardOpenOption.READ, StandardOpenOption.WRITE), true)) {
+                store.fillTable();
+            }
+
+            Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        return open(storePath);
+    }
+
+    private static void writeBytes(DataOutputStream outputStream, byte[] bytes) throws IOException {
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Insert all records in the hash table, only used while building the store.
+     */
+    private void fillTable() {
+        long distinct = 0;
+        long offset = HEADER_SIZE;
+        while (offset < recordsEnd) {
+            int accessionLength = getInt(offset);
+            long accessionOffset = offset + Integer.BYTES;
+            long hash = hash(accessionOffset, accessionLength);
+            long slot = hash & tableMask;
+            boolean duplicate = false;
+            long value;
+            while ((value = getLong(tableStart + slot * Long.BYTES)) != 0) {
+                if (tag(value) == tag(hash) && accessionEquals(value, accessionOffset, accessionLength)) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & tableMask;
+            }
+            if (!duplicate) {
+                putLong(tableStart + slot * Long.BYTES, ((hash >>> OFFSET_BITS) << OFFSET_BITS) | (offset + 1));
+                distinct++;
+            }
+            long sequenceOffset = accessionOffset + accessionLength;
+            offset = sequenceOffset + Integer.BYTES + getInt(sequenceOffset);
+        }
+        putLong(8, distinct);
+        for (MappedByteBuffer window : windows) {
+            window.force();
+        }
+    }
+
+    public Path getStorePath() {
+        return storePath;
+    }
+
+    /**
+     * Get the number of distinct accessions, {@link #size()} is limited to {@link Integer#MAX_VALUE}.
+     *
+     * @return the number of entries
+     */
+    public long getNumberOfEntries() {
+        return numberOfEntries;
+    }
+
+    /**
+     * Get the number of stored records, duplicate accessions included.
+     *
+     * @return the number of records
+     */
+    public long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, numberOfEntries);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return numberOfEntries == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) != 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        long offset = find((String) key);
+        if (offset == 0) {
+            return null;
+        }
+        long sequenceOffset = offset + Integer.BYTES + getInt(offset);
+        return getString(sequenceOffset + Integer.BYTES, getInt(sequenceOffset), false);
+    }
+
+    /**
+     * Find the record of the given accession.
+     *
+     * @param accession the protein accession
+     * @return the record offset, 0 if the accession is not in the store
+     */
+    private long find(String accession) {
+        byte[] bytes = accession.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        long slot = hash & tableMask;
+        long value;
+        while ((value = getLong(tableStart + slot * Long.BYTES)) != 0) {
+            if (tag(value) == tag(hash)) {
+                long offset = (value & OFFSET_MASK) - 1;
+                if (getInt(offset) == bytes.length && regionEquals(offset + Integer.BYTES, bytes)) {
+                    return offset;
+                }
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return FastaDbStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the records in file order, skipping the duplicate accessions.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+
+        private long offset = HEADER_SIZE;
+        private Entry<String, String> next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && offset < recordsEnd) {
+                long recordOffset = offset;
+                int accessionLength = getInt(offset);
+                long sequenceOffset = offset + Integer.BYTES + accessionLength;
+                int sequenceLength = getInt(sequenceOffset);
+                offset = sequenceOffset + Integer.BYTES + sequenceLength;
+                String accession = getString(recordOffset + Integer.BYTES, accessionLength, true);
+                if (find(accession) == recordOffset) {
+                    next = new SimpleImmutableEntry<>(accession, getString(sequenceOffset + Integer.BYTES, sequenceLength, false));
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, String> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+    /**
+     * Closes the file channel, the mapped memory is released when the store is garbage collected.
+     *
+     * @throws IOException in case of a closing related problem
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static long tag(long value) {
+        return value >>> OFFSET_BITS;
+    }
+
+    /**
+     * Check if the accession of the record referred to by the given table slot value equals the given accession.
+     */
+    private boolean accessionEquals(long value, long accessionOffset, int accessionLength) {
+        long offset = (value & OFFSET_MASK) - 1;
+        if (getInt(offset) != accessionLength) {
+            return false;
+        }
+        for (int i = 0; i < accessionLength; i++) {
+            if (getByte(offset + Integer.BYTES + i) != getByte(accessionOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionEquals(long offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (getByte(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a with a final mix, the table slot is taken from the low bits and the tag from the high bits.
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private long hash(long offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (getByte(offset + i) & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private byte getByte(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].get((int) (position & WINDOW_MASK));
+    }
+
+    private int getInt(long position) {
+        int index = (int) (position & WINDOW_MASK);
+        if (index <= WINDOW_SIZE - Integer.BYTES) {
+            return windows[(int) (position >>> WINDOW_SHIFT)].getInt(index);
+        }
+        //spans two windows
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (getByte(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private long getLong(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)].getLong((int) (position & WINDOW_MASK));
+    }
+
+    private void putLong(long position, long value) {
+        windows[(int) (position >>> WINDOW_SHIFT)].putLong((int) (position & WINDOW_MASK), value);
+    }
+
+    /**
+     * Read a string, through a duplicate of the window so the shared buffer position is never touched.
+     */
+    private String getString(long position, int length, boolean utf8) {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            long current = position + read;
+            ByteBuffer window = windows[(int) (current >>> WINDOW_SHIFT)].duplicate();
+            window.position((int) (current & WINDOW_MASK));
+            int chunk = Math.min(length - read, window.remaining());
+            window.get(bytes, read, chunk);
+            read += chunk;
+        }
+        return new String(bytes, utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The source of the records of a store.
+     */
+    @FunctionalInterface
+    interface RecordSource {
+
+        /**
+         * Pass all protein accession and sequence pairs to the given consumer.
+         *
+         * @param recordConsumer the record consumer
+         * @throws IOException in case of a file reading related problem
+         */
+        void parse(BiConsumer<String, String> recordConsumer) throws IOException;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.compomics.psi_io.fasta;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This interface represents a filter on the FASTA records, evaluated on the header before the record's sequence is
+ * read (see {@link FastaDbParser#setHeaderFilter(HeaderFilter)}). The UniProt header fields are parsed lazily, a
+ * record without the field a filter needs is rejected.
+ */
+@FunctionalInterface
+public interface HeaderFilter {
+
+    /**
+     * Check if the record with the given header passes the filter.
+     *
+     * @param fastaDb the {@link FastaDb} instance of the record
+     * @param header  the record header
+     * @return whether the record is kept
+     */
+    boolean accept(FastaDb fastaDb, UniProtHeader header);
+
+    /**
+     * Combine this filter with the given one, a record has to pass both.
+     *
+     * @param other the other filter
+     * @return the combined filter
+     */
+    default HeaderFilter and(HeaderFilter other) {
+        Objects.requireNonNull(other);
+        return (fastaDb, header) -> accept(fastaDb, header) && other.accept(fastaDb, header);
+    }
+
+    /**
+     * Keep the records with the taxonomy ID (OX=) of their {@link FastaDb}. All records of a FASTA DB without a
+     * taxonomy ID are kept.
+     *
+     * @return the filter
+     */
+    static HeaderFilter fastaDbTaxonomy() {
+        return (fastaDb, header) -> fastaDb.getTaxonomyID() == null || fastaDb.getTaxonomyID().equals(header.getTaxonomyId());
+    }
+
+    /**
+     * Keep the records with one of the given taxonomy IDs (OX=).
+     *
+     * @param taxonomyIds the taxonomy IDs
+     * @return the filter
+     */
+    static HeaderFilter taxonomyIn(Collection<Integer> taxonomyIds) {
+        Set<Integer> taxonomyIdSet = new HashSet<>(taxonomyIds);
+        return (fastaDb, header) -> taxonomyIdSet.contains(header.getTaxonomyId());
+    }
+
+    /**
+     * Keep the records with one of the given gene names (GN=).
+     *
+     * @param geneNames the gene names
+     * @return the filter
+     */
+    static HeaderFilter geneNameIn(Collection<String> geneNames) {
+        Set<String> geneNameSet = new HashSet<>(geneNames);
+        return (fastaDb, header) -> geneNameSet.contains(header.getGeneName());
+    }
+
+    /**
+     * Keep the records with a protein existence level (PE=) smaller than or equal to the given one.
+     *
+     * @param maxProteinExistence the maximum protein existence level
+     * @return the filter
+     */
+    static HeaderFilter proteinExistenceAtMost(int maxProteinExistence) {
+        return (fastaDb, header) -> {
+            Integer proteinExistence = header.getProteinExistence();
+            return proteinExistence != null && proteinExistence <= maxProteinExistence;
+        };
+    }
+
+}
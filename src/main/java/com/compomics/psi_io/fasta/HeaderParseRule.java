@@ -0,0 +1,403 @@
+package com.compomics.psi_io.fasta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class represents a compiled FASTA header parse rule that extracts the protein accession from a header. The
+ * common rules (first whitespace token, UniProt style pipe separated accessions) are executed by hand-written scanners,
+ * arbitrary rules fall back to a cached {@link Pattern}. In both cases the first whitespace separated token of the
+ * header is returned if the rule doesn't match.
+ * <p>
+ * All methods expect the header without the leading block separator.
+ */
+public abstract class HeaderParseRule {
+
+    /**
+     * The separator between the optional rule name and the rule regular expression.
+     */
+    private static final String PARSE_RULE_SPLITTER = ";";
+    private static final char SPLITTER = ' ';
+    private static final char PIPE = '|';
+    /**
+     * The literal rule prefixes recognized by the fast paths; the escaped variant is the one stored by the web
+     * application.
+     */
+    private static final String[] PREFIXES = {"", ">", "&gt;"};
+    private static final String FIRST_TOKEN_BODY = "([^ ]*)";
+    private static final String LAST_PIPES_BODY = ".*\\|(.*)\\|";
+    private static final String FIRST_PIPES_BODY = "\\|([^|]*)\\|";
+    /**
+     * The rule used when no parse rule is given, it returns the first whitespace separated token.
+     */
+    public static final HeaderParseRule NONE = new FirstTokenRule("none", "");
+    /**
+     * The compiled rules cache (key: the parse rule as stored in the {@link FastaDb}; value: the compiled rule).
+     */
+    private static final ConcurrentMap<String, HeaderParseRule> RULES = new ConcurrentHashMap<>();
+
+    /**
+     * The parse rule regular expression.
+     */
+    protected final String regex;
+
+    private HeaderParseRule(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Check whether the given parse rule is empty, in which case the first whitespace separated token is used as
+     * accession.
+     *
+     * @param parseRule the header parse rule
+     * @return the is empty boolean
+     */
+    public static boolean isEmpty(String parseRule) {
+        return parseRule == null || parseRule.equals("") || parseRule.equals("none");
+    }
+
+    /**
+     * Compile the given header parse rule. Compiled rules are cached and can be shared between threads.
+     *
+     * @param parseRule the header parse rule, optionally preceded by a name and the ";" separator
+     * @return the compiled rule
+     * @throws java.util.regex.PatternSyntaxException if the rule is not a valid regular expression
+     */
+    public static HeaderParseRule compile(String parseRule) {
+        if (isEmpty(parseRule)) {
+            return NONE;
+        }
+        return RULES.computeIfAbsent(parseRule, HeaderParseRule::doCompile);
+    }
+
+    /**
+     * Compile the given parse rule, pick a scanner if the rule is a common one.
+     *
+     * @param parseRule the header parse rule
+     * @return the compiled rule
+     */
+    private static HeaderParseRule doCompile(String parseRule) {
+        String regex = parseRule.contains(PARSE_RULE_SPLITTER) ? parseRule.split(PARSE_RULE_SPLITTER)[1] : parseRule;
+        for (String prefix : PREFIXES) {
+            if (regex.equals(prefix + FIRST_TOKEN_BODY)) {
+                return new FirstTokenRule(regex, prefix);
+            } else if (regex.equals(prefix + LAST_PIPES_BODY)) {
+                return new LastPipesRule(regex, prefix);
+            }
+        }
+        if (regex.equals(FIRST_PIPES_BODY)) {
+            return new FirstPipesRule(regex);
+        }
+        return new PatternRule(regex);
+    }
+
+    /**
+     * Get the parse rule regular expression.
+     *
+     * @return the regular expression
+     */
+    public String getRegex() {
+        return regex;
+    }
+
+    /**
+     * Whether this rule is executed by a hand-written scanner instead of a {@link Pattern}.
+     *
+     * @return the is scanner boolean
+     */
+    public abstract boolean isScanner();
+
+    /**
+     * Parse the accession from the given header.
+     *
+     * @param header the header without the leading block separator
+     * @return the parsed accession
+     */
+    public abstract String parseAccession(String header);
+
+    /**
+     * Parse the accession from the given UTF-8 encoded header bytes. Scanners don't decode the header, only the
+     * accession.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the header (without the leading block separator)
+     * @param length the header length
+     * @return the parsed accession
+     */
+    public String parseAccession(byte[] bytes, int offset, int length) {
+        return parseAccession(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the first whitespace separated token of the header.
+     *
+     * @param header the header
+     * @return the first token
+     */
+    static String firstToken(String header) {
+        int end = header.indexOf(SPLITTER);
+        return end < 0 ? header : header.substring(0, end);
+    }
+
+    /**
+     * Get the first whitespace separated token of the header bytes.
+     *
+     * @param bytes  the bytes
+     * @param offset the header offset
+     * @param end    the header end (exclusive)
+     * @return the first token
+     */
+    static String firstToken(byte[] bytes, int offset, int end) {
+        return decode(bytes, offset, indexOf(bytes, (byte) SPLITTER, offset, end, end));
+    }
+
+    private static String decode(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the first occurrence of the given byte in the range, returns the not found value if absent.
+     */
+    private static int indexOf(byte[] bytes, byte b, int from, int to, int notFound) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return notFound;
+    }
+
+    /**
+     * Find the first occurrence of the given ASCII prefix in the range, returns -1 if absent.
+     */
+    private static int indexOf(byte[] bytes, String prefix, int from, int to) {
+        if (prefix.isEmpty()) {
+            return from;
+        }
+        char first = prefix.charAt(0);
+        outer:
+        for (int i = from; i <= to - prefix.length(); i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < prefix.length(); j++) {
+                if (bytes[i + j] != prefix.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether the range contains a character that is not matched by the "." regex construct.
+     */
+    private static boolean containsLineTerminator(String header, int from) {
+        for (int i = from; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the UTF-8 encoded range contains a character that is not matched by the "." regex construct.
+     */
+    private static boolean containsLineTerminator(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '\n' || b == '\r') {
+                return true;
+            } else if (b == (byte) 0xC2 && i + 1 < to && bytes[i + 1] == (byte) 0x85) {
+                return true;
+            } else if (b == (byte) 0xE2 && i + 2 < to && bytes[i + 1] == (byte) 0x80 && (bytes[i + 2] == (byte) 0xA8 || bytes[i + 2] == (byte) 0xA9)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+
+    /**
+     * The "prefix([^ ]*)" rule: the token following the first occurrence of the prefix.
+     */
+    private static final class FirstTokenRule extends HeaderParseRule {
+
+        private final String prefix;
+
+        private FirstTokenRule(String regex, String prefix) {
+            super(regex);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean isScanner() {
+            return true;
+        }
+
+        @Override
+        public String parseAccession(String header) {
+            int start = header.indexOf(prefix);
+            if (start < 0) {
+                return firstToken(header);
+            }
+            return firstToken(header.substring(start + prefix.length()));
+        }
+
+        @Override
+        public String parseAccession(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            int start = indexOf(bytes, prefix, offset, end);
+            if (start < 0) {
+                return firstToken(bytes, offset, end);
+            }
+            return firstToken(bytes, start + prefix.length(), end);
+        }
+    }
+
+    /**
+     * The "prefix.*\|(.*)\|" rule: the value between the last two pipes following the prefix.
+     */
+    private static final class LastPipesRule extends HeaderParseRule {
+
+        private final String prefix;
+        /**
+         * The pattern for the rare headers containing line terminators, lazily compiled.
+         */
+        private volatile PatternRule patternRule;
+
+        private LastPipesRule(String regex, String prefix) {
+            super(regex);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean isScanner() {
+            return true;
+        }
+
+        @Override
+        public String parseAccession(String header) {
+            int start = header.indexOf(prefix);
+            if (start < 0) {
+                return firstToken(header);
+            }
+            start += prefix.length();
+            if (containsLineTerminator(header, start)) {
+                return getPatternRule().parseAccession(header);
+            }
+            int last = header.lastIndexOf(PIPE);
+            int previous = last > start ? header.lastIndexOf(PIPE, last - 1) : -1;
+            if (previous < start) {
+                return firstToken(header);
+            }
+            return header.substring(previous + 1, last);
+        }
+
+        @Override
+        public String parseAccession(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            int start = indexOf(bytes, prefix, offset, end);
+            if (start < 0) {
+                return firstToken(bytes, offset, end);
+            }
+            start += prefix.length();
+            if (containsLineTerminator(bytes, start, end)) {
+                return getPatternRule().parseAccession(decode(bytes, offset, end));
+            }
+            int last = end - 1;
+            while (last >= start && bytes[last] != PIPE) {
+                last--;
+            }
+            int previous = last - 1;
+            while (previous >= start && bytes[previous] != PIPE) {
+                previous--;
+            }
+            if (last < start || previous < start) {
+                return firstToken(bytes, offset, end);
+            }
+            return decode(bytes, previous + 1, last);
+        }
+
+        private PatternRule getPatternRule() {
+            if (patternRule == null) {
+                patternRule = new PatternRule(regex);
+            }
+            return patternRule;
+        }
+    }
+
+    /**
+     * The "\|([^|]*)\|" rule: the value between the first two pipes.
+     */
+    private static final class FirstPipesRule extends HeaderParseRule {
+
+        private FirstPipesRule(String regex) {
+            super(regex);
+        }
+
+        @Override
+        public boolean isScanner() {
+            return true;
+        }
+
+        @Override
+        public String parseAccession(String header) {
+            int first = header.indexOf(PIPE);
+            int second = first < 0 ? -1 : header.indexOf(PIPE, first + 1);
+            if (second < 0) {
+                return firstToken(header);
+            }
+            return header.substring(first + 1, second);
+        }
+
+        @Override
+        public String parseAccession(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            int first = indexOf(bytes, (byte) PIPE, offset, end, -1);
+            int second = first < 0 ? -1 : indexOf(bytes, (byte) PIPE, first + 1, end, -1);
+            if (second < 0) {
+                return firstToken(bytes, offset, end);
+            }
+            return decode(bytes, first + 1, second);
+        }
+    }
+
+    /**
+     * An arbitrary rule, the accession is the first group of the first match.
+     */
+    private static final class PatternRule extends HeaderParseRule {
+
+        private final Pattern pattern;
+
+        private PatternRule(String regex) {
+            super(regex);
+            this.pattern = Pattern.compile(regex);
+        }
+
+        @Override
+        public boolean isScanner() {
+            return false;
+        }
+
+        @Override
+        public String parseAccession(String header) {
+            Matcher matcher = pattern.matcher(header);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+            return firstToken(header);
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.compomics.psi_io.fasta;
+
+import com.compomics.psi_io.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class reads single protein sequences by accession from an uncompressed or BGZF compressed FASTA DB file,
+ * without parsing or decompressing the whole file. A plain gzip file can't be read at random, it has to be
+ * recompressed with bgzip.
+ * <p>
+ * The record index (the accession, offset and length of every record with a sequence, in the first such record of a
+ * duplicate accession, like the parser) is built with one pass over the file and stored next to it, together with the
+ * .gzi block index of a BGZF file. For BGZF files the record offsets are virtual offsets, so a lookup only decompresses
+ * the blocks of the record. The index files are rebuilt when they are older than the FASTA DB file or were built with
+ * another header parse rule. The header filter of the {@link FastaDbParser} doesn't apply.
+ */
+public class IndexedFastaReader implements Closeable {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedFastaReader.class);
+
+    private static final int MAGIC = 0x50534649;
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".fxi";
+
+    private final Compression compression;
+    private final FileChannel channel;
+    /**
+     * The sorted accessions and the offset and length of their records.
+     */
+    private final String[] accessions;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private IndexedFastaReader(Compression compression, FileChannel channel, String[] accessions, long[] offsets, int[] lengths) {
+        this.compression = compression;
+        this.channel = channel;
+        this.accessions = accessions;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Open the reader for the given FASTA DB file, the index files are read if they're up to date and built and
+     * stored otherwise.
+     *
+     * @param fastaDb   the {@link FastaDb} instance, for the header parse rule
+     * @param fastaPath the FASTA path
+     * @return the {@link IndexedFastaReader} instance
+     * @throws IOException              thrown in case of an input/output related problem
+     * @throws IllegalArgumentException if the file is compressed with plain gzip
+     */
+    public static IndexedFastaReader open(FastaDb fastaDb, Path fastaPath) throws IOException {
+        Compression compression = Compression.of(fastaPath);
+        if (compression == Compression.GZIP) {
+            throw new IllegalArgumentException("FASTA DB file " + fastaPath + " is compressed with gzip and can't be read at random, please compress it with bgzip");
+        }
+        String parseRule = fastaDb.getHeaderParseRule() == null ? "" : fastaDb.getHeaderParseRule();
+        Path indexPath = getIndexPath(fastaPath);
+        IndexedFastaReader reader = null;
+        if (Files.isRegularFile(indexPath) && Files.getLastModifiedTime(indexPath).compareTo(Files.getLastModifiedTime(fastaPath)) >= 0) {
+            try {
+                reader = read(indexPath, compression, fastaPath, parseRule);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read FASTA DB index " + indexPath + ", rebuilding it", e);
+            }
+        }
+        if (reader == null) {
+            reader = build(fastaPath, compression, parseRule);
+            try {
+                reader.write(indexPath, parseRule);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write FASTA DB index " + indexPath, e);
+            }
+        }
+
+        return reader;
+    }
+
+    /**
+     * Get the path of the record index file next to the given FASTA DB file.
+     *
+     * @param fastaPath the FASTA path
+     * @return the record index path
+     */
+    public static Path getIndexPath(Path fastaPath) {
+        return fastaPath.resolveSibling(fastaPath.getFileName() + EXTENSION);
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Get the number of distinct accessions.
+     *
+     * @return the number of accessions
+     */
+    public int getNumberOfAccessions() {
+        return accessions.length;
+    }
+
+    public boolean contains(String accession) {
+        return Arrays.binarySearch(accessions, accession) >= 0;
+    }
+
+    /**
+     * Read the sequence of the given accession.
+     *
+     * @param accession the protein accession
+     * @return the protein sequence, null if the accession is unknown
+     * @throws IOException in case of file reading related problem
+     */
+    public String getSequence(String accession) throws IOException {
+        int index = Arrays.binarySearch(accessions, accession);
+        if (index < 0) {
+            return null;
+        }
+        byte[] record;
+        if (compression == Compression.BGZF) {
+            record = BgzfIndex.readBytes(channel, offsets[index], lengths[index]);
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(lengths[index]);
+            while (buffer.hasRemaining() && channel.read(buffer, offsets[index] + buffer.position()) >= 0) {
+                //read the complete record
+            }
+            record = Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        //skip the header line and the line terminators
+        int position = 0;
+        while (position < record.length && record[position] != '\n' && record[position] != '\r') {
+            position++;
+        }
+        StringBuilder sequenceBuilder = new StringBuilder(record.length - position);
+        for (; position < record.length; position++) {
+            if (record[position] != '\n' && record[position] != '\r') {
+                sequenceBuilder.append((char) (record[position] & 0xFF));
+            }
+        }
+
+        return sequenceBuilder.toString().trim();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Build the record index with one pass over the (decompressed) file, the blocks of a BGZF file are decompressed
+     * in parallel.
+     */
+    private static IndexedFastaReader build(Path fastaPath, Compression compression, String parseRule) throws IOException {
+        HeaderParseRule headerParseRule = HeaderParseRule.compile(parseRule);
+        BgzfIndex bgzfIndex = null;
+        InputStream inputStream;
+        if (compression == Compression.BGZF) {
+            Path bgzfIndexPath = BgzfIndex.getIndexPath(fastaPath);
+            if (Files.isRegularFile(bgzfIndexPath) && Files.getLastModifiedTime(bgzfIndexPath).compareTo(Files.getLastModifiedTime(fastaPath)) >= 0) {
+                bgzfIndex = BgzfIndex.read(bgzfIndexPath);
+            } else {
+                bgzfIndex = BgzfIndex.build(fastaPath);
+                try {
+                    bgzfIndex.write(bgzfIndexPath);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not write BGZF index " + bgzfIndexPath, e);
+                }
+            }
+            inputStream = new BgzfInputStream(FileChannel.open(fastaPath, StandardOpenOption.READ), null, Runtime.getRuntime().availableProcessors());
+        } else {
+            inputStream = Files.newInputStream(fastaPath);
+        }
+
+        List<String> recordAccessions = new ArrayList<>();
+        long[] recordOffsets = new long[1024];
+        long[] recordEnds = new long[1024];
+        boolean[] recordSequences = new boolean[1024];
+        try (InputStream recordInputStream = inputStream) {
+            byte[] buffer = new byte[1 << 20];
+            byte[] header = new byte[256];
+            int headerLength = -1;
+            byte previous = '\n';
+            long offset = 0;
+            int read;
+            while ((read = recordInputStream.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++, offset++) {
+                    byte b = buffer[i];
+                    if (headerLength >= 0) {
+                        if (b == '\n' || b == '\r') {
+                            recordAccessions.add(headerParseRule.parseAccession(header, 0, headerLength));
+                            headerLength = -1;
+                        } else {
+                            if (headerLength == header.length) {
+                                header = Arrays.copyOf(header, header.length * 2);
+                            }
+                            header[headerLength++] = b;
+                        }
+                    } else if (b == '>' && (previous == '\n' || previous == '\r')) {
+                        int record = recordAccessions.size();
+                        if (record > 0) {
+                            recordEnds[record - 1] = offset;
+                        }
+                        if (record == recordOffsets.length) {
+                            recordOffsets = Arrays.copyOf(recordOffsets, record * 2);
+                            recordEnds = Arrays.copyOf(recordEnds, record * 2);
+                            recordSequences = Arrays.copyOf(recordSequences, record * 2);
+                        }
+                        recordOffsets[record] = offset;
+                        headerLength = 0;
+                    } else if (b != '\n' && b != '\r' && !recordAccessions.isEmpty()) {
+                        recordSequences[recordAccessions.size() - 1] = true;
+                    }
+                    previous = b;
+                }
+            }
+            if (headerLength >= 0) {
+                recordAccessions.add(headerParseRule.parseAccession(header, 0, headerLength));
+            }
+            if (!recordAccessions.isEmpty()) {
+                recordEnds[recordAccessions.size() - 1] = offset;
+            }
+        }
+
+        //sort the records by accession, the first record of a duplicate accession is kept
+        //like the parser, the records without sequence are left out first
+        int numberOfRecords = 0;
+        for (int i = 0; i < recordAccessions.size(); i++) {
+            if (recordSequences[i]) {
+                numberOfRecords++;
+            }
+        }
+        Integer[] order = new Integer[numberOfRecords];
+        for (int i = 0, record = 0; i < recordAccessions.size(); i++) {
+            if (recordSequences[i]) {
+                order[record++] = i;
+            }
+        }
+        Arrays.sort(order, Comparator.comparing((Integer record) -> recordAccessions.get(record)).thenComparing(Comparator.naturalOrder()));
+        List<String> accessions = new ArrayList<>(order.length);
+        long[] offsets = new long[order.length];
+        int[] lengths = new int[order.length];
+        for (Integer record : order) {
+            String accession = recordAccessions.get(record);
+            if (!accessions.isEmpty() && accessions.get(accessions.size() - 1).equals(accession)) {
+                continue;
+            }
+            long length = recordEnds[record] - recordOffsets[record];
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("FASTA record " + accession + " is too large to index");
+            }
+            offsets[accessions.size()] = bgzfIndex == null ? recordOffsets[record] : bgzfIndex.getVirtualOffset(recordOffsets[record]);
+            lengths[accessions.size()] = (int) length;
+            accessions.add(accession);
+        }
+
+        return new IndexedFastaReader(compression, FileChannel.open(fastaPath, StandardOpenOption.READ), accessions.toArray(new String[0]), Arrays.copyOf(offsets, accessions.size()), Arrays.copyOf(lengths, accessions.size()));
+    }
+
+    private void write(Path indexPath, String parseRule) throws IOException {
+        Path tempPath = FileUtils.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                outputStream.writeUTF(parseRule);
+                outputStream.writeInt(accessions.length);
+                for (int i = 0; i < accessions.length; i++) {
+                    outputStream.writeUTF(accessions[i]);
+                    outputStream.writeLong(offsets[i]);
+                    outputStream.writeInt(lengths[i]);
+                }
+            }
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static IndexedFastaReader read(Path indexPath, Compression compression, Path fastaPath, String parseRule) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath), 1 << 16))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Invalid FASTA DB index " + indexPath);
+            }
+            if (!inputStream.readUTF().equals(parseRule)) {
+                return null;
+            }
+            int numberOfAccessions = inputStream.readInt();
+            if (numberOfAccessions < 0) {
+                throw new IOException("Invalid FASTA DB index " + indexPath);
+            }
+            String[] accessions = new String[numberOfAccessions];
+            long[] offsets = new long[numberOfAccessions];
+            int[] lengths = new int[numberOfAccessions];
+            for (int i = 0; i < numberOfAccessions; i++) {
+                accessions[i] = inputStream.readUTF();
+                offsets[i] = inputStream.readLong();
+                lengths[i] = inputStream.readInt();
+            }
+
+            return new IndexedFastaReader(compression, FileChannel.open(fastaPath, StandardOpenOption.READ), accessions, offsets, lengths);
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.compomics.psi_io.fasta;
+
+/**
+ * This enum holds the ways the MD5 checksum of a FASTA DB file can be verified while it's being parsed. The digest is
+ * computed over the bytes read by the parser, no extra read of the file is needed. If the {@link FastaDb} has no
+ * checksum, the computed one is filled in.
+ */
+public enum Md5Verification {
+
+    /**
+     * Don't compute the checksum.
+     */
+    OFF,
+    /**
+     * Log a warning if the computed checksum doesn't match the stored one.
+     */
+    WARN,
+    /**
+     * Throw an {@link IllegalStateException} if the computed checksum doesn't match the stored one.
+     */
+    FAIL
+
+}
@@ -0,0 +1,334 @@
+package com.compomics.psi_io.fasta;
+
+import java.util.*;
+
+/**
+ * This class represents a content addressed store of protein sequences: identical sequences of different records,
+ * possibly from different FASTA DB files, share one stored copy. Every stored sequence keeps the accessions and {@link
+ * FastaDb} instances of the records that reference it.
+ * <p>
+ * Sequences are addressed by a 64-bit hash in an open addressing table with linear probing, a hash match is confirmed
+ * with an equality check. The store is filled by a single thread (see {@link FastaDbParser#parseDeduplicated}), once
+ * filled it can be read concurrently.
+ */
+public class SequenceStore {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The sequence hashes, per table slot.
+     */
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    /**
+     * The entry indexes plus one, per table slot; 0 is an empty slot.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private final List<Entry> entries = new ArrayList<>();
+    /**
+     * The stored sequence per accession, the first record in case of a duplicate accession.
+     */
+    private final Map<String, Entry> accessions = new HashMap<>();
+    /**
+     * The FASTA DB instances in the order they were first added.
+     */
+    private final Set<FastaDb> fastaDbs = new LinkedHashSet<>();
+    private long numberOfRecords;
+
+    /**
+     * Add a record and return the stored copy of its sequence.
+     *
+     * @param fastaDb   the {@link FastaDb} instance of the record
+     * @param accession the protein accession
+     * @param sequence  the protein sequence
+     * @return the stored sequence, the given one if it's a new sequence
+     */
+    public String add(FastaDb fastaDb, String accession, String sequence) {
+        long hash = hash(sequence);
+        int mask = slots.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        Entry entry = null;
+        while (slots[slot] != 0) {
+            if (hashes[slot] == hash) {
+                Entry candidate = entries.get(slots[slot] - 1);
+                if (candidate.sequence.equals(sequence)) {
+                    entry = candidate;
+                    break;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (entry == null) {
+            entry = new Entry(sequence);
+            entries.add(entry);
+            hashes[slot] = hash;
+            slots[slot] = entries.size();
+            if (entries.size() * 2 > slots.length) {
+                grow();
+            }
+        }
+        entry.addReference(fastaDb, accession);
+        accessions.putIfAbsent(accession, entry);
+        fastaDbs.add(fastaDb);
+        numberOfRecords++;
+
+        return entry.sequence;
+    }
+
+    /**
+     * Get the sequence of the given accession.
+     *
+     * @param accession the protein accession
+     * @return the protein sequence, null if the accession is unknown
+     */
+    public String getSequence(String accession) {
+        Entry entry = accessions.get(accession);
+        return entry == null ? null : entry.sequence;
+    }
+
+    /**
+     * Get the stored entry of the given sequence.
+     *
+     * @param sequence the protein sequence
+     * @return the entry, null if the sequence is unknown
+     */
+    public Entry getEntry(String sequence) {
+        long hash = hash(sequence);
+        int mask = slots.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slots[slot] != 0) {
+            if (hashes[slot] == hash) {
+                Entry candidate = entries.get(slots[slot] - 1);
+                if (candidate.sequence.equals(sequence)) {
+                    return candidate;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Get the stored entries, in the order their sequences were first added.
+     *
+     * @return the unmodifiable list of entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Get the protein sequences as a map (key: protein accession; value: protein sequence), the values are the shared
+     * stored copies.
+     *
+     * @return the unmodifiable protein sequences map
+     */
+    public Map<String, String> getProteinSequences() {
+        Map<String, String> proteinSequences = new HashMap<>(accessions.size() * 4 / 3 + 1);
+        accessions.forEach((accession, entry) -> proteinSequences.put(accession, entry.sequence));
+        return Collections.unmodifiableMap(proteinSequences);
+    }
+
+    /**
+     * Get the number of distinct sequences.
+     *
+     * @return the number of stored sequences
+     */
+    public int getNumberOfSequences() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of distinct accessions.
+     *
+     * @return the number of accessions
+     */
+    public int getNumberOfAccessions() {
+        return accessions.size();
+    }
+
+    /**
+     * Get the number of added records, duplicates included.
+     *
+     * @return the number of records
+     */
+    public long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * Get the duplicate statistics per FASTA DB.
+     *
+     * @return the statistics map (key: the {@link FastaDb} instance, in the order they were first added; value: the
+     * statistics)
+     */
+    public LinkedHashMap<FastaDb, DuplicateStatistics> getDuplicateStatistics() {
+        LinkedHashMap<FastaDb, DuplicateStatistics> statistics = new LinkedHashMap<>();
+        for (FastaDb fastaDb : fastaDbs) {
+            statistics.put(fastaDb, new DuplicateStatistics());
+        }
+        Map<FastaDb, Integer> referenceCounts = new HashMap<>();
+        for (Entry entry : entries) {
+            referenceCounts.clear();
+            for (int i = 0; i < entry.size; i++) {
+                referenceCounts.merge(entry.fastaDbs[i], 1, Integer::sum);
+            }
+            for (Map.Entry<FastaDb, Integer> referenceCount : referenceCounts.entrySet()) {
+                DuplicateStatistics fastaDbStatistics = statistics.get(referenceCount.getKey());
+                fastaDbStatistics.numberOfRecords += referenceCount.getValue();
+                fastaDbStatistics.numberOfSequences++;
+                if (referenceCounts.size() > 1) {
+                    fastaDbStatistics.numberOfSharedSequences++;
+                }
+            }
+        }
+
+        return statistics;
+    }
+
+    private void grow() {
+        long[] newHashes = new long[hashes.length * 2];
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != 0) {
+                int slot = (int) (hashes[i] ^ (hashes[i] >>> 32)) & mask;
+                while (newSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newHashes[slot] = hashes[i];
+                newSlots[slot] = slots[i];
+            }
+        }
+        hashes = newHashes;
+        slots = newSlots;
+    }
+
+    /**
+     * Calculate the 64-bit FNV-1a hash of the given sequence, with a final mix of the bits.
+     *
+     * @param sequence the protein sequence
+     * @return the hash
+     */
+    static long hash(CharSequence sequence) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sequence.length(); i++) {
+            hash ^= sequence.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * This class represents a stored sequence and the records that reference it.
+     */
+    public static class Entry {
+
+        private final String sequence;
+        private String[] accessions = new String[1];
+        private FastaDb[] fastaDbs = new FastaDb[1];
+        private int size;
+
+        private Entry(String sequence) {
+            this.sequence = sequence;
+        }
+
+        private void addReference(FastaDb fastaDb, String accession) {
+            if (size == accessions.length) {
+                accessions = Arrays.copyOf(accessions, size * 2);
+                fastaDbs = Arrays.copyOf(fastaDbs, size * 2);
+            }
+            accessions[size] = accession;
+            fastaDbs[size] = fastaDb;
+            size++;
+        }
+
+        public String getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Get the number of records that reference the sequence.
+         *
+         * @return the number of references
+         */
+        public int getNumberOfReferences() {
+            return size;
+        }
+
+        /**
+         * Get the accessions of the referencing records, in record order. A duplicate accession is listed once per
+         * record.
+         *
+         * @return the accessions
+         */
+        public List<String> getAccessions() {
+            return Collections.unmodifiableList(Arrays.asList(accessions).subList(0, size));
+        }
+
+        /**
+         * Get the FASTA DB instances of the referencing records, parallel to {@link #getAccessions()}.
+         *
+         * @return the FASTA DB instances
+         */
+        public List<FastaDb> getFastaDbs() {
+            return Collections.unmodifiableList(Arrays.asList(fastaDbs).subList(0, size));
+        }
+
+    }
+
+    /**
+     * This class holds the duplicate statistics of a FASTA DB.
+     */
+    public static class DuplicateStatistics {
+
+        private long numberOfRecords;
+        private long numberOfSequences;
+        private long numberOfSharedSequences;
+
+        /**
+         * Get the number of records of the FASTA DB, duplicates included.
+         *
+         * @return the number of records
+         */
+        public long getNumberOfRecords() {
+            return numberOfRecords;
+        }
+
+        /**
+         * Get the number of distinct sequences of the FASTA DB.
+         *
+         * @return the number of sequences
+         */
+        public long getNumberOfSequences() {
+            return numberOfSequences;
+        }
+
+        /**
+         * Get the number of records with a sequence of an earlier record of the same FASTA DB.
+         *
+         * @return the number of duplicate records
+         */
+        public long getNumberOfDuplicateRecords() {
+            return numberOfRecords - numberOfSequences;
+        }
+
+        /**
+         * Get the number of distinct sequences of the FASTA DB that are also referenced by other FASTA DBs.
+         *
+         * @return the number of shared sequences
+         */
+        public long getNumberOfSharedSequences() {
+            return numberOfSharedSequences;
+        }
+
+        @Override
+        public String toString() {
+            return "DuplicateStatistics[records=" + numberOfRecords + ", sequences=" + numberOfSequences + ", shared sequences=" + numberOfSharedSequences + "]";
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.compomics.psi_io.fasta;
+
+/**
+ * This class gives access to the UniProt FASTA header fields (OS=, OX=, GN=, PE=, SV=). A field is only parsed when
+ * it's first requested, so a {@link HeaderFilter} that only looks at one field doesn't pay for the others. Non UniProt
+ * headers just have no fields.
+ */
+public class UniProtHeader {
+
+    /**
+     * The header, without the block separator.
+     */
+    private final String header;
+    /**
+     * The parsed fields.
+     */
+    private String organismName;
+    private boolean organismNameParsed;
+    private Integer taxonomyId;
+    private boolean taxonomyIdParsed;
+    private String geneName;
+    private boolean geneNameParsed;
+    private Integer proteinExistence;
+    private boolean proteinExistenceParsed;
+    private Integer sequenceVersion;
+    private boolean sequenceVersionParsed;
+
+    /**
+     * Constructor.
+     *
+     * @param header the FASTA header, with or without the leading block separator
+     */
+    public UniProtHeader(String header) {
+        this.header = header.startsWith(">") ? header.substring(1) : header;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Get the organism name (OS=).
+     *
+     * @return the organism name, null if the header has none
+     */
+    public String getOrganismName() {
+        if (!organismNameParsed) {
+            organismName = getField("OS");
+            organismNameParsed = true;
+        }
+        return organismName;
+    }
+
+    /**
+     * Get the organism taxonomy ID (OX=).
+     *
+     * @return the taxonomy ID, null if the header has none or an invalid one
+     */
+    public Integer getTaxonomyId() {
+        if (!taxonomyIdParsed) {
+            taxonomyId = parseInteger(getField("OX"));
+            taxonomyIdParsed = true;
+        }
+        return taxonomyId;
+    }
+
+    /**
+     * Get the gene name (GN=).
+     *
+     * @return the gene name, null if the header has none
+     */
+    public String getGeneName() {
+        if (!geneNameParsed) {
+            geneName = getField("GN");
+            geneNameParsed = true;
+        }
+        return geneName;
+    }
+
+    /**
+     * Get the protein existence level (PE=), from 1 (evidence at protein level) to 5 (uncertain).
+     *
+     * @return the protein existence level, null if the header has none or an invalid one
+     */
+    public Integer getProteinExistence() {
+        if (!proteinExistenceParsed) {
+            proteinExistence = parseInteger(getField("PE"));
+            proteinExistenceParsed = true;
+        }
+        return proteinExistence;
+    }
+
+    /**
+     * Get the sequence version (SV=).
+     *
+     * @return the sequence version, null if the header has none or an invalid one
+     */
+    public Integer getSequenceVersion() {
+        if (!sequenceVersionParsed) {
+            sequenceVersion = parseInteger(getField("SV"));
+            sequenceVersionParsed = true;
+        }
+        return sequenceVersion;
+    }
+
+    /**
+     * Get the value of the given field. A value runs until the next " XX=" field or the end of the header, so it can
+     * contain spaces (e.g. the organism name).
+     *
+     * @param key the two letter field key
+     * @return the field value, null if the header doesn't contain the field
+     */
+    private String getField(String key) {
+        String token = " " + key + "=";
+        int start = header.indexOf(token);
+        if (start < 0) {
+            return null;
+        }
+        start += token.length();
+        int end = start;
+        while (end < header.length() && !isFieldStart(end)) {
+            end++;
+        }
+        return header.substring(start, end).trim();
+    }
+
+    /**
+     * Check if a field (" XX=") starts at the given position.
+     */
+    private boolean isFieldStart(int position) {
+        return position + 3 < header.length()
+                && header.charAt(position) == ' '
+                && Character.isUpperCase(header.charAt(position + 1))
+                && Character.isUpperCase(header.charAt(position + 2))
+                && header.charAt(position + 3) == '=';
+    }
+
+    private static Integer parseInteger(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return header;
+    }
+
+}
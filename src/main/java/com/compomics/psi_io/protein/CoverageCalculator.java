@@ -0,0 +1,336 @@
+package com.compomics.psi_io.protein;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class calculates protein sequence coverage from peptide positions that are already known, e.g. the {@link
+ * PeptideMatch} instances of a {@link ProteinSequenceIndex} or a {@link PeptideBatchMapper}, so the peptides don't
+ * have to be searched in the protein sequences again.
+ * <p>
+ * The covered residues of a protein are marked in a bitset (a long array that is reused from protein to protein), the
+ * covered regions are found by scanning its words and the per-residue depth is calculated from the match boundaries.
+ * Batches of proteins are calculated in parallel.
+ */
+public class CoverageCalculator {
+
+    /**
+     * The number of proteins a thread claims at a time.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of threads used by the batch calculation.
+     */
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Whether the per-residue depth is calculated.
+     */
+    private boolean calculateDepth = true;
+    /**
+     * The workers of the threads calling {@link #calculate(int, Collection)}.
+     */
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public boolean isCalculateDepth() {
+        return calculateDepth;
+    }
+
+    public void setCalculateDepth(boolean calculateDepth) {
+        this.calculateDepth = calculateDepth;
+    }
+
+    /**
+     * Calculate the coverage of a protein.
+     *
+     * @param proteinLength the protein sequence length
+     * @param matches       the peptide matches in the protein
+     * @return the {@link Coverage} instance
+     * @throws IllegalArgumentException if a match lies outside the protein sequence
+     */
+    public Coverage calculate(int proteinLength, Collection<PeptideMatch> matches) {
+        return workers.get().calculate(proteinLength, matches);
+    }
+
+    /**
+     * Calculate the coverage of all proteins with at least one of the given matches, in parallel. The matches are
+     * grouped by their protein accession.
+     *
+     * @param proteinSequences the protein sequences map (key: protein accession; value: protein sequence)
+     * @param matches          the peptide matches
+     * @return the coverage map (key: protein accession; value: the {@link Coverage} instance)
+     * @throws IllegalArgumentException if a match has an unknown accession or lies outside the protein sequence
+     */
+    public Map<String, Coverage> calculate(Map<String, String> proteinSequences, Collection<PeptideMatch> matches) {
+        Map<String, List<PeptideMatch>> matchesPerProtein = new HashMap<>();
+        for (PeptideMatch match : matches) {
+            matchesPerProtein.computeIfAbsent(match.getAccession(), accession -> new ArrayList<>()).add(match);
+        }
+        String[] accessions = matchesPerProtein.keySet().toArray(new String[0]);
+        Coverage[] coverages = new Coverage[accessions.length];
+        AtomicInteger nextBatch = new AtomicInteger();
+        Runnable task = () -> {
+            Worker worker = new Worker();
+            int batchStart;
+            while ((batchStart = nextBatch.getAndAdd(BATCH_SIZE)) < accessions.length) {
+                for (int i = batchStart; i < Math.min(accessions.length, batchStart + BATCH_SIZE); i++) {
+                    String sequence = proteinSequences.get(accessions[i]);
+                    if (sequence == null) {
+                        throw new IllegalArgumentException("Unknown protein accession " + accessions[i]);
+                    }
+                    coverages[i] = worker.calculate(sequence.length(), matchesPerProtein.get(accessions[i]));
+                }
+            }
+        };
+
+        int numberOfTasks = Math.min(numberOfThreads, (accessions.length + BATCH_SIZE - 1) / BATCH_SIZE);
+        if (numberOfTasks <= 1) {
+            task.run();
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(numberOfTasks);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < numberOfTasks; i++) {
+                    futures.add(executorService.submit(task));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while calculating the protein coverage", e);
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        Map<String, Coverage> coverageMap = new HashMap<>(accessions.length * 4 / 3 + 1);
+        for (int i = 0; i < accessions.length; i++) {
+            coverageMap.put(accessions[i], coverages[i]);
+        }
+
+        return coverageMap;
+    }
+
+    /**
+     * This class holds the reusable buffers of a thread.
+     */
+    private class Worker {
+
+        private long[] words = new long[64];
+        private int[] depthDifferences = new int[0];
+        private int[] regions = new int[16];
+
+        private Coverage calculate(int proteinLength, Collection<PeptideMatch> matches) {
+            int numberOfWords = (proteinLength + 63) >>> 6;
+            if (words.length < numberOfWords) {
+                words = new long[Math.max(numberOfWords, words.length * 2)];
+            } else {
+                Arrays.fill(words, 0, numberOfWords, 0);
+            }
+            boolean depth = calculateDepth;
+            if (depth) {
+                if (depthDifferences.length < proteinLength + 1) {
+                    depthDifferences = new int[Math.max(proteinLength + 1, depthDifferences.length * 2)];
+                } else {
+                    Arrays.fill(depthDifferences, 0, proteinLength + 1, 0);
+                }
+            }
+
+            for (PeptideMatch match : matches) {
+                //0-based, end exclusive
+                int start = match.getStart() - 1;
+                int end = match.getEnd();
+                if (start < 0 || end <= start || end > proteinLength) {
+                    throw new IllegalArgumentException("Peptide match " + match + " lies outside the protein sequence of length " + proteinLength);
+                }
+                set(start, end);
+                if (depth) {
+                    depthDifferences[start]++;
+                    depthDifferences[end]--;
+                }
+            }
+
+            int numberOfCoveredResidues = 0;
+            for (int i = 0; i < numberOfWords; i++) {
+                numberOfCoveredResidues += Long.bitCount(words[i]);
+            }
+            int numberOfRegions = 0;
+            int position = numberOfWords == 0 ? -1 : nextSetBit(0, numberOfWords);
+            while (position >= 0) {
+                int end = nextClearBit(position, numberOfWords);
+                if (numberOfRegions * 2 == regions.length) {
+                    regions = Arrays.copyOf(regions, regions.length * 2);
+                }
+                //1-based, end inclusive
+                regions[numberOfRegions * 2] = position + 1;
+                regions[numberOfRegions * 2 + 1] = end;
+                numberOfRegions++;
+                position = end < proteinLength ? nextSetBit(end, numberOfWords) : -1;
+            }
+            int[] residueDepths = null;
+            if (depth) {
+                residueDepths = new int[proteinLength];
+                int current = 0;
+                for (int i = 0; i < proteinLength; i++) {
+                    current += depthDifferences[i];
+                    residueDepths[i] = current;
+                }
+            }
+
+            return new Coverage(proteinLength, numberOfCoveredResidues, Arrays.copyOf(regions, numberOfRegions * 2), residueDepths);
+        }
+
+        /**
+         * Set the bits of the given range.
+         *
+         * @param from the first bit
+         * @param to   the bit after the last one
+         */
+        private void set(int from, int to) {
+            int startWord = from >>> 6;
+            int endWord = (to - 1) >>> 6;
+            long firstMask = -1L << from;
+            long lastMask = -1L >>> -to;
+            if (startWord == endWord) {
+                words[startWord] |= firstMask & lastMask;
+            } else {
+                words[startWord] |= firstMask;
+                Arrays.fill(words, startWord + 1, endWord, -1L);
+                words[endWord] |= lastMask;
+            }
+        }
+
+        /**
+         * Get the next set bit. The bits past the protein length are never set.
+         *
+         * @return the bit index, -1 if there is none
+         */
+        private int nextSetBit(int from, int numberOfWords) {
+            int wordIndex = from >>> 6;
+            long word = words[wordIndex] & (-1L << from);
+            while (word == 0) {
+                if (++wordIndex == numberOfWords) {
+                    return -1;
+                }
+                word = words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * Get the next clear bit.
+         *
+         * @return the bit index, the protein length if there is none before it
+         */
+        private int nextClearBit(int from, int numberOfWords) {
+            int wordIndex = from >>> 6;
+            long word = ~words[wordIndex] & (-1L << from);
+            while (word == 0) {
+                if (++wordIndex == numberOfWords) {
+                    return numberOfWords << 6;
+                }
+                word = ~words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+    }
+
+    /**
+     * This class holds the coverage of a protein. Positions are 1-based and inclusive, as in the {@link PeptideMatch}
+     * instances.
+     */
+    public static class Coverage {
+
+        private final int proteinLength;
+        private final int numberOfCoveredResidues;
+        /**
+         * The start and end positions of the covered regions.
+         */
+        private final int[] regions;
+        /**
+         * The per-residue depth, null if it wasn't calculated.
+         */
+        private final int[] depth;
+
+        private Coverage(int proteinLength, int numberOfCoveredResidues, int[] regions, int[] depth) {
+            this.proteinLength = proteinLength;
+            this.numberOfCoveredResidues = numberOfCoveredResidues;
+            this.regions = regions;
+            this.depth = depth;
+        }
+
+        public int getProteinLength() {
+            return proteinLength;
+        }
+
+        public int getNumberOfCoveredResidues() {
+            return numberOfCoveredResidues;
+        }
+
+        /**
+         * Get the covered fraction of the protein sequence.
+         *
+         * @return the coverage, in [0, 1]
+         */
+        public double getCoverage() {
+            return proteinLength == 0 ? 0 : (double) numberOfCoveredResidues / proteinLength;
+        }
+
+        /**
+         * Get the number of covered regions, maximal runs of covered residues.
+         *
+         * @return the number of regions
+         */
+        public int getNumberOfRegions() {
+            return regions.length / 2;
+        }
+
+        public int getRegionStart(int region) {
+            return regions[region * 2];
+        }
+
+        public int getRegionEnd(int region) {
+            return regions[region * 2 + 1];
+        }
+
+        /**
+         * Get the number of peptide matches that cover the residue at the given position.
+         *
+         * @param position the 1-based position
+         * @return the depth
+         * @throws IllegalStateException if the depth wasn't calculated
+         */
+        public int getDepth(int position) {
+            if (depth == null) {
+                throw new IllegalStateException("The per-residue depth wasn't calculated");
+            }
+            return depth[position - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "Coverage[" + numberOfCoveredResidues + "/" + proteinLength + ", regions=" + getNumberOfRegions() + "]";
+        }
+
+    }
+
+}
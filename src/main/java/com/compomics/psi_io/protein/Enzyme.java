@@ -0,0 +1,110 @@
+package com.compomics.psi_io.protein;
+
+import java.util.Locale;
+
+/**
+ * This class represents a proteolytic enzyme by its cleavage rule: the residues it cleaves at, the side of the
+ * cleavage (C- or N-terminal of the cleavage residue) and the residues that prevent the cleavage when they are on the
+ * other side of the cleavage site (e.g. proline for trypsin).
+ */
+public class Enzyme {
+
+    public static final Enzyme TRYPSIN = new Enzyme("Trypsin", "KR", "P", true);
+    public static final Enzyme TRYPSIN_P = new Enzyme("Trypsin/P", "KR", "", true);
+    public static final Enzyme LYS_C = new Enzyme("Lys-C", "K", "", true);
+    public static final Enzyme ARG_C = new Enzyme("Arg-C", "R", "P", true);
+    public static final Enzyme GLU_C = new Enzyme("Glu-C", "E", "", true);
+    public static final Enzyme ASP_N = new Enzyme("Asp-N", "D", "", false);
+    public static final Enzyme CHYMOTRYPSIN = new Enzyme("Chymotrypsin", "FWYL", "P", true);
+
+    /**
+     * The enzyme name.
+     */
+    private final String name;
+    /**
+     * The residues the enzyme cleaves at.
+     */
+    private final String cleavageResidues;
+    /**
+     * The residues that prevent the cleavage.
+     */
+    private final String restrictionResidues;
+    /**
+     * Whether the enzyme cleaves at the C-terminal side of the cleavage residues.
+     */
+    private final boolean cTerminal;
+    /**
+     * Lookup tables of the cleavage and restriction residues.
+     */
+    private final boolean[] cleaves = new boolean[128];
+    private final boolean[] restricts = new boolean[128];
+
+    /**
+     * Constructor.
+     *
+     * @param name                the enzyme name
+     * @param cleavageResidues    the residues the enzyme cleaves at
+     * @param restrictionResidues the residues that prevent the cleavage when they are on the other side of the cleavage
+     *                            site, can be empty
+     * @param cTerminal           whether the enzyme cleaves at the C-terminal side of the cleavage residues
+     */
+    public Enzyme(String name, String cleavageResidues, String restrictionResidues, boolean cTerminal) {
+        this.name = name;
+        this.cleavageResidues = cleavageResidues.toUpperCase(Locale.US);
+        this.restrictionResidues = restrictionResidues.toUpperCase(Locale.US);
+        this.cTerminal = cTerminal;
+        for (char residue : this.cleavageResidues.toCharArray()) {
+            if (residue < cleaves.length) {
+                cleaves[residue] = true;
+            }
+        }
+        for (char residue : this.restrictionResidues.toCharArray()) {
+            if (residue < restricts.length) {
+                restricts[residue] = true;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCleavageResidues() {
+        return cleavageResidues;
+    }
+
+    public String getRestrictionResidues() {
+        return restrictionResidues;
+    }
+
+    public boolean isCTerminal() {
+        return cTerminal;
+    }
+
+    /**
+     * Check if the enzyme cleaves the given sequence between the given position and the preceding one.
+     *
+     * @param sequence the protein sequence
+     * @param position the position of the residue following the site, in [1, sequence length - 1]
+     * @return whether the enzyme cleaves at the site
+     */
+    public boolean isCleavageSite(CharSequence sequence, int position) {
+        char before = sequence.charAt(position - 1);
+        char after = sequence.charAt(position);
+        if (cTerminal) {
+            return is(cleaves, before) && !is(restricts, after);
+        } else {
+            return is(cleaves, after) && !is(restricts, before);
+        }
+    }
+
+    private static boolean is(boolean[] residues, char residue) {
+        return residue < residues.length && residues[residue];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
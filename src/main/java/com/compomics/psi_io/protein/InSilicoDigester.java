@@ -0,0 +1,335 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import com.compomics.psi_io.unimod.UnimodAminoAcid;
+import com.compomics.psi_io.unimod.UnimodMarshaller;
+import com.compomics.psi_io.unimod.UnimodModification;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class digests protein sequences in silico with an {@link Enzyme}. The peptides are passed one by one to a
+ * {@link PeptideHandler}, so FASTA DB files can be digested while they are parsed (see {@link #index}) without
+ * materializing the protein sequences map or peptide objects.
+ * <p>
+ * The (neutral, mono isotopic) peptide masses are computed from the residue masses of the UNIMOD amino acids table and
+ * the fixed modifications, resolved through the {@link UnimodMarshaller}. Peptides with residues without a known mass
+ * (e.g. X or B) are skipped.
+ * <p>
+ * An instance can be used by several threads once it's configured.
+ */
+public class InSilicoDigester {
+
+    /**
+     * The cleavage specificity.
+     */
+    public enum Specificity {
+        /**
+         * Both peptide termini are cleavage sites (or protein termini).
+         */
+        FULL,
+        /**
+         * At least one of the peptide termini is a cleavage site (or a protein terminus).
+         */
+        SEMI
+    }
+
+    /**
+     * Handles the digested peptides of a protein sequence.
+     */
+    @FunctionalInterface
+    public interface PeptideHandler {
+
+        /**
+         * Handle a peptide.
+         *
+         * @param start           the 0-based start position of the peptide in the protein sequence
+         * @param end             the 0-based end position (exclusive) of the peptide in the protein sequence
+         * @param missedCleavages the number of missed cleavages
+         * @param mass            the peptide mass
+         */
+        void handle(int start, int end, int missedCleavages, double mass);
+    }
+
+    private static final String N_TERM = "N-term";
+    private static final String C_TERM = "C-term";
+
+    private final UnimodMarshaller unimodMarshaller;
+    private final Enzyme enzyme;
+    private Specificity specificity = Specificity.FULL;
+    private int maxMissedCleavages = 2;
+    private int minLength = 7;
+    private int maxLength = 30;
+    private double minMass = 0;
+    private double maxMass = Double.MAX_VALUE;
+    /**
+     * The residue masses (including the fixed modifications), NaN for residues without a known mass.
+     */
+    private final double[] residueMasses = new double[128];
+    /**
+     * The peptide N- and C-terminal masses (including the fixed modifications).
+     */
+    private double nTermMass;
+    private double cTermMass;
+
+    /**
+     * Constructor.
+     *
+     * @param unimodMarshaller the {@link UnimodMarshaller} instance that provides the residue and modification masses
+     * @param enzyme           the {@link Enzyme} instance
+     */
+    public InSilicoDigester(UnimodMarshaller unimodMarshaller, Enzyme enzyme) {
+        this.unimodMarshaller = unimodMarshaller;
+        this.enzyme = enzyme;
+        Arrays.fill(residueMasses, Double.NaN);
+        for (Map.Entry<String, UnimodAminoAcid> entry : unimodMarshaller.getAminoAcids().entrySet()) {
+            String title = entry.getKey();
+            if (title.length() == 1 && Character.isLetter(title.charAt(0)) && title.charAt(0) < residueMasses.length) {
+                residueMasses[title.charAt(0)] = entry.getValue().getMonoIsotopicMass();
+            }
+        }
+        UnimodAminoAcid nTerm = unimodMarshaller.getAminoAcid(N_TERM);
+        UnimodAminoAcid cTerm = unimodMarshaller.getAminoAcid(C_TERM);
+        if (nTerm == null || cTerm == null) {
+            throw new IllegalStateException("The UNIMOD amino acids table has no peptide terminus masses");
+        }
+        nTermMass = nTerm.getMonoIsotopicMass();
+        cTermMass = cTerm.getMonoIsotopicMass();
+    }
+
+    public Enzyme getEnzyme() {
+        return enzyme;
+    }
+
+    public Specificity getSpecificity() {
+        return specificity;
+    }
+
+    public void setSpecificity(Specificity specificity) {
+        this.specificity = specificity;
+    }
+
+    public int getMaxMissedCleavages() {
+        return maxMissedCleavages;
+    }
+
+    public void setMaxMissedCleavages(int maxMissedCleavages) {
+        this.maxMissedCleavages = maxMissedCleavages;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public void setMinLength(int minLength) {
+        this.minLength = Math.max(1, minLength);
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    public double getMinMass() {
+        return minMass;
+    }
+
+    public void setMinMass(double minMass) {
+        this.minMass = minMass;
+    }
+
+    public double getMaxMass() {
+        return maxMass;
+    }
+
+    public void setMaxMass(double maxMass) {
+        this.maxMass = maxMass;
+    }
+
+    /**
+     * Add a fixed modification by name.
+     *
+     * @param name the UNIMOD modification name
+     * @param site the modified residue (one letter code), "N-term" or "C-term" for the peptide termini
+     * @throws IllegalArgumentException if the modification is unknown or the site is invalid
+     */
+    public void addFixedModification(String name, String site) {
+        UnimodModification modification = unimodMarshaller.getModificationByName(name);
+        if (modification == null) {
+            throw new IllegalArgumentException("Unknown UNIMOD modification " + name);
+        }
+        addFixedModification(modification, site);
+    }
+
+    /**
+     * Add a fixed modification by UNIMOD accession.
+     *
+     * @param accession the UNIMOD record ID
+     * @param site      the modified residue (one letter code), "N-term" or "C-term" for the peptide termini
+     * @throws IllegalArgumentException if the modification is unknown or the site is invalid
+     */
+    public void addFixedModification(Integer accession, String site) {
+        UnimodModification modification = unimodMarshaller.getModificationByAccession(accession);
+        if (modification == null) {
+            throw new IllegalArgumentException("Unknown UNIMOD modification " + accession);
+        }
+        addFixedModification(modification, site);
+    }
+
+    private void addFixedModification(UnimodModification modification, String site) {
+        double massShift = modification.getMonoIsotopicMassShift();
+        if (N_TERM.equals(site)) {
+            nTermMass += massShift;
+        } else if (C_TERM.equals(site)) {
+            cTermMass += massShift;
+        } else if (site.length() == 1 && site.charAt(0) < residueMasses.length && !Double.isNaN(residueMasses[site.charAt(0)])) {
+            residueMasses[site.charAt(0)] += massShift;
+        } else {
+            throw new IllegalArgumentException("Invalid site " + site + " for modification " + modification.getName());
+        }
+    }
+
+    /**
+     * Calculate the mass of the given peptide with the residue and fixed modification masses of this digester.
+     *
+     * @param peptide the peptide sequence
+     * @return the peptide mass, NaN if it contains residues without a known mass
+     */
+    public double getMass(CharSequence peptide) {
+        double mass = nTermMass + cTermMass;
+        for (int i = 0; i < peptide.length(); i++) {
+            char residue = peptide.charAt(i);
+            mass += residue < residueMasses.length ? residueMasses[residue] : Double.NaN;
+        }
+        return mass;
+    }
+
+    /**
+     * Digest the given protein sequence and pass the peptides that satisfy the length and mass limits to the given
+     * handler. With full specificity, the peptides are passed in order of start position.
+     *
+     * @param sequence the protein sequence
+     * @param handler  the peptide handler
+     */
+    public void digest(String sequence, PeptideHandler handler) {
+        int n = sequence.length();
+        //prefix sums of the residue masses and of the residues without a known mass
+        double[] prefixMasses = new double[n + 1];
+        int[] unknownResidues = new int[n + 1];
+        //the number of cleavage sites in [1, position]
+        int[] cleavageSites = new int[n + 1];
+        int[] sites = new int[n + 1];
+        int numberOfSites = 0;
+        sites[numberOfSites++] = 0;
+        for (int i = 0; i < n; i++) {
+            char residue = sequence.charAt(i);
+            double residueMass = residue < residueMasses.length ? residueMasses[residue] : Double.NaN;
+            boolean unknown = Double.isNaN(residueMass);
+            prefixMasses[i + 1] = prefixMasses[i] + (unknown ? 0 : residueMass);
+            unknownResidues[i + 1] = unknownResidues[i] + (unknown ? 1 : 0);
+            boolean site = i > 0 && enzyme.isCleavageSite(sequence, i);
+            cleavageSites[i] = (i > 0 ? cleavageSites[i - 1] : 0) + (site ? 1 : 0);
+            if (site) {
+                sites[numberOfSites++] = i;
+            }
+        }
+        if (n > 0) {
+            cleavageSites[n] = cleavageSites[n - 1];
+            sites[numberOfSites++] = n;
+        }
+
+        if (specificity == Specificity.FULL) {
+            for (int a = 0; a < numberOfSites - 1; a++) {
+                for (int b = a + 1; b < numberOfSites && b - a - 1 <= maxMissedCleavages; b++) {
+                    if (sites[b] - sites[a] > maxLength) {
+                        break;
+                    }
+                    emit(sites[a], sites[b], b - a - 1, prefixMasses, unknownResidues, handler);
+                }
+            }
+        } else {
+            //peptides starting at a cleavage site, this includes the fully specific ones
+            for (int a = 0; a < numberOfSites - 1; a++) {
+                int start = sites[a];
+                for (int end = start + minLength; end <= Math.min(n, start + maxLength); end++) {
+                    int missedCleavages = cleavageSites[end - 1] - cleavageSites[start];
+                    if (missedCleavages > maxMissedCleavages) {
+                        break;
+                    }
+                    emit(start, end, missedCleavages, prefixMasses, unknownResidues, handler);
+                }
+            }
+            //peptides ending at a cleavage site that don't start at one
+            for (int b = 1; b < numberOfSites; b++) {
+                int end = sites[b];
+                for (int start = end - minLength; start >= Math.max(1, end - maxLength); start--) {
+                    int missedCleavages = cleavageSites[end - 1] - cleavageSites[start];
+                    if (missedCleavages > maxMissedCleavages) {
+                        break;
+                    }
+                    if (cleavageSites[start] != cleavageSites[start - 1]) {
+                        //starts at a cleavage site, already passed on
+                        continue;
+                    }
+                    emit(start, end, missedCleavages, prefixMasses, unknownResidues, handler);
+                }
+            }
+        }
+    }
+
+    private void emit(int start, int end, int missedCleavages, double[] prefixMasses, int[] unknownResidues, PeptideHandler handler) {
+        int length = end - start;
+        if (length < minLength || length > maxLength || unknownResidues[end] != unknownResidues[start]) {
+            return;
+        }
+        double mass = prefixMasses[end] - prefixMasses[start] + nTermMass + cTermMass;
+        if (mass >= minMass && mass <= maxMass) {
+            handler.handle(start, end, missedCleavages, mass);
+        }
+    }
+
+    /**
+     * Digest the given FASTA DB files while they are parsed and collect the peptides in a {@link PeptideMassIndex}.
+     * Duplicate accessions are handled as in {@link FastaDbParser#parse(LinkedHashMap)}. The index retains every
+     * protein sequence, so it holds the whole FASTA DB sequence data in memory, see
+     * {@link #index(LinkedHashMap, FastaDbParser, boolean)} to only keep the peptide positions.
+     *
+     * @param fastaDbs    the FASTA files to digest and their associated (absolute) path
+     * @param fastaParser the {@link FastaDbParser} instance
+     * @return the {@link PeptideMassIndex} instance
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public PeptideMassIndex index(LinkedHashMap<FastaDb, Path> fastaDbs, FastaDbParser fastaParser) throws IOException {
+        return index(fastaDbs, fastaParser, true);
+    }
+
+    /**
+     * Digest the given FASTA DB files while they are parsed and collect the peptides in a {@link PeptideMassIndex}.
+     * Without the protein sequences, the index only keeps the accessions and the peptide positions, the peptides are
+     * resolved against another sequence source, see {@link PeptideMassIndex}.
+     *
+     * @param fastaDbs        the FASTA files to digest and their associated (absolute) path
+     * @param fastaParser     the {@link FastaDbParser} instance
+     * @param retainSequences whether the index retains the protein sequences
+     * @return the {@link PeptideMassIndex} instance
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public PeptideMassIndex index(LinkedHashMap<FastaDb, Path> fastaDbs, FastaDbParser fastaParser, boolean retainSequences) throws IOException {
+        PeptideMassIndex.Builder builder = new PeptideMassIndex.Builder(retainSequences);
+        fastaParser.parse(fastaDbs, (accession, sequence) -> {
+            int protein = builder.addProtein(accession, sequence);
+            digest(sequence, (start, end, missedCleavages, mass) -> builder.addPeptide(protein, start, end, mass));
+        });
+
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,334 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.Compression;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import com.compomics.psi_io.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * This class represents a probabilistic prefilter for "is this peptide in the database" checks: a blocked Bloom filter
+ * of the fixed length k-mers of the protein sequences. A peptide that {@link #mightContain} returns false for doesn't
+ * occur in the database; a peptide it returns true for occurs with a high probability (all its k-mers occur, each with
+ * the configured false positive rate).
+ * <p>
+ * Every k-mer sets its bits in a single 512 bit block (one cache line), so a lookup costs one cache miss per k-mer.
+ * The k-mers are encoded with 5 bits per residue, so k is at most 12. Only k-mers of the residues A-Z are indexed.
+ * <p>
+ * The filter can be written to and read from a file, e.g. next to the FASTA file (see {@link #loadOrBuild}). A built
+ * filter is only read and can be shared between threads.
+ */
+public class KmerBloomFilter {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KmerBloomFilter.class);
+
+    public static final int MAX_K = 12;
+    private static final int MAGIC = 0x50534b42;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".bloom";
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+    private static final int MAX_HASHES = 16;
+
+    /**
+     * The k-mer length.
+     */
+    private final int k;
+    /**
+     * The number of bits set per k-mer.
+     */
+    private final int numberOfHashes;
+    /**
+     * The filter bits, BLOCK_LONGS longs per block.
+     */
+    private final long[] bits;
+    private final int numberOfBlocks;
+
+    /**
+     * Constructor for an empty filter.
+     *
+     * @param k                 the k-mer length, in [1, {@link #MAX_K}]
+     * @param expectedKmers     the expected number of (distinct) k-mers
+     * @param falsePositiveRate the false positive rate of a k-mer lookup
+     * @throws IllegalArgumentException if one of the arguments is out of range
+     */
+    public KmerBloomFilter(int k, long expectedKmers, double falsePositiveRate) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k should be in [1, " + MAX_K + "]");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The false positive rate should be in (0, 1)");
+        }
+        this.k = k;
+        //the optimal number of bits and hashes of a standard Bloom filter, blocked filters need a few bits more
+        double bitsPerKmer = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) * 1.1;
+        long numberOfBits = (long) Math.ceil(Math.max(1, expectedKmers) * bitsPerKmer);
+        long blocks = (numberOfBits + BLOCK_BITS - 1) / BLOCK_BITS;
+        if (blocks * BLOCK_LONGS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many k-mers for the false positive rate (" + expectedKmers + ")");
+        }
+        numberOfBlocks = (int) blocks;
+        numberOfHashes = Math.max(1, Math.min(MAX_HASHES, (int) Math.round(bitsPerKmer / 1.1 * Math.log(2))));
+        bits = new long[numberOfBlocks * BLOCK_LONGS];
+    }
+
+    private KmerBloomFilter(int k, int numberOfHashes, long[] bits) {
+        this.k = k;
+        this.numberOfHashes = numberOfHashes;
+        this.bits = bits;
+        this.numberOfBlocks = bits.length / BLOCK_LONGS;
+    }
+
+    /**
+     * Build a filter from the given FASTA DB files while they are parsed. The number of k-mers is estimated from the
+     * decompressed file sizes, see {@link Compression#getDecompressedSize(Path)}.
+     *
+     * @param fastaDbs          the FASTA files and their associated (absolute) path
+     * @param fastaDbParser     the {@link FastaDbParser} instance
+     * @param k                 the k-mer length
+     * @param falsePositiveRate the false positive rate of a k-mer lookup
+     * @return the {@link KmerBloomFilter} instance
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public static KmerBloomFilter build(LinkedHashMap<FastaDb, Path> fastaDbs, FastaDbParser fastaDbParser, int k, double falsePositiveRate) throws IOException {
+        long size = 0;
+        for (Path fastaPath : fastaDbs.values()) {
+            size += Compression.getDecompressedSize(fastaPath);
+        }
+        KmerBloomFilter filter = new KmerBloomFilter(k, size, falsePositiveRate);
+        fastaDbParser.parse(fastaDbs, (accession, sequence) -> filter.put(sequence));
+
+        return filter;
+    }
+
+    /**
+     * Read the filter stored next to the given FASTA file if it's present and up to date, otherwise build it and store
+     * it.
+     *
+     * @param fastaDb           the {@link FastaDb} instance
+     * @param fastaPath         the FASTA file path
+     * @param fastaDbParser     the {@link FastaDbParser} instance used to build the filter
+     * @param k                 the k-mer length
+     * @param falsePositiveRate the false positive rate of a k-mer lookup
+     * @return the {@link KmerBloomFilter} instance
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public static KmerBloomFilter loadOrBuild(FastaDb fastaDb, Path fastaPath, FastaDbParser fastaDbParser, int k, double falsePositiveRate) throws IOException {
+        Path filterPath = getFilterPath(fastaPath, k, falsePositiveRate);
+        if (Files.isRegularFile(filterPath) && Files.getLastModifiedTime(filterPath).compareTo(Files.getLastModifiedTime(fastaPath)) >= 0) {
+            try {
+                KmerBloomFilter filter = read(filterPath);
+                if (filter.k == k) {
+                    return filter;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not read k-mer Bloom filter " + filterPath + ", rebuilding it", e);
+            }
+        }
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(fastaDb, fastaPath);
+        KmerBloomFilter filter = build(fastaDbs, fastaDbParser, k, falsePositiveRate);
+        filter.write(filterPath);
+
+        return filter;
+    }
+
+    /**
+     * Get the path of the filter file next to the given FASTA file.
+     *
+     * @param fastaPath         the FASTA file path
+     * @param k                 the k-mer length
+     * @param falsePositiveRate the false positive rate
+     * @return the filter file path
+     */
+    public static Path getFilterPath(Path fastaPath, int k, double falsePositiveRate) {
+        return fastaPath.resolveSibling(String.format(Locale.US, "%s.k%d_%s%s", fastaPath.getFileName(), k, Double.toString(falsePositiveRate), EXTENSION));
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getNumberOfHashes() {
+        return numberOfHashes;
+    }
+
+    /**
+     * Get the filter size.
+     *
+     * @return the number of bits
+     */
+    public long getNumberOfBits() {
+        return (long) bits.length * Long.SIZE;
+    }
+
+    /**
+     * Add all k-mers of the given protein sequence.
+     *
+     * @param sequence the protein sequence
+     */
+    public void put(CharSequence sequence) {
+        long mask = (1L << (5 * k)) - 1;
+        long kmer = 0;
+        int valid = 0;
+        for (int i = 0; i < sequence.length(); i++) {
+            int code = code(sequence.charAt(i));
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 5) | code) & mask;
+            if (++valid >= k) {
+                set(kmer);
+            }
+        }
+    }
+
+    /**
+     * Check if the given peptide might occur in the database. Only the k-mers of residues A-Z are checked, true is
+     * returned for peptides without such k-mers (e.g. peptides shorter than k).
+     *
+     * @param peptide the peptide sequence
+     * @return false if the peptide doesn't occur, true if it might occur
+     */
+    public boolean mightContain(CharSequence peptide) {
+        if (peptide.length() < k) {
+            return true;
+        }
+        long mask = (1L << (5 * k)) - 1;
+        long kmer = 0;
+        int valid = 0;
+        for (int i = 0; i < peptide.length(); i++) {
+            int code = code(peptide.charAt(i));
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 5) | code) & mask;
+            if (++valid >= k && !contains(kmer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the 5 bit code of the given residue.
+     *
+     * @return the code, -1 for residues other than A-Z
+     */
+    private static int code(char residue) {
+        if (residue >= 'a' && residue <= 'z') {
+            residue -= 'a' - 'A';
+        }
+        return residue >= 'A' && residue <= 'Z' ? residue - 'A' : -1;
+    }
+
+    private void set(long kmer) {
+        long hash = mix(kmer);
+        int block = (int) (((hash >>> 32) * numberOfBlocks) >>> 32) * BLOCK_LONGS;
+        int first = (int) hash;
+        int second = (int) (hash >>> 16) | 1;
+        for (int i = 0; i < numberOfHashes; i++) {
+            int bit = (first + i * second) & (BLOCK_BITS - 1);
+            bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(long kmer) {
+        long hash = mix(kmer);
+        int block = (int) (((hash >>> 32) * numberOfBlocks) >>> 32) * BLOCK_LONGS;
+        int first = (int) hash;
+        int second = (int) (hash >>> 16) | 1;
+        for (int i = 0; i < numberOfHashes; i++) {
+            int bit = (first + i * second) & (BLOCK_BITS - 1);
+            if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Write the filter. The file is written to a temporary file first and then moved in place.
+     *
+     * @param filterPath the filter file path
+     * @throws IOException in case of a file writing related problem
+     */
+    public void write(Path filterPath) throws IOException {
+        Path directory = filterPath.toAbsolutePath().getParent();
+        Path tempPath = FileUtils.createTempFile(directory, filterPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                outputStream.writeInt(k);
+                outputStream.writeInt(numberOfHashes);
+                outputStream.writeInt(bits.length);
+                for (long value : bits) {
+                    outputStream.writeLong(value);
+                }
+            }
+            Files.move(tempPath, filterPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Read a filter.
+     *
+     * @param filterPath the filter file path
+     * @return the {@link KmerBloomFilter} instance
+     * @throws IOException in case of a file reading related problem or an invalid filter file
+     */
+    public static KmerBloomFilter read(Path filterPath) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterPath), 1 << 16))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Invalid k-mer Bloom filter " + filterPath);
+            }
+            int k = inputStream.readInt();
+            int numberOfHashes = inputStream.readInt();
+            int length = inputStream.readInt();
+            if (k < 1 || k > MAX_K || numberOfHashes < 1 || numberOfHashes > MAX_HASHES || length <= 0 || length % BLOCK_LONGS != 0) {
+                throw new IOException("Invalid k-mer Bloom filter " + filterPath);
+            }
+            long[] bits = new long[length];
+            for (int i = 0; i < length; i++) {
+                bits[i] = inputStream.readLong();
+            }
+
+            return new KmerBloomFilter(k, numberOfHashes, bits);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "KmerBloomFilter[k=%d, bits=%d, hashes=%d]", k, getNumberOfBits(), numberOfHashes);
+    }
+
+}
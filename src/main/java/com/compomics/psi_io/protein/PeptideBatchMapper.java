@@ -0,0 +1,576 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.Compression;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.HeaderParseRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class maps a fixed set of peptides to the proteins of one or more FASTA DB files in a single pass over each
+ * file. The peptides are compiled into an Aho-Corasick automaton stored in a double-array trie (base/check arrays plus
+ * failure and output links), every FASTA file is split into chunks at record boundaries and the chunks are scanned in
+ * parallel. The chunks are memory mapped, so the FASTA DB files have to be uncompressed.
+ * <p>
+ * Peptides must consist of upper case letters. Sequence characters other than upper case letters never match. Line
+ * breaks are ignored, all other characters count as residues for the match positions.
+ * <p>
+ * The automaton is immutable, one instance can be used for any number of FASTA DB files.
+ */
+public class PeptideBatchMapper {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeptideBatchMapper.class);
+
+    private static final byte BLOCK_SEPARATOR = '>';
+    private static final int ROOT = 0;
+    private static final int FREE = -1;
+    /**
+     * The marker of a free slot that is no longer considered while building the trie.
+     */
+    private static final int ABANDONED = -2;
+    /**
+     * The number of slots before the end of the used region in which free slots are searched.
+     */
+    private static final int SEARCH_WINDOW = 1 << 10;
+    /**
+     * The number of symbols, A-Z are mapped to 1-26.
+     */
+    private static final int ALPHABET_SIZE = 27;
+    /**
+     * The preferred size of the FASTA file chunks that are scanned in parallel.
+     */
+    private static final long CHUNK_SIZE = 1L << 28;
+
+    /**
+     * The handler of the peptide matches, called concurrently from the scanning threads.
+     */
+    @FunctionalInterface
+    public interface MatchHandler {
+
+        /**
+         * Handle a peptide match.
+         *
+         * @param fastaDb      the {@link FastaDb} instance of the matched protein
+         * @param peptideIndex the index of the peptide, see {@link #getPeptide(int)}
+         * @param match        the {@link PeptideMatch} instance
+         */
+        void handle(FastaDb fastaDb, int peptideIndex, PeptideMatch match);
+
+    }
+
+    /**
+     * The distinct peptides, in index order (sorted).
+     */
+    private final String[] peptides;
+    /**
+     * The length of the longest peptide.
+     */
+    private final int maxPeptideLength;
+    /**
+     * The double-array trie: the child of state s for symbol c is base[s] + c if check[base[s] + c] == s.
+     */
+    private int[] base;
+    private int[] check;
+    /**
+     * The failure link of each state.
+     */
+    private int[] fail;
+    /**
+     * The index of the peptide ending in each state, -1 if none.
+     */
+    private int[] output;
+    /**
+     * The nearest state on the failure chain with an output, -1 if none.
+     */
+    private int[] dictionaryLink;
+    /**
+     * The doubly linked list of free slots, only used while building the trie.
+     */
+    private int[] nextFree;
+    private int[] previousFree;
+    private int freeHead;
+    private int freeTail;
+    /**
+     * The number of threads used to scan a FASTA DB file.
+     */
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Build the automaton for the given peptides, duplicates are ignored.
+     *
+     * @param peptides the peptide sequences
+     * @throws IllegalArgumentException if a peptide is empty or contains other characters than upper case letters
+     */
+    public PeptideBatchMapper(Collection<String> peptides) {
+        this.peptides = peptides.stream().distinct().sorted().toArray(String[]::new);
+        int maxLength = 0;
+        for (String peptide : this.peptides) {
+            if (peptide.isEmpty()) {
+                throw new IllegalArgumentException("Empty peptides can't be mapped");
+            }
+            for (int i = 0; i < peptide.length(); i++) {
+                if (code(peptide.charAt(i)) == 0) {
+                    throw new IllegalArgumentException("Peptide " + peptide + " contains other characters than upper case letters");
+                }
+            }
+            maxLength = Math.max(maxLength, peptide.length());
+        }
+        maxPeptideLength = maxLength;
+        buildTrie();
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public int getNumberOfPeptides() {
+        return peptides.length;
+    }
+
+    /**
+     * Get the peptide with the given index.
+     *
+     * @param peptideIndex the peptide index
+     * @return the peptide sequence
+     */
+    public String getPeptide(int peptideIndex) {
+        return peptides[peptideIndex];
+    }
+
+    /**
+     * Map the peptides to the given FASTA DB files and collect the matches per peptide. Peptides without matches are
+     * not present in the map.
+     *
+     * @param fastaDbs the FASTA files to scan and their associated (absolute) path
+     * @return the matches map (key: peptide sequence; value: the list of matches, in no particular order)
+     * @throws IOException              thrown in case of an input/output related problem
+     * @throws IllegalArgumentException if a FASTA DB file is compressed
+     */
+    public Map<String, List<PeptideMatch>> map(LinkedHashMap<FastaDb, Path> fastaDbs) throws IOException {
+        Map<String, List<PeptideMatch>> matches = new ConcurrentHashMap<>();
+        map(fastaDbs, (fastaDb, peptideIndex, match) -> matches.computeIfAbsent(peptides[peptideIndex], peptide -> Collections.synchronizedList(new ArrayList<>())).add(match));
+
+        return matches;
+    }
+
+    /**
+     * Map the peptides to the given FASTA DB files, every occurrence is passed to the given handler. Each file is read
+     * once; its chunks are scanned in parallel, so the handler must be thread-safe.
+     *
+     * @param fastaDbs the FASTA files to scan and their associated (absolute) path
+     * @param handler  the match handler
+     * @throws IOException              thrown in case of an input/output related problem
+     * @throws IllegalArgumentException if a FASTA DB file is compressed
+     */
+    public void map(LinkedHashMap<FastaDb, Path> fastaDbs, MatchHandler handler) throws IOException {
+        for (Path fastaPath : fastaDbs.values()) {
+            if (Compression.of(fastaPath) != Compression.NONE) {
+                throw new IllegalArgumentException("FASTA DB file " + fastaPath + " is compressed, peptides can only be mapped to uncompressed files");
+            }
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            for (Map.Entry<FastaDb, Path> entry : fastaDbs.entrySet()) {
+                FastaDb fastaDb = entry.getKey();
+                HeaderParseRule parseRule = HeaderParseRule.compile(fastaDb.getHeaderParseRule());
+                try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                    List<Future<?>> futures = new ArrayList<>();
+                    long[] boundaries = getChunkBoundaries(channel);
+                    for (int i = 0; i < boundaries.length - 1; i++) {
+                        long start = boundaries[i];
+                        long end = boundaries[i + 1];
+                        futures.add(executorService.submit(() -> {
+                            new ChunkScanner(fastaDb, parseRule, handler).scan(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                            return null;
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while mapping peptides to FASTA DB file " + entry.getValue(), e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new IOException("Error mapping peptides to FASTA file, please check that it contains valid data");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the file into chunks that start at a record boundary.
+     *
+     * @param channel the file channel
+     * @return the chunk boundaries, including 0 and the file size
+     * @throws IOException in case of file reading related problem
+     */
+    private long[] getChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int numberOfChunks = (int) Math.max(numberOfThreads, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (int i = 1; i < numberOfChunks; i++) {
+            long position = Math.max(size / numberOfChunks * i, boundaries.get(boundaries.size() - 1));
+            //find the next ">" at a line start
+            long boundary = size;
+            byte previous = 0;
+            search:
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                for (int j = 0; j < read; j++) {
+                    byte b = buffer.get(j);
+                    if (b == BLOCK_SEPARATOR && (previous == '\n' || previous == '\r')) {
+                        boundary = position + j;
+                        break search;
+                    }
+                    previous = b;
+                }
+                position += read;
+            }
+            if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size) {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(size);
+        for (int i = 1; i < boundaries.size(); i++) {
+            if (boundaries.get(i) - boundaries.get(i - 1) > Integer.MAX_VALUE) {
+                throw new IOException("FASTA record too large to map");
+            }
+        }
+
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Get the symbol code of a residue, 0 for characters that are not upper case letters.
+     */
+    private static int code(int residue) {
+        return residue >= 'A' && residue <= 'Z' ? residue - 'A' + 1 : 0;
+    }
+
+    /**
+     * Get the child of the given state for the given symbol.
+     *
+     * @return the child state, -1 if there is none
+     */
+    private int child(int state, int symbol) {
+        int child = base[state] + symbol;
+        return child < check.length && check[child] == state ? child : -1;
+    }
+
+    /**
+     * Build the double-array trie from the sorted peptides together with the failure and dictionary links, breadth
+     * first. The free slots are kept in a linked list; free slots that fall too far behind the used region are
+     * abandoned to keep the base search bounded.
+     */
+    private void buildTrie() {
+        int capacity = Math.max(1024, peptides.length * 4);
+        base = new int[capacity];
+        check = new int[capacity];
+        output = new int[capacity];
+        fail = new int[capacity];
+        dictionaryLink = new int[capacity];
+        nextFree = new int[capacity];
+        previousFree = new int[capacity];
+        Arrays.fill(check, FREE);
+        Arrays.fill(output, -1);
+        Arrays.fill(dictionaryLink, -1);
+        freeHead = -1;
+        freeTail = -1;
+        linkFree(1, capacity);
+        check[ROOT] = ROOT;
+        int size = 1;
+
+        //queue of (state, first peptide, last peptide (exclusive), depth) entries
+        int[] queue = new int[4 * 1024];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        queue[tail++] = 0;
+        queue[tail++] = peptides.length;
+        queue[tail++] = 0;
+        int[] symbols = new int[ALPHABET_SIZE];
+        int[] firsts = new int[ALPHABET_SIZE + 1];
+        while (head != tail) {
+            int state = queue[head];
+            int first = queue[head + 1];
+            int last = queue[head + 2];
+            int depth = queue[head + 3];
+            head = (head + 4) & (queue.length - 1);
+            //the peptides are sorted and distinct, only the first one can end in this state
+            if (first < last && peptides[first].length() == depth) {
+                first++;
+            }
+            //group the remaining peptides by their symbol at this depth
+            int numberOfChildren = 0;
+            for (int i = first; i < last; i++) {
+                int symbol = code(peptides[i].charAt(depth));
+                if (numberOfChildren == 0 || symbols[numberOfChildren - 1] != symbol) {
+                    symbols[numberOfChildren] = symbol;
+                    firsts[numberOfChildren++] = i;
+                }
+            }
+            firsts[numberOfChildren] = last;
+            if (numberOfChildren == 0) {
+                continue;
+            }
+
+            //abandon the free slots far behind the used region
+            while (freeHead >= 0 && freeHead < size - SEARCH_WINDOW) {
+                int slot = freeHead;
+                unlinkFree(slot);
+                check[slot] = ABANDONED;
+            }
+            //the region after the used one is free, so a base is always found before the end of the list
+            ensureCapacity(size + 2 * ALPHABET_SIZE);
+            int stateBase = 0;
+            for (int slot = freeHead; slot >= 0; slot = nextFree[slot]) {
+                stateBase = slot - symbols[0];
+                if (stateBase < 1) {
+                    continue;
+                }
+                boolean fits = true;
+                for (int i = 1; i < numberOfChildren; i++) {
+                    if (check[stateBase + symbols[i]] != FREE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+            }
+
+            base[state] = stateBase;
+            for (int i = 0; i < numberOfChildren; i++) {
+                int child = stateBase + symbols[i];
+                unlinkFree(child);
+                check[child] = state;
+                size = Math.max(size, child + 1);
+                if (peptides[firsts[i]].length() == depth + 1) {
+                    output[child] = firsts[i];
+                }
+                //the failure chain only contains states of a lower depth, these are complete
+                int failState = ROOT;
+                if (state != ROOT) {
+                    int candidate = fail[state];
+                    while (candidate != ROOT && child(candidate, symbols[i]) < 0) {
+                        candidate = fail[candidate];
+                    }
+                    int next = child(candidate, symbols[i]);
+                    failState = next >= 0 ? next : ROOT;
+                }
+                fail[child] = failState;
+                dictionaryLink[child] = output[failState] >= 0 ? failState : dictionaryLink[failState];
+                if (((tail + 4) & (queue.length - 1)) == head) {
+                    //grow the circular queue
+                    int[] grown = new int[queue.length * 2];
+                    int length = queue.length - head;
+                    System.arraycopy(queue, head, grown, 0, length);
+                    System.arraycopy(queue, 0, grown, length, head);
+                    tail = queue.length - 4;
+                    head = 0;
+                    queue = grown;
+                }
+                queue[tail] = child;
+                queue[tail + 1] = firsts[i];
+                queue[tail + 2] = firsts[i + 1];
+                queue[tail + 3] = depth + 1;
+                tail = (tail + 4) & (queue.length - 1);
+            }
+        }
+
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        output = Arrays.copyOf(output, size);
+        fail = Arrays.copyOf(fail, size);
+        dictionaryLink = Arrays.copyOf(dictionaryLink, size);
+        nextFree = null;
+        previousFree = null;
+    }
+
+    /**
+     * Grow the trie arrays if needed, the new slots are added to the free list.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity >= check.length) {
+            int newCapacity = Math.max(capacity + 1, check.length + (check.length >> 1));
+            int oldCapacity = check.length;
+            base = Arrays.copyOf(base, newCapacity);
+            check = Arrays.copyOf(check, newCapacity);
+            output = Arrays.copyOf(output, newCapacity);
+            fail = Arrays.copyOf(fail, newCapacity);
+            dictionaryLink = Arrays.copyOf(dictionaryLink, newCapacity);
+            nextFree = Arrays.copyOf(nextFree, newCapacity);
+            previousFree = Arrays.copyOf(previousFree, newCapacity);
+            Arrays.fill(check, oldCapacity, newCapacity, FREE);
+            Arrays.fill(output, oldCapacity, newCapacity, -1);
+            Arrays.fill(dictionaryLink, oldCapacity, newCapacity, -1);
+            linkFree(oldCapacity, newCapacity);
+        }
+    }
+
+    /**
+     * Append the given range of slots to the free list.
+     */
+    private void linkFree(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            previousFree[slot] = freeTail;
+            nextFree[slot] = -1;
+            if (freeTail >= 0) {
+                nextFree[freeTail] = slot;
+            } else {
+                freeHead = slot;
+            }
+            freeTail = slot;
+        }
+    }
+
+    /**
+     * Remove the given slot from the free list.
+     */
+    private void unlinkFree(int slot) {
+        int previous = previousFree[slot];
+        int next = nextFree[slot];
+        if (previous >= 0) {
+            nextFree[previous] = next;
+        } else {
+            freeHead = next;
+        }
+        if (next >= 0) {
+            previousFree[next] = previous;
+        } else {
+            freeTail = previous;
+        }
+    }
+
+    /**
+     * Scanner of one chunk of a FASTA file, not thread-safe.
+     */
+    private final class ChunkScanner {
+
+        private final FastaDb fastaDb;
+        private final HeaderParseRule parseRule;
+        private final MatchHandler handler;
+        /**
+         * The last residues of the current protein, used for the pre residues.
+         */
+        private final byte[] residues;
+        private final int residuesMask;
+        /**
+         * The matches ending at the previous residue, they wait for their post residue.
+         */
+        private int[] pendingPeptides = new int[16];
+        private int[] pendingStarts = new int[16];
+        private char[] pendingPres = new char[16];
+        private int numberOfPending;
+        private byte[] header = new byte[256];
+        private String accession;
+
+        private ChunkScanner(FastaDb fastaDb, HeaderParseRule parseRule, MatchHandler handler) {
+            this.fastaDb = fastaDb;
+            this.parseRule = parseRule;
+            this.handler = handler;
+            residues = new byte[Integer.highestOneBit(maxPeptideLength + 1) << 1];
+            residuesMask = residues.length - 1;
+        }
+
+        private void scan(MappedByteBuffer buffer) {
+            int state = ROOT;
+            int position = 0;
+            boolean lineStart = true;
+            int limit = buffer.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    lineStart = true;
+                    continue;
+                } else if (lineStart && b == BLOCK_SEPARATOR) {
+                    //new record, read the header
+                    flushPending(PeptideMatch.TERMINUS);
+                    int length = 0;
+                    while (i + 1 < limit && buffer.get(i + 1) != '\n' && buffer.get(i + 1) != '\r') {
+                        if (length == header.length) {
+                            header = Arrays.copyOf(header, length * 2);
+                        }
+                        header[length++] = buffer.get(++i);
+                    }
+                    accession = parseRule.parseAccession(header, 0, length);
+                    state = ROOT;
+                    position = 0;
+                    continue;
+                }
+                lineStart = false;
+                if (accession == null) {
+                    continue;
+                }
+                flushPending((char) (b & 0xFF));
+                residues[position & residuesMask] = b;
+                int symbol = code(b);
+                if (symbol == 0) {
+                    state = ROOT;
+                } else {
+                    int next;
+                    while ((next = child(state, symbol)) < 0 && state != ROOT) {
+                        state = fail[state];
+                    }
+                    state = next >= 0 ? next : ROOT;
+                    for (int s = output[state] >= 0 ? state : dictionaryLink[state]; s >= 0; s = dictionaryLink[s]) {
+                        int peptide = output[s];
+                        int start = position - peptides[peptide].length() + 1;
+                        addPending(peptide, start, start == 0 ? PeptideMatch.TERMINUS : (char) (residues[(start - 1) & residuesMask] & 0xFF));
+                    }
+                }
+                position++;
+            }
+            flushPending(PeptideMatch.TERMINUS);
+        }
+
+        private void addPending(int peptide, int start, char pre) {
+            if (numberOfPending == pendingPeptides.length) {
+                pendingPeptides = Arrays.copyOf(pendingPeptides, numberOfPending * 2);
+                pendingStarts = Arrays.copyOf(pendingStarts, numberOfPending * 2);
+                pendingPres = Arrays.copyOf(pendingPres, numberOfPending * 2);
+            }
+            pendingPeptides[numberOfPending] = peptide;
+            pendingStarts[numberOfPending] = start;
+            pendingPres[numberOfPending++] = pre;
+        }
+
+        private void flushPending(char post) {
+            for (int i = 0; i < numberOfPending; i++) {
+                int peptide = pendingPeptides[i];
+                int start = pendingStarts[i];
+                handler.handle(fastaDb, peptide, new PeptideMatch(accession, start + 1, start + peptides[peptide].length(), pendingPres[i], post));
+            }
+            numberOfPending = 0;
+        }
+    }
+
+}
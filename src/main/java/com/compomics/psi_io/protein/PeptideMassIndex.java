@@ -0,0 +1,386 @@
+package com.compomics.psi_io.protein;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents a precursor mass index of digested peptides, built by {@link InSilicoDigester}. The peptide
+ * masses are kept sorted in a primitive array, with the protein index and the start and end positions of every peptide
+ * in parallel arrays, so a range lookup is a binary search. Peptide sequences are not stored, they are substrings of
+ * the indexed protein sequences. A peptide occurring in several proteins (or several times in one protein) has an
+ * entry for every occurrence.
+ * <p>
+ * By default the index retains every protein sequence, so its memory footprint includes the whole FASTA DB sequence
+ * data. An index built without the protein sequences only keeps the accessions and peptide positions, the callers
+ * then resolve the peptides with {@link #getStart(int)} and {@link #getEnd(int)} against a sequence source such as an
+ * {@link com.compomics.psi_io.fasta.IndexedFastaReader} or a {@link com.compomics.psi_io.fasta.FastaDbStore}.
+ * <p>
+ * The index is immutable and can be shared between threads.
+ */
+public class PeptideMassIndex {
+
+    /**
+     * The protein accessions, in index order.
+     */
+    private final String[] accessions;
+    /**
+     * The protein sequences, in index order, null if they aren't retained.
+     */
+    private final String[] sequences;
+    /**
+     * The sorted peptide masses.
+     */
+    private final double[] masses;
+    /**
+     * The protein index of every peptide.
+     */
+    private final int[] proteins;
+    /**
+     * The 0-based start position of every peptide in its protein.
+     */
+    private final int[] starts;
+    /**
+     * The 0-based end position (exclusive) of every peptide in its protein.
+     */
+    private final int[] ends;
+
+    private PeptideMassIndex(String[] accessions, String[] sequences, double[] masses, int[] proteins, int[] starts, int[] ends) {
+        this.accessions = accessions;
+        this.sequences = sequences;
+        this.masses = masses;
+        this.proteins = proteins;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Get the number of indexed peptides.
+     *
+     * @return the number of peptides
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    public int getNumberOfProteins() {
+        return accessions.length;
+    }
+
+    /**
+     * Check whether the index retains the protein sequences, see {@link #getSequence(int)}.
+     *
+     * @return whether the protein sequences are retained
+     */
+    public boolean hasSequences() {
+        return sequences != null;
+    }
+
+    /**
+     * Get the (neutral) mass of the peptide at the given index.
+     *
+     * @param index the peptide index
+     * @return the peptide mass
+     */
+    public double getMass(int index) {
+        return masses[index];
+    }
+
+    /**
+     * Get the protein accession of the peptide at the given index.
+     *
+     * @param index the peptide index
+     * @return the protein accession
+     */
+    public String getAccession(int index) {
+        return accessions[proteins[index]];
+    }
+
+    /**
+     * Get the 0-based start position of the peptide at the given index in its protein.
+     *
+     * @param index the peptide index
+     * @return the start position
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Get the 0-based end position (exclusive) of the peptide at the given index in its protein.
+     *
+     * @param index the peptide index
+     * @return the end position
+     */
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Get the sequence of the peptide at the given index.
+     *
+     * @param index the peptide index
+     * @return the peptide sequence
+     * @throws IllegalStateException if the index doesn't retain the protein sequences
+     */
+    public String getSequence(int index) {
+        return getProteinSequence(index).substring(starts[index], ends[index]);
+    }
+
+    /**
+     * Get the peptide at the given index as a {@link PeptideMatch} with 1-based positions and the pre and post
+     * residues.
+     *
+     * @param index the peptide index
+     * @return the {@link PeptideMatch} instance
+     * @throws IllegalStateException if the index doesn't retain the protein sequences
+     */
+    public PeptideMatch getPeptideMatch(int index) {
+        String sequence = getProteinSequence(index);
+        int start = starts[index];
+        int end = ends[index];
+        char pre = start == 0 ? PeptideMatch.TERMINUS : sequence.charAt(start - 1);
+        char post = end == sequence.length() ? PeptideMatch.TERMINUS : sequence.charAt(end);
+        return new PeptideMatch(accessions[proteins[index]], start + 1, end, pre, post);
+    }
+
+    /**
+     * Get the index of the first peptide with a mass larger than or equal to the given mass.
+     *
+     * @param mass the mass
+     * @return the peptide index, {@link #size()} if there is none
+     */
+    public int lowerBound(double mass) {
+        int low = 0;
+        int high = masses.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] < mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the index of the first peptide with a mass larger than the given mass.
+     *
+     * @param mass the mass
+     * @return the peptide index, {@link #size()} if there is none
+     */
+    public int upperBound(double mass) {
+        int low = 0;
+        int high = masses.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] <= mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pass the index of every peptide with a mass in [minMass, maxMass] to the given consumer, in mass order.
+     *
+     * @param minMass       the minimum mass (inclusive)
+     * @param maxMass       the maximum mass (inclusive)
+     * @param indexConsumer the consumer of the peptide indexes
+     */
+    public void forEach(double minMass, double maxMass, IntConsumer indexConsumer) {
+        for (int i = lowerBound(minMass), end = upperBound(maxMass); i < end; i++) {
+            indexConsumer.accept(i);
+        }
+    }
+
+    /**
+     * Pass the index of every peptide within the given tolerance of the given precursor mass to the given consumer, in
+     * mass order.
+     *
+     * @param precursorMass the (neutral) precursor mass
+     * @param tolerance     the mass tolerance
+     * @param ppm           whether the tolerance is in ppm, otherwise it's in Da
+     * @param indexConsumer the consumer of the peptide indexes
+     */
+    public void forEach(double precursorMass, double tolerance, boolean ppm, IntConsumer indexConsumer) {
+        double delta = ppm ? precursorMass * tolerance / 1_000_000 : tolerance;
+        forEach(precursorMass - delta, precursorMass + delta, indexConsumer);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "PeptideMassIndex[proteins=%d, peptides=%d]", accessions.length, masses.length);
+    }
+
+    private String getProteinSequence(int index) {
+        if (sequences == null) {
+            throw new IllegalStateException("The protein sequences aren't retained by this index");
+        }
+        return sequences[proteins[index]];
+    }
+
+    /**
+     * Collects the proteins and their peptides and sorts them by mass into a {@link PeptideMassIndex}.
+     */
+    static final class Builder {
+
+        private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+        private final boolean retainSequences;
+        private String[] accessions = new String[1 << 10];
+        private String[] sequences;
+        private int numberOfProteins;
+        private double[] masses = new double[1 << 12];
+        private int[] proteins = new int[1 << 12];
+        private int[] starts = new int[1 << 12];
+        private int[] ends = new int[1 << 12];
+        private int numberOfPeptides;
+
+        /**
+         * Constructor.
+         *
+         * @param retainSequences whether the index retains the protein sequences
+         */
+        Builder(boolean retainSequences) {
+            this.retainSequences = retainSequences;
+            sequences = retainSequences ? new String[accessions.length] : null;
+        }
+
+        /**
+         * Add a protein.
+         *
+         * @param accession the protein accession
+         * @param sequence  the protein sequence
+         * @return the protein index
+         */
+        int addProtein(String accession, String sequence) {
+            if (numberOfProteins == accessions.length) {
+                accessions = Arrays.copyOf(accessions, grow(accessions.length));
+                if (retainSequences) {
+                    sequences = Arrays.copyOf(sequences, accessions.length);
+                }
+            }
+            accessions[numberOfProteins] = accession;
+            if (retainSequences) {
+                sequences[numberOfProteins] = sequence;
+            }
+            return numberOfProteins++;
+        }
+
+        /**
+         * Add a peptide of an added protein.
+         *
+         * @param protein the protein index
+         * @param start   the 0-based start position
+         * @param end     the 0-based end position (exclusive)
+         * @param mass    the peptide mass
+         */
+        void addPeptide(int protein, int start, int end, double mass) {
+            if (numberOfPeptides == masses.length) {
+                int length = grow(masses.length);
+                masses = Arrays.copyOf(masses, length);
+                proteins = Arrays.copyOf(proteins, length);
+                starts = Arrays.copyOf(starts, length);
+                ends = Arrays.copyOf(ends, length);
+            }
+            masses[numberOfPeptides] = mass;
+            proteins[numberOfPeptides] = protein;
+            starts[numberOfPeptides] = start;
+            ends[numberOfPeptides] = end;
+            numberOfPeptides++;
+        }
+
+        private static int grow(int length) {
+            if (length == MAX_SIZE) {
+                throw new IllegalStateException("Too many peptides to index");
+            }
+            return (int) Math.min(MAX_SIZE, length * 2L);
+        }
+
+        /**
+         * Sort the peptides by mass and build the index.
+         *
+         * @return the {@link PeptideMassIndex} instance
+         */
+        PeptideMassIndex build() {
+            int n = numberOfPeptides;
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            sort(order, masses, 0, n - 1);
+            double[] sortedMasses = new double[n];
+            int[] sortedProteins = new int[n];
+            int[] sortedStarts = new int[n];
+            int[] sortedEnds = new int[n];
+            for (int i = 0; i < n; i++) {
+                int peptide = order[i];
+                sortedMasses[i] = masses[peptide];
+                sortedProteins[i] = proteins[peptide];
+                sortedStarts[i] = starts[peptide];
+                sortedEnds[i] = ends[peptide];
+            }
+
+            return new PeptideMassIndex(Arrays.copyOf(accessions, numberOfProteins), retainSequences ? Arrays.copyOf(sequences, numberOfProteins) : null,
+                    sortedMasses, sortedProteins, sortedStarts, sortedEnds);
+        }
+
+        /**
+         * Sort the given peptide indexes by mass (three-way quicksort, peptides occurring in several proteins give many
+         * equal masses).
+         */
+        private static void sort(int[] order, double[] keys, int low, int high) {
+            while (high - low > 16) {
+                //median of three pivot
+                int middle = (low + high) >>> 1;
+                double a = keys[order[low]];
+                double b = keys[order[middle]];
+                double c = keys[order[high]];
+                double pivot = a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+                int lt = low;
+                int gt = high;
+                int i = low;
+                while (i <= gt) {
+                    double key = keys[order[i]];
+                    if (key < pivot) {
+                        swap(order, lt++, i++);
+                    } else if (key > pivot) {
+                        swap(order, i, gt--);
+                    } else {
+                        i++;
+                    }
+                }
+                //recurse into the smaller part
+                if (lt - low < high - gt) {
+                    sort(order, keys, low, lt - 1);
+                    low = gt + 1;
+                } else {
+                    sort(order, keys, gt + 1, high);
+                    high = lt - 1;
+                }
+            }
+            //insertion sort for the small ranges
+            for (int i = low + 1; i <= high; i++) {
+                int value = order[i];
+                double key = keys[value];
+                int j = i - 1;
+                while (j >= low && keys[order[j]] > key) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = value;
+            }
+        }
+
+        private static void swap(int[] values, int i, int j) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.compomics.psi_io.protein;
+
+import java.util.Objects;
+
+/**
+ * This class represents an occurrence of a peptide in a protein sequence. The start and end positions are 1-based and
+ * inclusive, the pre and post residues are '-' at the protein termini (as in the mzIdentML PeptideEvidence).
+ */
+public class PeptideMatch {
+
+    /**
+     * The residue used for the protein termini.
+     */
+    public static final char TERMINUS = '-';
+
+    /**
+     * The protein accession.
+     */
+    private final String accession;
+    /**
+     * The 1-based start position of the peptide in the protein.
+     */
+    private final int start;
+    /**
+     * The 1-based end position (inclusive) of the peptide in the protein.
+     */
+    private final int end;
+    /**
+     * The residue preceding the peptide.
+     */
+    private final char pre;
+    /**
+     * The residue following the peptide.
+     */
+    private final char post;
+
+    public PeptideMatch(String accession, int start, int end, char pre, char post) {
+        this.accession = accession;
+        this.start = start;
+        this.end = end;
+        this.pre = pre;
+        this.post = post;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public char getPre() {
+        return pre;
+    }
+
+    public char getPost() {
+        return post;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PeptideMatch that = (PeptideMatch) o;
+        return start == that.start &&
+                end == that.end &&
+                pre == that.pre &&
+                post == that.post &&
+                Objects.equals(accession, that.accession);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accession, start, end, pre, post);
+    }
+
+    @Override
+    public String toString() {
+        return accession + "[" + start + "-" + end + "] " + pre + "." + post;
+    }
+
+}
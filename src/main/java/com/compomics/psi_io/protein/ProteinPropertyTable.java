@@ -0,0 +1,402 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import com.compomics.psi_io.fasta.FastaDbSnapshot;
+import com.compomics.psi_io.unimod.UnimodAminoAcid;
+import com.compomics.psi_io.unimod.UnimodMarshaller;
+import com.compomics.psi_io.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * This class represents a table of precomputed protein properties: the sequence length, the monoisotopic and average
+ * mass, the isoelectric point and the number of peptides of an {@link InSilicoDigester} (e.g. the expected tryptic
+ * peptides). The properties are stored in primitive columns indexed by the accession index, the accession index is
+ * looked up in an open addressing hash table.
+ * <p>
+ * The table is computed in parallel from a protein sequences map and can be stored next to the FASTA DB snapshot (see
+ * {@link #loadOrCompute}), so later jobs read it instead of computing it again.
+ */
+public class ProteinPropertyTable {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProteinPropertyTable.class);
+
+    private static final int MAGIC = 0x50535054;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".proteins";
+    /**
+     * The pKa values of the termini and the charged side chains (EMBOSS).
+     */
+    private static final double N_TERM_PKA = 8.6;
+    private static final double C_TERM_PKA = 3.6;
+    private static final double[] POSITIVE_PKAS = new double[128];
+    private static final double[] NEGATIVE_PKAS = new double[128];
+
+    static {
+        Arrays.fill(POSITIVE_PKAS, Double.NaN);
+        Arrays.fill(NEGATIVE_PKAS, Double.NaN);
+        POSITIVE_PKAS['H'] = 6.5;
+        POSITIVE_PKAS['K'] = 10.8;
+        POSITIVE_PKAS['R'] = 12.5;
+        NEGATIVE_PKAS['C'] = 8.5;
+        NEGATIVE_PKAS['D'] = 3.9;
+        NEGATIVE_PKAS['E'] = 4.1;
+        NEGATIVE_PKAS['Y'] = 10.1;
+    }
+
+    /**
+     * The digestion settings and masses the table was computed with.
+     */
+    private final String settings;
+    private final String[] accessions;
+    private final int[] lengths;
+    private final double[] monoIsotopicMasses;
+    private final double[] averageMasses;
+    private final double[] isoelectricPoints;
+    private final int[] numberOfPeptides;
+    /**
+     * The accession indexes plus one, per hash table slot; 0 is an empty slot.
+     */
+    private final int[] slots;
+
+    private ProteinPropertyTable(String settings, String[] accessions, int[] lengths, double[] monoIsotopicMasses, double[] averageMasses, double[] isoelectricPoints, int[] numberOfPeptides) {
+        this.settings = settings;
+        this.accessions = accessions;
+        this.lengths = lengths;
+        this.monoIsotopicMasses = monoIsotopicMasses;
+        this.averageMasses = averageMasses;
+        this.isoelectricPoints = isoelectricPoints;
+        this.numberOfPeptides = numberOfPeptides;
+        slots = new int[Integer.highestOneBit(Math.max(1, accessions.length) * 2) * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < accessions.length; i++) {
+            int slot = mix(accessions[i].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Compute the table of the given protein sequences in parallel.
+     *
+     * @param proteinSequences the protein sequences map (key: protein accession; value: protein sequence)
+     * @param unimodMarshaller the {@link UnimodMarshaller} instance that provides the residue masses
+     * @param digester         the digester of which the peptides are counted
+     * @return the {@link ProteinPropertyTable} instance
+     */
+    public static ProteinPropertyTable compute(Map<String, String> proteinSequences, UnimodMarshaller unimodMarshaller, InSilicoDigester digester) {
+        double[] monoIsotopicResidueMasses = new double[128];
+        double[] averageResidueMasses = new double[128];
+        Arrays.fill(monoIsotopicResidueMasses, Double.NaN);
+        Arrays.fill(averageResidueMasses, Double.NaN);
+        for (Map.Entry<String, UnimodAminoAcid> entry : unimodMarshaller.getAminoAcids().entrySet()) {
+            String title = entry.getKey();
+            if (title.length() == 1 && Character.isLetter(title.charAt(0)) && title.charAt(0) < monoIsotopicResidueMasses.length) {
+                monoIsotopicResidueMasses[title.charAt(0)] = entry.getValue().getMonoIsotopicMass();
+                averageResidueMasses[title.charAt(0)] = entry.getValue().getAverageMass();
+            }
+        }
+        UnimodAminoAcid nTerm = unimodMarshaller.getAminoAcid("N-term");
+        UnimodAminoAcid cTerm = unimodMarshaller.getAminoAcid("C-term");
+        if (nTerm == null || cTerm == null) {
+            throw new IllegalStateException("The UNIMOD amino acids table has no terminus masses");
+        }
+        double monoIsotopicWater = nTerm.getMonoIsotopicMass() + cTerm.getMonoIsotopicMass();
+        double averageWater = nTerm.getAverageMass() + cTerm.getAverageMass();
+
+        String[] accessions = proteinSequences.keySet().toArray(new String[0]);
+        int n = accessions.length;
+        int[] lengths = new int[n];
+        double[] monoIsotopicMasses = new double[n];
+        double[] averageMasses = new double[n];
+        double[] isoelectricPoints = new double[n];
+        int[] numberOfPeptides = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            String sequence = proteinSequences.get(accessions[i]);
+            double monoIsotopicMass = monoIsotopicWater;
+            double averageMass = averageWater;
+            for (int j = 0; j < sequence.length(); j++) {
+                char residue = sequence.charAt(j);
+                monoIsotopicMass += residue < monoIsotopicResidueMasses.length ? monoIsotopicResidueMasses[residue] : Double.NaN;
+                averageMass += residue < averageResidueMasses.length ? averageResidueMasses[residue] : Double.NaN;
+            }
+            int[] peptideCount = new int[1];
+            digester.digest(sequence, (start, end, missedCleavages, mass) -> peptideCount[0]++);
+            lengths[i] = sequence.length();
+            monoIsotopicMasses[i] = monoIsotopicMass;
+            averageMasses[i] = averageMass;
+            isoelectricPoints[i] = getIsoelectricPoint(sequence);
+            numberOfPeptides[i] = peptideCount[0];
+        });
+
+        return new ProteinPropertyTable(getSettings(digester), accessions, lengths, monoIsotopicMasses, averageMasses, isoelectricPoints, numberOfPeptides);
+    }
+
+    /**
+     * Read the table stored next to the snapshot of the given FASTA DB if it was computed with the same digestion
+     * settings, otherwise parse the FASTA DB file, compute the table and store it. Without a snapshot (see {@link
+     * FastaDbParser#getSnapshot(FastaDb)}) the table is computed but not stored.
+     *
+     * @param fastaDb          the {@link FastaDb} instance
+     * @param fastaPath        the FASTA path
+     * @param fastaDbParser    the {@link FastaDbParser} instance
+     * @param unimodMarshaller the {@link UnimodMarshaller} instance that provides the residue masses
+     * @param digester         the digester of which the peptides are counted
+     * @return the {@link ProteinPropertyTable} instance
+     * @throws IOException thrown in case of an input/output related problem
+     */
+    public static ProteinPropertyTable loadOrCompute(FastaDb fastaDb, Path fastaPath, FastaDbParser fastaDbParser, UnimodMarshaller unimodMarshaller, InSilicoDigester digester) throws IOException {
+        FastaDbSnapshot snapshot = fastaDbParser.getSnapshot(fastaDb);
+        if (snapshot != null) {
+            Path tablePath = snapshot.getCompanionPath(EXTENSION);
+            if (Files.isRegularFile(tablePath)) {
+                try {
+                    ProteinPropertyTable table = read(tablePath);
+                    if (table.settings.equals(getSettings(digester))) {
+                        return table;
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Could not read protein property table " + tablePath + ", computing it again", e);
+                }
+            }
+        }
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(fastaDb, fastaPath);
+        ProteinPropertyTable table = compute(fastaDbParser.parse(fastaDbs), unimodMarshaller, digester);
+        //the checksum might have been filled in while parsing
+        snapshot = fastaDbParser.getSnapshot(fastaDb);
+        if (snapshot != null) {
+            try {
+                table.write(snapshot.getCompanionPath(EXTENSION));
+            } catch (IOException e) {
+                LOGGER.warn("Could not write protein property table " + snapshot.getCompanionPath(EXTENSION), e);
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Get the settings key of the given digester: the digestion settings and the peptide masses of the single
+     * residues, which include the fixed modifications.
+     */
+    private static String getSettings(InSilicoDigester digester) {
+        StringBuilder settings = new StringBuilder();
+        settings.append(digester.getEnzyme().getName()).append(';')
+                .append(digester.getSpecificity()).append(';')
+                .append(digester.getMaxMissedCleavages()).append(';')
+                .append(digester.getMinLength()).append(';')
+                .append(digester.getMaxLength()).append(';')
+                .append(digester.getMinMass()).append(';')
+                .append(digester.getMaxMass());
+        for (char residue = 'A'; residue <= 'Z'; residue++) {
+            settings.append(';').append(digester.getMass(String.valueOf(residue)));
+        }
+        return settings.toString();
+    }
+
+    /**
+     * Calculate the isoelectric point of the given sequence: the pH where the net charge is zero, found by bisection.
+     *
+     * @param sequence the protein sequence
+     * @return the isoelectric point
+     */
+    static double getIsoelectricPoint(CharSequence sequence) {
+        //count the charged residues
+        int[] counts = new int[128];
+        for (int i = 0; i < sequence.length(); i++) {
+            char residue = sequence.charAt(i);
+            if (residue < counts.length) {
+                counts[residue]++;
+            }
+        }
+        double low = 0;
+        double high = 14;
+        while (high - low > 0.0001) {
+            double pH = (low + high) / 2;
+            double charge = 1 / (1 + Math.pow(10, pH - N_TERM_PKA)) - 1 / (1 + Math.pow(10, C_TERM_PKA - pH));
+            for (char residue = 'A'; residue <= 'Z'; residue++) {
+                if (counts[residue] > 0) {
+                    if (!Double.isNaN(POSITIVE_PKAS[residue])) {
+                        charge += counts[residue] / (1 + Math.pow(10, pH - POSITIVE_PKAS[residue]));
+                    } else if (!Double.isNaN(NEGATIVE_PKAS[residue])) {
+                        charge -= counts[residue] / (1 + Math.pow(10, NEGATIVE_PKAS[residue] - pH));
+                    }
+                }
+            }
+            if (charge > 0) {
+                low = pH;
+            } else {
+                high = pH;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Get the number of proteins.
+     *
+     * @return the number of proteins
+     */
+    public int size() {
+        return accessions.length;
+    }
+
+    /**
+     * Get the index of the given accession.
+     *
+     * @param accession the protein accession
+     * @return the accession index, -1 if the accession is unknown
+     */
+    public int indexOf(String accession) {
+        int mask = slots.length - 1;
+        int slot = mix(accession.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            if (accessions[slots[slot] - 1].equals(accession)) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String getAccession(int index) {
+        return accessions[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Get the monoisotopic mass of the unmodified protein.
+     *
+     * @param index the accession index
+     * @return the mass, NaN if the sequence contains residues without a known mass
+     */
+    public double getMonoIsotopicMass(int index) {
+        return monoIsotopicMasses[index];
+    }
+
+    /**
+     * Get the average mass (molecular weight) of the unmodified protein.
+     *
+     * @param index the accession index
+     * @return the mass, NaN if the sequence contains residues without a known mass
+     */
+    public double getAverageMass(int index) {
+        return averageMasses[index];
+    }
+
+    public double getIsoelectricPoint(int index) {
+        return isoelectricPoints[index];
+    }
+
+    /**
+     * Get the number of peptides of the digester the table was computed with.
+     *
+     * @param index the accession index
+     * @return the number of peptides
+     */
+    public int getNumberOfPeptides(int index) {
+        return numberOfPeptides[index];
+    }
+
+    /**
+     * Write the table. The file is written to a temporary file first and then moved in place.
+     *
+     * @param tablePath the table file path
+     * @throws IOException in case of a file writing related problem
+     */
+    public void write(Path tablePath) throws IOException {
+        Files.createDirectories(tablePath.toAbsolutePath().getParent());
+        Path tempPath = FileUtils.createTempFile(tablePath.toAbsolutePath().getParent(), tablePath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                outputStream.writeUTF(settings);
+                outputStream.writeInt(accessions.length);
+                for (String accession : accessions) {
+                    outputStream.writeUTF(accession);
+                }
+                ByteBuffer column = ByteBuffer.allocate(accessions.length * Double.BYTES);
+                column.asIntBuffer().put(lengths);
+                outputStream.write(column.array(), 0, accessions.length * Integer.BYTES);
+                for (double[] values : Arrays.asList(monoIsotopicMasses, averageMasses, isoelectricPoints)) {
+                    column.clear();
+                    column.asDoubleBuffer().put(values);
+                    outputStream.write(column.array(), 0, accessions.length * Double.BYTES);
+                }
+                column.clear();
+                column.asIntBuffer().put(numberOfPeptides);
+                outputStream.write(column.array(), 0, accessions.length * Integer.BYTES);
+            }
+            Files.move(tempPath, tablePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Read a table.
+     *
+     * @param tablePath the table file path
+     * @return the {@link ProteinPropertyTable} instance
+     * @throws IOException in case of a file reading related problem or an invalid table file
+     */
+    public static ProteinPropertyTable read(Path tablePath) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(tablePath), 1 << 16))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Invalid protein property table " + tablePath);
+            }
+            String settings = inputStream.readUTF();
+            int n = inputStream.readInt();
+            if (n < 0 || n > Files.size(tablePath) / 2) {
+                throw new IOException("Invalid protein property table " + tablePath);
+            }
+            String[] accessions = new String[n];
+            for (int i = 0; i < n; i++) {
+                accessions[i] = inputStream.readUTF();
+            }
+            byte[] column = new byte[n * Double.BYTES];
+            int[] lengths = new int[n];
+            inputStream.readFully(column, 0, n * Integer.BYTES);
+            ByteBuffer.wrap(column).asIntBuffer().get(lengths);
+            double[][] doubleColumns = new double[3][n];
+            for (double[] values : doubleColumns) {
+                inputStream.readFully(column, 0, n * Double.BYTES);
+                ByteBuffer.wrap(column).asDoubleBuffer().get(values);
+            }
+            int[] numberOfPeptides = new int[n];
+            inputStream.readFully(column, 0, n * Integer.BYTES);
+            ByteBuffer.wrap(column).asIntBuffer().get(numberOfPeptides);
+
+            return new ProteinPropertyTable(settings, accessions, lengths, doubleColumns[0], doubleColumns[1], doubleColumns[2], numberOfPeptides);
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
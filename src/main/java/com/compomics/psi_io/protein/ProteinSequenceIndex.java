@@ -0,0 +1,261 @@
+package com.compomics.psi_io.protein;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class represents a peptide to protein mapping index over a set of protein sequences, for example the output of
+ * {@link com.compomics.psi_io.fasta.FastaDbParser#parse}. The protein sequences are concatenated (separated by a
+ * separator symbol) into one text, which is indexed by an FM-index (Burrows-Wheeler transform with occurrence
+ * checkpoints) together with the full suffix array. The suffix array interval of a peptide is found by backward search
+ * in time proportional to the peptide length, every suffix array entry in that interval is a hit.
+ * <p>
+ * In I/L-equivalent mode, leucine and isoleucine are indexed and searched as the same residue. The pre and post
+ * residues of the hits are always the original ones.
+ * <p>
+ * The index is immutable and can be shared between threads.
+ */
+public class ProteinSequenceIndex {
+
+    private static final int SENTINEL = 0;
+    private static final int SEPARATOR = 1;
+    /**
+     * The distance between two occurrence checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    /**
+     * The protein accessions, in index order.
+     */
+    private final String[] accessions;
+    /**
+     * The start positions of the proteins in the concatenated text, the last element is the text length.
+     */
+    private final int[] proteinStarts;
+    /**
+     * The original residues of the concatenated text (with separators).
+     */
+    private final byte[] residues;
+    /**
+     * Whether I and L are equivalent.
+     */
+    private final boolean ilEquivalent;
+    /**
+     * The residue to symbol code mapping, 0 for residues that don't occur.
+     */
+    private final int[] codes = new int[256];
+    /**
+     * The number of symbols (including the sentinel and separator).
+     */
+    private final int sigma;
+    /**
+     * The suffix array.
+     */
+    private final int[] suffixArray;
+    /**
+     * The Burrows-Wheeler transform of the coded text.
+     */
+    private final byte[] bwt;
+    /**
+     * C[c]: the number of symbols in the text smaller than c.
+     */
+    private final int[] counts;
+    /**
+     * The occurrence counts of each symbol before each checkpoint (checkpoint * sigma + symbol).
+     */
+    private final int[] checkpoints;
+
+    /**
+     * Build the index over the given protein sequences.
+     *
+     * @param proteinSequences the protein sequences map (key: protein accession; value: protein sequence)
+     * @param ilEquivalent     whether I and L are equivalent
+     * @throws IllegalArgumentException if the total sequence length is too large to index
+     */
+    public ProteinSequenceIndex(Map<String, String> proteinSequences, boolean ilEquivalent) {
+        this.ilEquivalent = ilEquivalent;
+        accessions = new String[proteinSequences.size()];
+        proteinStarts = new int[proteinSequences.size() + 1];
+        long length = 0;
+        for (String sequence : proteinSequences.values()) {
+            length += sequence.length() + 1;
+        }
+        //one extra position for the sentinel
+        if (length + 1 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The protein sequences are too large to index (" + length + " residues)");
+        }
+        residues = new byte[(int) length];
+
+        //concatenate the sequences and assign a code to every residue that occurs
+        boolean[] occurring = new boolean[256];
+        int position = 0;
+        int index = 0;
+        for (Map.Entry<String, String> entry : proteinSequences.entrySet()) {
+            accessions[index] = entry.getKey();
+            proteinStarts[index++] = position;
+            String sequence = entry.getValue();
+            for (int i = 0; i < sequence.length(); i++) {
+                byte residue = (byte) sequence.charAt(i);
+                residues[position++] = residue;
+                occurring[normalize(residue) & 0xFF] = true;
+            }
+            residues[position++] = '\n';
+        }
+        proteinStarts[index] = position;
+        int code = SEPARATOR + 1;
+        for (int i = 0; i < occurring.length; i++) {
+            if (occurring[i]) {
+                codes[i] = code++;
+            }
+        }
+        sigma = code;
+        if (sigma > 256) {
+            throw new IllegalArgumentException("The protein sequences contain too many distinct residues to index");
+        }
+
+        //build the coded text, the suffix array and the BWT
+        int n = residues.length + 1;
+        int[] text = new int[n];
+        for (int protein = 0; protein < accessions.length; protein++) {
+            int end = proteinStarts[protein + 1] - 1;
+            for (int i = proteinStarts[protein]; i < end; i++) {
+                text[i] = codes[normalize(residues[i]) & 0xFF];
+            }
+            text[end] = SEPARATOR;
+        }
+        text[n - 1] = SENTINEL;
+        suffixArray = SuffixArrays.build(text, sigma - 1);
+        bwt = new byte[n];
+        counts = new int[sigma + 1];
+        checkpoints = new int[(n / CHECKPOINT_INTERVAL + 1) * sigma];
+        int[] occurrences = new int[sigma];
+        for (int i = 0; i < n; i++) {
+            if (i % CHECKPOINT_INTERVAL == 0) {
+                System.arraycopy(occurrences, 0, checkpoints, (i / CHECKPOINT_INTERVAL) * sigma, sigma);
+            }
+            int symbol = suffixArray[i] == 0 ? text[n - 1] : text[suffixArray[i] - 1];
+            bwt[i] = (byte) symbol;
+            occurrences[symbol]++;
+        }
+        for (int c = 0; c < sigma; c++) {
+            counts[c + 1] = counts[c] + occurrences[c];
+        }
+    }
+
+    /**
+     * Map leucine to isoleucine in I/L-equivalent mode.
+     */
+    private byte normalize(byte residue) {
+        return ilEquivalent && residue == 'L' ? (byte) 'I' : residue;
+    }
+
+    public int getNumberOfProteins() {
+        return accessions.length;
+    }
+
+    public boolean isIlEquivalent() {
+        return ilEquivalent;
+    }
+
+    /**
+     * Count the number of occurrences of the given peptide.
+     *
+     * @param peptide the peptide sequence
+     * @return the number of occurrences
+     */
+    public int count(String peptide) {
+        long interval = search(peptide);
+        return (int) (interval >>> 32) - (int) interval;
+    }
+
+    /**
+     * Get all occurrences of the given peptide in the indexed proteins, ordered by accession index and position.
+     *
+     * @param peptide the peptide sequence
+     * @return the list of {@link PeptideMatch} instances, empty if the peptide doesn't occur
+     */
+    public List<PeptideMatch> getMatches(String peptide) {
+        long interval = search(peptide);
+        int low = (int) interval;
+        int high = (int) (interval >>> 32);
+        if (low >= high) {
+            return Collections.emptyList();
+        }
+        int[] positions = Arrays.copyOfRange(suffixArray, low, high);
+        Arrays.sort(positions);
+        List<PeptideMatch> matches = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            int protein = getProteinIndex(position);
+            int start = position - proteinStarts[protein];
+            int end = position + peptide.length();
+            char pre = start == 0 ? PeptideMatch.TERMINUS : (char) (residues[position - 1] & 0xFF);
+            char post = end == proteinStarts[protein + 1] - 1 ? PeptideMatch.TERMINUS : (char) (residues[end] & 0xFF);
+            matches.add(new PeptideMatch(accessions[protein], start + 1, start + peptide.length(), pre, post));
+        }
+
+        return matches;
+    }
+
+    /**
+     * Get the index of the protein containing the given text position.
+     *
+     * @param position the text position
+     * @return the protein index
+     */
+    private int getProteinIndex(int position) {
+        int index = Arrays.binarySearch(proteinStarts, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Backward search of the given peptide.
+     *
+     * @param peptide the peptide sequence
+     * @return the suffix array interval, packed as (high << 32 | low)
+     */
+    private long search(String peptide) {
+        if (peptide.isEmpty()) {
+            return 0;
+        }
+        int low = 0;
+        int high = bwt.length;
+        for (int i = peptide.length() - 1; i >= 0 && low < high; i--) {
+            char residue = peptide.charAt(i);
+            int symbol = residue < 256 ? codes[normalize((byte) residue) & 0xFF] : 0;
+            if (symbol == 0) {
+                return 0;
+            }
+            low = counts[symbol] + occurrences(symbol, low);
+            high = counts[symbol] + occurrences(symbol, high);
+        }
+        if (low >= high) {
+            return 0;
+        }
+
+        return ((long) high << 32) | low;
+    }
+
+    /**
+     * Count the occurrences of the given symbol in the BWT before the given position.
+     */
+    private int occurrences(int symbol, int position) {
+        int checkpoint = position / CHECKPOINT_INTERVAL;
+        int occurrences = checkpoints[checkpoint * sigma + symbol];
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < position; i++) {
+            if ((bwt[i] & 0xFF) == symbol) {
+                occurrences++;
+            }
+        }
+        return occurrences;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ProteinSequenceIndex[proteins=%d, residues=%d, ilEquivalent=%b]", accessions.length, residues.length - accessions.length, ilEquivalent);
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.compomics.psi_io.protein;
+
+import java.util.Arrays;
+
+/**
+ * This utility class builds suffix arrays with the linear time SA-IS (induced sorting) algorithm.
+ */
+final class SuffixArrays {
+
+    /**
+     * Texts shorter than this are sorted naively.
+     */
+    private static final int NAIVE_THRESHOLD = 10;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private SuffixArrays() {
+    }
+
+    /**
+     * Build the suffix array of the given text.
+     *
+     * @param text  the text, all values in [0, upper]
+     * @param upper the largest value in the text
+     * @return the suffix array
+     */
+    static int[] build(int[] text, int upper) {
+        int n = text.length;
+        if (n == 0) {
+            return new int[0];
+        } else if (n == 1) {
+            return new int[]{0};
+        } else if (n < NAIVE_THRESHOLD) {
+            return naive(text);
+        }
+
+        int[] sa = new int[n];
+        //true if the suffix is an S-type suffix (smaller than the next one)
+        boolean[] ls = new boolean[n];
+        for (int i = n - 2; i >= 0; i--) {
+            ls[i] = (text[i] == text[i + 1]) ? ls[i + 1] : (text[i] < text[i + 1]);
+        }
+        //bucket boundaries
+        int[] sumL = new int[upper + 1];
+        int[] sumS = new int[upper + 1];
+        for (int i = 0; i < n; i++) {
+            if (!ls[i]) {
+                sumS[text[i]]++;
+            } else {
+                sumL[text[i] + 1]++;
+            }
+        }
+        for (int i = 0; i <= upper; i++) {
+            sumS[i] += sumL[i];
+            if (i < upper) {
+                sumL[i + 1] += sumS[i];
+            }
+        }
+
+        //the LMS (leftmost S-type) positions
+        int[] lmsMap = new int[n + 1];
+        Arrays.fill(lmsMap, -1);
+        int m = 0;
+        for (int i = 1; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lmsMap[i] = m++;
+            }
+        }
+        int[] lms = new int[m];
+        for (int i = 1, j = 0; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lms[j++] = i;
+            }
+        }
+
+        induce(text, sa, ls, sumL, sumS, lms, m);
+
+        if (m > 0) {
+            //name the sorted LMS substrings and sort them recursively
+            int[] sortedLms = new int[m];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (lmsMap[sa[i]] != -1) {
+                    sortedLms[j++] = sa[i];
+                }
+            }
+            int[] recursiveText = new int[m];
+            int recursiveUpper = 0;
+            recursiveText[lmsMap[sortedLms[0]]] = 0;
+            for (int i = 1; i < m; i++) {
+                int l = sortedLms[i - 1];
+                int r = sortedLms[i];
+                int endL = (lmsMap[l] + 1 < m) ? lms[lmsMap[l] + 1] : n;
+                int endR = (lmsMap[r] + 1 < m) ? lms[lmsMap[r] + 1] : n;
+                boolean same = true;
+                if (endL - l != endR - r) {
+                    same = false;
+                } else {
+                    while (l < endL) {
+                        if (text[l] != text[r]) {
+                            break;
+                        }
+                        l++;
+                        r++;
+                    }
+                    if (l == n || text[l] != text[r]) {
+                        same = false;
+                    }
+                }
+                if (!same) {
+                    recursiveUpper++;
+                }
+                recursiveText[lmsMap[sortedLms[i]]] = recursiveUpper;
+            }
+
+            int[] recursiveSa = build(recursiveText, recursiveUpper);
+            for (int i = 0; i < m; i++) {
+                sortedLms[i] = lms[recursiveSa[i]];
+            }
+            induce(text, sa, ls, sumL, sumS, sortedLms, m);
+        }
+
+        return sa;
+    }
+
+    /**
+     * Induce the order of all suffixes from the given order of the LMS suffixes.
+     */
+    private static void induce(int[] text, int[] sa, boolean[] ls, int[] sumL, int[] sumS, int[] lms, int m) {
+        int n = text.length;
+        Arrays.fill(sa, -1);
+        int[] buffer = Arrays.copyOf(sumS, sumS.length);
+        for (int i = 0; i < m; i++) {
+            int d = lms[i];
+            if (d != n) {
+                sa[buffer[text[d]]++] = d;
+            }
+        }
+        System.arraycopy(sumL, 0, buffer, 0, sumL.length);
+        sa[buffer[text[n - 1]]++] = n - 1;
+        for (int i = 0; i < n; i++) {
+            int v = sa[i];
+            if (v >= 1 && !ls[v - 1]) {
+                sa[buffer[text[v - 1]]++] = v - 1;
+            }
+        }
+        System.arraycopy(sumL, 0, buffer, 0, sumL.length);
+        for (int i = n - 1; i >= 0; i--) {
+            int v = sa[i];
+            if (v >= 1 && ls[v - 1]) {
+                sa[--buffer[text[v - 1] + 1]] = v - 1;
+            }
+        }
+    }
+
+    /**
+     * Build the suffix array by comparing the suffixes, only used for very short texts.
+     */
+    private static int[] naive(int[] text) {
+        int n = text.length;
+        Integer[] suffixes = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            suffixes[i] = i;
+        }
+        Arrays.sort(suffixes, (l, r) -> {
+            if (l.equals(r)) {
+                return 0;
+            }
+            int i = l;
+            int j = r;
+            while (i < n && j < n) {
+                if (text[i] != text[j]) {
+                    return Integer.compare(text[i], text[j]);
+                }
+                i++;
+                j++;
+            }
+            return i == n ? -1 : 1;
+        });
+        int[] sa = new int[n];
+        for (int i = 0; i < n; i++) {
+            sa[i] = suffixes[i];
+        }
+
+        return sa;
+    }
+
+}
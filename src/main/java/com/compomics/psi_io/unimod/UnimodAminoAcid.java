@@ -0,0 +1,131 @@
+package com.compomics.psi_io.unimod;
+
+/**
+ * This class represents an amino acid residue (or a peptide terminus: "N-term", "C-term") from the unimod.xml amino
+ * acids table. The masses are residue masses, i.e. without water.
+ */
+public class UnimodAminoAcid {
+
+    private String title;
+
+    private String threeLetter;
+
+    private String fullName;
+
+    private Double monoIsotopicMass;
+
+    private Double averageMass;
+
+    /**
+     * The element counts, indexed by the element index of the {@link UnimodElementTable}; null if unknown.
+     */
+    private int[] elementCounts;
+
+    private boolean readOnly;
+
+    public UnimodAminoAcid(String title, String threeLetter, String fullName) {
+        this.title = title;
+        this.threeLetter = threeLetter;
+        this.fullName = fullName;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        checkWritable();
+        this.title = title;
+    }
+
+    public String getThreeLetter() {
+        return threeLetter;
+    }
+
+    public void setThreeLetter(String threeLetter) {
+        checkWritable();
+        this.threeLetter = threeLetter;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public void setFullName(String fullName) {
+        checkWritable();
+        this.fullName = fullName;
+    }
+
+    public Double getMonoIsotopicMass() {
+        return monoIsotopicMass;
+    }
+
+    public void setMonoIsotopicMass(Double monoIsotopicMass) {
+        checkWritable();
+        this.monoIsotopicMass = monoIsotopicMass;
+    }
+
+    public Double getAverageMass() {
+        return averageMass;
+    }
+
+    public void setAverageMass(Double averageMass) {
+        checkWritable();
+        this.averageMass = averageMass;
+    }
+
+    /**
+     * Get a copy of the elemental composition of the amino acid.
+     *
+     * @return the element counts, indexed by the element index of the {@link UnimodElementTable}; null if unknown
+     */
+    public int[] getElementCounts() {
+        return elementCounts == null ? null : elementCounts.clone();
+    }
+
+    public void setElementCounts(int[] elementCounts) {
+        checkWritable();
+        this.elementCounts = elementCounts == null ? null : elementCounts.clone();
+    }
+
+    /**
+     * Get the count of the given element.
+     *
+     * @param element the element index
+     * @return the element count, 0 if the composition is unknown
+     */
+    public int getElementCount(int element) {
+        return elementCounts == null || element >= elementCounts.length ? 0 : elementCounts[element];
+    }
+
+    /**
+     * Add a multiple of the elemental composition of the amino acid to the given composition, without allocation.
+     *
+     * @param target     the target element counts, updated in place
+     * @param multiplier the number of times to add the composition
+     * @throws IllegalStateException if the composition is unknown
+     */
+    public void addElementCounts(int[] target, int multiplier) {
+        if (elementCounts == null) {
+            throw new IllegalStateException("The composition of " + title + " is unknown");
+        }
+        UnimodElementTable.add(target, elementCounts, multiplier);
+    }
+
+    int[] getElementCountsArray() {
+        return elementCounts;
+    }
+
+    /**
+     * Make this instance read-only, the setters throw an {@link UnsupportedOperationException} afterwards.
+     */
+    void setReadOnly() {
+        readOnly = true;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The UNIMOD amino acid is read-only");
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.compomics.psi_io.unimod;
+
+import com.compomics.psi_io.util.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class reads and writes the compact binary form of the UNIMOD modifications and amino acids. The registry is
+ * generated from the bundled unimod.xml file during the Maven build (see the exec-maven-plugin execution in the pom),
+ * so the {@link UnimodMarshaller} doesn't have to parse the XML file at every start.
+ */
+public final class UnimodBinaryRegistry {
+
+    private static final int MAGIC = 0x554D4F44;
+    private static final int VERSION = 4;
+
+    private UnimodBinaryRegistry() {
+    }
+
+    /**
+     * Generate the registry from a UNIMOD XML file.
+     *
+     * @param args the UNIMOD XML file path and the registry file path
+     * @throws IOException in case of a problem reading the XML file or writing the registry
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: UnimodBinaryRegistry <unimod.xml> <registry file>");
+        }
+        UnimodMarshaller unimodMarshaller = new UnimodMarshaller(Paths.get(args[0]));
+        write(unimodMarshaller, Paths.get(args[1]));
+    }
+
+    /**
+     * Write the modifications and amino acids of the given marshaller.
+     *
+     * @param unimodMarshaller the {@link UnimodMarshaller} instance
+     * @param registryPath     the registry file path
+     * @throws IOException in case of file writing related problem
+     */
+    static void write(UnimodMarshaller unimodMarshaller, Path registryPath) throws IOException {
+        Path parent = registryPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempPath = FileUtils.createTempFile(parent, registryPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                UnimodElementTable elementTable = unimodMarshaller.getElementTable();
+                outputStream.writeInt(elementTable == null ? -1 : elementTable.size());
+                for (int i = 0; elementTable != null && i < elementTable.size(); i++) {
+                    outputStream.writeUTF(elementTable.getSymbol(i));
+                    writeString(outputStream, elementTable.getFullName(i));
+                    outputStream.writeDouble(elementTable.getMonoIsotopicMass(i));
+                    outputStream.writeDouble(elementTable.getAverageMass(i));
+                }
+                outputStream.writeInt(unimodMarshaller.getModifications().size());
+                for (UnimodModification modification : unimodMarshaller.getModifications().values()) {
+                    outputStream.writeInt(modification.getAccession());
+                    outputStream.writeUTF(modification.getName());
+                    outputStream.writeDouble(modification.getMonoIsotopicMassShift());
+                    outputStream.writeDouble(modification.getAverageMassShift());
+                    writeString(outputStream, modification.getComposition());
+                    writeElementCounts(outputStream, modification.getElementCountsArray());
+                    outputStream.writeInt(modification.getAltNames().size());
+                    for (String altName : modification.getAltNames()) {
+                        outputStream.writeUTF(altName);
+                    }
+                    outputStream.writeInt(modification.getAffectedAminoAcids().size());
+                    for (Map.Entry<String, String> affectedAminoAcid : modification.getAffectedAminoAcids().entrySet()) {
+                        outputStream.writeUTF(affectedAminoAcid.getKey());
+                        outputStream.writeUTF(affectedAminoAcid.getValue());
+                    }
+                    outputStream.writeInt(modification.getSpecificities().size());
+                    for (UnimodSpecificity specificity : modification.getSpecificities()) {
+                        outputStream.writeUTF(specificity.getSite());
+                        outputStream.writeByte(specificity.getPosition().ordinal());
+                        outputStream.writeBoolean(specificity.isHidden());
+                        writeString(outputStream, specificity.getClassification());
+                        outputStream.writeInt(specificity.getSpecificityGroup());
+                        outputStream.writeInt(specificity.getNumberOfNeutralLosses());
+                        for (int j = 0; j < specificity.getNumberOfNeutralLosses(); j++) {
+                            outputStream.writeDouble(specificity.getNeutralLossMonoIsotopicMass(j));
+                            outputStream.writeDouble(specificity.getNeutralLossAverageMass(j));
+                        }
+                    }
+                }
+                outputStream.writeInt(unimodMarshaller.getAminoAcids().size());
+                for (UnimodAminoAcid aminoAcid : unimodMarshaller.getAminoAcids().values()) {
+                    outputStream.writeUTF(aminoAcid.getTitle());
+                    writeString(outputStream, aminoAcid.getThreeLetter());
+                    writeString(outputStream, aminoAcid.getFullName());
+                    outputStream.writeDouble(aminoAcid.getMonoIsotopicMass());
+                    outputStream.writeDouble(aminoAcid.getAverageMass());
+                    writeElementCounts(outputStream, aminoAcid.getElementCountsArray());
+                }
+            }
+            Files.move(tempPath, registryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Read the registry into the given maps.
+     *
+     * @param inputStream   the registry stream
+     * @param modifications the modifications map, the key is the UNIMOD record ID
+     * @param aminoAcids    the amino acids map, the key is the amino acid title
+     * @return the elements table, null if there is none
+     * @throws IOException in case of file reading related problem or an invalid registry
+     */
+    static UnimodElementTable read(InputStream inputStream, Map<Integer, UnimodModification> modifications, Map<String, UnimodAminoAcid> aminoAcids) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+            throw new IOException("Invalid or outdated UNIMOD registry");
+        }
+        UnimodElementTable elementTable = null;
+        int numberOfElements = dataInputStream.readInt();
+        if (numberOfElements >= 0) {
+            String[] symbols = new String[numberOfElements];
+            String[] fullNames = new String[numberOfElements];
+            double[] monoIsotopicMasses = new double[numberOfElements];
+            double[] averageMasses = new double[numberOfElements];
+            for (int i = 0; i < numberOfElements; i++) {
+                symbols[i] = dataInputStream.readUTF();
+                fullNames[i] = readString(dataInputStream);
+                monoIsotopicMasses[i] = dataInputStream.readDouble();
+                averageMasses[i] = dataInputStream.readDouble();
+            }
+            try {
+                elementTable = new UnimodElementTable(symbols, fullNames, monoIsotopicMasses, averageMasses);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid UNIMOD registry", e);
+            }
+        }
+        int numberOfModifications = readCount(dataInputStream);
+        for (int i = 0; i < numberOfModifications; i++) {
+            UnimodModification modification = new UnimodModification(dataInputStream.readInt(), dataInputStream.readUTF());
+            modification.setMonoIsotopicMassShift(dataInputStream.readDouble());
+            modification.setAverageMassShift(dataInputStream.readDouble());
+            modification.setComposition(readString(dataInputStream));
+            modification.setElementCounts(readElementCounts(dataInputStream, numberOfElements));
+            int numberOfAltNames = readCount(dataInputStream);
+            for (int j = 0; j < numberOfAltNames; j++) {
+                modification.getAltNames().add(dataInputStream.readUTF());
+            }
+            int numberOfAffectedAminoAcids = readCount(dataInputStream);
+            Map<String, String> affectedAminoAcids = new HashMap<>();
+            for (int j = 0; j < numberOfAffectedAminoAcids; j++) {
+                affectedAminoAcids.put(dataInputStream.readUTF(), dataInputStream.readUTF());
+            }
+            modification.setAffectedAminoAcids(affectedAminoAcids);
+            int numberOfSpecificities = readCount(dataInputStream);
+            for (int j = 0; j < numberOfSpecificities; j++) {
+                modification.getSpecificities().add(readSpecificity(dataInputStream));
+            }
+            modifications.put(modification.getAccession(), modification);
+        }
+        int numberOfAminoAcids = readCount(dataInputStream);
+        for (int i = 0; i < numberOfAminoAcids; i++) {
+            UnimodAminoAcid aminoAcid = new UnimodAminoAcid(dataInputStream.readUTF(), readString(dataInputStream), readString(dataInputStream));
+            aminoAcid.setMonoIsotopicMass(dataInputStream.readDouble());
+            aminoAcid.setAverageMass(dataInputStream.readDouble());
+            aminoAcid.setElementCounts(readElementCounts(dataInputStream, numberOfElements));
+            aminoAcids.put(aminoAcid.getTitle(), aminoAcid);
+        }
+
+        return elementTable;
+    }
+
+    private static UnimodSpecificity readSpecificity(DataInputStream inputStream) throws IOException {
+        String site = inputStream.readUTF();
+        int position = inputStream.readUnsignedByte();
+        if (position >= UnimodPosition.values().length) {
+            throw new IOException("Invalid UNIMOD registry");
+        }
+        boolean hidden = inputStream.readBoolean();
+        String classification = readString(inputStream);
+        int specificityGroup = inputStream.readInt();
+        int numberOfNeutralLosses = readCount(inputStream);
+        double[] neutralLossMonoIsotopicMasses = new double[numberOfNeutralLosses];
+        double[] neutralLossAverageMasses = new double[numberOfNeutralLosses];
+        for (int i = 0; i < numberOfNeutralLosses; i++) {
+            neutralLossMonoIsotopicMasses[i] = inputStream.readDouble();
+            neutralLossAverageMasses[i] = inputStream.readDouble();
+        }
+        return new UnimodSpecificity(site, UnimodPosition.values()[position], hidden, classification, specificityGroup, neutralLossMonoIsotopicMasses, neutralLossAverageMasses);
+    }
+
+    private static int readCount(DataInputStream inputStream) throws IOException {
+        int count = inputStream.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid UNIMOD registry");
+        }
+        return count;
+    }
+
+    /**
+     * Write the non zero element counts, -1 for an unknown composition.
+     */
+    private static void writeElementCounts(DataOutputStream outputStream, int[] elementCounts) throws IOException {
+        if (elementCounts == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+        int numberOfElements = 0;
+        for (int count : elementCounts) {
+            if (count != 0) {
+                numberOfElements++;
+            }
+        }
+        outputStream.writeInt(numberOfElements);
+        for (int i = 0; i < elementCounts.length; i++) {
+            if (elementCounts[i] != 0) {
+                outputStream.writeInt(i);
+                outputStream.writeInt(elementCounts[i]);
+            }
+        }
+    }
+
+    private static int[] readElementCounts(DataInputStream inputStream, int numberOfElements) throws IOException {
+        int numberOfCounts = inputStream.readInt();
+        if (numberOfCounts < 0) {
+            return null;
+        }
+        if (numberOfElements < 0) {
+            throw new IOException("Invalid UNIMOD registry");
+        }
+        int[] elementCounts = new int[numberOfElements];
+        for (int i = 0; i < numberOfCounts; i++) {
+            int element = inputStream.readInt();
+            if (element < 0 || element >= numberOfElements) {
+                throw new IOException("Invalid UNIMOD registry");
+            }
+            elementCounts[element] = inputStream.readInt();
+        }
+        return elementCounts;
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        outputStream.writeBoolean(value != null);
+        if (value != null) {
+            outputStream.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream inputStream) throws IOException {
+        return inputStream.readBoolean() ? inputStream.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.compomics.psi_io.unimod;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class represents the elements table of the unimod.xml file, isotopes such as 13C, 15N and 2H being separate
+ * elements. An elemental composition is a primitive vector of element counts indexed by the element index of the
+ * table (counts can be negative for the elements a modification removes), so the mass of a composition is computed
+ * without allocation. A table with other element masses, for example for a heavy label experiment, is derived with
+ * {@link #withMasses(String, double, double)}.
+ * <p>
+ * The table is immutable and can be shared between threads.
+ */
+public class UnimodElementTable {
+
+    private final String[] symbols;
+    private final String[] fullNames;
+    private final double[] monoIsotopicMasses;
+    private final double[] averageMasses;
+    /**
+     * The element index by symbol.
+     */
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * Create an element table.
+     *
+     * @param symbols            the element symbols (the UNIMOD titles, e.g. "C" or "13C")
+     * @param fullNames          the element full names
+     * @param monoIsotopicMasses the element mono isotopic masses
+     * @param averageMasses      the element average masses
+     * @throws IllegalArgumentException if the arrays differ in length or a symbol occurs twice
+     */
+    public UnimodElementTable(String[] symbols, String[] fullNames, double[] monoIsotopicMasses, double[] averageMasses) {
+        if (fullNames.length != symbols.length || monoIsotopicMasses.length != symbols.length || averageMasses.length != symbols.length) {
+            throw new IllegalArgumentException("The element symbols, names and masses differ in length");
+        }
+        this.symbols = symbols.clone();
+        this.fullNames = fullNames.clone();
+        this.monoIsotopicMasses = monoIsotopicMasses.clone();
+        this.averageMasses = averageMasses.clone();
+        for (int i = 0; i < symbols.length; i++) {
+            if (indexes.put(symbols[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate element " + symbols[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of elements, the length of the composition vectors.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return symbols.length;
+    }
+
+    /**
+     * Get the index of the element with the given symbol.
+     *
+     * @param symbol the element symbol
+     * @return the element index, -1 if the element is unknown
+     */
+    public int indexOf(String symbol) {
+        Integer index = indexes.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    public String getSymbol(int element) {
+        return symbols[element];
+    }
+
+    public String getFullName(int element) {
+        return fullNames[element];
+    }
+
+    public double getMonoIsotopicMass(int element) {
+        return monoIsotopicMasses[element];
+    }
+
+    public double getAverageMass(int element) {
+        return averageMasses[element];
+    }
+
+    /**
+     * Get a copy of this table with other masses for the given element.
+     *
+     * @param symbol           the element symbol
+     * @param monoIsotopicMass the mono isotopic mass
+     * @param averageMass      the average mass
+     * @return the new {@link UnimodElementTable} instance
+     * @throws IllegalArgumentException if the element is unknown
+     */
+    public UnimodElementTable withMasses(String symbol, double monoIsotopicMass, double averageMass) {
+        int element = checkElement(symbol);
+        double[] newMonoIsotopicMasses = monoIsotopicMasses.clone();
+        double[] newAverageMasses = averageMasses.clone();
+        newMonoIsotopicMasses[element] = monoIsotopicMass;
+        newAverageMasses[element] = averageMass;
+        return new UnimodElementTable(symbols, fullNames, newMonoIsotopicMasses, newAverageMasses);
+    }
+
+    /**
+     * Compute the mono isotopic mass of the given composition.
+     *
+     * @param composition the element counts, indexed by element
+     * @return the mono isotopic mass
+     */
+    public double getMonoIsotopicMass(int[] composition) {
+        return UnimodUtils.getMass(composition, 0, composition.length, monoIsotopicMasses);
+    }
+
+    /**
+     * Compute the mono isotopic mass of the composition at the given offset of the element counts array.
+     *
+     * @param elementCounts the element counts
+     * @param offset        the offset of the composition
+     * @param length        the number of elements of the composition
+     * @return the mono isotopic mass
+     */
+    double getMonoIsotopicMass(int[] elementCounts, int offset, int length) {
+        return UnimodUtils.getMass(elementCounts, offset, length, monoIsotopicMasses);
+    }
+
+    /**
+     * Compute the average mass of the given composition.
+     *
+     * @param composition the element counts, indexed by element
+     * @return the average mass
+     */
+    public double getAverageMass(int[] composition) {
+        return UnimodUtils.getMass(composition, 0, composition.length, averageMasses);
+    }
+
+    /**
+     * Compute the mono isotopic mass shift of the given modification from its composition.
+     *
+     * @param modification the {@link UnimodModification} instance
+     * @return the mono isotopic mass shift, NaN if the composition is unknown
+     */
+    public double getMonoIsotopicMass(UnimodModification modification) {
+        int[] composition = modification.getElementCountsArray();
+        return composition == null ? Double.NaN : getMonoIsotopicMass(composition);
+    }
+
+    /**
+     * Compute the average mass shift of the given modification from its composition.
+     *
+     * @param modification the {@link UnimodModification} instance
+     * @return the average mass shift, NaN if the composition is unknown
+     */
+    public double getAverageMass(UnimodModification modification) {
+        int[] composition = modification.getElementCountsArray();
+        return composition == null ? Double.NaN : getAverageMass(composition);
+    }
+
+    /**
+     * Add a multiple of the given composition to the target composition, e.g. to combine modifications.
+     *
+     * @param target      the target element counts, updated in place
+     * @param composition the element counts to add
+     * @param multiplier  the number of times to add the composition, negative to subtract it
+     */
+    public static void add(int[] target, int[] composition, int multiplier) {
+        UnimodUtils.add(target, composition, 0, composition.length, multiplier);
+    }
+
+    /**
+     * Parse the given composition in the UNIMOD notation (e.g. "H(2) 13C(2) O"). Bricks such as "Hex" aren't
+     * elements, the element counts of a modification are always expanded.
+     *
+     * @param composition the composition
+     * @return the element counts, indexed by element
+     * @throws IllegalArgumentException if the composition can't be parsed or has an unknown element
+     */
+    public int[] parseComposition(String composition) {
+        int[] counts = new int[symbols.length];
+        for (String part : composition.trim().split("\\s+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            int bracket = part.indexOf('(');
+            String symbol = bracket < 0 ? part : part.substring(0, bracket);
+            int count = 1;
+            if (bracket >= 0) {
+                if (!part.endsWith(")")) {
+                    throw new IllegalArgumentException("Invalid composition " + composition);
+                }
+                try {
+                    count = Integer.parseInt(part.substring(bracket + 1, part.length() - 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid composition " + composition, e);
+                }
+            }
+            counts[checkElement(symbol)] += count;
+        }
+        return counts;
+    }
+
+    /**
+     * Format the given composition in the UNIMOD notation, in element table order.
+     *
+     * @param composition the element counts, indexed by element
+     * @return the composition
+     */
+    public String formatComposition(int[] composition) {
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < composition.length; i++) {
+            if (composition[i] != 0) {
+                if (formatted.length() > 0) {
+                    formatted.append(' ');
+                }
+                formatted.append(symbols[i]);
+                if (composition[i] != 1) {
+                    formatted.append('(').append(composition[i]).append(')');
+                }
+            }
+        }
+        return formatted.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "UnimodElementTable%s", Arrays.toString(symbols));
+    }
+
+    private int checkElement(String symbol) {
+        int element = indexOf(symbol);
+        if (element < 0) {
+            throw new IllegalArgumentException("Unknown element " + symbol);
+        }
+        return element;
+    }
+
+}
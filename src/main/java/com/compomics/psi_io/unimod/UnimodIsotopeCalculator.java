@@ -0,0 +1,325 @@
+package com.compomics.psi_io.unimod;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class computes the isotope distributions of (modified) peptides, as the probabilities of the first isotope
+ * peaks: the mono isotopic peak and the next ones, a peak per nominal mass. The unmodified peptide is approximated by
+ * averagine of the same mass, the modifications add their UNIMOD compositions. The averagine distributions (by nominal
+ * mass) and the modification distributions (by record ID) are memoized, so a peptide costs a residue mass sum and a
+ * small convolution per modification, on primitive arrays.
+ * <p>
+ * The isotopes are read from the bundled isotopes.json file, keyed by the element symbols of the UNIMOD elements table.
+ * Elements without isotopes in the file are taken as isotopically pure, isotopes lighter than the UNIMOD mono isotopic
+ * mass of their element (e.g. 54Fe) are left out. The calculator is thread safe.
+ */
+public class UnimodIsotopeCalculator {
+
+    static final String ISOTOPES_RESOURCE = "unimod/isotopes.json";
+    /**
+     * The averagine residue (Senko et al., 1995): its mass and the counts of its elements other than hydrogen, the
+     * hydrogen count fills up the remaining mass.
+     */
+    private static final double AVERAGINE_MASS = 111.1254;
+    private static final String[] AVERAGINE_ELEMENTS = {"C", "N", "O", "S"};
+    private static final double[] AVERAGINE_COUNTS = {4.9384, 1.3577, 1.4773, 0.0417};
+    /**
+     * The nominal mass up to which the averagine distributions are memoized.
+     */
+    private static final int MAX_MEMOIZED_MASS = 10_000;
+    /**
+     * The number of memoized powers of two of every element, for element counts below 2^16.
+     */
+    private static final int NUMBER_OF_POWERS = 16;
+
+    private final int numberOfPeaks;
+    private final UnimodElementTable elementTable;
+    private final UnimodModificationTable modificationTable;
+    /**
+     * The residue masses by residue byte, NaN for an unknown residue.
+     */
+    private final double[] residueMasses = new double[128];
+    /**
+     * The mass of the peptide termini (water).
+     */
+    private final double terminiMass;
+    private final int hydrogen;
+    private final int[] averagineElements = new int[AVERAGINE_ELEMENTS.length];
+    /**
+     * The distributions of 2^i atoms of every element, by element and i.
+     */
+    private final double[][][] elementPowers;
+    private final AtomicReferenceArray<double[]> averagineDistributions = new AtomicReferenceArray<>(MAX_MEMOIZED_MASS);
+    private final AtomicReferenceArray<double[]> modificationDistributions;
+
+    /**
+     * Create a calculator for the residues and modifications of the given {@link UnimodMarshaller}.
+     *
+     * @param unimodMarshaller the {@link UnimodMarshaller} instance
+     * @param numberOfPeaks    the number of isotope peaks to compute
+     * @throws IOException           in case of a problem while reading the isotopes
+     * @throws IllegalStateException if the UNIMOD file has no elements table
+     */
+    public UnimodIsotopeCalculator(UnimodMarshaller unimodMarshaller, int numberOfPeaks) throws IOException {
+        if (numberOfPeaks < 1) {
+            throw new IllegalArgumentException("The number of peaks must be positive");
+        }
+        elementTable = unimodMarshaller.getElementTable();
+        if (elementTable == null) {
+            throw new IllegalStateException("The UNIMOD file has no elements table");
+        }
+        this.numberOfPeaks = numberOfPeaks;
+        modificationTable = unimodMarshaller.getModificationTable();
+        modificationDistributions = new AtomicReferenceArray<>(modificationTable.size());
+
+        Arrays.fill(residueMasses, Double.NaN);
+        for (char residue = 'A'; residue <= 'Z'; residue++) {
+            UnimodAminoAcid aminoAcid = unimodMarshaller.getAminoAcid(String.valueOf(residue));
+            if (aminoAcid != null && aminoAcid.getMonoIsotopicMass() != null && aminoAcid.getMonoIsotopicMass() > 0) {
+                residueMasses[residue] = aminoAcid.getMonoIsotopicMass();
+            }
+        }
+        hydrogen = getElement("H");
+        terminiMass = 2 * elementTable.getMonoIsotopicMass(hydrogen) + elementTable.getMonoIsotopicMass(getElement("O"));
+        for (int i = 0; i < AVERAGINE_ELEMENTS.length; i++) {
+            averagineElements[i] = getElement(AVERAGINE_ELEMENTS[i]);
+        }
+
+        double[][] elementDistributions = readIsotopes(elementTable, numberOfPeaks);
+        elementPowers = new double[elementTable.size()][NUMBER_OF_POWERS][];
+        for (int element = 0; element < elementTable.size(); element++) {
+            elementPowers[element][0] = elementDistributions[element];
+            for (int i = 1; i < NUMBER_OF_POWERS; i++) {
+                double[] power = elementPowers[element][i - 1].clone();
+                convolve(power, elementPowers[element][i - 1]);
+                elementPowers[element][i] = power;
+            }
+        }
+    }
+
+    public int getNumberOfPeaks() {
+        return numberOfPeaks;
+    }
+
+    /**
+     * Compute the isotope distribution of the given peptide.
+     *
+     * @param sequence  the peptide sequence (upper case one letter codes)
+     * @param recordIds the UNIMOD record IDs of the modifications, one per modified site
+     * @return the probabilities of the isotope peaks, the mono isotopic peak first
+     * @throws IllegalArgumentException if a residue or a record ID is unknown
+     */
+    public double[] getDistribution(CharSequence sequence, int... recordIds) {
+        double[] distribution = new double[numberOfPeaks];
+        getDistribution(sequence, recordIds, distribution);
+        return distribution;
+    }
+
+    /**
+     * Compute the isotope distribution of the given peptide in the given array. Nothing is allocated once the
+     * distributions of the peptide mass and modifications are memoized.
+     *
+     * @param sequence     the peptide sequence (upper case one letter codes)
+     * @param recordIds    the UNIMOD record IDs of the modifications, one per modified site
+     * @param distribution the array that gets the probabilities of the isotope peaks, the mono isotopic peak first
+     * @throws IllegalArgumentException if a residue or a record ID is unknown
+     */
+    public void getDistribution(CharSequence sequence, int[] recordIds, double[] distribution) {
+        if (distribution.length < numberOfPeaks) {
+            throw new IllegalArgumentException("The distribution array is shorter than the number of peaks");
+        }
+        double mass = terminiMass;
+        for (int i = 0; i < sequence.length(); i++) {
+            char residue = sequence.charAt(i);
+            double residueMass = residue < residueMasses.length ? residueMasses[residue] : Double.NaN;
+            if (Double.isNaN(residueMass)) {
+                throw new IllegalArgumentException("Unknown residue " + residue);
+            }
+            mass += residueMass;
+        }
+        System.arraycopy(getAveragineDistribution(mass), 0, distribution, 0, numberOfPeaks);
+        for (int recordId : recordIds) {
+            int index = modificationTable.indexOf(recordId);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown UNIMOD record ID " + recordId);
+            }
+            convolve(distribution, getModificationDistribution(index));
+        }
+    }
+
+    /**
+     * Compute the isotope distribution of the given composition, without approximation.
+     *
+     * @param elementCounts the element counts, indexed as the {@link UnimodElementTable}
+     * @return the probabilities of the isotope peaks, the mono isotopic peak first
+     * @throws IllegalArgumentException if an element count is negative
+     */
+    public double[] getDistribution(int[] elementCounts) {
+        double[] distribution = new double[numberOfPeaks];
+        distribution[0] = 1;
+        for (int element = 0; element < elementCounts.length; element++) {
+            if (elementCounts[element] < 0) {
+                throw new IllegalArgumentException("Negative count of element " + elementTable.getSymbol(element));
+            }
+            multiply(distribution, element, elementCounts[element]);
+        }
+        return distribution;
+    }
+
+    private double[] getAveragineDistribution(double mass) {
+        int nominalMass = (int) Math.round(mass);
+        if (nominalMass >= MAX_MEMOIZED_MASS) {
+            return computeAveragineDistribution(nominalMass);
+        }
+        double[] distribution = averagineDistributions.get(nominalMass);
+        if (distribution == null) {
+            //two threads can compute the same distribution, which is harmless
+            distribution = computeAveragineDistribution(nominalMass);
+            averagineDistributions.set(nominalMass, distribution);
+        }
+        return distribution;
+    }
+
+    private double[] computeAveragineDistribution(int nominalMass) {
+        double[] distribution = new double[numberOfPeaks];
+        distribution[0] = 1;
+        double units = nominalMass / AVERAGINE_MASS;
+        double remainingMass = nominalMass;
+        for (int i = 0; i < averagineElements.length; i++) {
+            int count = (int) Math.round(units * AVERAGINE_COUNTS[i]);
+            multiply(distribution, averagineElements[i], count);
+            remainingMass -= count * elementTable.getMonoIsotopicMass(averagineElements[i]);
+        }
+        multiply(distribution, hydrogen, Math.max(0, (int) Math.round(remainingMass / elementTable.getMonoIsotopicMass(hydrogen))));
+        return distribution;
+    }
+
+    /**
+     * Get the distribution of the composition of the modification at the given table index. The negative element
+     * counts (e.g. the water of a dehydration) give the inverse distributions, so the result is not a probability
+     * distribution on its own but gives the right peptide distribution.
+     */
+    private double[] getModificationDistribution(int index) {
+        double[] distribution = modificationDistributions.get(index);
+        if (distribution == null) {
+            distribution = new double[numberOfPeaks];
+            distribution[0] = 1;
+            for (int element = 0; element < elementTable.size(); element++) {
+                multiply(distribution, element, modificationTable.getElementCount(index, element));
+            }
+            modificationDistributions.set(index, distribution);
+        }
+        return distribution;
+    }
+
+    /**
+     * Multiply the given distribution with the distribution of count atoms of the given element, in place; a negative
+     * count divides.
+     */
+    private void multiply(double[] distribution, int element, int count) {
+        int atoms = Math.abs(count);
+        if (atoms >= 1 << NUMBER_OF_POWERS) {
+            throw new IllegalArgumentException("Too many atoms of element " + elementTable.getSymbol(element));
+        }
+        for (int i = 0; atoms != 0; i++, atoms >>>= 1) {
+            if ((atoms & 1) != 0) {
+                if (count > 0) {
+                    convolve(distribution, elementPowers[element][i]);
+                } else {
+                    deconvolve(distribution, elementPowers[element][i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convolve the first distribution with the second one in place, truncated to the number of peaks.
+     */
+    private void convolve(double[] distribution, double[] other) {
+        //from the last peak down, the lower peaks are still needed
+        for (int peak = numberOfPeaks - 1; peak >= 0; peak--) {
+            double probability = 0;
+            for (int i = 0; i <= peak; i++) {
+                probability += distribution[i] * other[peak - i];
+            }
+            distribution[peak] = probability;
+        }
+    }
+
+    /**
+     * Deconvolve the first distribution by the second one in place, truncated to the number of peaks.
+     */
+    private void deconvolve(double[] distribution, double[] other) {
+        for (int peak = 0; peak < numberOfPeaks; peak++) {
+            double probability = distribution[peak];
+            for (int i = 1; i <= peak; i++) {
+                probability -= other[i] * distribution[peak - i];
+            }
+            distribution[peak] = probability / other[0];
+        }
+    }
+
+    private int getElement(String symbol) {
+        int element = elementTable.indexOf(symbol);
+        if (element < 0) {
+            throw new IllegalStateException("The UNIMOD elements table has no element " + symbol);
+        }
+        return element;
+    }
+
+    /**
+     * Read the isotopes of the elements of the given table, as the distributions of a single atom.
+     */
+    private static double[][] readIsotopes(UnimodElementTable elementTable, int numberOfPeaks) throws IOException {
+        Resource isotopesResource = new ClassPathResource(ISOTOPES_RESOURCE);
+        JsonNode isotopesNode;
+        try (InputStream inputStream = isotopesResource.getInputStream()) {
+            isotopesNode = new ObjectMapper().readTree(inputStream);
+        }
+
+        double[][] distributions = new double[elementTable.size()][numberOfPeaks];
+        for (int element = 0; element < elementTable.size(); element++) {
+            String symbol = elementTable.getSymbol(element);
+            double[] distribution = distributions[element];
+            JsonNode isotopeNode = isotopesNode.get(symbol);
+            if (isotopeNode == null) {
+                distribution[0] = 1;
+                continue;
+            }
+            JsonNode massesNode = isotopeNode.get("masses");
+            JsonNode abundancesNode = isotopeNode.get("abundances");
+            if (massesNode == null || abundancesNode == null || massesNode.size() != abundancesNode.size()) {
+                throw new IOException("Invalid isotopes of element " + symbol);
+            }
+            //the isotopes from the mono isotopic one on, by nominal mass difference
+            double total = 0;
+            for (int i = 0; i < massesNode.size(); i++) {
+                int peak = (int) Math.round(massesNode.get(i).asDouble() - elementTable.getMonoIsotopicMass(element));
+                double abundance = abundancesNode.get(i).asDouble();
+                if (peak >= 0) {
+                    total += abundance;
+                    if (peak < numberOfPeaks) {
+                        distribution[peak] += abundance;
+                    }
+                }
+            }
+            if (distribution[0] == 0) {
+                throw new IOException("No mono isotopic abundance of element " + symbol);
+            }
+            for (int peak = 0; peak < numberOfPeaks; peak++) {
+                distribution[peak] /= total;
+            }
+        }
+
+        return distributions;
+    }
+
+}
@@ -1,16 +1,20 @@
 package com.compomics.psi_io.unimod;
 
-import org.jdom2.*;
-import org.jdom2.input.SAXBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 
 /**
  * This class is used to marshall and access the UNIMOD modifications from the unimod.xml file.
@@ -24,23 +28,126 @@ public class UnimodMarshaller {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(UnimodMarshaller.class);
 
-    private static final Namespace NAMESPACE = Namespace.getNamespace("http://www.unimod.org/xmlns/schema/unimod_2");
+    static final String NAMESPACE = "http://www.unimod.org/xmlns/schema/unimod_2";
+    static final String UNIMOD_RESOURCE = "unimod/unimod.xml";
+    static final String REGISTRY_RESOURCE = "unimod/unimod.bin";
     private static final String UNIMOD_ACCESSION = "UNIMOD:%d";
 
+    /**
+     * The read-only instance shared by all threads, loaded on first use.
+     */
+    private static volatile UnimodMarshaller sharedInstance;
+
     /**
      * This maps holds the modifications from the parsed UNIMOD .xml file. This map can contains instances of {@link
      * UnimodModification}. The key is the UNIMOD record ID.
      */
     private final Map<Integer, UnimodModification> modifications = new HashMap<>();
+    /**
+     * This map holds the amino acids from the parsed UNIMOD .xml file, including the "N-term" and "C-term" peptide
+     * terminus entries. The key is the amino acid title (the one letter code).
+     */
+    private final Map<String, UnimodAminoAcid> aminoAcids = new HashMap<>();
+    /**
+     * The name indexes of the modifications, built once after loading. The keys of the case insensitive and
+     * alternative name indexes are lower case; a key shared by several modifications maps to the one with the lowest
+     * record ID.
+     */
+    private final Map<String, UnimodModification> modificationsByName = new HashMap<>();
+    private final Map<String, UnimodModification> modificationsByLowerCaseName = new HashMap<>();
+    private final Map<String, UnimodModification> modificationsByAltName = new HashMap<>();
+    /**
+     * The mass indexes of the modifications, built once after loading.
+     */
+    private UnimodMassIndex monoIsotopicMassIndex;
+    private UnimodMassIndex averageMassIndex;
+    /**
+     * The specificity index of the not hidden specificities, built once after loading.
+     */
+    private UnimodSpecificityIndex specificityIndex;
+    /**
+     * The struct of arrays layout of the modifications, built once after loading.
+     */
+    private UnimodModificationTable modificationTable;
+    /**
+     * The elements table, the element index of the compositions; null if the UNIMOD file has none.
+     */
+    private UnimodElementTable elementTable;
+    /**
+     * Whether the modifications and amino acids are read-only, see {@link #getSharedInstance()}.
+     */
+    private boolean readOnly;
 
     public Map<Integer, UnimodModification> getModifications() {
-        return modifications;
+        return readOnly ? Collections.unmodifiableMap(modifications) : modifications;
     }
 
-    public UnimodMarshaller() throws JDOMException, IOException {
+    public Map<String, UnimodAminoAcid> getAminoAcids() {
+        return readOnly ? Collections.unmodifiableMap(aminoAcids) : aminoAcids;
+    }
+
+    /**
+     * Load the bundled UNIMOD modifications and amino acids from the registry that is precompiled from unimod.xml at
+     * build time, see {@link UnimodBinaryRegistry}. The unimod.xml file is parsed if the registry is missing (e.g. when
+     * running from an IDE without the Maven build) or can't be read.
+     *
+     * @throws IOException in case of a problem with the unimod.xml resource
+     */
+    public UnimodMarshaller() throws IOException {
+        Resource registryResource = new ClassPathResource(REGISTRY_RESOURCE);
+        if (registryResource.exists()) {
+            try (InputStream inputStream = new BufferedInputStream(registryResource.getInputStream(), 1 << 16)) {
+                elementTable = UnimodBinaryRegistry.read(inputStream, modifications, aminoAcids);
+                index();
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Could not read the UNIMOD registry, parsing " + UNIMOD_RESOURCE + " instead", e);
+                modifications.clear();
+                aminoAcids.clear();
+                elementTable = null;
+            }
+        }
         marshal();
     }
 
+    /**
+     * Get the read-only instance of the bundled UNIMOD data that is shared by all threads. It's loaded once, on first
+     * use; its maps are unmodifiable and its modifications and amino acids throw an {@link
+     * UnsupportedOperationException} when modified, so lookups need no locking. The indexes of an instance created with
+     * a constructor aren't updated when its maps are modified.
+     *
+     * @return the shared {@link UnimodMarshaller} instance
+     * @throws IOException in case of a problem with the unimod.xml resource, loading is retried on the next call
+     */
+    public static UnimodMarshaller getSharedInstance() throws IOException {
+        UnimodMarshaller instance = sharedInstance;
+        if (instance == null) {
+            synchronized (UnimodMarshaller.class) {
+                instance = sharedInstance;
+                if (instance == null) {
+                    instance = new UnimodMarshaller();
+                    instance.modifications.values().forEach(UnimodModification::setReadOnly);
+                    instance.aminoAcids.values().forEach(UnimodAminoAcid::setReadOnly);
+                    instance.readOnly = true;
+                    sharedInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Parse an external UNIMOD XML file, for example a more recent version than the bundled one.
+     *
+     * @param unimodPath the UNIMOD XML file path
+     * @throws IOException in case of a problem reading or parsing the file
+     */
+    public UnimodMarshaller(Path unimodPath) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(unimodPath), 1 << 16)) {
+            marshal(inputStream);
+        }
+    }
+
     /**
      * Get the modification by accession. Returns null if nothing was found.
      *
@@ -64,66 +171,305 @@ public class UnimodMarshaller {
      * @return the found search modification, null if nothing was found
      */
     public UnimodModification getModificationByName(String name) {
-        UnimodModification modification = null;
+        return modificationsByName.get(name);
+    }
 
-        Optional<UnimodModification> foundModification = modifications
-                .values()
-                .stream()
-                .filter(filteredModification -> filteredModification.getName().equals(name))
-                .findFirst();
+    /**
+     * Get the modification by name, ignoring case. Returns null if nothing was found.
+     *
+     * @param name the modification name
+     * @return the found search modification, null if nothing was found
+     */
+    public UnimodModification getModificationByNameIgnoreCase(String name) {
+        return modificationsByLowerCaseName.get(name.toLowerCase(Locale.ROOT));
+    }
 
-        if (foundModification.isPresent()) {
-            modification = foundModification.get();
-        }
+    /**
+     * Get the modification by one of its alternative names (e.g. "Carboxyamidomethylation" for "Carbamidomethyl"),
+     * ignoring case. Returns null if nothing was found.
+     *
+     * @param altName the alternative modification name
+     * @return the found search modification, null if nothing was found
+     */
+    public UnimodModification getModificationByAltName(String altName) {
+        return modificationsByAltName.get(altName.toLowerCase(Locale.ROOT));
+    }
 
-        return modification;
+    /**
+     * Get the index of the mono isotopic mass shifts, to find the modifications that explain a mass shift.
+     *
+     * @return the {@link UnimodMassIndex} instance
+     */
+    public UnimodMassIndex getMonoIsotopicMassIndex() {
+        return monoIsotopicMassIndex;
+    }
+
+    /**
+     * Get the index of the average mass shifts, to find the modifications that explain a mass shift.
+     *
+     * @return the {@link UnimodMassIndex} instance
+     */
+    public UnimodMassIndex getAverageMassIndex() {
+        return averageMassIndex;
+    }
+
+    /**
+     * Get the index of the not hidden specificities, to find the candidate modifications of a residue.
+     *
+     * @return the {@link UnimodSpecificityIndex} instance
+     */
+    public UnimodSpecificityIndex getSpecificityIndex() {
+        return specificityIndex;
+    }
+
+    /**
+     * Get the modifications in a struct of arrays layout, for the loops over many modifications. The table is built
+     * after loading, later changes to the modifications are not reflected.
+     *
+     * @return the {@link UnimodModificationTable} instance
+     */
+    public UnimodModificationTable getModificationTable() {
+        return modificationTable;
+    }
+
+    /**
+     * Get the elements table of the modification and amino acid compositions.
+     *
+     * @return the {@link UnimodElementTable} instance, null if the UNIMOD file has no elements table
+     */
+    public UnimodElementTable getElementTable() {
+        return elementTable;
+    }
+
+    /**
+     * Get the amino acid by title (the one letter code, "N-term" or "C-term"). Returns null if nothing was found.
+     *
+     * @param title the amino acid title
+     * @return the found amino acid, null if nothing was found
+     */
+    public UnimodAminoAcid getAminoAcid(String title) {
+        return aminoAcids.get(title);
     }
 
     /**
-     * This method marshals the UNIMOD file and puts all modifications in the map for later usage.
+     * This method marshals the UNIMOD file and puts all modifications and amino acids in the maps for later usage.
      *
-     * @throws JDOMException top level exception that can be thrown in case of a problem in the JDOM classes.
-     * @throws IOException   in case of a problem with the unimod.xml recource
-     */
-    private void marshal() throws JDOMException, IOException {
-        Resource unimodResource = new ClassPathResource("unimod/unimod.xml");
-        SAXBuilder builder = new SAXBuilder();
-
-        Document document;
-        document = builder.build(unimodResource.getInputStream());
-
-        Element root = document.getRootElement();
-        //get the modifications element
-        Element modificationsElement = root.getChild("modifications", NAMESPACE);
-
-        for (Element modificationElement : modificationsElement.getChildren("mod", NAMESPACE)) {
-            //get the mod name and record ID
-            Attribute title = modificationElement.getAttribute("title");
-            Attribute record = modificationElement.getAttribute("record_id");
-
-            //create the modification instance
-            UnimodModification modification = new UnimodModification(record.getIntValue(), title.getValue());
-
-            //get the affected amino acids, only consider the ones that are not hidden
-            Map<String, String> affectedAminoAcids = new HashMap<>();
-            modificationElement.getChildren("specificity", NAMESPACE).stream()
-                    .filter(specificity -> specificity.getAttribute("hidden").getValue().equals("0"))
-                    .forEach(element -> {
-                        affectedAminoAcids.put(element.getAttribute("site").getValue(), element.getAttribute("position").getValue());
-                    });
-            if (!affectedAminoAcids.isEmpty()) {
-                modification.setAffectedAminoAcids(affectedAminoAcids);
+     * @throws IOException in case of a problem with the unimod.xml recource
+     */
+    private void marshal() throws IOException {
+        Resource unimodResource = new ClassPathResource(UNIMOD_RESOURCE);
+        try (InputStream inputStream = new BufferedInputStream(unimodResource.getInputStream(), 1 << 16)) {
+            marshal(inputStream);
+        }
+    }
+
+    /**
+     * Marshal the given UNIMOD XML stream in one pass with a {@link XMLStreamReader}. Only the elements of the model
+     * are read, the other elements (notes, cross references, ...) are skipped without building a document.
+     *
+     * @param inputStream the UNIMOD XML stream
+     * @throws IOException in case of a problem reading or parsing the stream
+     */
+    void marshal(InputStream inputStream) throws IOException {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(inputStream);
+            List<String> symbols = new ArrayList<>();
+            List<String> fullNames = new ArrayList<>();
+            List<Double> monoIsotopicMasses = new ArrayList<>();
+            List<Double> averageMasses = new ArrayList<>();
+            UnimodModification modification = null;
+            Map<String, String> affectedAminoAcids = null;
+            UnimodAminoAcid aminoAcid = null;
+            //the composition of the current delta or amino acid element
+            int[] elementCounts = null;
+            //the attributes and neutral losses of the current specificity element
+            String[] specificityAttributes = null;
+            List<Double> neutralLossMonoIsotopicMasses = new ArrayList<>();
+            List<Double> neutralLossAverageMasses = new ArrayList<>();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT && NAMESPACE.equals(reader.getNamespaceURI())) {
+                    switch (reader.getLocalName()) {
+                        case "elements":
+                            elementTable = new UnimodElementTable(symbols.toArray(new String[0]), fullNames.toArray(new String[0]),
+                                    monoIsotopicMasses.stream().mapToDouble(Double::doubleValue).toArray(), averageMasses.stream().mapToDouble(Double::doubleValue).toArray());
+                            break;
+                        case "mod":
+                            if (modification != null) {
+                                if (!affectedAminoAcids.isEmpty()) {
+                                    modification.setAffectedAminoAcids(affectedAminoAcids);
+                                }
+                                modifications.put(modification.getAccession(), modification);
+                                modification = null;
+                            }
+                            break;
+                        case "specificity":
+                            if (specificityAttributes != null) {
+                                try {
+                                    modification.getSpecificities().add(new UnimodSpecificity(specificityAttributes[0], UnimodPosition.fromValue(specificityAttributes[1]),
+                                            "1".equals(specificityAttributes[2]), specificityAttributes[3], specificityAttributes[4] == null ? 0 : Integer.parseInt(specificityAttributes[4].trim()),
+                                            neutralLossMonoIsotopicMasses.stream().mapToDouble(Double::doubleValue).toArray(), neutralLossAverageMasses.stream().mapToDouble(Double::doubleValue).toArray()));
+                                } catch (IllegalArgumentException e) {
+                                    throw new XMLStreamException("Invalid specificity of modification " + modification.getName(), reader.getLocation(), e);
+                                }
+                                specificityAttributes = null;
+                            }
+                            break;
+                        case "delta":
+                            if (modification != null && elementCounts != null) {
+                                modification.setElementCounts(elementCounts);
+                            }
+                            elementCounts = null;
+                            break;
+                        case "aa":
+                            if (aminoAcid != null && elementCounts != null) {
+                                aminoAcid.setElementCounts(elementCounts);
+                            }
+                            aminoAcid = null;
+                            elementCounts = null;
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.START_ELEMENT && NAMESPACE.equals(reader.getNamespaceURI())) {
+                    switch (reader.getLocalName()) {
+                        case "elem":
+                            symbols.add(getAttribute(reader, "title"));
+                            fullNames.add(reader.getAttributeValue(null, "full_name"));
+                            monoIsotopicMasses.add(getDoubleAttribute(reader, "mono_mass"));
+                            averageMasses.add(getDoubleAttribute(reader, "avge_mass"));
+                            break;
+                        case "mod":
+                            //get the mod name and record ID
+                            modification = new UnimodModification(getIntAttribute(reader, "record_id"), getAttribute(reader, "title"));
+                            affectedAminoAcids = new HashMap<>();
+                            break;
+                        case "specificity":
+                            if (modification != null) {
+                                //only consider the affected amino acids that are not hidden
+                                if ("0".equals(reader.getAttributeValue(null, "hidden"))) {
+                                    affectedAminoAcids.put(getAttribute(reader, "site"), getAttribute(reader, "position"));
+                                }
+                                specificityAttributes = new String[]{getAttribute(reader, "site"), getAttribute(reader, "position"), reader.getAttributeValue(null, "hidden"),
+                                        reader.getAttributeValue(null, "classification"), reader.getAttributeValue(null, "spec_group")};
+                                neutralLossMonoIsotopicMasses.clear();
+                                neutralLossAverageMasses.clear();
+                            }
+                            break;
+                        case "NeutralLoss":
+                            if (specificityAttributes != null) {
+                                neutralLossMonoIsotopicMasses.add(getDoubleAttribute(reader, "mono_mass"));
+                                neutralLossAverageMasses.add(getDoubleAttribute(reader, "avge_mass"));
+                            }
+                            break;
+                        case "alt_name":
+                            if (modification != null) {
+                                modification.getAltNames().add(reader.getElementText().trim());
+                            }
+                            break;
+                        case "delta":
+                            //get the mono isotopic and average mass shift
+                            if (modification != null) {
+                                modification.setMonoIsotopicMassShift(getDoubleAttribute(reader, "mono_mass"));
+                                modification.setAverageMassShift(getDoubleAttribute(reader, "avge_mass"));
+                                modification.setComposition(reader.getAttributeValue(null, "composition"));
+                                elementCounts = newElementCounts();
+                            }
+                            break;
+                        case "aa":
+                            String title = getAttribute(reader, "title");
+                            aminoAcid = new UnimodAminoAcid(title, reader.getAttributeValue(null, "three_letter"), reader.getAttributeValue(null, "full_name"));
+                            aminoAcid.setMonoIsotopicMass(getDoubleAttribute(reader, "mono_mass"));
+                            aminoAcid.setAverageMass(getDoubleAttribute(reader, "avge_mass"));
+                            aminoAcids.put(title, aminoAcid);
+                            elementCounts = newElementCounts();
+                            break;
+                        case "element":
+                            //the composition of a delta or amino acid, not the ones of the neutral losses
+                            if (elementCounts != null) {
+                                String symbol = getAttribute(reader, "symbol");
+                                int element = elementTable.indexOf(symbol);
+                                if (element < 0) {
+                                    throw new XMLStreamException("Unknown element " + symbol, reader.getLocation());
+                                }
+                                elementCounts[element] += getIntAttribute(reader, "number");
+                            }
+                            break;
+                        default:
+                            //not part of the model
+                            break;
+                    }
+                }
+            }
+            index();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse the UNIMOD file", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    LOGGER.warn("Could not close the UNIMOD reader", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the name, mass and specificity indexes and the table of the modifications.
+     */
+    private void index() {
+        modificationsByName.clear();
+        modificationsByLowerCaseName.clear();
+        modificationsByAltName.clear();
+        List<UnimodModification> sortedModifications = new ArrayList<>(modifications.values());
+        sortedModifications.sort(Comparator.comparing(UnimodModification::getAccession));
+        for (UnimodModification modification : sortedModifications) {
+            modificationsByName.putIfAbsent(modification.getName(), modification);
+            modificationsByLowerCaseName.putIfAbsent(modification.getName().toLowerCase(Locale.ROOT), modification);
+            for (String altName : modification.getAltNames()) {
+                modificationsByAltName.putIfAbsent(altName.toLowerCase(Locale.ROOT), modification);
             }
+        }
+        monoIsotopicMassIndex = UnimodMassIndex.build(sortedModifications, false);
+        averageMassIndex = UnimodMassIndex.build(sortedModifications, true);
+        specificityIndex = UnimodSpecificityIndex.build(sortedModifications, false);
+        modificationTable = UnimodModificationTable.build(sortedModifications, elementTable);
+    }
 
-            //get the mono isotopic and average mass shift
-            Element delta = modificationElement.getChild("delta", NAMESPACE);
-            Attribute monoIsotopicMassShift = delta.getAttribute("mono_mass");
-            Attribute averageMassShift = delta.getAttribute("avge_mass");
+    /**
+     * Get a new composition vector, null if the elements table wasn't read.
+     */
+    private int[] newElementCounts() {
+        return elementTable == null ? null : new int[elementTable.size()];
+    }
+
+    private static String getAttribute(XMLStreamReader reader, String name) throws XMLStreamException {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            throw new XMLStreamException("Missing attribute " + name + " in element " + reader.getLocalName(), reader.getLocation());
+        }
+        return value;
+    }
 
-            modification.setMonoIsotopicMassShift(monoIsotopicMassShift.getDoubleValue());
-            modification.setAverageMassShift(averageMassShift.getDoubleValue());
+    private static int getIntAttribute(XMLStreamReader reader, String name) throws XMLStreamException {
+        try {
+            return Integer.parseInt(getAttribute(reader, name).trim());
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid attribute " + name + " in element " + reader.getLocalName(), reader.getLocation(), e);
+        }
+    }
 
-            modifications.put(record.getIntValue(), modification);
+    private static double getDoubleAttribute(XMLStreamReader reader, String name) throws XMLStreamException {
+        try {
+            return Double.parseDouble(getAttribute(reader, name).trim());
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid attribute " + name + " in element " + reader.getLocalName(), reader.getLocation(), e);
         }
     }
 
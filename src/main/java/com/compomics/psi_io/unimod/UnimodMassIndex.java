@@ -0,0 +1,286 @@
+package com.compomics.psi_io.unimod;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents a mass index of the UNIMOD modifications, to find the modifications that explain a mass shift
+ * in an open modification search. The mono isotopic or average mass shifts are kept sorted in a primitive array, with
+ * the record ID and the sites (the not hidden affected amino acids) of every modification in parallel arrays, so a
+ * tolerance window lookup is a binary search.
+ * <p>
+ * The index is immutable and can be shared between threads.
+ */
+public class UnimodMassIndex {
+
+    static final int N_TERM_SITE = 1 << UnimodUtils.N_TERM_SITE;
+    static final int C_TERM_SITE = 1 << UnimodUtils.C_TERM_SITE;
+
+    /**
+     * Consumer of the matches of a bulk lookup.
+     */
+    @FunctionalInterface
+    public interface MatchConsumer {
+
+        /**
+         * Accept a match.
+         *
+         * @param query the index of the mass shift in the queried array
+         * @param index the index of the matching modification
+         */
+        void accept(int query, int index);
+    }
+
+    /**
+     * The sorted mass shifts.
+     */
+    private final double[] masses;
+    /**
+     * The UNIMOD record ID of every modification.
+     */
+    private final int[] recordIds;
+    /**
+     * The site bits of every modification, see {@link #getSiteBit(String)}.
+     */
+    private final int[] sites;
+
+    private UnimodMassIndex(double[] masses, int[] recordIds, int[] sites) {
+        this.masses = masses;
+        this.recordIds = recordIds;
+        this.sites = sites;
+    }
+
+    /**
+     * Build the index of the given modifications.
+     *
+     * @param modifications the {@link UnimodModification} instances
+     * @param average       whether to index the average instead of the mono isotopic mass shifts
+     * @return the {@link UnimodMassIndex} instance
+     */
+    static UnimodMassIndex build(Collection<UnimodModification> modifications, boolean average) {
+        UnimodModification[] sortedModifications = modifications.toArray(new UnimodModification[0]);
+        Comparator<UnimodModification> massComparator = Comparator.comparingDouble(modification -> average ? modification.getAverageMassShift() : modification.getMonoIsotopicMassShift());
+        Arrays.sort(sortedModifications, massComparator.thenComparing(UnimodModification::getAccession));
+        double[] masses = new double[sortedModifications.length];
+        int[] recordIds = new int[sortedModifications.length];
+        int[] sites = new int[sortedModifications.length];
+        for (int i = 0; i < sortedModifications.length; i++) {
+            UnimodModification modification = sortedModifications[i];
+            masses[i] = average ? modification.getAverageMassShift() : modification.getMonoIsotopicMassShift();
+            recordIds[i] = modification.getAccession();
+            for (String site : modification.getAffectedAminoAcids().keySet()) {
+                sites[i] |= getSiteBit(site);
+            }
+        }
+
+        return new UnimodMassIndex(masses, recordIds, sites);
+    }
+
+    /**
+     * Get the number of indexed modifications.
+     *
+     * @return the number of modifications
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * Get the mass shift of the modification at the given index.
+     *
+     * @param index the modification index
+     * @return the mass shift
+     */
+    public double getMass(int index) {
+        return masses[index];
+    }
+
+    /**
+     * Get the UNIMOD record ID of the modification at the given index.
+     *
+     * @param index the modification index
+     * @return the record ID
+     */
+    public int getRecordId(int index) {
+        return recordIds[index];
+    }
+
+    /**
+     * Check whether the modification at the given index can occur on the given site.
+     *
+     * @param index the modification index
+     * @param site  the site, an amino acid one letter code, "N-term" or "C-term"
+     * @return whether the site is one of the (not hidden) sites of the modification
+     */
+    public boolean hasSite(int index, String site) {
+        return (sites[index] & getSiteBit(site)) != 0;
+    }
+
+    /**
+     * Get the site bits of the modification at the given index.
+     *
+     * @param index the modification index
+     * @return the site bits, see {@link #getSiteBit(String)}
+     */
+    int getSites(int index) {
+        return sites[index];
+    }
+
+    /**
+     * Get the index of the first modification with a mass shift larger than or equal to the given mass.
+     *
+     * @param mass the mass
+     * @return the modification index, {@link #size()} if there is none
+     */
+    public int lowerBound(double mass) {
+        int low = 0;
+        int high = masses.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] < mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the index of the first modification with a mass shift larger than the given mass.
+     *
+     * @param mass the mass
+     * @return the modification index, {@link #size()} if there is none
+     */
+    public int upperBound(double mass) {
+        int low = 0;
+        int high = masses.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] <= mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pass the index of every modification with a mass shift in [minMass, maxMass] to the given consumer, in mass
+     * order.
+     *
+     * @param minMass       the minimum mass (inclusive)
+     * @param maxMass       the maximum mass (inclusive)
+     * @param site          the site the modification has to occur on, null for any site
+     * @param indexConsumer the consumer of the modification indexes
+     */
+    public void forEach(double minMass, double maxMass, String site, IntConsumer indexConsumer) {
+        int siteBit = site == null ? 0 : getSiteBit(site);
+        for (int i = lowerBound(minMass), end = upperBound(maxMass); i < end; i++) {
+            if (siteBit == 0 || (sites[i] & siteBit) != 0) {
+                indexConsumer.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Pass the index of every modification within the given tolerance of the given mass shift to the given consumer,
+     * in mass order.
+     *
+     * @param massShift     the mass shift
+     * @param tolerance     the mass tolerance
+     * @param ppm           whether the tolerance is in ppm of the precursor mass, otherwise it's in Da
+     * @param precursorMass the precursor mass of a ppm tolerance, ignored for a tolerance in Da
+     * @param site          the site the modification has to occur on, null for any site
+     * @param indexConsumer the consumer of the modification indexes
+     */
+    public void forEach(double massShift, double tolerance, boolean ppm, double precursorMass, String site, IntConsumer indexConsumer) {
+        double delta = ppm ? precursorMass * tolerance / 1_000_000 : tolerance;
+        forEach(massShift - delta, massShift + delta, site, indexConsumer);
+    }
+
+    /**
+     * Get the record IDs of the modifications within the given tolerance of the given mass shift, in mass order.
+     *
+     * @param massShift     the mass shift
+     * @param tolerance     the mass tolerance
+     * @param ppm           whether the tolerance is in ppm of the precursor mass, otherwise it's in Da
+     * @param precursorMass the precursor mass of a ppm tolerance, ignored for a tolerance in Da
+     * @param site          the site the modification has to occur on, null for any site
+     * @return the record IDs
+     */
+    public int[] getRecordIds(double massShift, double tolerance, boolean ppm, double precursorMass, String site) {
+        double delta = ppm ? precursorMass * tolerance / 1_000_000 : tolerance;
+        int siteBit = site == null ? 0 : getSiteBit(site);
+        int start = lowerBound(massShift - delta);
+        int end = upperBound(massShift + delta);
+        int[] matches = new int[Math.max(0, end - start)];
+        int numberOfMatches = 0;
+        for (int i = start; i < end; i++) {
+            if (siteBit == 0 || (sites[i] & siteBit) != 0) {
+                matches[numberOfMatches++] = recordIds[i];
+            }
+        }
+        return numberOfMatches == matches.length ? matches : Arrays.copyOf(matches, numberOfMatches);
+    }
+
+    /**
+     * Pass the matches of every mass shift of the given array to the given consumer. The windows of ascending mass
+     * shifts are found with one merge pass over the index instead of a binary search per mass shift.
+     *
+     * @param massShifts      the mass shifts, ideally in ascending order
+     * @param precursorMasses the precursor masses of a ppm tolerance, in the mass shifts order; null for a tolerance in
+     *                        Da
+     * @param tolerance       the mass tolerance
+     * @param ppm             whether the tolerance is in ppm of the precursor mass, otherwise it's in Da
+     * @param site            the site the modification has to occur on, null for any site
+     * @param matchConsumer   the consumer of the matches
+     */
+    public void forEach(double[] massShifts, double[] precursorMasses, double tolerance, boolean ppm, String site, MatchConsumer matchConsumer) {
+        if (ppm && (precursorMasses == null || precursorMasses.length != massShifts.length)) {
+            throw new IllegalArgumentException("A ppm tolerance needs a precursor mass for every mass shift");
+        }
+        int siteBit = site == null ? 0 : getSiteBit(site);
+        int start = 0;
+        double previousMinMass = Double.NEGATIVE_INFINITY;
+        for (int query = 0; query < massShifts.length; query++) {
+            double delta = ppm ? precursorMasses[query] * tolerance / 1_000_000 : tolerance;
+            double minMass = massShifts[query] - delta;
+            double maxMass = massShifts[query] + delta;
+            if (minMass >= previousMinMass) {
+                while (start < masses.length && masses[start] < minMass) {
+                    start++;
+                }
+            } else {
+                start = lowerBound(minMass);
+            }
+            previousMinMass = minMass;
+            for (int i = start; i < masses.length && masses[i] <= maxMass; i++) {
+                if (siteBit == 0 || (sites[i] & siteBit) != 0) {
+                    matchConsumer.accept(query, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the bit of the given site.
+     *
+     * @param site the site, an amino acid one letter code, "N-term" or "C-term"
+     * @return the site bit
+     * @throws IllegalArgumentException if the site is unknown
+     */
+    static int getSiteBit(String site) {
+        return 1 << UnimodUtils.getSiteIndex(site);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "UnimodMassIndex[modifications=%d]", masses.length);
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.compomics.psi_io.unimod;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class UnimodModification {
@@ -13,8 +16,27 @@ public class UnimodModification {
 
     private Double averageMassShift;
 
+    /**
+     * The elemental composition of the mass shift, in the UNIMOD notation (e.g. "H(2) C(2) O").
+     */
+    private String composition;
+
+    private List<String> altNames = new ArrayList<>();
+
     private Map<String, String> affectedAminoAcids = new HashMap<>();
 
+    /**
+     * All specificities, the hidden ones included.
+     */
+    private List<UnimodSpecificity> specificities = new ArrayList<>();
+
+    /**
+     * The element counts, indexed by the element index of the {@link UnimodElementTable}; null if unknown.
+     */
+    private int[] elementCounts;
+
+    private boolean readOnly;
+
     public UnimodModification(Integer accession, String name) {
         this.accession = accession;
         this.name = name;
@@ -25,6 +47,7 @@ public class UnimodModification {
     }
 
     public void setAccession(Integer accession) {
+        checkWritable();
         this.accession = accession;
     }
 
@@ -33,6 +56,7 @@ public class UnimodModification {
     }
 
     public void setName(String name) {
+        checkWritable();
         this.name = name;
     }
 
@@ -41,6 +65,7 @@ public class UnimodModification {
     }
 
     public void setMonoIsotopicMassShift(Double monoIsotopicMassShift) {
+        checkWritable();
         this.monoIsotopicMassShift = monoIsotopicMassShift;
     }
 
@@ -49,14 +74,101 @@ public class UnimodModification {
     }
 
     public void setAverageMassShift(Double averageMassShift) {
+        checkWritable();
         this.averageMassShift = averageMassShift;
     }
 
+    public String getComposition() {
+        return composition;
+    }
+
+    public void setComposition(String composition) {
+        checkWritable();
+        this.composition = composition;
+    }
+
+    public List<String> getAltNames() {
+        return altNames;
+    }
+
+    public void setAltNames(List<String> altNames) {
+        checkWritable();
+        this.altNames = altNames;
+    }
+
     public Map<String, String> getAffectedAminoAcids() {
         return affectedAminoAcids;
     }
 
     public void setAffectedAminoAcids(Map<String, String> affectedAminoAcids) {
+        checkWritable();
         this.affectedAminoAcids = affectedAminoAcids;
     }
+
+    public List<UnimodSpecificity> getSpecificities() {
+        return specificities;
+    }
+
+    public void setSpecificities(List<UnimodSpecificity> specificities) {
+        checkWritable();
+        this.specificities = specificities;
+    }
+
+    /**
+     * Get a copy of the elemental composition of the modification.
+     *
+     * @return the element counts, indexed by the element index of the {@link UnimodElementTable}; null if unknown
+     */
+    public int[] getElementCounts() {
+        return elementCounts == null ? null : elementCounts.clone();
+    }
+
+    public void setElementCounts(int[] elementCounts) {
+        checkWritable();
+        this.elementCounts = elementCounts == null ? null : elementCounts.clone();
+    }
+
+    /**
+     * Get the count of the given element.
+     *
+     * @param element the element index
+     * @return the element count, 0 if the composition is unknown
+     */
+    public int getElementCount(int element) {
+        return elementCounts == null || element >= elementCounts.length ? 0 : elementCounts[element];
+    }
+
+    /**
+     * Add a multiple of the elemental composition of the modification to the given composition, without allocation.
+     *
+     * @param target     the target element counts, updated in place
+     * @param multiplier the number of times to add the composition
+     * @throws IllegalStateException if the composition is unknown
+     */
+    public void addElementCounts(int[] target, int multiplier) {
+        if (elementCounts == null) {
+            throw new IllegalStateException("The composition of " + name + " is unknown");
+        }
+        UnimodElementTable.add(target, elementCounts, multiplier);
+    }
+
+    int[] getElementCountsArray() {
+        return elementCounts;
+    }
+
+    /**
+     * Make this instance read-only, the setters throw an {@link UnsupportedOperationException} afterwards.
+     */
+    void setReadOnly() {
+        affectedAminoAcids = Collections.unmodifiableMap(affectedAminoAcids);
+        altNames = Collections.unmodifiableList(altNames);
+        specificities = Collections.unmodifiableList(specificities);
+        readOnly = true;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The UNIMOD modification is read-only");
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.compomics.psi_io.unimod;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * This class represents the UNIMOD modifications as a struct of arrays, for the mass matching loops: the record IDs,
+ * mass shifts, packed specificity bitsets and element counts are kept in primitive arrays indexed by modification
+ * index (in record ID order), so reading a modification dereferences no boxed values. The accessors take the
+ * modification index, {@link #getModification(int)} gives the {@link UnimodModification} view for the other callers.
+ * <p>
+ * The specificity bitset of a modification has a bit per site (the residues A-Z, N-term and C-term) and
+ * {@link UnimodPosition}, for the not hidden specificities. The table is immutable and can be shared between threads.
+ */
+public class UnimodModificationTable {
+
+    private static final int NUMBER_OF_POSITIONS = UnimodPosition.values().length;
+    /**
+     * The number of longs of a specificity bitset.
+     */
+    private static final int SPECIFICITY_WORDS = (UnimodUtils.NUMBER_OF_SITES * NUMBER_OF_POSITIONS + 63) / 64;
+
+    private final UnimodModification[] modifications;
+    /**
+     * The sorted record IDs.
+     */
+    private final int[] recordIds;
+    private final double[] monoIsotopicMassShifts;
+    private final double[] averageMassShifts;
+    /**
+     * The specificity bitsets, {@link #SPECIFICITY_WORDS} longs per modification.
+     */
+    private final long[] specificities;
+    /**
+     * The element counts, {@link #numberOfElements} per modification.
+     */
+    private final int[] elementCounts;
+    private final int numberOfElements;
+    /**
+     * The modification index by record ID, -1 for an unknown record ID.
+     */
+    private final int[] indexes;
+
+    private UnimodModificationTable(UnimodModification[] modifications, int[] recordIds, double[] monoIsotopicMassShifts, double[] averageMassShifts, long[] specificities, int[] elementCounts, int numberOfElements, int[] indexes) {
+        this.modifications = modifications;
+        this.recordIds = recordIds;
+        this.monoIsotopicMassShifts = monoIsotopicMassShifts;
+        this.averageMassShifts = averageMassShifts;
+        this.specificities = specificities;
+        this.elementCounts = elementCounts;
+        this.numberOfElements = numberOfElements;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Build the table of the given modifications.
+     *
+     * @param modifications the {@link UnimodModification} instances
+     * @param elementTable  the elements table of the compositions, null if there is none
+     * @return the {@link UnimodModificationTable} instance
+     */
+    static UnimodModificationTable build(Collection<UnimodModification> modifications, UnimodElementTable elementTable) {
+        UnimodModification[] sortedModifications = modifications.toArray(new UnimodModification[0]);
+        Arrays.sort(sortedModifications, Comparator.comparing(UnimodModification::getAccession));
+        int n = sortedModifications.length;
+        int numberOfElements = elementTable == null ? 0 : elementTable.size();
+        int[] recordIds = new int[n];
+        double[] monoIsotopicMassShifts = new double[n];
+        double[] averageMassShifts = new double[n];
+        long[] specificities = new long[n * SPECIFICITY_WORDS];
+        int[] elementCounts = new int[n * numberOfElements];
+        for (int i = 0; i < n; i++) {
+            UnimodModification modification = sortedModifications[i];
+            recordIds[i] = modification.getAccession();
+            monoIsotopicMassShifts[i] = modification.getMonoIsotopicMassShift();
+            averageMassShifts[i] = modification.getAverageMassShift();
+            for (UnimodSpecificity specificity : modification.getSpecificities()) {
+                if (!specificity.isHidden()) {
+                    int bit = UnimodUtils.getSiteIndex(specificity.getSite()) * NUMBER_OF_POSITIONS + specificity.getPosition().ordinal();
+                    specificities[i * SPECIFICITY_WORDS + (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            for (int element = 0; element < numberOfElements; element++) {
+                elementCounts[i * numberOfElements + element] = modification.getElementCount(element);
+            }
+        }
+        int[] indexes = new int[n == 0 ? 0 : recordIds[n - 1] + 1];
+        Arrays.fill(indexes, -1);
+        for (int i = 0; i < n; i++) {
+            indexes[recordIds[i]] = i;
+        }
+
+        return new UnimodModificationTable(sortedModifications, recordIds, monoIsotopicMassShifts, averageMassShifts, specificities, elementCounts, numberOfElements, indexes);
+    }
+
+    /**
+     * Get the number of modifications.
+     *
+     * @return the number of modifications
+     */
+    public int size() {
+        return recordIds.length;
+    }
+
+    /**
+     * Get the index of the modification with the given record ID.
+     *
+     * @param recordId the UNIMOD record ID
+     * @return the modification index, -1 if the record ID is unknown
+     */
+    public int indexOf(int recordId) {
+        return recordId < 0 || recordId >= indexes.length ? -1 : indexes[recordId];
+    }
+
+    public int getRecordId(int index) {
+        return recordIds[index];
+    }
+
+    public double getMonoIsotopicMassShift(int index) {
+        return monoIsotopicMassShifts[index];
+    }
+
+    public double getAverageMassShift(int index) {
+        return averageMassShifts[index];
+    }
+
+    /**
+     * Get the {@link UnimodModification} view of the modification at the given index.
+     *
+     * @param index the modification index
+     * @return the {@link UnimodModification} instance
+     */
+    public UnimodModification getModification(int index) {
+        return modifications[index];
+    }
+
+    /**
+     * Check whether the modification at the given index has a (not hidden) specificity for the given residue and
+     * position.
+     *
+     * @param index    the modification index
+     * @param residue  the residue byte (upper case one letter code)
+     * @param position the position
+     * @return whether the modification has the specificity
+     */
+    public boolean hasSpecificity(int index, byte residue, UnimodPosition position) {
+        return residue >= 'A' && residue <= 'Z' && hasBit(index, (residue - 'A') * NUMBER_OF_POSITIONS + position.ordinal());
+    }
+
+    /**
+     * Check whether the modification at the given index has a (not hidden) specificity for the given site and
+     * position.
+     *
+     * @param index    the modification index
+     * @param site     the site, an amino acid one letter code, "N-term" or "C-term"
+     * @param position the position
+     * @return whether the modification has the specificity
+     * @throws IllegalArgumentException if the site is unknown
+     */
+    public boolean hasSpecificity(int index, String site, UnimodPosition position) {
+        return hasBit(index, UnimodUtils.getSiteIndex(site) * NUMBER_OF_POSITIONS + position.ordinal());
+    }
+
+    /**
+     * Get the count of the given element in the composition of the modification at the given index.
+     *
+     * @param index   the modification index
+     * @param element the element index of the {@link UnimodElementTable}
+     * @return the element count
+     */
+    public int getElementCount(int index, int element) {
+        return elementCounts[index * numberOfElements + element];
+    }
+
+    /**
+     * Compute the mono isotopic mass shift of the modification at the given index from its composition and the given
+     * element table, without allocation.
+     *
+     * @param index        the modification index
+     * @param elementTable the element table, for example one with heavy label masses
+     * @return the mono isotopic mass shift
+     */
+    public double getMonoIsotopicMassShift(int index, UnimodElementTable elementTable) {
+        if (elementTable.size() != numberOfElements) {
+            throw new IllegalArgumentException("The element table doesn't match the compositions");
+        }
+        return elementTable.getMonoIsotopicMass(elementCounts, index * numberOfElements, numberOfElements);
+    }
+
+    /**
+     * Add a multiple of the composition of the modification at the given index to the given composition, without
+     * allocation.
+     *
+     * @param index      the modification index
+     * @param target     the target element counts, updated in place
+     * @param multiplier the number of times to add the composition
+     */
+    public void addElementCounts(int index, int[] target, int multiplier) {
+        UnimodUtils.add(target, elementCounts, index * numberOfElements, numberOfElements, multiplier);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "UnimodModificationTable[modifications=%d, elements=%d]", recordIds.length, numberOfElements);
+    }
+
+    private boolean hasBit(int index, int bit) {
+        return (specificities[index * SPECIFICITY_WORDS + (bit >>> 6)] & 1L << bit) != 0;
+    }
+
+}
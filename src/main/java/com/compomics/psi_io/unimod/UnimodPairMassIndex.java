@@ -0,0 +1,314 @@
+package com.compomics.psi_io.unimod;
+
+import java.util.Locale;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * This class represents a mass index of the sums of every pair of UNIMOD modifications, to find the two co-occurring
+ * modifications that explain a mass shift without checking all pairs. The pair sums are kept sorted in a primitive
+ * array, with the pair packed in a parallel int array (the {@link UnimodMassIndex} indexes of both modifications, 16
+ * bits each), so a tolerance window lookup is a binary search. A pair can combine a modification with itself.
+ * <p>
+ * The index is built in parallel: every modification gives a row of pairs that is already sorted (the mass index is),
+ * the rows are merged pairwise. The index is immutable and can be shared between threads.
+ */
+public class UnimodPairMassIndex {
+
+    private static final int MAX_MODIFICATIONS = 1 << 16;
+
+    /**
+     * Filter of the modification pairs to index.
+     */
+    @FunctionalInterface
+    public interface PairFilter {
+
+        /**
+         * Check whether the given pair can co-occur.
+         *
+         * @param first  the mass index index of the first modification
+         * @param second the mass index index of the second modification, larger than or equal to the first one
+         * @return whether to index the pair
+         */
+        boolean accept(int first, int second);
+    }
+
+    /**
+     * The mass index of the single modifications.
+     */
+    private final UnimodMassIndex massIndex;
+    /**
+     * The sorted pair sums.
+     */
+    private final double[] sums;
+    /**
+     * The packed mass index indexes of every pair.
+     */
+    private final int[] pairs;
+
+    private UnimodPairMassIndex(UnimodMassIndex massIndex, double[] sums, int[] pairs) {
+        this.massIndex = massIndex;
+        this.sums = sums;
+        this.pairs = pairs;
+    }
+
+    /**
+     * Build the index of all pairs of the given mass index.
+     *
+     * @param massIndex the {@link UnimodMassIndex} instance
+     * @return the {@link UnimodPairMassIndex} instance
+     */
+    public static UnimodPairMassIndex build(UnimodMassIndex massIndex) {
+        return build(massIndex, null);
+    }
+
+    /**
+     * Build the index of the pairs of the given mass index that pass the given filter.
+     *
+     * @param massIndex  the {@link UnimodMassIndex} instance
+     * @param pairFilter the pair filter, null to index all pairs
+     * @return the {@link UnimodPairMassIndex} instance
+     * @throws IllegalArgumentException if the mass index has too many modifications to pack a pair in an int
+     * @throws IllegalStateException    if there are too many pairs to index
+     */
+    public static UnimodPairMassIndex build(UnimodMassIndex massIndex, PairFilter pairFilter) {
+        int n = massIndex.size();
+        if (n > MAX_MODIFICATIONS) {
+            throw new IllegalArgumentException("Too many modifications to index pairs: " + n);
+        }
+
+        //count the pairs of every row
+        long[] rowCounts = new long[n];
+        IntStream.range(0, n).parallel().forEach(first -> {
+            int count = 0;
+            for (int second = first; second < n; second++) {
+                if (pairFilter == null || pairFilter.accept(first, second)) {
+                    count++;
+                }
+            }
+            rowCounts[first] = count;
+        });
+        int[] offsets = new int[n + 1];
+        long numberOfPairs = 0;
+        for (int first = 0; first < n; first++) {
+            numberOfPairs += rowCounts[first];
+            if (numberOfPairs > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many modification pairs to index");
+            }
+            offsets[first + 1] = (int) numberOfPairs;
+        }
+
+        //fill the rows, they're sorted by sum because the mass index is
+        double[] sums = new double[(int) numberOfPairs];
+        int[] pairs = new int[(int) numberOfPairs];
+        IntStream.range(0, n).parallel().forEach(first -> {
+            int position = offsets[first];
+            double mass = massIndex.getMass(first);
+            for (int second = first; second < n; second++) {
+                if (pairFilter == null || pairFilter.accept(first, second)) {
+                    sums[position] = mass + massIndex.getMass(second);
+                    pairs[position] = first << 16 | second;
+                    position++;
+                }
+            }
+        });
+
+        //merge the rows pairwise
+        double[] sourceSums = sums;
+        int[] sourcePairs = pairs;
+        double[] targetSums = new double[sums.length];
+        int[] targetPairs = new int[pairs.length];
+        for (int width = 1; width < n; width *= 2) {
+            int rowWidth = width;
+            double[] fromSums = sourceSums;
+            int[] fromPairs = sourcePairs;
+            double[] toSums = targetSums;
+            int[] toPairs = targetPairs;
+            IntStream.range(0, (n + 2 * width - 1) / (2 * width)).parallel().forEach(merge -> {
+                int low = merge * 2 * rowWidth;
+                int middle = Math.min(low + rowWidth, n);
+                int high = Math.min(low + 2 * rowWidth, n);
+                merge(fromSums, fromPairs, offsets[low], offsets[middle], offsets[high], toSums, toPairs);
+            });
+            sourceSums = toSums;
+            sourcePairs = toPairs;
+            targetSums = fromSums;
+            targetPairs = fromPairs;
+        }
+
+        return new UnimodPairMassIndex(massIndex, sourceSums, sourcePairs);
+    }
+
+    /**
+     * Get a filter that only accepts the pairs of modifications with a (not hidden) site, that aren't both restricted
+     * to the same peptide terminus.
+     *
+     * @param massIndex the {@link UnimodMassIndex} instance
+     * @return the {@link PairFilter} instance
+     */
+    public static PairFilter siteCompatible(UnimodMassIndex massIndex) {
+        return (first, second) -> {
+            int firstSites = massIndex.getSites(first);
+            int secondSites = massIndex.getSites(second);
+            if (firstSites == 0 || secondSites == 0) {
+                return false;
+            }
+            return !(firstSites == secondSites && (firstSites == UnimodMassIndex.N_TERM_SITE || firstSites == UnimodMassIndex.C_TERM_SITE));
+        };
+    }
+
+    /**
+     * Get the number of indexed pairs.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return sums.length;
+    }
+
+    public UnimodMassIndex getMassIndex() {
+        return massIndex;
+    }
+
+    /**
+     * Get the mass shift sum of the pair at the given index.
+     *
+     * @param index the pair index
+     * @return the mass shift sum
+     */
+    public double getMass(int index) {
+        return sums[index];
+    }
+
+    /**
+     * Get the mass index index of the first modification of the pair at the given index.
+     *
+     * @param index the pair index
+     * @return the mass index index
+     */
+    public int getFirst(int index) {
+        return pairs[index] >>> 16;
+    }
+
+    /**
+     * Get the mass index index of the second modification of the pair at the given index.
+     *
+     * @param index the pair index
+     * @return the mass index index
+     */
+    public int getSecond(int index) {
+        return pairs[index] & 0xFFFF;
+    }
+
+    /**
+     * Get the UNIMOD record ID of the first modification of the pair at the given index.
+     *
+     * @param index the pair index
+     * @return the record ID
+     */
+    public int getFirstRecordId(int index) {
+        return massIndex.getRecordId(getFirst(index));
+    }
+
+    /**
+     * Get the UNIMOD record ID of the second modification of the pair at the given index.
+     *
+     * @param index the pair index
+     * @return the record ID
+     */
+    public int getSecondRecordId(int index) {
+        return massIndex.getRecordId(getSecond(index));
+    }
+
+    /**
+     * Get the index of the first pair with a mass shift sum larger than or equal to the given mass.
+     *
+     * @param mass the mass
+     * @return the pair index, {@link #size()} if there is none
+     */
+    public int lowerBound(double mass) {
+        int low = 0;
+        int high = sums.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sums[middle] < mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the index of the first pair with a mass shift sum larger than the given mass.
+     *
+     * @param mass the mass
+     * @return the pair index, {@link #size()} if there is none
+     */
+    public int upperBound(double mass) {
+        int low = 0;
+        int high = sums.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sums[middle] <= mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pass the index of every pair with a mass shift sum in [minMass, maxMass] to the given consumer, in mass order.
+     *
+     * @param minMass       the minimum mass (inclusive)
+     * @param maxMass       the maximum mass (inclusive)
+     * @param indexConsumer the consumer of the pair indexes
+     */
+    public void forEach(double minMass, double maxMass, IntConsumer indexConsumer) {
+        for (int i = lowerBound(minMass), end = upperBound(maxMass); i < end; i++) {
+            indexConsumer.accept(i);
+        }
+    }
+
+    /**
+     * Pass the index of every pair within the given tolerance of the given mass shift to the given consumer, in mass
+     * order.
+     *
+     * @param massShift     the mass shift
+     * @param tolerance     the mass tolerance
+     * @param ppm           whether the tolerance is in ppm of the precursor mass, otherwise it's in Da
+     * @param precursorMass the precursor mass of a ppm tolerance, ignored for a tolerance in Da
+     * @param indexConsumer the consumer of the pair indexes
+     */
+    public void forEach(double massShift, double tolerance, boolean ppm, double precursorMass, IntConsumer indexConsumer) {
+        double delta = ppm ? precursorMass * tolerance / 1_000_000 : tolerance;
+        forEach(massShift - delta, massShift + delta, indexConsumer);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "UnimodPairMassIndex[modifications=%d, pairs=%d]", massIndex.size(), sums.length);
+    }
+
+    /**
+     * Merge the sorted ranges [low, middle) and [middle, high) of the source arrays into the same range of the target
+     * arrays.
+     */
+    private static void merge(double[] sourceSums, int[] sourcePairs, int low, int middle, int high, double[] targetSums, int[] targetPairs) {
+        int left = low;
+        int right = middle;
+        for (int i = low; i < high; i++) {
+            if (right == high || (left < middle && sourceSums[left] <= sourceSums[right])) {
+                targetSums[i] = sourceSums[left];
+                targetPairs[i] = sourcePairs[left++];
+            } else {
+                targetSums[i] = sourceSums[right];
+                targetPairs[i] = sourcePairs[right++];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.compomics.psi_io.unimod;
+
+/**
+ * This enum holds the positions of a UNIMOD specificity.
+ */
+public enum UnimodPosition {
+
+    ANYWHERE("Anywhere"),
+    ANY_N_TERM("Any N-term"),
+    ANY_C_TERM("Any C-term"),
+    PROTEIN_N_TERM("Protein N-term"),
+    PROTEIN_C_TERM("Protein C-term");
+
+    /**
+     * The position as written in the unimod.xml file.
+     */
+    private final String value;
+
+    UnimodPosition(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Get the position by its unimod.xml value.
+     *
+     * @param value the position value, e.g. "Protein N-term"
+     * @return the {@link UnimodPosition} instance
+     * @throws IllegalArgumentException if the position is unknown
+     */
+    public static UnimodPosition fromValue(String value) {
+        for (UnimodPosition position : values()) {
+            if (position.value.equals(value)) {
+                return position;
+            }
+        }
+        throw new IllegalArgumentException("Unknown UNIMOD position " + value);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.compomics.psi_io.unimod;
+
+/**
+ * This class represents a specificity of a UNIMOD modification: the site (an amino acid one letter code, "N-term" or
+ * "C-term") and position it can occur on, and the neutral losses it can give. Instances are immutable.
+ */
+public class UnimodSpecificity {
+
+    private final String site;
+
+    private final UnimodPosition position;
+
+    private final boolean hidden;
+
+    private final String classification;
+
+    private final int specificityGroup;
+
+    private final double[] neutralLossMonoIsotopicMasses;
+
+    private final double[] neutralLossAverageMasses;
+
+    /**
+     * Create a specificity.
+     *
+     * @param site                          the site
+     * @param position                      the position
+     * @param hidden                        whether the specificity is hidden (rarely used)
+     * @param classification                the classification, e.g. "Post-translational"
+     * @param specificityGroup              the specificity group
+     * @param neutralLossMonoIsotopicMasses the mono isotopic masses of the neutral losses, 0 for no loss
+     * @param neutralLossAverageMasses      the average masses of the neutral losses
+     */
+    public UnimodSpecificity(String site, UnimodPosition position, boolean hidden, String classification, int specificityGroup, double[] neutralLossMonoIsotopicMasses, double[] neutralLossAverageMasses) {
+        if (neutralLossMonoIsotopicMasses.length != neutralLossAverageMasses.length) {
+            throw new IllegalArgumentException("The neutral loss masses differ in length");
+        }
+        this.site = site;
+        this.position = position;
+        this.hidden = hidden;
+        this.classification = classification;
+        this.specificityGroup = specificityGroup;
+        this.neutralLossMonoIsotopicMasses = neutralLossMonoIsotopicMasses.clone();
+        this.neutralLossAverageMasses = neutralLossAverageMasses.clone();
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public UnimodPosition getPosition() {
+        return position;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    public String getClassification() {
+        return classification;
+    }
+
+    public int getSpecificityGroup() {
+        return specificityGroup;
+    }
+
+    public int getNumberOfNeutralLosses() {
+        return neutralLossMonoIsotopicMasses.length;
+    }
+
+    public double getNeutralLossMonoIsotopicMass(int index) {
+        return neutralLossMonoIsotopicMasses[index];
+    }
+
+    public double getNeutralLossAverageMass(int index) {
+        return neutralLossAverageMasses[index];
+    }
+
+    @Override
+    public String toString() {
+        return site + "@" + position.getValue();
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.compomics.psi_io.unimod;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * This class represents a specificity index of the UNIMOD modifications, to generate the candidate modifications of
+ * a residue without scanning all modifications. The sorted record IDs are kept in arrays indexed by site (the residue
+ * byte or a peptide terminus) and {@link UnimodPosition}, every specificity of a modification counts, so a site can
+ * have several positions.
+ * <p>
+ * The lookups return copies of the record IDs, the forEach methods pass them to a consumer without allocation. The
+ * index is immutable and can be shared between threads.
+ */
+public class UnimodSpecificityIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int NUMBER_OF_POSITIONS = UnimodPosition.values().length;
+    /**
+     * The site indexes of the peptide termini, after the residue bytes.
+     */
+    private static final int N_TERM = 128;
+    private static final int C_TERM = 129;
+    private static final int NUMBER_OF_SITES = 130;
+
+    /**
+     * The record IDs of the specificities, by site and position.
+     */
+    private final int[][] recordIds;
+    /**
+     * The record IDs of the modifications that can occur on a residue located at a position, by residue and position.
+     */
+    private final int[][] candidates;
+
+    private UnimodSpecificityIndex(int[][] recordIds, int[][] candidates) {
+        this.recordIds = recordIds;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Build the index of the given modifications.
+     *
+     * @param modifications the {@link UnimodModification} instances
+     * @param includeHidden whether to index the hidden specificities
+     * @return the {@link UnimodSpecificityIndex} instance
+     */
+    public static UnimodSpecificityIndex build(Collection<UnimodModification> modifications, boolean includeHidden) {
+        int[][] recordIds = new int[NUMBER_OF_SITES * NUMBER_OF_POSITIONS][];
+        int[] sizes = new int[recordIds.length];
+        for (UnimodModification modification : modifications) {
+            for (UnimodSpecificity specificity : modification.getSpecificities()) {
+                if (includeHidden || !specificity.isHidden()) {
+                    int key = getSite(specificity.getSite()) * NUMBER_OF_POSITIONS + specificity.getPosition().ordinal();
+                    if (recordIds[key] == null) {
+                        recordIds[key] = new int[4];
+                    } else if (sizes[key] == recordIds[key].length) {
+                        recordIds[key] = Arrays.copyOf(recordIds[key], sizes[key] * 2);
+                    }
+                    recordIds[key][sizes[key]++] = modification.getAccession();
+                }
+            }
+        }
+        for (int key = 0; key < recordIds.length; key++) {
+            recordIds[key] = recordIds[key] == null ? EMPTY : distinct(Arrays.copyOf(recordIds[key], sizes[key]));
+        }
+
+        //the candidates of every residue and position
+        int[][] candidates = new int[N_TERM * NUMBER_OF_POSITIONS][];
+        Arrays.fill(candidates, EMPTY);
+        for (int residue = 'A'; residue <= 'Z'; residue++) {
+            for (UnimodPosition position : UnimodPosition.values()) {
+                int[] residueCandidates = get(recordIds, residue, UnimodPosition.ANYWHERE);
+                if (position == UnimodPosition.PROTEIN_N_TERM) {
+                    residueCandidates = merge(residueCandidates, get(recordIds, residue, UnimodPosition.PROTEIN_N_TERM), get(recordIds, N_TERM, UnimodPosition.PROTEIN_N_TERM));
+                } else if (position == UnimodPosition.PROTEIN_C_TERM) {
+                    residueCandidates = merge(residueCandidates, get(recordIds, residue, UnimodPosition.PROTEIN_C_TERM), get(recordIds, C_TERM, UnimodPosition.PROTEIN_C_TERM));
+                }
+                //a protein terminus is also a peptide terminus
+                if (position == UnimodPosition.ANY_N_TERM || position == UnimodPosition.PROTEIN_N_TERM) {
+                    residueCandidates = merge(residueCandidates, get(recordIds, residue, UnimodPosition.ANY_N_TERM), get(recordIds, N_TERM, UnimodPosition.ANY_N_TERM));
+                } else if (position == UnimodPosition.ANY_C_TERM || position == UnimodPosition.PROTEIN_C_TERM) {
+                    residueCandidates = merge(residueCandidates, get(recordIds, residue, UnimodPosition.ANY_C_TERM), get(recordIds, C_TERM, UnimodPosition.ANY_C_TERM));
+                }
+                candidates[residue * NUMBER_OF_POSITIONS + position.ordinal()] = residueCandidates;
+            }
+        }
+
+        return new UnimodSpecificityIndex(recordIds, candidates);
+    }
+
+    /**
+     * Get the record IDs of the modifications with the given specificity.
+     *
+     * @param site     the site, an amino acid one letter code, "N-term" or "C-term"
+     * @param position the position
+     * @return the sorted record IDs
+     * @throws IllegalArgumentException if the site is unknown
+     */
+    public int[] getRecordIds(String site, UnimodPosition position) {
+        return copy(get(recordIds, getSite(site), position));
+    }
+
+    /**
+     * Get the record IDs of the modifications with a specificity for the given residue and position.
+     *
+     * @param residue  the residue byte (upper case one letter code)
+     * @param position the position
+     * @return the sorted record IDs
+     */
+    public int[] getRecordIds(byte residue, UnimodPosition position) {
+        return residue < 0 ? EMPTY : copy(get(recordIds, residue, position));
+    }
+
+    /**
+     * Get the record IDs of the modifications that can occur on the given residue, located at the given position: the
+     * residue specificities of the position and the ones that apply anywhere, together with the terminus
+     * specificities of the position. A residue at a protein terminus also gets the peptide terminus candidates. For
+     * example the candidates of K at {@link UnimodPosition#PROTEIN_N_TERM} include the K anywhere modifications and
+     * the N-term modifications of both the protein and the peptide N-terminus.
+     *
+     * @param residue  the residue byte (upper case one letter code)
+     * @param position the residue position, {@link UnimodPosition#ANYWHERE} for an internal residue
+     * @return the sorted record IDs
+     */
+    public int[] getCandidates(byte residue, UnimodPosition position) {
+        return residue < 0 ? EMPTY : copy(candidates[residue * NUMBER_OF_POSITIONS + position.ordinal()]);
+    }
+
+    /**
+     * Pass the record IDs of the modifications with a specificity for the given residue and position to the given
+     * consumer, in ascending order.
+     *
+     * @param residue          the residue byte (upper case one letter code)
+     * @param position         the position
+     * @param recordIdConsumer the consumer of the record IDs
+     */
+    public void forEachRecordId(byte residue, UnimodPosition position, IntConsumer recordIdConsumer) {
+        if (residue >= 0) {
+            for (int recordId : get(recordIds, residue, position)) {
+                recordIdConsumer.accept(recordId);
+            }
+        }
+    }
+
+    /**
+     * Pass the record IDs of the candidate modifications of the given residue and position to the given consumer, in
+     * ascending order, see {@link #getCandidates(byte, UnimodPosition)}.
+     *
+     * @param residue          the residue byte (upper case one letter code)
+     * @param position         the residue position, {@link UnimodPosition#ANYWHERE} for an internal residue
+     * @param recordIdConsumer the consumer of the record IDs
+     */
+    public void forEachCandidate(byte residue, UnimodPosition position, IntConsumer recordIdConsumer) {
+        if (residue >= 0) {
+            for (int recordId : candidates[residue * NUMBER_OF_POSITIONS + position.ordinal()]) {
+                recordIdConsumer.accept(recordId);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        int numberOfSpecificities = Arrays.stream(recordIds).mapToInt(ids -> ids.length).sum();
+        return String.format(Locale.US, "UnimodSpecificityIndex[specificities=%d]", numberOfSpecificities);
+    }
+
+    private static int[] get(int[][] recordIds, int site, UnimodPosition position) {
+        return recordIds[site * NUMBER_OF_POSITIONS + position.ordinal()];
+    }
+
+    private static int[] copy(int[] ids) {
+        return ids.length == 0 ? EMPTY : ids.clone();
+    }
+
+    private static int getSite(String site) {
+        int siteIndex = UnimodUtils.getSiteIndex(site);
+        if (siteIndex == UnimodUtils.N_TERM_SITE) {
+            return N_TERM;
+        } else if (siteIndex == UnimodUtils.C_TERM_SITE) {
+            return C_TERM;
+        }
+        return 'A' + siteIndex;
+    }
+
+    /**
+     * Merge the given sorted record IDs, without duplicates.
+     */
+    private static int[] merge(int[]... sortedRecordIds) {
+        int length = 0;
+        for (int[] ids : sortedRecordIds) {
+            length += ids.length;
+        }
+        int[] merged = new int[length];
+        int position = 0;
+        for (int[] ids : sortedRecordIds) {
+            System.arraycopy(ids, 0, merged, position, ids.length);
+            position += ids.length;
+        }
+        return distinct(merged);
+    }
+
+    /**
+     * Sort the given record IDs and remove the duplicates.
+     */
+    private static int[] distinct(int[] ids) {
+        if (ids.length == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(ids);
+        int length = 1;
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] != ids[length - 1]) {
+                ids[length++] = ids[i];
+            }
+        }
+        return length == ids.length ? ids : Arrays.copyOf(ids, length);
+    }
+
+}
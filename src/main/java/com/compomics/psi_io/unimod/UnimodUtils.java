@@ -0,0 +1,81 @@
+package com.compomics.psi_io.unimod;
+
+/**
+ * This utility class provides the site parsing and composition arithmetic shared by the UNIMOD tables and indexes.
+ */
+final class UnimodUtils {
+
+    /**
+     * The site indexes of the peptide termini, after the residues A-Z.
+     */
+    static final int N_TERM_SITE = 26;
+    static final int C_TERM_SITE = 27;
+    static final int NUMBER_OF_SITES = 28;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private UnimodUtils() {
+    }
+
+    /**
+     * Get the index of the given site: 0-25 for the residues A-Z, {@link #N_TERM_SITE} or {@link #C_TERM_SITE} for
+     * the peptide termini.
+     *
+     * @param site the site, an amino acid one letter code, "N-term" or "C-term"
+     * @return the site index
+     * @throws IllegalArgumentException if the site is unknown
+     */
+    static int getSiteIndex(String site) {
+        if (site.length() == 1 && site.charAt(0) >= 'A' && site.charAt(0) <= 'Z') {
+            return site.charAt(0) - 'A';
+        } else if (site.equals("N-term")) {
+            return N_TERM_SITE;
+        } else if (site.equals("C-term")) {
+            return C_TERM_SITE;
+        }
+        throw new IllegalArgumentException("Unknown UNIMOD site " + site);
+    }
+
+    /**
+     * Compute the mass of the composition at the given offset of the element counts array.
+     *
+     * @param elementCounts the element counts, the composition being indexed by element from the offset
+     * @param offset        the offset of the composition
+     * @param length        the number of elements of the composition
+     * @param masses        the element masses
+     * @return the mass
+     */
+    static double getMass(int[] elementCounts, int offset, int length, double[] masses) {
+        if (length > masses.length) {
+            throw new IllegalArgumentException("The composition has more elements than the element table");
+        }
+        double mass = 0;
+        for (int element = 0; element < length; element++) {
+            int count = elementCounts[offset + element];
+            if (count != 0) {
+                mass += count * masses[element];
+            }
+        }
+        return mass;
+    }
+
+    /**
+     * Add a multiple of the composition at the given offset of the element counts array to the target composition.
+     *
+     * @param target        the target element counts, updated in place
+     * @param elementCounts the element counts, the composition being indexed by element from the offset
+     * @param offset        the offset of the composition
+     * @param length        the number of elements of the composition
+     * @param multiplier    the number of times to add the composition, negative to subtract it
+     */
+    static void add(int[] target, int[] elementCounts, int offset, int length, int multiplier) {
+        if (length > target.length) {
+            throw new IllegalArgumentException("The composition has more elements than the target");
+        }
+        for (int element = 0; element < length; element++) {
+            target[element] += elementCounts[offset + element] * multiplier;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.compomics.psi_io.util;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This utility class provides methods for writing files.
+ */
+public final class FileUtils {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FileUtils() {
+    }
+
+    /**
+     * Create a new empty temporary file in the given directory, to be moved in place once it's written. Unlike
+     * {@link Files#createTempFile(Path, String, String)}, which restricts the file to its owner, the file gets the
+     * default permissions of a new file, so the moved file is readable like any other file written in the directory.
+     *
+     * @param directory the directory to create the file in
+     * @param prefix    the file name prefix
+     * @param suffix    the file name suffix
+     * @return the path of the created file
+     * @throws IOException in case of a file creation related problem
+     */
+    public static Path createTempFile(Path directory, String prefix, String suffix) throws IOException {
+        while (true) {
+            Path tempPath = directory.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + suffix);
+            try {
+                return Files.createFile(tempPath);
+            } catch (FileAlreadyExistsException e) {
+                //try another name
+            }
+        }
+    }
+
+}
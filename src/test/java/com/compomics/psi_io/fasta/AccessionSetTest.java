@@ -0,0 +1,51 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class AccessionSetTest {
+
+    @Test
+    public void testAccessionSet() {
+        Random random = new Random(42);
+        Set<String> expected = new HashSet<>();
+        AccessionSet.Builder builder = new AccessionSet.Builder();
+        for (int i = 0; i < 20_000; i++) {
+            //random accessions with duplicates, non ASCII characters and lengths needing a multi byte length prefix
+            StringBuilder accession = new StringBuilder();
+            int length = random.nextInt(10) == 0 ? 100 + random.nextInt(300) : random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                accession.append("ABCOPQ019|_\u00e9\u4e2d".charAt(random.nextInt(13)));
+            }
+            expected.add(accession.toString());
+            builder.add(accession.toString());
+        }
+        AccessionSet accessions = builder.build();
+
+        Assert.assertEquals(expected.size(), accessions.size());
+        Assert.assertEquals(expected, accessions);
+        Assert.assertEquals(accessions, expected);
+        Assert.assertFalse(accessions.contains("not an accession"));
+        Assert.assertFalse(accessions.contains(42));
+
+        //sorted by the UTF-8 bytes, which is the code point order
+        List<String> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, new ArrayList<>(accessions));
+    }
+
+    @Test
+    public void testEmpty() {
+        AccessionSet accessions = new AccessionSet.Builder().build();
+        Assert.assertTrue(accessions.isEmpty());
+        Assert.assertFalse(accessions.contains(""));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        new AccessionSet.Builder().add("P12345").build().add("P54321");
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.compomics.psi_io.fasta;
+
+import com.compomics.psi_io.protein.KmerBloomFilter;
+import com.compomics.psi_io.protein.PeptideBatchMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressedFastaTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String CONTAMINANTS_MD5 = "bd89a1d951d60f4de42ef8d0cef1f1d3";
+
+    private FastaDb fastaDb;
+    private Path fastaPath;
+    private Map<String, String> contaminants;
+    private Path directory;
+    private Path gzipPath;
+    private Path bgzfPath;
+
+    @Before
+    public void setUp() throws Exception {
+        fastaDb = ContaminantsFastaDb.newFastaDb();
+        fastaPath = Paths.get(fastaDb.getFilePath());
+        contaminants = new FastaDbParser().parse(fastaDbs(fastaPath));
+
+        directory = temporaryFolder.getRoot().toPath();
+        byte[] bytes = Files.readAllBytes(fastaPath);
+        gzipPath = directory.resolve("contaminants.fasta.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzipPath))) {
+            outputStream.write(bytes);
+        }
+        //small blocks, so records span several blocks
+        bgzfPath = directory.resolve("contaminants.fasta.bgz");
+        Files.write(bgzfPath, bgzip(bytes, 1000));
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        Assert.assertEquals(Compression.NONE, Compression.of(fastaPath));
+        Assert.assertEquals(Compression.GZIP, Compression.of(gzipPath));
+        Assert.assertEquals(Compression.BGZF, Compression.of(bgzfPath));
+    }
+
+    @Test
+    public void testGetDecompressedSize() throws IOException {
+        long size = Files.size(fastaPath);
+        Assert.assertEquals(size, Compression.getDecompressedSize(fastaPath));
+        Assert.assertEquals(size, Compression.getDecompressedSize(gzipPath));
+        Assert.assertEquals(size, Compression.getDecompressedSize(bgzfPath));
+
+        //the k-mer filter is sized from the decompressed size
+        long numberOfBits = KmerBloomFilter.build(fastaDbs(fastaPath), new FastaDbParser(), 7, 0.01).getNumberOfBits();
+        Assert.assertEquals(numberOfBits, KmerBloomFilter.build(fastaDbs(gzipPath), new FastaDbParser(), 7, 0.01).getNumberOfBits());
+        Assert.assertEquals(numberOfBits, KmerBloomFilter.build(fastaDbs(bgzfPath), new FastaDbParser(), 7, 0.01).getNumberOfBits());
+    }
+
+    @Test
+    public void testUncompressedOnly() throws IOException {
+        //the composer and the peptide mapper read the raw bytes
+        for (Path path : Arrays.asList(gzipPath, bgzfPath)) {
+            try {
+                new FastaDbComposer().compose(fastaDbs(path), directory.resolve("composed.fasta"));
+                Assert.fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            try {
+                new PeptideBatchMapper(Collections.singletonList("PEPTIDE")).map(fastaDbs(path));
+                Assert.fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        for (Path path : Arrays.asList(gzipPath, bgzfPath)) {
+            FastaDbParser fastaDbParser = new FastaDbParser();
+            fastaDbParser.setNumberOfThreads(4);
+            Assert.assertEquals(contaminants, fastaDbParser.parse(fastaDbs(path)));
+            Assert.assertEquals(contaminants.keySet(), fastaDbParser.parseAccessions(fastaDbs(path)).values().iterator().next());
+            fastaDbParser.setNumberOfThreads(1);
+            Assert.assertEquals(contaminants, fastaDbParser.parse(fastaDbs(path)));
+        }
+
+        //the checksum of the file as stored
+        FastaDbParser fastaDbParser = new FastaDbParser();
+        fastaDbParser.setMd5Verification(Md5Verification.FAIL);
+        LinkedHashMap<FastaDb, Path> fastaDbs = fastaDbs(bgzfPath);
+        fastaDbParser.parse(fastaDbs);
+        String md5CheckSum = fastaDbs.keySet().iterator().next().getMd5CheckSum();
+        Assert.assertNotEquals(CONTAMINANTS_MD5, md5CheckSum);
+        fastaDbs.keySet().iterator().next().setMd5CheckSum(md5CheckSum);
+        fastaDbParser.parse(fastaDbs);
+    }
+
+    @Test
+    public void testIndexedFastaReader() throws IOException {
+        try (IndexedFastaReader reader = IndexedFastaReader.open(fastaDb, bgzfPath)) {
+            Assert.assertEquals(Compression.BGZF, reader.getCompression());
+            Assert.assertEquals(contaminants.size(), reader.getNumberOfAccessions());
+            for (Map.Entry<String, String> entry : contaminants.entrySet()) {
+                Assert.assertEquals(entry.getValue(), reader.getSequence(entry.getKey()));
+            }
+            Assert.assertNull(reader.getSequence("UNKNOWN"));
+        }
+        Assert.assertTrue(Files.isRegularFile(BgzfIndex.getIndexPath(bgzfPath)));
+        Assert.assertTrue(Files.isRegularFile(IndexedFastaReader.getIndexPath(bgzfPath)));
+
+        //the stored index is read
+        try (IndexedFastaReader reader = IndexedFastaReader.open(fastaDb, bgzfPath)) {
+            Assert.assertEquals(contaminants.get("P00761"), reader.getSequence("P00761"));
+        }
+
+        Path plainPath = directory.resolve("contaminants.fasta");
+        Files.copy(fastaPath, plainPath);
+        try (IndexedFastaReader reader = IndexedFastaReader.open(fastaDb, plainPath)) {
+            Assert.assertEquals(Compression.NONE, reader.getCompression());
+            for (Map.Entry<String, String> entry : contaminants.entrySet()) {
+                Assert.assertEquals(entry.getValue(), reader.getSequence(entry.getKey()));
+            }
+        }
+
+        try {
+            IndexedFastaReader.open(fastaDb, gzipPath);
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testIndexedFastaReaderEmptyRecords() throws IOException {
+        //an empty record followed by a duplicate accession and an accession with only an empty record
+        byte[] bytes = (">P1 empty\n>P1 duplicate\nMKTAYIAK\nQR\n>P2 empty\n\n>P3\r\nPEPTIDE\r\n>P1 second duplicate\nLLL\n>P4 last\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        Path plainPath = directory.resolve("empty.fasta");
+        Files.write(plainPath, bytes);
+        Path emptyBgzfPath = directory.resolve("empty.fasta.bgz");
+        Files.write(emptyBgzfPath, bgzip(bytes, 7));
+        Map<String, String> sequences = new FastaDbParser().parse(fastaDbs(plainPath));
+        Assert.assertEquals("MKTAYIAKQR", sequences.get("P1"));
+        Assert.assertFalse(sequences.containsKey("P2"));
+
+        for (Path path : Arrays.asList(plainPath, emptyBgzfPath)) {
+            try (IndexedFastaReader reader = IndexedFastaReader.open(fastaDb, path)) {
+                Assert.assertEquals(sequences.size(), reader.getNumberOfAccessions());
+                for (String accession : Arrays.asList("P1", "P2", "P3", "P4")) {
+                    Assert.assertEquals(sequences.containsKey(accession), reader.contains(accession));
+                    Assert.assertEquals(sequences.get(accession), reader.getSequence(accession));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBgzfIndex() throws IOException {
+        BgzfIndex bgzfIndex = BgzfIndex.build(bgzfPath);
+        Path indexPath = BgzfIndex.getIndexPath(bgzfPath);
+        bgzfIndex.write(indexPath);
+        BgzfIndex readIndex = BgzfIndex.read(indexPath);
+        Assert.assertEquals(bgzfIndex.getNumberOfBlocks(), readIndex.getNumberOfBlocks());
+
+        byte[] bytes = Files.readAllBytes(fastaPath);
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(bgzfPath)) {
+            for (long offset : new long[]{0, 999, 1000, 1500, bytes.length - 10}) {
+                long virtualOffset = readIndex.getVirtualOffset(offset);
+                Assert.assertEquals(bgzfIndex.getVirtualOffset(offset), virtualOffset);
+                Assert.assertArrayEquals(Arrays.copyOfRange(bytes, (int) offset, (int) offset + 10), BgzfIndex.readBytes(channel, virtualOffset, 10));
+            }
+            Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 2500, 7500), BgzfIndex.readBytes(channel, readIndex.getVirtualOffset(2500), 5000));
+        }
+    }
+
+    private LinkedHashMap<FastaDb, Path> fastaDbs(Path path) {
+        FastaDb pathFastaDb = new FastaDb();
+        pathFastaDb.setHeaderParseRule("&gt;([^ ]*)");
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(pathFastaDb, path);
+        return fastaDbs;
+    }
+
+    /**
+     * Compress the given bytes in BGZF blocks of the given decompressed size, followed by the empty end of file block.
+     */
+    private static byte[] bgzip(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (int offset = 0; offset <= bytes.length; offset += blockSize) {
+            int length = Math.min(blockSize, bytes.length - offset);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+            byte[] compressed = new byte[length + 1024];
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, offset, length);
+            int totalSize = 18 + compressedLength + 8;
+            outputStream.write(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0, (byte) (totalSize - 1), (byte) ((totalSize - 1) >>> 8)});
+            outputStream.write(compressed, 0, compressedLength);
+            writeInt(outputStream, (int) crc.getValue());
+            writeInt(outputStream, length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void writeInt(OutputStream outputStream, int value) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            outputStream.write(value >>> (8 * i));
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.compomics.psi_io.fasta;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+
+public final class ContaminantsFastaDb {
+
+    public static final String HEADER_PARSE_RULE = "&gt;([^ ]*)";
+
+    private ContaminantsFastaDb() {
+    }
+
+    /**
+     * Create a {@link FastaDb} of the contaminants.fasta test resource.
+     *
+     * @return the {@link FastaDb} instance, with the file path and header parse rule set
+     * @throws IOException in case the resource can't be resolved to a file
+     */
+    public static FastaDb newFastaDb() throws IOException {
+        FastaDb fastaDb = new FastaDb();
+        fastaDb.setFilePath(new ClassPathResource("data" + File.separator + "contaminants.fasta").getFile().getPath());
+        fastaDb.setHeaderParseRule(HEADER_PARSE_RULE);
+        return fastaDb;
+    }
+
+    /**
+     * Create the FASTA DB files map of a new contaminants {@link FastaDb}.
+     *
+     * @return the FASTA DB files map
+     * @throws IOException in case the resource can't be resolved to a file
+     */
+    public static LinkedHashMap<FastaDb, Path> newFastaDbs() throws IOException {
+        return fastaDbs(newFastaDb());
+    }
+
+    /**
+     * Create the FASTA DB files map of the given contaminants {@link FastaDb}.
+     *
+     * @param fastaDb the {@link FastaDb} instance
+     * @return the FASTA DB files map
+     */
+    public static LinkedHashMap<FastaDb, Path> fastaDbs(FastaDb fastaDb) {
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(fastaDb, Paths.get(fastaDb.getFilePath()));
+        return fastaDbs;
+    }
+
+}
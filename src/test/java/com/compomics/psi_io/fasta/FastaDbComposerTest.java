@@ -0,0 +1,103 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+public class FastaDbComposerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FastaDb contaminantsFastaDb;
+    private Path contaminantsPath;
+    private Map<String, String> contaminants;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        contaminantsFastaDb = ContaminantsFastaDb.newFastaDb();
+        contaminantsPath = Paths.get(contaminantsFastaDb.getFilePath());
+        contaminants = new FastaDbParser().parse(ContaminantsFastaDb.fastaDbs(contaminantsFastaDb));
+
+        directory = temporaryFolder.getRoot().toPath();
+    }
+
+    @Test
+    public void testCompose() throws IOException {
+        //a target FASTA with a duplicate accession, a duplicate sequence, a new protein and CRLF line endings without
+        //a final line terminator
+        String duplicateSequence = contaminants.get("P00761");
+        Path targetPath = directory.resolve("target.fasta");
+        Files.write(targetPath, (">P00761 duplicate accession\r\nMKKK\r\n>NEW1 duplicate sequence\r\n" + duplicateSequence + "\r\n>NEW2 new protein\r\nMKAPEPTIDE\r\nRR").getBytes(StandardCharsets.UTF_8));
+        FastaDb targetFastaDb = new FastaDb();
+        targetFastaDb.setHeaderParseRule("&gt;([^ ]*)");
+
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(contaminantsFastaDb, contaminantsPath);
+        fastaDbs.put(targetFastaDb, targetPath);
+        Path outputPath = directory.resolve("composed.fasta");
+        FastaDbComposer composer = new FastaDbComposer();
+        composer.setDecoyType(FastaDbComposer.DecoyType.REVERSE);
+        FastaDbComposer.Summary summary = composer.compose(fastaDbs, outputPath);
+
+        Assert.assertEquals(contaminants.size() + 3, summary.getNumberOfRecords());
+        Assert.assertEquals(1, summary.getNumberOfDuplicateAccessions());
+        Assert.assertEquals(1 + (contaminants.size() - new HashSet<>(contaminants.values()).size()), summary.getNumberOfDuplicateSequences());
+        Assert.assertEquals(summary.getNumberOfTargets(), summary.getNumberOfDecoys());
+
+        //the target records are copied as is
+        String composed = new String(Files.readAllBytes(outputPath), StandardCharsets.UTF_8);
+        Assert.assertTrue(composed.contains(">NEW2 new protein\r\nMKAPEPTIDE\r\nRR\n>DECOY_"));
+
+        FastaDb composedFastaDb = new FastaDb();
+        composedFastaDb.setHeaderParseRule("&gt;([^ ]*)");
+        LinkedHashMap<FastaDb, Path> composedFastaDbs = new LinkedHashMap<>();
+        composedFastaDbs.put(composedFastaDb, outputPath);
+        Map<String, String> proteinSequences = new FastaDbParser().parse(composedFastaDbs);
+        Assert.assertEquals(summary.getNumberOfTargets() + summary.getNumberOfDecoys(), proteinSequences.size());
+        Assert.assertEquals(duplicateSequence, proteinSequences.get("P00761"));
+        Assert.assertFalse(proteinSequences.containsKey("NEW1"));
+        Assert.assertEquals("MKAPEPTIDERR", proteinSequences.get("NEW2"));
+        Assert.assertEquals("RREDITPEPAKM", proteinSequences.get("DECOY_NEW2"));
+        Assert.assertEquals(new StringBuilder(duplicateSequence).reverse().toString(), proteinSequences.get("DECOY_P00761"));
+    }
+
+    @Test
+    public void testShuffledDecoys() throws IOException {
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(contaminantsFastaDb, contaminantsPath);
+        FastaDbComposer composer = new FastaDbComposer();
+        composer.setDecoyType(FastaDbComposer.DecoyType.SHUFFLE);
+        composer.setRemoveDuplicateSequences(false);
+        composer.setDecoyPrefix("REV_");
+        Path firstPath = directory.resolve("first.fasta");
+        Path secondPath = directory.resolve("second.fasta");
+        composer.compose(fastaDbs, firstPath);
+        composer.compose(fastaDbs, secondPath);
+        //the same seed gives the same decoys
+        Assert.assertArrayEquals(Files.readAllBytes(firstPath), Files.readAllBytes(secondPath));
+
+        LinkedHashMap<FastaDb, Path> composedFastaDbs = new LinkedHashMap<>();
+        composedFastaDbs.put(contaminantsFastaDb, firstPath);
+        Map<String, String> proteinSequences = new FastaDbParser().parse(composedFastaDbs);
+        Assert.assertEquals(contaminants.size() * 2, proteinSequences.size());
+        for (Map.Entry<String, String> entry : contaminants.entrySet()) {
+            char[] target = entry.getValue().toCharArray();
+            char[] decoy = proteinSequences.get("REV_" + entry.getKey()).toCharArray();
+            Arrays.sort(target);
+            Arrays.sort(decoy);
+            Assert.assertArrayEquals(target, decoy);
+        }
+    }
+
+}
@@ -7,6 +7,8 @@ import org.springframework.core.io.ClassPathResource;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -16,6 +18,8 @@ import java.util.*;
  */
 public class FastaDbParserTest {
 
+    private static final String CONTAMINANTS_MD5 = "bd89a1d951d60f4de42ef8d0cef1f1d3";
+
     private FastaDb testFastaDb;
     private FastaDb contaminantsFastaDb;
 
@@ -106,6 +110,32 @@ public class FastaDbParserTest {
         Assert.assertTrue(parsedFastas.get(contaminantsFastaDb).contains("P19013"));
     }
 
+    @Test
+    public void testParseAccessionsWithLineEndings() throws IOException {
+        //CRLF and CR line endings, a block separator within a sequence line, a header spanning several scan buffers,
+        //empty lines and a last header without line ending
+        StringBuilder longHeader = new StringBuilder(">sp|LONG|");
+        for (int i = 0; i < 300_000; i++) {
+            longHeader.append("long");
+        }
+        String fasta = ">sp|P1|A\r\nPEPTIDE>K\r\n\r\n>sp|P2|B\rMK\r>tr|P3|C\n" + longHeader + "\nMK\n\n>sp|P4|\u00e9\nMK\n>sp|P5|E";
+        Path fastaPath = Files.createTempFile("line_endings", ".fasta");
+        try {
+            Files.write(fastaPath, fasta.getBytes(StandardCharsets.UTF_8));
+            FastaDb fastaDb = new FastaDb();
+            fastaDb.setHeaderParseRule("&gt;.*\\|(.*)\\|");
+            LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+            fastaDbs.put(fastaDb, fastaPath);
+
+            Set<String> accessions = fastaDbParser.parseAccessions(fastaDbs).get(fastaDb);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("P1", "P2", "P3", "LONG", "P4", "P5")), new HashSet<>(accessions));
+            Assert.assertTrue(accessions.contains("LONG"));
+            Assert.assertFalse(accessions.contains("K"));
+        } finally {
+            Files.deleteIfExists(fastaPath);
+        }
+    }
+
     @Test
     public void testTestParseRule() throws IOException {
         //test with parse rule
@@ -130,4 +160,33 @@ public class FastaDbParserTest {
         Assert.assertEquals("P00761", headerKeys.get(0));
         Assert.assertEquals("P13717", headerKeys.get(9));
     }
+
+    @Test
+    public void testParseWithMd5Verification() throws IOException {
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(contaminantsFastaDb, Paths.get(contaminantsFastaDb.getFilePath()));
+        fastaDbParser.setMd5Verification(Md5Verification.FAIL);
+
+        //the missing checksum is filled in
+        Assert.assertNull(contaminantsFastaDb.getMd5CheckSum());
+        Assert.assertEquals(245, fastaDbParser.parseAccessions(fastaDbs).get(contaminantsFastaDb).size());
+        Assert.assertEquals(CONTAMINANTS_MD5, contaminantsFastaDb.getMd5CheckSum());
+
+        //the filled in checksum matches
+        Assert.assertEquals(245, fastaDbParser.parse(fastaDbs).size());
+
+        //a mismatch only logs a warning
+        contaminantsFastaDb.setMd5CheckSum("0123456789abcdef0123456789abcdef");
+        fastaDbParser.setMd5Verification(Md5Verification.WARN);
+        Assert.assertEquals(245, fastaDbParser.parse(fastaDbs).size());
+
+        //a mismatch fails
+        fastaDbParser.setMd5Verification(Md5Verification.FAIL);
+        try {
+            fastaDbParser.parseAccessions(fastaDbs);
+            Assert.fail("The checksum mismatch should have been detected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains(CONTAMINANTS_MD5));
+        }
+    }
 }
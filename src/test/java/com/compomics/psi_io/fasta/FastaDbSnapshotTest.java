@@ -0,0 +1,65 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class FastaDbSnapshotTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FastaDb contaminantsFastaDb;
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+    private Path snapshotDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        contaminantsFastaDb = ContaminantsFastaDb.newFastaDb();
+        contaminantsFastaDb.setName("test contaminants fasta");
+        contaminantsFastaDb.setFileName("contaminants.fasta");
+        contaminantsFastaDb.setMd5CheckSum("0123456789ABCDEF0123456789ABCDEF");
+
+        fastaDbs = ContaminantsFastaDb.fastaDbs(contaminantsFastaDb);
+
+        snapshotDirectory = temporaryFolder.getRoot().toPath();
+    }
+
+    @Test
+    public void testParseWithSnapshot() throws IOException {
+        Map<String, String> parsedFastas = new FastaDbParser().parse(fastaDbs);
+
+        //the first parse writes the snapshot
+        FastaDbParser fastaDbParser = new FastaDbParser(snapshotDirectory);
+        Assert.assertEquals(parsedFastas, fastaDbParser.parse(fastaDbs));
+        FastaDbSnapshot snapshot = new FastaDbSnapshot(snapshotDirectory, contaminantsFastaDb.getMd5CheckSum(), HeaderParseRule.compile(contaminantsFastaDb.getHeaderParseRule()));
+        Assert.assertTrue(snapshot.exists());
+
+        //the second parse reads it
+        Assert.assertEquals(parsedFastas, new FastaDbParser(snapshotDirectory).parse(fastaDbs));
+        Set<String> accessions = new FastaDbParser().parseAccessions(fastaDbs).get(contaminantsFastaDb);
+        Assert.assertEquals(accessions, new FastaDbParser(snapshotDirectory).parseAccessions(fastaDbs).get(contaminantsFastaDb));
+        Assert.assertEquals(accessions, snapshot.readAccessions());
+    }
+
+    @Test
+    public void testParseWithInvalidSnapshot() throws IOException {
+        FastaDbSnapshot snapshot = new FastaDbSnapshot(snapshotDirectory, contaminantsFastaDb.getMd5CheckSum(), HeaderParseRule.compile(contaminantsFastaDb.getHeaderParseRule()));
+        Files.write(snapshot.getSnapshotPath(), new byte[]{1, 2, 3});
+
+        //the invalid snapshot is ignored
+        Map<String, String> parsedFastas = new FastaDbParser(snapshotDirectory).parse(fastaDbs);
+        Assert.assertEquals(245, parsedFastas.size());
+        Assert.assertEquals(245, new FastaDbParser(snapshotDirectory).parseAccessions(fastaDbs).get(contaminantsFastaDb).size());
+    }
+
+}
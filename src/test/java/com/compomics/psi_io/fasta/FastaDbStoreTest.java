@@ -0,0 +1,109 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class FastaDbStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+    private Path storeDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        fastaDbs = ContaminantsFastaDb.newFastaDbs();
+
+        storeDirectory = temporaryFolder.getRoot().toPath();
+    }
+
+    @Test
+    public void testParseOffHeap() throws Exception {
+        FastaDbParser fastaDbParser = new FastaDbParser();
+        Map<String, String> proteinSequences = fastaDbParser.parse(fastaDbs);
+        Path storePath = storeDirectory.resolve("contaminants.store");
+        try (FastaDbStore store = fastaDbParser.parseOffHeap(fastaDbs, storePath)) {
+            Assert.assertEquals(proteinSequences.size(), store.size());
+            Assert.assertEquals(proteinSequences, store);
+            Assert.assertEquals(store, proteinSequences);
+            Assert.assertNull(store.get("not an accession"));
+            Assert.assertFalse(store.containsKey(42));
+        }
+
+        //reopen the store and read it concurrently
+        try (FastaDbStore store = FastaDbStore.open(storePath)) {
+            List<String> accessions = new ArrayList<>(proteinSequences.keySet());
+            ExecutorService executorService = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    int seed = i;
+                    futures.add(executorService.submit(() -> {
+                        Random random = new Random(seed);
+                        for (int j = 0; j < 10_000; j++) {
+                            String accession = accessions.get(random.nextInt(accessions.size()));
+                            if (!proteinSequences.get(accession).equals(store.get(accession))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    Assert.assertTrue(future.get());
+                }
+            } finally {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateAccessions() throws IOException {
+        List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            records.add(new String[]{"P" + i, "PEPTIDE" + (i % 7 == 0 ? "" : "K")});
+        }
+        //duplicates keep the first sequence
+        records.add(new String[]{"P1", "DUPLICATE"});
+        records.add(new String[]{"P49999", "DUPLICATE"});
+        records.add(new String[]{"sp|\u00e9|", "MK"});
+
+        try (FastaDbStore store = FastaDbStore.build(storeDirectory.resolve("records.store"), recordConsumer -> records.forEach(record -> recordConsumer.accept(record[0], record[1])))) {
+            Assert.assertEquals(records.size(), store.getNumberOfRecords());
+            Assert.assertEquals(50_001, store.getNumberOfEntries());
+            Assert.assertEquals("PEPTIDEK", store.get("P1"));
+            Assert.assertEquals("PEPTIDE", store.get("P49994"));
+            Assert.assertEquals("MK", store.get("sp|\u00e9|"));
+            for (int i = 0; i < 50_000; i++) {
+                Assert.assertTrue(store.containsKey("P" + i));
+            }
+
+            //iteration is in file order without the duplicates
+            Iterator<Map.Entry<String, String>> iterator = store.entrySet().iterator();
+            Assert.assertEquals("P0", iterator.next().getKey());
+            Assert.assertEquals("P1", iterator.next().getKey());
+            Assert.assertEquals(50_001, store.keySet().size());
+            Assert.assertEquals(50_001, new HashSet<>(store.keySet()).size());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws IOException {
+        try (FastaDbStore store = new FastaDbParser().parseOffHeap(fastaDbs, storeDirectory.resolve("contaminants.store"))) {
+            store.put("P12345", "PEPTIDE");
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class HeaderFilterTest {
+
+    private static final String FASTA = ">sp|P31946|1433B_HUMAN 14-3-3 protein beta/alpha OS=Homo sapiens OX=9606 GN=YWHAB PE=1 SV=3\n"
+            + "MTMDKSELVQKAKLAEQAERYDDMAAAMKAVTE\n"
+            + "QGHELSNEERNLLSVAYKNVVGARRSSWRVISSIEQK\n"
+            + ">sp|P62258|1433E_MOUSE 14-3-3 protein epsilon OS=Mus musculus OX=10090 GN=Ywhae PE=1 SV=1\n"
+            + "MDDREDLVYQAKLAEQAERYDEMVESMKKVAGMDVELTVEERNLLSVAYKNVIGARRASWRIISSIEQKEENKGGEDKLKMIREYRQMVETELKLICCDILDVLDKHLIPAANTGESKVFYYKMKGDYHRYLAEFATGNDRKEAAENSLVAYKAASDIAMTELPPTHPIRLGLALNFSVFYYEILNSPDRACRLAKAAFDDAIAELDTLSEESYKDSTLIMQLLRDNLTLWTSDMQGDGEEQNKEALQDVEDENQ\n"
+            + ">tr|A0A024R161|A0A024R161_HUMAN Guanine nucleotide-binding protein subunit gamma OS=Homo sapiens OX=9606 GN=DNAJC25-GNG10 PE=3 SV=1\n"
+            + "MGAPLLSPGWGAGAAGRRWWMLLAPLLPALLLVRPAGALVEGLYCGTRDCYEVLGVSRSAGKAEIARAYRQLARRYHPDRYRPQPGDEGPGRTPQSAEEAFLLVATAYETLKVSQAAAELQQYCMQNACKDALLVGVPAGSNPFREPRSCALL\n"
+            + ">P02768 no UniProt fields\n"
+            + "MKWVTFISLLFLFSSAYS\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path fastaPath;
+    private FastaDb fastaDb;
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+
+    @Before
+    public void setUp() throws Exception {
+        fastaPath = temporaryFolder.newFile("uniprot.fasta").toPath();
+        Files.write(fastaPath, FASTA.getBytes(StandardCharsets.UTF_8));
+        fastaDb = new FastaDb();
+        fastaDb.setHeaderParseRule("&gt;[^|]*\\|([^|]*)\\|");
+        fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(fastaDb, fastaPath);
+    }
+
+    @Test
+    public void testUniProtHeader() {
+        UniProtHeader header = new UniProtHeader(">sp|P31946|1433B_HUMAN 14-3-3 protein beta/alpha OS=Homo sapiens OX=9606 GN=YWHAB PE=1 SV=3");
+        Assert.assertEquals("Homo sapiens", header.getOrganismName());
+        Assert.assertEquals(Integer.valueOf(9606), header.getTaxonomyId());
+        Assert.assertEquals("YWHAB", header.getGeneName());
+        Assert.assertEquals(Integer.valueOf(1), header.getProteinExistence());
+        Assert.assertEquals(Integer.valueOf(3), header.getSequenceVersion());
+
+        header = new UniProtHeader("P02768 no UniProt fields");
+        Assert.assertNull(header.getOrganismName());
+        Assert.assertNull(header.getTaxonomyId());
+        Assert.assertNull(header.getGeneName());
+        Assert.assertNull(header.getProteinExistence());
+        Assert.assertNull(header.getSequenceVersion());
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        FastaDbParser fastaDbParser = new FastaDbParser();
+        Assert.assertEquals(4, fastaDbParser.parse(fastaDbs).size());
+
+        //the FASTA DB taxonomy
+        fastaDb.setTaxonomyID(9606);
+        fastaDbParser.setHeaderFilter(HeaderFilter.fastaDbTaxonomy());
+        Map<String, String> proteinSequences = fastaDbParser.parse(fastaDbs);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P31946", "A0A024R161")), proteinSequences.keySet());
+        Assert.assertEquals("MTMDKSELVQKAKLAEQAERYDDMAAAMKAVTEQGHELSNEERNLLSVAYKNVVGARRSSWRVISSIEQK", proteinSequences.get("P31946"));
+        Assert.assertEquals(proteinSequences.keySet(), fastaDbParser.parseAccessions(fastaDbs).get(fastaDb));
+
+        //combined filters
+        fastaDbParser.setHeaderFilter(HeaderFilter.fastaDbTaxonomy().and(HeaderFilter.proteinExistenceAtMost(2)));
+        Assert.assertEquals(Collections.singleton("P31946"), fastaDbParser.parse(fastaDbs).keySet());
+        Assert.assertEquals(Collections.singleton("P31946"), fastaDbParser.parseAccessions(fastaDbs).get(fastaDb));
+
+        fastaDbParser.setHeaderFilter(HeaderFilter.geneNameIn(Arrays.asList("Ywhae", "DNAJC25-GNG10")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P62258", "A0A024R161")), fastaDbParser.parse(fastaDbs).keySet());
+
+        //streaming
+        fastaDbParser.setHeaderFilter(HeaderFilter.taxonomyIn(Collections.singleton(10090)));
+        List<String> accessions = new ArrayList<>();
+        fastaDbParser.parse(fastaDbs, (accession, sequence) -> accessions.add(accession));
+        Assert.assertEquals(Collections.singletonList("P62258"), accessions);
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.compomics.psi_io.fasta;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * JMH benchmark of the header parse rule scanners versus the regular expressions they replace, over the bundled
+ * contaminants FASTA and a synthetic UniProt style FASTA. Run with the test classpath, for example from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HeaderParseRuleBenchmark {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Param({"contaminants", "uniprot"})
+    private String fasta;
+
+    private List<String> headers;
+    private HeaderParseRule headerParseRule;
+    private Pattern pattern;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path fastaPath;
+        String parseRule;
+        if (fasta.equals("contaminants")) {
+            fastaPath = new ClassPathResource("data/contaminants.fasta").getFile().toPath();
+            parseRule = "&gt;([^ ]*)";
+        } else {
+            fastaPath = writeUniProtFasta(20000);
+            parseRule = "&gt;.*\\|(.*)\\|";
+        }
+        headers = Files.lines(fastaPath)
+                .filter(line -> line.startsWith(">"))
+                .map(line -> line.substring(1))
+                .collect(Collectors.toList());
+        headerParseRule = HeaderParseRule.compile(parseRule);
+        pattern = Pattern.compile(parseRule);
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (String header : headers) {
+            blackhole.consume(headerParseRule.parseAccession(header));
+        }
+    }
+
+    @Benchmark
+    public void pattern(Blackhole blackhole) {
+        for (String header : headers) {
+            Matcher matcher = pattern.matcher(header);
+            if (matcher.find()) {
+                blackhole.consume(matcher.group(1));
+            } else {
+                blackhole.consume(header.split(" ")[0]);
+            }
+        }
+    }
+
+    /**
+     * Write a synthetic UniProt style FASTA file to a temporary location.
+     *
+     * @param numberOfProteins the number of proteins
+     * @return the FASTA path
+     * @throws IOException in case of a file writing related problem
+     */
+    static Path writeUniProtFasta(int numberOfProteins) throws IOException {
+        Path fastaPath = Files.createTempFile("uniprot", ".fasta");
+        fastaPath.toFile().deleteOnExit();
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(fastaPath)) {
+            for (int i = 0; i < numberOfProteins; i++) {
+                String accession = String.format("P%05d", i);
+                writer.write(">sp|" + accession + "|PROT" + i + "_HUMAN Synthetic protein " + i
+                        + " OS=Homo sapiens OX=9606 GN=GENE" + i + " PE=" + (1 + random.nextInt(5)) + " SV=1");
+                writer.newLine();
+                int length = 50 + random.nextInt(700);
+                StringBuilder sequence = new StringBuilder(length);
+                for (int j = 0; j < length; j++) {
+                    sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                    if (sequence.length() == 60) {
+                        writer.write(sequence.toString());
+                        writer.newLine();
+                        sequence.setLength(0);
+                    }
+                }
+                if (sequence.length() > 0) {
+                    writer.write(sequence.toString());
+                    writer.newLine();
+                }
+            }
+        }
+
+        return fastaPath;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HeaderParseRuleBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
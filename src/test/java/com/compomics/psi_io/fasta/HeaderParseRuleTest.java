@@ -0,0 +1,52 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class HeaderParseRuleTest {
+
+    private static final String[] RULES = {">([^ ]*)", "&gt;([^ ]*)", "([^ ]*)", ">.*\\|(.*)\\|", "&gt;.*\\|(.*)\\|",
+            ".*\\|(.*)\\|", "\\|([^|]*)\\|", "UniProt;>.*\\|(.*)\\|", "(\\w+)_HUMAN"};
+
+    private static final String[] HEADERS = {"sp|P13746|1A11_HUMAN HLA class I histocompatibility antigen OS=Homo sapiens",
+            "P00761 SWISS-PROT:P00761|TRYP_PIG Trypsin - Sus scrofa (Pig).", "tr|A0A024R161|A0A024R161_HUMAN a|b c",
+            "REFSEQ:XP_585019 ", "P12345", "", "x>y|z| w", "a &gt;b|c|", "a|b\u2028c|d|", "|only one pipe", "\u00cf|\u00e9|\u00fc \u2206"};
+
+    /**
+     * Test whether the common rules are compiled into scanners.
+     */
+    @Test
+    public void testCompile() {
+        Assert.assertSame(HeaderParseRule.NONE, HeaderParseRule.compile(null));
+        Assert.assertSame(HeaderParseRule.NONE, HeaderParseRule.compile("none"));
+        Assert.assertSame(HeaderParseRule.compile(">([^ ]*)"), HeaderParseRule.compile(">([^ ]*)"));
+        Assert.assertTrue(HeaderParseRule.compile("&gt;.*\\|(.*)\\|").isScanner());
+        Assert.assertTrue(HeaderParseRule.compile("UniProt;>.*\\|(.*)\\|").isScanner());
+        Assert.assertFalse(HeaderParseRule.compile("(\\w+)_HUMAN").isScanner());
+    }
+
+    /**
+     * Test the scanners against the regular expression behaviour.
+     */
+    @Test
+    public void testParseAccession() {
+        for (String rule : RULES) {
+            HeaderParseRule headerParseRule = HeaderParseRule.compile(rule);
+            Pattern pattern = Pattern.compile(headerParseRule.getRegex());
+            for (String header : HEADERS) {
+                Matcher matcher = pattern.matcher(header);
+                String expected = matcher.find() ? matcher.group(1) : header.split(" ").length == 0 ? "" : header.split(" ")[0];
+                byte[] bytes = ("xx" + header + "yy").getBytes(StandardCharsets.UTF_8);
+                int length = bytes.length - 4;
+
+                Assert.assertEquals(rule + " " + header, expected, headerParseRule.parseAccession(header));
+                Assert.assertEquals(rule + " " + header, expected, headerParseRule.parseAccession(bytes, 2, length));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.compomics.psi_io.fasta;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+public class SequenceStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FastaDb contaminantsFastaDb;
+    private Path contaminantsPath;
+    private Map<String, String> contaminants;
+    private Path isoformsPath;
+
+    @Before
+    public void setUp() throws Exception {
+        contaminantsFastaDb = ContaminantsFastaDb.newFastaDb();
+        contaminantsPath = Paths.get(contaminantsFastaDb.getFilePath());
+        contaminants = new FastaDbParser().parse(ContaminantsFastaDb.fastaDbs(contaminantsFastaDb));
+
+        isoformsPath = temporaryFolder.newFile("isoforms.fasta").toPath();
+    }
+
+    @Test
+    public void testAdd() {
+        FastaDb fastaDb = new FastaDb();
+        SequenceStore sequenceStore = new SequenceStore();
+        String sequence = "MKAPEPTIDER";
+        Assert.assertSame(sequence, sequenceStore.add(fastaDb, "P1", sequence));
+        Assert.assertSame(sequence, sequenceStore.add(fastaDb, "P2", new String(sequence.toCharArray())));
+        Assert.assertSame(sequence, sequenceStore.getSequence("P2"));
+        //enough sequences to grow the table
+        for (int i = 0; i < 5000; i++) {
+            sequenceStore.add(fastaDb, "Q" + i, "MK" + i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals("MK" + i, sequenceStore.getSequence("Q" + i));
+            Assert.assertEquals(Collections.singletonList("Q" + i), sequenceStore.getEntry("MK" + i).getAccessions());
+        }
+        Assert.assertEquals(Arrays.asList("P1", "P2"), sequenceStore.getEntry(sequence).getAccessions());
+        Assert.assertNull(sequenceStore.getEntry("MKAPEPTIDEK"));
+        Assert.assertEquals(5001, sequenceStore.getNumberOfSequences());
+        Assert.assertEquals(5002, sequenceStore.getNumberOfRecords());
+    }
+
+    @Test
+    public void testParseDeduplicated() throws IOException {
+        //an isoforms FASTA with a sequence of the contaminants and a duplicate sequence
+        String sharedSequence = contaminants.get("P00761");
+        Files.write(isoformsPath, (">ISO1 shared\n" + sharedSequence + "\n>ISO2\nMKAPEPTIDER\n>ISO3\nMKAPEPTIDER\n>P00761 duplicate accession\nMKKK\n").getBytes(StandardCharsets.UTF_8));
+        FastaDb isoformsFastaDb = new FastaDb();
+        isoformsFastaDb.setHeaderParseRule("&gt;([^ ]*)");
+
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(contaminantsFastaDb, contaminantsPath);
+        fastaDbs.put(isoformsFastaDb, isoformsPath);
+        SequenceStore sequenceStore = new FastaDbParser().parseDeduplicated(fastaDbs);
+
+        Map<String, String> proteinSequences = new FastaDbParser().parse(fastaDbs);
+        Assert.assertEquals(proteinSequences, sequenceStore.getProteinSequences());
+        Assert.assertSame(sequenceStore.getSequence("P00761"), sequenceStore.getSequence("ISO1"));
+        Assert.assertEquals(new HashSet<>(proteinSequences.values()).size() + 1, sequenceStore.getNumberOfSequences());
+
+        SequenceStore.Entry entry = sequenceStore.getEntry(sharedSequence);
+        Assert.assertEquals(Arrays.asList("P00761", "ISO1"), entry.getAccessions());
+        Assert.assertEquals(Arrays.asList(contaminantsFastaDb, isoformsFastaDb), entry.getFastaDbs());
+
+        LinkedHashMap<FastaDb, SequenceStore.DuplicateStatistics> statistics = sequenceStore.getDuplicateStatistics();
+        Assert.assertEquals(Arrays.asList(contaminantsFastaDb, isoformsFastaDb), new ArrayList<>(statistics.keySet()));
+        SequenceStore.DuplicateStatistics contaminantsStatistics = statistics.get(contaminantsFastaDb);
+        Assert.assertEquals(contaminants.size(), contaminantsStatistics.getNumberOfRecords());
+        Assert.assertEquals(contaminants.size() - new HashSet<>(contaminants.values()).size(), contaminantsStatistics.getNumberOfDuplicateRecords());
+        Assert.assertEquals(1, contaminantsStatistics.getNumberOfSharedSequences());
+        SequenceStore.DuplicateStatistics isoformsStatistics = statistics.get(isoformsFastaDb);
+        Assert.assertEquals(4, isoformsStatistics.getNumberOfRecords());
+        Assert.assertEquals(3, isoformsStatistics.getNumberOfSequences());
+        Assert.assertEquals(1, isoformsStatistics.getNumberOfDuplicateRecords());
+        Assert.assertEquals(1, isoformsStatistics.getNumberOfSharedSequences());
+    }
+
+}
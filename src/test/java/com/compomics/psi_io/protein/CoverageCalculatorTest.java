@@ -0,0 +1,104 @@
+package com.compomics.psi_io.protein;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class CoverageCalculatorTest {
+
+    @Test
+    public void testCalculate() {
+        CoverageCalculator coverageCalculator = new CoverageCalculator();
+        //MKAPEPTIDERAAPEPTIDEK
+        List<PeptideMatch> matches = Arrays.asList(
+                new PeptideMatch("P1", 3, 10, 'K', 'A'),
+                new PeptideMatch("P1", 5, 11, 'E', 'A'),
+                new PeptideMatch("P1", 14, 21, 'A', PeptideMatch.TERMINUS)
+        );
+        CoverageCalculator.Coverage coverage = coverageCalculator.calculate(21, matches);
+        Assert.assertEquals(17, coverage.getNumberOfCoveredResidues());
+        Assert.assertEquals(17.0 / 21, coverage.getCoverage(), 0.0001);
+        Assert.assertEquals(2, coverage.getNumberOfRegions());
+        Assert.assertEquals(3, coverage.getRegionStart(0));
+        Assert.assertEquals(11, coverage.getRegionEnd(0));
+        Assert.assertEquals(14, coverage.getRegionStart(1));
+        Assert.assertEquals(21, coverage.getRegionEnd(1));
+        Assert.assertEquals(0, coverage.getDepth(2));
+        Assert.assertEquals(1, coverage.getDepth(3));
+        Assert.assertEquals(2, coverage.getDepth(5));
+        Assert.assertEquals(2, coverage.getDepth(10));
+        Assert.assertEquals(1, coverage.getDepth(11));
+        Assert.assertEquals(1, coverage.getDepth(21));
+
+        //the reused bitset is cleared
+        coverage = coverageCalculator.calculate(21, Collections.singletonList(new PeptideMatch("P1", 1, 2, PeptideMatch.TERMINUS, 'A')));
+        Assert.assertEquals(2, coverage.getNumberOfCoveredResidues());
+        Assert.assertEquals(1, coverage.getNumberOfRegions());
+
+        coverage = coverageCalculator.calculate(0, Collections.emptyList());
+        Assert.assertEquals(0, coverage.getCoverage(), 0);
+        Assert.assertEquals(0, coverage.getNumberOfRegions());
+
+        try {
+            coverageCalculator.calculate(10, matches);
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testCalculateBatch() {
+        //enough proteins for several batches, with lengths around the word boundaries
+        Random random = new Random(42);
+        Map<String, String> proteinSequences = new HashMap<>();
+        List<PeptideMatch> matches = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String accession = "P" + i;
+            int length = 1 + random.nextInt(300);
+            char[] sequence = new char[length];
+            Arrays.fill(sequence, 'A');
+            proteinSequences.put(accession, new String(sequence));
+            for (int j = random.nextInt(10); j > 0; j--) {
+                int start = 1 + random.nextInt(length);
+                int end = Math.min(length, start + random.nextInt(30));
+                matches.add(new PeptideMatch(accession, start, end, 'A', 'A'));
+            }
+        }
+        CoverageCalculator coverageCalculator = new CoverageCalculator();
+        coverageCalculator.setNumberOfThreads(4);
+        Map<String, CoverageCalculator.Coverage> coverages = coverageCalculator.calculate(proteinSequences, matches);
+
+        Map<String, int[]> expectedDepths = new HashMap<>();
+        for (PeptideMatch match : matches) {
+            int[] depth = expectedDepths.computeIfAbsent(match.getAccession(), accession -> new int[proteinSequences.get(accession).length()]);
+            for (int i = match.getStart() - 1; i < match.getEnd(); i++) {
+                depth[i]++;
+            }
+        }
+        Assert.assertEquals(expectedDepths.keySet(), coverages.keySet());
+        for (Map.Entry<String, int[]> entry : expectedDepths.entrySet()) {
+            CoverageCalculator.Coverage coverage = coverages.get(entry.getKey());
+            int[] depth = entry.getValue();
+            int covered = 0;
+            int regions = 0;
+            for (int i = 0; i < depth.length; i++) {
+                Assert.assertEquals(depth[i], coverage.getDepth(i + 1));
+                if (depth[i] > 0) {
+                    covered++;
+                    if (i == 0 || depth[i - 1] == 0) {
+                        Assert.assertEquals(i + 1, coverage.getRegionStart(regions));
+                        regions++;
+                    }
+                    if (i == depth.length - 1 || depth[i + 1] == 0) {
+                        Assert.assertEquals(i + 1, coverage.getRegionEnd(regions - 1));
+                    }
+                }
+            }
+            Assert.assertEquals(covered, coverage.getNumberOfCoveredResidues());
+            Assert.assertEquals(regions, coverage.getNumberOfRegions());
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.ContaminantsFastaDb;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import com.compomics.psi_io.unimod.UnimodMarshaller;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+
+public class InSilicoDigesterTest {
+
+    private UnimodMarshaller unimodMarshaller;
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+        fastaDbs = ContaminantsFastaDb.newFastaDbs();
+    }
+
+    @Test
+    public void testDigest() {
+        InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN);
+        digester.setMinLength(1);
+        digester.setMaxMissedCleavages(0);
+        Assert.assertEquals(Arrays.asList("MK", "APEPTIDEKPR", "AAC"), digest(digester, "MKAPEPTIDEKPRAAC"));
+
+        digester.setMaxMissedCleavages(1);
+        Assert.assertEquals(Arrays.asList("MK", "MKAPEPTIDEKPR", "APEPTIDEKPR", "APEPTIDEKPRAAC", "AAC"), digest(digester, "MKAPEPTIDEKPRAAC"));
+
+        //mono isotopic masses
+        Assert.assertEquals(799.359964, digester.getMass("PEPTIDE"), 0.00001);
+        Assert.assertTrue(Double.isNaN(digester.getMass("PEPTXDE")));
+        double mass = digester.getMass("AAC");
+        digester.addFixedModification("Carbamidomethyl", "C");
+        Assert.assertEquals(mass + 57.021464, digester.getMass("AAC"), 0.00001);
+        digester.addFixedModification(737, "N-term");
+        Assert.assertEquals(mass + 57.021464 + 229.162932, digester.getMass("AAC"), 0.00001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownModification() {
+        new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN).addFixedModification("NotAModification", "C");
+    }
+
+    @Test
+    public void testDigestAgainstBruteForce() {
+        Random random = new Random(42);
+        String residues = "ACDEFGHIKLMNPQRSTVWYKRKRX";
+        for (Enzyme enzyme : new Enzyme[]{Enzyme.TRYPSIN, Enzyme.ASP_N}) {
+            for (InSilicoDigester.Specificity specificity : InSilicoDigester.Specificity.values()) {
+                InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, enzyme);
+                digester.setSpecificity(specificity);
+                digester.setMinLength(3);
+                digester.setMaxLength(12);
+                digester.setMaxMissedCleavages(1);
+                digester.setMinMass(400);
+                for (int i = 0; i < 50; i++) {
+                    StringBuilder sequence = new StringBuilder();
+                    for (int j = random.nextInt(80); j > 0; j--) {
+                        sequence.append(residues.charAt(random.nextInt(residues.length())));
+                    }
+                    Set<String> expected = bruteForce(digester, sequence.toString());
+                    Set<String> actual = new HashSet<>();
+                    digester.digest(sequence.toString(), (start, end, missedCleavages, mass) -> {
+                        Assert.assertEquals(digester.getMass(sequence.substring(start, end)), mass, 0.000001);
+                        Assert.assertTrue(actual.add(start + "-" + end + ":" + missedCleavages));
+                    });
+                    Assert.assertEquals(sequence.toString(), expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        FastaDbParser fastaDbParser = new FastaDbParser();
+        Map<String, String> proteinSequences = fastaDbParser.parse(fastaDbs);
+        InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN);
+        digester.addFixedModification("Carbamidomethyl", "C");
+        digester.setMaxMass(4000);
+        PeptideMassIndex index = digester.index(fastaDbs, fastaDbParser);
+
+        Assert.assertEquals(proteinSequences.size(), index.getNumberOfProteins());
+        int[] numberOfPeptides = new int[1];
+        proteinSequences.values().forEach(sequence -> digester.digest(sequence, (start, end, missedCleavages, mass) -> numberOfPeptides[0]++));
+        Assert.assertEquals(numberOfPeptides[0], index.size());
+        for (int i = 0; i < index.size(); i++) {
+            if (i > 0) {
+                Assert.assertTrue(index.getMass(i - 1) <= index.getMass(i));
+            }
+            PeptideMatch peptideMatch = index.getPeptideMatch(i);
+            Assert.assertEquals(index.getSequence(i), proteinSequences.get(index.getAccession(i)).substring(peptideMatch.getStart() - 1, peptideMatch.getEnd()));
+            Assert.assertEquals(digester.getMass(index.getSequence(i)), index.getMass(i), 0.000001);
+        }
+
+        //range lookup against a linear scan
+        double precursorMass = index.getMass(index.size() / 2);
+        List<Integer> found = new ArrayList<>();
+        index.forEach(precursorMass, 10, true, found::add);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            if (Math.abs(index.getMass(i) - precursorMass) <= precursorMass * 10 / 1_000_000) {
+                expected.add(i);
+            }
+        }
+        Assert.assertFalse(found.isEmpty());
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testIndexWithoutSequences() throws Exception {
+        FastaDbParser fastaDbParser = new FastaDbParser();
+        Map<String, String> proteinSequences = fastaDbParser.parse(fastaDbs);
+        InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN);
+        PeptideMassIndex index = digester.index(fastaDbs, fastaDbParser);
+        PeptideMassIndex positionIndex = digester.index(fastaDbs, fastaDbParser, false);
+        Assert.assertTrue(index.hasSequences());
+        Assert.assertFalse(positionIndex.hasSequences());
+
+        //the peptides are resolved against the parsed sequences
+        Assert.assertEquals(index.size(), positionIndex.size());
+        for (int i = 0; i < positionIndex.size(); i++) {
+            Assert.assertEquals(index.getMass(i), positionIndex.getMass(i), 0.0);
+            String sequence = proteinSequences.get(positionIndex.getAccession(i)).substring(positionIndex.getStart(i), positionIndex.getEnd(i));
+            Assert.assertEquals(digester.getMass(sequence), positionIndex.getMass(i), 0.000001);
+        }
+
+        try {
+            positionIndex.getSequence(0);
+            Assert.fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private static List<String> digest(InSilicoDigester digester, String sequence) {
+        List<String> peptides = new ArrayList<>();
+        digester.digest(sequence, (start, end, missedCleavages, mass) -> peptides.add(sequence.substring(start, end)));
+        return peptides;
+    }
+
+    private static Set<String> bruteForce(InSilicoDigester digester, String sequence) {
+        int n = sequence.length();
+        boolean[] boundaries = new boolean[n + 1];
+        boundaries[0] = true;
+        boundaries[n] = true;
+        for (int i = 1; i < n; i++) {
+            boundaries[i] = digester.getEnzyme().isCleavageSite(sequence, i);
+        }
+        Set<String> peptides = new HashSet<>();
+        for (int start = 0; start < n; start++) {
+            for (int end = start + digester.getMinLength(); end <= Math.min(n, start + digester.getMaxLength()); end++) {
+                boolean specific = digester.getSpecificity() == InSilicoDigester.Specificity.FULL ? boundaries[start] && boundaries[end] : boundaries[start] || boundaries[end];
+                int missedCleavages = 0;
+                for (int i = start + 1; i < end; i++) {
+                    missedCleavages += boundaries[i] ? 1 : 0;
+                }
+                double mass = digester.getMass(sequence.substring(start, end));
+                if (specific && missedCleavages <= digester.getMaxMissedCleavages() && !Double.isNaN(mass) && mass >= digester.getMinMass() && mass <= digester.getMaxMass()) {
+                    peptides.add(start + "-" + end + ":" + missedCleavages);
+                }
+            }
+        }
+        return peptides;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.ContaminantsFastaDb;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+public class KmerBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    private FastaDb fastaDb;
+    private Path fastaPath;
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+    private Map<String, String> proteinSequences;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        fastaDb = ContaminantsFastaDb.newFastaDb();
+        fastaPath = Paths.get(fastaDb.getFilePath());
+        fastaDbs = ContaminantsFastaDb.fastaDbs(fastaDb);
+        proteinSequences = new FastaDbParser().parse(fastaDbs);
+
+        directory = temporaryFolder.getRoot().toPath();
+    }
+
+    @Test
+    public void testMightContain() throws IOException {
+        KmerBloomFilter filter = KmerBloomFilter.build(fastaDbs, new FastaDbParser(), 7, 0.01);
+        Assert.assertEquals(7, filter.getK());
+
+        //no false negatives
+        Random random = new Random(42);
+        for (String sequence : proteinSequences.values()) {
+            for (int i = 0; i < 10 && sequence.length() > 7; i++) {
+                int start = random.nextInt(sequence.length() - 7);
+                int end = Math.min(sequence.length(), start + 7 + random.nextInt(20));
+                Assert.assertTrue(filter.mightContain(sequence.substring(start, end)));
+                Assert.assertTrue(filter.mightContain(sequence.substring(start, end).toLowerCase(Locale.US)));
+            }
+        }
+        //peptides that can't be checked
+        Assert.assertTrue(filter.mightContain("PEPTID"));
+        Assert.assertTrue(filter.mightContain("PEPTI*DEK"));
+
+        //the false positive rate of random 7-mers
+        int falsePositives = 0;
+        char[] peptide = new char[7];
+        for (int i = 0; i < 10000; i++) {
+            for (int j = 0; j < peptide.length; j++) {
+                peptide[j] = RESIDUES.charAt(random.nextInt(RESIDUES.length()));
+            }
+            String sequence = new String(peptide);
+            if (filter.mightContain(sequence) && proteinSequences.values().stream().noneMatch(protein -> protein.contains(sequence))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 100);
+    }
+
+    @Test
+    public void testLoadOrBuild() throws IOException {
+        Path copyPath = directory.resolve("contaminants.fasta");
+        Files.copy(fastaPath, copyPath);
+        KmerBloomFilter filter = KmerBloomFilter.loadOrBuild(fastaDb, copyPath, new FastaDbParser(), 9, 0.001);
+        Path filterPath = KmerBloomFilter.getFilterPath(copyPath, 9, 0.001);
+        Assert.assertTrue(Files.isRegularFile(filterPath));
+
+        //the stored filter is reused
+        KmerBloomFilter readFilter = KmerBloomFilter.loadOrBuild(fastaDb, copyPath, new FastaDbParser(), 9, 0.001);
+        Assert.assertEquals(filter.getNumberOfBits(), readFilter.getNumberOfBits());
+        Assert.assertEquals(filter.getNumberOfHashes(), readFilter.getNumberOfHashes());
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder peptide = new StringBuilder();
+            for (int j = 0; j < 9; j++) {
+                peptide.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+            }
+            Assert.assertEquals(filter.mightContain(peptide), readFilter.mightContain(peptide));
+        }
+
+        Files.write(filterPath, new byte[]{1, 2, 3});
+        Assert.assertEquals(filter.getNumberOfBits(), KmerBloomFilter.loadOrBuild(fastaDb, copyPath, new FastaDbParser(), 9, 0.001).getNumberOfBits());
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.ContaminantsFastaDb;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class PeptideBatchMapperTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LinkedHashMap<FastaDb, Path> fastaDbs;
+    private Map<String, String> proteinSequences;
+
+    @Before
+    public void setUp() throws Exception {
+        fastaDbs = ContaminantsFastaDb.newFastaDbs();
+
+        proteinSequences = new FastaDbParser().parse(fastaDbs);
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        Set<String> peptides = getRandomPeptides();
+        ProteinSequenceIndex index = new ProteinSequenceIndex(proteinSequences, false);
+        PeptideBatchMapper peptideBatchMapper = new PeptideBatchMapper(peptides);
+        Assert.assertEquals(peptides.size(), peptideBatchMapper.getNumberOfPeptides());
+        for (int numberOfThreads : new int[]{1, 4}) {
+            peptideBatchMapper.setNumberOfThreads(numberOfThreads);
+            Map<String, List<PeptideMatch>> matches = peptideBatchMapper.map(fastaDbs);
+
+            Assert.assertFalse(matches.containsKey("WWWWWWWWWW"));
+            for (String peptide : peptides) {
+                Assert.assertEquals(peptide, new HashSet<>(index.getMatches(peptide)), new HashSet<>(matches.getOrDefault(peptide, Collections.emptyList())));
+            }
+        }
+    }
+
+    @Test
+    public void testMapCarriageReturns() throws IOException {
+        //a copy of the FASTA file with bare carriage return line endings
+        Path fastaPath = fastaDbs.values().iterator().next();
+        Path carriageReturnPath = temporaryFolder.getRoot().toPath().resolve("contaminants_cr.fasta");
+        Files.write(carriageReturnPath, new String(Files.readAllBytes(fastaPath), StandardCharsets.US_ASCII).replace("\r\n", "\r").replace('\n', '\r').getBytes(StandardCharsets.US_ASCII));
+        LinkedHashMap<FastaDb, Path> carriageReturnFastaDbs = new LinkedHashMap<>();
+        carriageReturnFastaDbs.put(fastaDbs.keySet().iterator().next(), carriageReturnPath);
+
+        PeptideBatchMapper peptideBatchMapper = new PeptideBatchMapper(getRandomPeptides());
+        for (int numberOfThreads : new int[]{1, 4}) {
+            peptideBatchMapper.setNumberOfThreads(numberOfThreads);
+            Map<String, List<PeptideMatch>> matches = peptideBatchMapper.map(fastaDbs);
+            Map<String, List<PeptideMatch>> carriageReturnMatches = peptideBatchMapper.map(carriageReturnFastaDbs);
+            Assert.assertFalse(matches.isEmpty());
+            Assert.assertEquals(matches.keySet(), carriageReturnMatches.keySet());
+            for (Map.Entry<String, List<PeptideMatch>> entry : matches.entrySet()) {
+                Assert.assertEquals(new HashSet<>(entry.getValue()), new HashSet<>(carriageReturnMatches.get(entry.getKey())));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPeptide() {
+        new PeptideBatchMapper(Collections.singletonList("PEPtIDE"));
+    }
+
+    /**
+     * Take random peptides from the sequences and add a few absent ones.
+     */
+    private Set<String> getRandomPeptides() {
+        Random random = new Random(42);
+        List<String> sequences = new ArrayList<>(proteinSequences.values());
+        Set<String> peptides = new HashSet<>(Arrays.asList("WWWWWWWWWW", "K", "KR"));
+        for (int i = 0; i < 500; i++) {
+            String sequence = sequences.get(random.nextInt(sequences.size()));
+            int start = random.nextInt(sequence.length() - 6);
+            peptides.add(sequence.substring(start, start + 4 + random.nextInt(Math.min(20, sequence.length() - start - 4) + 1)));
+        }
+        return peptides;
+    }
+
+}
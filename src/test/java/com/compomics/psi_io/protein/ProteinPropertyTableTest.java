@@ -0,0 +1,101 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.ContaminantsFastaDb;
+import com.compomics.psi_io.fasta.FastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import com.compomics.psi_io.unimod.UnimodMarshaller;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+public class ProteinPropertyTableTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private UnimodMarshaller unimodMarshaller;
+    private FastaDb fastaDb;
+    private Path fastaPath;
+    private Path snapshotDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+        fastaDb = ContaminantsFastaDb.newFastaDb();
+        fastaDb.setMd5CheckSum("bd89a1d951d60f4de42ef8d0cef1f1d3");
+        fastaPath = Paths.get(fastaDb.getFilePath());
+        snapshotDirectory = temporaryFolder.getRoot().toPath();
+    }
+
+    @Test
+    public void testCompute() {
+        InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN);
+        digester.setMinLength(1);
+        digester.setMaxMissedCleavages(0);
+        Map<String, String> proteinSequences = new HashMap<>();
+        proteinSequences.put("P1", "PEPTIDE");
+        proteinSequences.put("P2", "MKAPEPTIDEKPRAAC");
+        proteinSequences.put("P3", "PEPTXDE");
+        proteinSequences.put("P4", "KKRKHK");
+        ProteinPropertyTable table = ProteinPropertyTable.compute(proteinSequences, unimodMarshaller, digester);
+
+        Assert.assertEquals(4, table.size());
+        Assert.assertEquals(-1, table.indexOf("P5"));
+        int index = table.indexOf("P1");
+        Assert.assertEquals("P1", table.getAccession(index));
+        Assert.assertEquals(7, table.getLength(index));
+        Assert.assertEquals(799.359964, table.getMonoIsotopicMass(index), 0.00001);
+        Assert.assertEquals(799.8238, table.getAverageMass(index), 0.01);
+        Assert.assertTrue(table.getIsoelectricPoint(index) < 4);
+        Assert.assertEquals(1, table.getNumberOfPeptides(index));
+
+        index = table.indexOf("P2");
+        Assert.assertEquals(digester.getMass("MKAPEPTIDEKPRAAC"), table.getMonoIsotopicMass(index), 0.00001);
+        Assert.assertEquals(3, table.getNumberOfPeptides(index));
+        Assert.assertTrue(Double.isNaN(table.getMonoIsotopicMass(table.indexOf("P3"))));
+        Assert.assertTrue(table.getIsoelectricPoint(table.indexOf("P4")) > 10);
+    }
+
+    @Test
+    public void testLoadOrCompute() throws IOException {
+        FastaDbParser fastaDbParser = new FastaDbParser(snapshotDirectory);
+        InSilicoDigester digester = new InSilicoDigester(unimodMarshaller, Enzyme.TRYPSIN);
+        ProteinPropertyTable table = ProteinPropertyTable.loadOrCompute(fastaDb, fastaPath, fastaDbParser, unimodMarshaller, digester);
+        Path tablePath = fastaDbParser.getSnapshot(fastaDb).getCompanionPath(".proteins");
+        Assert.assertTrue(Files.isRegularFile(tablePath));
+
+        LinkedHashMap<FastaDb, Path> fastaDbs = new LinkedHashMap<>();
+        fastaDbs.put(fastaDb, fastaPath);
+        Map<String, String> proteinSequences = new FastaDbParser().parse(fastaDbs);
+        Assert.assertEquals(proteinSequences.size(), table.size());
+
+        //the stored table is read
+        ProteinPropertyTable readTable = ProteinPropertyTable.read(tablePath);
+        Assert.assertEquals(table.size(), readTable.size());
+        for (String accession : proteinSequences.keySet()) {
+            int index = table.indexOf(accession);
+            int readIndex = readTable.indexOf(accession);
+            Assert.assertEquals(proteinSequences.get(accession).length(), readTable.getLength(readIndex));
+            Assert.assertEquals(table.getMonoIsotopicMass(index), readTable.getMonoIsotopicMass(readIndex), 0);
+            Assert.assertEquals(table.getAverageMass(index), readTable.getAverageMass(readIndex), 0);
+            Assert.assertEquals(table.getIsoelectricPoint(index), readTable.getIsoelectricPoint(readIndex), 0);
+            Assert.assertEquals(table.getNumberOfPeptides(index), readTable.getNumberOfPeptides(readIndex));
+        }
+        Assert.assertEquals(table.getNumberOfPeptides(0), ProteinPropertyTable.loadOrCompute(fastaDb, fastaPath, fastaDbParser, unimodMarshaller, digester).getNumberOfPeptides(0));
+
+        //other digestion settings
+        digester.setMaxMissedCleavages(0);
+        ProteinPropertyTable otherTable = ProteinPropertyTable.loadOrCompute(fastaDb, fastaPath, fastaDbParser, unimodMarshaller, digester);
+        int index = otherTable.indexOf("P00761");
+        Assert.assertTrue(otherTable.getNumberOfPeptides(index) < table.getNumberOfPeptides(table.indexOf("P00761")));
+    }
+
+}
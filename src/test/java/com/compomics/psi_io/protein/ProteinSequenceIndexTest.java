@@ -0,0 +1,92 @@
+package com.compomics.psi_io.protein;
+
+import com.compomics.psi_io.fasta.ContaminantsFastaDb;
+import com.compomics.psi_io.fasta.FastaDbParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class ProteinSequenceIndexTest {
+
+    private Map<String, String> proteinSequences;
+
+    @Before
+    public void setUp() throws Exception {
+        proteinSequences = new FastaDbParser().parse(ContaminantsFastaDb.newFastaDbs());
+    }
+
+    @Test
+    public void testSuffixArray() {
+        Random random = new Random(1);
+        for (int n = 0; n < 300; n++) {
+            int length = n;
+            int[] text = new int[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = random.nextInt(length % 4 + 1);
+            }
+            Integer[] expected = new Integer[length];
+            for (int i = 0; i < length; i++) {
+                expected[i] = i;
+            }
+            Arrays.sort(expected, (l, r) -> {
+                for (int i = l, j = r; i < length && j < length; i++, j++) {
+                    if (text[i] != text[j]) {
+                        return Integer.compare(text[i], text[j]);
+                    }
+                }
+                return Integer.compare(r, l);
+            });
+            Assert.assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), SuffixArrays.build(text, 3));
+        }
+    }
+
+    @Test
+    public void testGetMatches() {
+        Map<String, String> sequences = new LinkedHashMap<>();
+        sequences.put("P1", "MKPEPTIDEKR");
+        sequences.put("P2", "PEPTIDE");
+        sequences.put("P3", "AAPEPTLDEK");
+
+        ProteinSequenceIndex index = new ProteinSequenceIndex(sequences, false);
+        Assert.assertEquals(Arrays.asList(new PeptideMatch("P1", 3, 9, 'K', 'K'), new PeptideMatch("P2", 1, 7, '-', '-')), index.getMatches("PEPTIDE"));
+        Assert.assertEquals(2, index.count("PEPTIDE"));
+        Assert.assertEquals(Collections.singletonList(new PeptideMatch("P1", 10, 11, 'E', '-')), index.getMatches("KR"));
+        //peptides don't span proteins
+        Assert.assertTrue(index.getMatches("KRPEP").isEmpty());
+        Assert.assertTrue(index.getMatches("XYZ").isEmpty());
+        Assert.assertTrue(index.getMatches("").isEmpty());
+
+        //I/L-equivalent mode
+        index = new ProteinSequenceIndex(sequences, true);
+        Assert.assertEquals(3, index.getMatches("PEPTLDE").size());
+        Assert.assertEquals(new PeptideMatch("P3", 3, 9, 'A', 'K'), index.getMatches("PEPTIDE").get(2));
+    }
+
+    @Test
+    public void testGetMatchesFasta() {
+        ProteinSequenceIndex index = new ProteinSequenceIndex(proteinSequences, false);
+        Assert.assertEquals(proteinSequences.size(), index.getNumberOfProteins());
+
+        //compare with a linear scan for peptides taken from the sequences
+        Random random = new Random(42);
+        List<String> sequences = new ArrayList<>(proteinSequences.values());
+        for (int i = 0; i < 200; i++) {
+            String sequence = sequences.get(random.nextInt(sequences.size()));
+            int start = random.nextInt(sequence.length() - 6);
+            String peptide = sequence.substring(start, start + 6 + random.nextInt(Math.min(10, sequence.length() - start - 6) + 1));
+
+            Set<PeptideMatch> expected = new HashSet<>();
+            for (Map.Entry<String, String> entry : proteinSequences.entrySet()) {
+                String proteinSequence = entry.getValue();
+                for (int position = proteinSequence.indexOf(peptide); position >= 0; position = proteinSequence.indexOf(peptide, position + 1)) {
+                    int end = position + peptide.length();
+                    expected.add(new PeptideMatch(entry.getKey(), position + 1, end, position == 0 ? '-' : proteinSequence.charAt(position - 1), end == proteinSequence.length() ? '-' : proteinSequence.charAt(end)));
+                }
+            }
+            Assert.assertEquals(expected, new HashSet<>(index.getMatches(peptide)));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnimodElementTableTest {
+
+    private UnimodMarshaller unimodMarshaller;
+    private UnimodElementTable elementTable;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+        elementTable = unimodMarshaller.getElementTable();
+    }
+
+    @Test
+    public void testCompositions() {
+        Assert.assertEquals(39, elementTable.size());
+        Assert.assertEquals("Carbon13", elementTable.getFullName(elementTable.indexOf("13C")));
+        Assert.assertEquals(-1, elementTable.indexOf("X"));
+
+        for (UnimodModification modification : unimodMarshaller.getModifications().values()) {
+            int[] elementCounts = modification.getElementCounts();
+            Assert.assertNotNull(elementCounts);
+            Assert.assertEquals(modification.getMonoIsotopicMassShift(), elementTable.getMonoIsotopicMass(modification), 0.001);
+        }
+        //the composition attribute can also have bricks (e.g. "Hex"), the element counts are always elements
+        UnimodModification acetyl = unimodMarshaller.getModificationByName("Acetyl");
+        Assert.assertArrayEquals(elementTable.parseComposition(acetyl.getComposition()), acetyl.getElementCounts());
+
+        UnimodAminoAcid alanine = unimodMarshaller.getAminoAcid("A");
+        Assert.assertEquals("H(5) C(3) N O", elementTable.formatComposition(alanine.getElementCounts()));
+        Assert.assertEquals(alanine.getMonoIsotopicMass(), elementTable.getMonoIsotopicMass(alanine.getElementCounts()), 0.00001);
+        Assert.assertEquals(alanine.getAverageMass(), elementTable.getAverageMass(alanine.getElementCounts()), 0.001);
+    }
+
+    @Test
+    public void testHeavyLabel() {
+        UnimodModification acetyl = unimodMarshaller.getModificationByName("Acetyl");
+        UnimodElementTable heavyTable = elementTable.withMasses("C", elementTable.getMonoIsotopicMass(elementTable.indexOf("13C")), elementTable.getAverageMass(elementTable.indexOf("13C")));
+        Assert.assertEquals(acetyl.getMonoIsotopicMassShift() + 2 * 1.00335483, heavyTable.getMonoIsotopicMass(acetyl), 0.00001);
+        //the original table is unchanged
+        Assert.assertEquals(acetyl.getMonoIsotopicMassShift(), elementTable.getMonoIsotopicMass(acetyl), 0.00001);
+
+        //the label modification matches the heavy table
+        UnimodModification label = unimodMarshaller.getModificationByName("Label:13C(6)");
+        int[] labeledLysine = unimodMarshaller.getAminoAcid("K").getElementCounts();
+        label.addElementCounts(labeledLysine, 1);
+        int[] lysine = unimodMarshaller.getAminoAcid("K").getElementCounts();
+        Assert.assertEquals(elementTable.getMonoIsotopicMass(labeledLysine), heavyTable.getMonoIsotopicMass(lysine), 0.00001);
+    }
+
+    @Test
+    public void testAdd() {
+        UnimodModification oxidation = unimodMarshaller.getModificationByName("Oxidation");
+        UnimodModification phospho = unimodMarshaller.getModificationByName("Phospho");
+        int[] combined = new int[elementTable.size()];
+        oxidation.addElementCounts(combined, 2);
+        phospho.addElementCounts(combined, 1);
+        Assert.assertEquals(2 * oxidation.getMonoIsotopicMassShift() + phospho.getMonoIsotopicMassShift(), elementTable.getMonoIsotopicMass(combined), 0.00001);
+        UnimodElementTable.add(combined, oxidation.getElementCounts(), -2);
+        Assert.assertArrayEquals(phospho.getElementCounts(), combined);
+
+        try {
+            elementTable.parseComposition("H(2) Xx");
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+}
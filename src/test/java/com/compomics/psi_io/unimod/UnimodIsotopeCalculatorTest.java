@@ -0,0 +1,111 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class UnimodIsotopeCalculatorTest {
+
+    private static final String PEPTIDE = "LVNELTEFAK";
+
+    private UnimodMarshaller unimodMarshaller;
+    private UnimodIsotopeCalculator isotopeCalculator;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+        isotopeCalculator = new UnimodIsotopeCalculator(unimodMarshaller, 5);
+    }
+
+    @Test
+    public void testGetDistributionOfComposition() {
+        UnimodElementTable elementTable = unimodMarshaller.getElementTable();
+        //100 carbon atoms: binomial peaks
+        int[] carbon = new int[elementTable.size()];
+        carbon[elementTable.indexOf("C")] = 100;
+        double[] distribution = isotopeCalculator.getDistribution(carbon);
+        Assert.assertEquals(Math.pow(0.9893, 100), distribution[0], 1e-12);
+        Assert.assertEquals(100 * 0.0107 / 0.9893, distribution[1] / distribution[0], 1e-9);
+        Assert.assertEquals(100 * 99 / 2.0 * Math.pow(0.0107 / 0.9893, 2), distribution[2] / distribution[0], 1e-9);
+
+        //labels are isotopically pure
+        int[] label = new int[elementTable.size()];
+        label[elementTable.indexOf("13C")] = 6;
+        Assert.assertArrayEquals(new double[]{1, 0, 0, 0, 0}, isotopeCalculator.getDistribution(label), 0.0);
+
+        label[elementTable.indexOf("13C")] = -6;
+        try {
+            isotopeCalculator.getDistribution(label);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testAveragine() {
+        //the averagine distribution is close to the one of the exact composition
+        UnimodElementTable elementTable = unimodMarshaller.getElementTable();
+        int[] composition = new int[elementTable.size()];
+        composition[elementTable.indexOf("H")] = 2;
+        composition[elementTable.indexOf("O")] = 1;
+        for (char residue : PEPTIDE.toCharArray()) {
+            unimodMarshaller.getAminoAcid(String.valueOf(residue)).addElementCounts(composition, 1);
+        }
+        double[] exact = isotopeCalculator.getDistribution(composition);
+        double[] distribution = isotopeCalculator.getDistribution(PEPTIDE);
+        for (int peak = 0; peak < distribution.length; peak++) {
+            Assert.assertEquals(exact[peak], distribution[peak], 0.02);
+        }
+        Assert.assertTrue(distribution[0] > distribution[1] && distribution[1] > distribution[2]);
+        Assert.assertTrue(Arrays.stream(distribution).sum() <= 1.0);
+
+        try {
+            isotopeCalculator.getDistribution("PEPTIDEB");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testModifications() {
+        UnimodElementTable elementTable = unimodMarshaller.getElementTable();
+        //phosphorylation adds its composition
+        int[] phospho = unimodMarshaller.getModificationByAccession(21).getElementCounts();
+        double[] expected = isotopeCalculator.getDistribution(PEPTIDE);
+        double[] modification = isotopeCalculator.getDistribution(phospho);
+        double[] distribution = isotopeCalculator.getDistribution(PEPTIDE, 21);
+        Assert.assertEquals(expected[0] * modification[0], distribution[0], 1e-12);
+        Assert.assertEquals(expected[1] * modification[0] + expected[0] * modification[1], distribution[1], 1e-12);
+
+        //a dehydration removes the water again
+        int[] water = new int[elementTable.size()];
+        water[elementTable.indexOf("H")] = 2;
+        water[elementTable.indexOf("O")] = 1;
+        double[] dehydrated = isotopeCalculator.getDistribution(PEPTIDE, 23);
+        double[] waterDistribution = isotopeCalculator.getDistribution(water);
+        for (int peak = 0; peak < expected.length; peak++) {
+            double probability = 0;
+            for (int i = 0; i <= peak; i++) {
+                probability += dehydrated[i] * waterDistribution[peak - i];
+            }
+            Assert.assertEquals(expected[peak], probability, 1e-12);
+        }
+
+        //the memoized distributions give the same result
+        double[] target = new double[5];
+        isotopeCalculator.getDistribution(PEPTIDE, new int[]{21}, target);
+        Assert.assertArrayEquals(distribution, target, 0.0);
+
+        try {
+            isotopeCalculator.getDistribution(PEPTIDE, -1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.compomics.psi_io.unimod;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the startup cost of the UNIMOD marshaller: loading the precompiled registry, streaming unimod.xml
+ * and building the complete JDOM document the streaming parser replaces. The registry is only on the classpath after
+ * the Maven process-classes phase. The gc profiler reports the allocated bytes per operation (gc.alloc.rate.norm).
+ * Run with the test classpath, for example from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UnimodMarshallerBenchmark {
+
+    private static final Namespace NAMESPACE = Namespace.getNamespace(UnimodMarshaller.NAMESPACE);
+
+    private Path unimodPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        unimodPath = new ClassPathResource(UnimodMarshaller.UNIMOD_RESOURCE).getFile().toPath();
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) throws IOException {
+        blackhole.consume(new UnimodMarshaller().getModifications());
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        blackhole.consume(new UnimodMarshaller(unimodPath).getModifications());
+    }
+
+    @Benchmark
+    public void jdom(Blackhole blackhole) throws IOException, JDOMException {
+        Document document;
+        try (InputStream inputStream = new ClassPathResource(UnimodMarshaller.UNIMOD_RESOURCE).getInputStream()) {
+            document = new SAXBuilder().build(inputStream);
+        }
+        Map<Integer, UnimodModification> modifications = new HashMap<>();
+        for (Element modificationElement : document.getRootElement().getChild("modifications", NAMESPACE).getChildren("mod", NAMESPACE)) {
+            int record = modificationElement.getAttribute("record_id").getIntValue();
+            UnimodModification modification = new UnimodModification(record, modificationElement.getAttributeValue("title"));
+            for (Element specificity : modificationElement.getChildren("specificity", NAMESPACE)) {
+                if (specificity.getAttributeValue("hidden").equals("0")) {
+                    modification.getAffectedAminoAcids().put(specificity.getAttributeValue("site"), specificity.getAttributeValue("position"));
+                }
+            }
+            Element delta = modificationElement.getChild("delta", NAMESPACE);
+            modification.setMonoIsotopicMassShift(delta.getAttribute("mono_mass").getDoubleValue());
+            modification.setAverageMassShift(delta.getAttribute("avge_mass").getDoubleValue());
+            modifications.put(record, modification);
+        }
+        blackhole.consume(modifications);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UnimodMarshallerBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+
+}
@@ -1,11 +1,20 @@
 package com.compomics.psi_io.unimod;
 
-import org.jdom2.JDOMException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
 
-import java.util.Map;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Niels Hulstaert
@@ -24,13 +33,51 @@ public class UnimodMarshallerTest {
 
     /**
      * Test the marshalling of the unimod.xml file.
-     *
-     * @throws JDOMException top level exception that can be thrown in case of a
-     * problem in the JDOM classes.
      */
     @Test
-    public void testMarshall() throws JDOMException {
-        Assert.assertFalse(unimodMarshaller.getModifications().isEmpty());
+    public void testMarshall() {
+        Assert.assertEquals(1476, unimodMarshaller.getModifications().size());
+        Assert.assertEquals(24, unimodMarshaller.getAminoAcids().size());
+        Assert.assertEquals(71.037114, unimodMarshaller.getAminoAcid("A").getMonoIsotopicMass(), 0.000001);
+
+        //the hidden specificities are skipped
+        Map<String, String> affectedAminoAcids = unimodMarshaller.getModificationByAccession(1).getAffectedAminoAcids();
+        Assert.assertEquals("Anywhere", affectedAminoAcids.get("K"));
+        Assert.assertFalse(affectedAminoAcids.containsKey("T"));
+    }
+
+    /**
+     * Test the streaming marshalling of a UNIMOD document with elements that are not part of the model.
+     */
+    @Test
+    public void testMarshallStream() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<umod:unimod xmlns:umod=\"http://www.unimod.org/xmlns/schema/unimod_2\">"
+                + "<umod:elements><umod:elem title=\"H\" full_name=\"Hydrogen\" avge_mass=\"1.00794\" mono_mass=\"1.007825035\"/></umod:elements>"
+                + "<umod:modifications>"
+                + "<umod:mod title=\"Hidden\" record_id=\"2\">"
+                + "<umod:specificity hidden=\"1\" site=\"C\" position=\"Anywhere\"><umod:misc_notes>note</umod:misc_notes></umod:specificity>"
+                + "<umod:delta mono_mass=\"1.5\" avge_mass=\"1.6\"><umod:element symbol=\"H\" number=\"1\"/></umod:delta>"
+                + "<umod:xref><umod:text>text</umod:text></umod:xref>"
+                + "</umod:mod>"
+                + "</umod:modifications>"
+                + "</umod:unimod>";
+        UnimodMarshaller marshaller = new UnimodMarshaller();
+        marshaller.getModifications().clear();
+        marshaller.marshal(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, marshaller.getModifications().size());
+        UnimodModification modification = marshaller.getModificationByAccession(2);
+        Assert.assertEquals("Hidden", modification.getName());
+        Assert.assertEquals(1.5, modification.getMonoIsotopicMassShift(), 0);
+        Assert.assertEquals(1.6, modification.getAverageMassShift(), 0);
+        Assert.assertTrue(modification.getAffectedAminoAcids().isEmpty());
+
+        try {
+            marshaller.marshal(new ByteArrayInputStream("<umod:unimod".getBytes(StandardCharsets.UTF_8)));
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            //expected
+        }
     }
 
     /**
@@ -71,4 +118,123 @@ public class UnimodMarshallerTest {
         Assert.assertEquals(31.9988, modification.getAverageMassShift(), 0.0001);
     }
 
+    /**
+     * Test the retrieval of a modification by name ignoring case and by alternative name.
+     */
+    @Test
+    public void testGetModificationByAltName() {
+        Assert.assertNull(unimodMarshaller.getModificationByName("dioxidation"));
+        Assert.assertEquals(MOD_ACCESSION, unimodMarshaller.getModificationByNameIgnoreCase("dioxidation").getAccession());
+        Assert.assertEquals(MOD_ACCESSION, unimodMarshaller.getModificationByNameIgnoreCase(MOD_NAME).getAccession());
+        Assert.assertNull(unimodMarshaller.getModificationByNameIgnoreCase("Dioxidation2"));
+
+        UnimodModification modification = unimodMarshaller.getModificationByAltName("Carboxyamidomethylation");
+        Assert.assertEquals("Carbamidomethyl", modification.getName());
+        Assert.assertSame(modification, unimodMarshaller.getModificationByAltName("CARBOXYAMIDOMETHYLATION"));
+        Assert.assertTrue(modification.getAltNames().contains("Carboxyamidomethylation"));
+        Assert.assertNull(unimodMarshaller.getModificationByAltName(MOD_NAME));
+
+        int numberOfAltNames = unimodMarshaller.getModifications().values().stream().mapToInt(mod -> mod.getAltNames().size()).sum();
+        Assert.assertEquals(459, numberOfAltNames);
+    }
+
+    /**
+     * Test the read-only instance shared by all threads.
+     */
+    @Test
+    public void testGetSharedInstance() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<UnimodMarshaller>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(UnimodMarshaller::getSharedInstance));
+            }
+            UnimodMarshaller sharedInstance = UnimodMarshaller.getSharedInstance();
+            for (Future<UnimodMarshaller> future : futures) {
+                Assert.assertSame(sharedInstance, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        UnimodMarshaller sharedInstance = UnimodMarshaller.getSharedInstance();
+        UnimodModification modification = sharedInstance.getModificationByName(MOD_NAME);
+        Assert.assertEquals(MOD_ACCESSION, modification.getAccession());
+        Assert.assertEquals(unimodMarshaller.getModifications().size(), sharedInstance.getModifications().size());
+        List<Runnable> modifications = Arrays.asList(
+                () -> sharedInstance.getModifications().clear(),
+                () -> sharedInstance.getAminoAcids().remove("A"),
+                () -> modification.setName("Other"),
+                () -> modification.getAffectedAminoAcids().put("C", "Anywhere"),
+                () -> modification.getAltNames().add("Other"),
+                () -> sharedInstance.getAminoAcid("A").setMonoIsotopicMass(0.0));
+        for (Runnable runnable : modifications) {
+            try {
+                runnable.run();
+                Assert.fail("Expected an UnsupportedOperationException");
+            } catch (UnsupportedOperationException e) {
+                //expected
+            }
+        }
+
+        //the instances created with a constructor are not affected
+        UnimodModification writableModification = unimodMarshaller.getModificationByName(MOD_NAME);
+        Assert.assertNotSame(modification, writableModification);
+        writableModification.setName("Other");
+        Assert.assertEquals("Other", writableModification.getName());
+        Assert.assertEquals(MOD_NAME, modification.getName());
+        Assert.assertSame(modification, sharedInstance.getModificationByName(MOD_NAME));
+    }
+
+    /**
+     * Test the round trip of the precompiled registry against the parsed unimod.xml file.
+     */
+    @Test
+    public void testBinaryRegistry() throws IOException {
+        UnimodMarshaller xmlMarshaller = new UnimodMarshaller(new ClassPathResource(UnimodMarshaller.UNIMOD_RESOURCE).getFile().toPath());
+        Assert.assertEquals("H(2) C(2) O", xmlMarshaller.getModificationByAccession(1).getComposition());
+
+        Path registryPath = Files.createTempFile("unimod", ".bin");
+        try {
+            UnimodBinaryRegistry.write(xmlMarshaller, registryPath);
+            Map<Integer, UnimodModification> modifications = new HashMap<>();
+            Map<String, UnimodAminoAcid> aminoAcids = new HashMap<>();
+            try (InputStream inputStream = Files.newInputStream(registryPath)) {
+                UnimodBinaryRegistry.read(inputStream, modifications, aminoAcids);
+            }
+            Assert.assertEquals(xmlMarshaller.getModifications().size(), modifications.size());
+            for (UnimodModification expected : xmlMarshaller.getModifications().values()) {
+                UnimodModification modification = modifications.get(expected.getAccession());
+                Assert.assertEquals(expected.getName(), modification.getName());
+                Assert.assertEquals(expected.getMonoIsotopicMassShift(), modification.getMonoIsotopicMassShift());
+                Assert.assertEquals(expected.getAverageMassShift(), modification.getAverageMassShift());
+                Assert.assertEquals(expected.getComposition(), modification.getComposition());
+                Assert.assertEquals(expected.getAltNames(), modification.getAltNames());
+                Assert.assertArrayEquals(expected.getElementCounts(), modification.getElementCounts());
+                Assert.assertEquals(expected.getSpecificities().toString(), modification.getSpecificities().toString());
+                Assert.assertEquals(expected.getAffectedAminoAcids(), modification.getAffectedAminoAcids());
+            }
+            Assert.assertEquals(xmlMarshaller.getAminoAcids().size(), aminoAcids.size());
+            for (UnimodAminoAcid expected : xmlMarshaller.getAminoAcids().values()) {
+                UnimodAminoAcid aminoAcid = aminoAcids.get(expected.getTitle());
+                Assert.assertEquals(expected.getThreeLetter(), aminoAcid.getThreeLetter());
+                Assert.assertEquals(expected.getFullName(), aminoAcid.getFullName());
+                Assert.assertEquals(expected.getMonoIsotopicMass(), aminoAcid.getMonoIsotopicMass());
+                Assert.assertEquals(expected.getAverageMass(), aminoAcid.getAverageMass());
+                Assert.assertArrayEquals(expected.getElementCounts(), aminoAcid.getElementCounts());
+            }
+
+            //an invalid registry
+            Files.write(registryPath, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            try (InputStream inputStream = Files.newInputStream(registryPath)) {
+                UnimodBinaryRegistry.read(inputStream, modifications, aminoAcids);
+                Assert.fail("Expected an IOException");
+            } catch (IOException e) {
+                //expected
+            }
+        } finally {
+            Files.deleteIfExists(registryPath);
+        }
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class UnimodMassIndexTest {
+
+    private UnimodMarshaller unimodMarshaller;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+    }
+
+    @Test
+    public void testGetRecordIds() {
+        UnimodMassIndex massIndex = unimodMarshaller.getMonoIsotopicMassIndex();
+        Assert.assertEquals(unimodMarshaller.getModifications().size(), massIndex.size());
+        for (int i = 1; i < massIndex.size(); i++) {
+            Assert.assertTrue(massIndex.getMass(i - 1) <= massIndex.getMass(i));
+        }
+
+        //oxidation and phosphorylation
+        int[] recordIds = massIndex.getRecordIds(15.995, 0.001, false, 0, null);
+        Assert.assertTrue(contains(recordIds, 35));
+        Assert.assertTrue(contains(massIndex.getRecordIds(79.966331, 5, true, 1500, "S"), 21));
+        Assert.assertFalse(contains(massIndex.getRecordIds(79.966331, 5, true, 1500, "G"), 21));
+        Assert.assertEquals(0, massIndex.getRecordIds(79.966331 + 0.01, 5, true, 1500, "S").length);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            double massShift = random.nextDouble() * 400 - 100;
+            String site = random.nextBoolean() ? null : String.valueOf((char) ('A' + random.nextInt(26)));
+            Assert.assertEquals(bruteForce(massShift - 0.02, massShift + 0.02, site, false), toSet(massIndex.getRecordIds(massShift, 0.02, false, 0, site)));
+        }
+
+        try {
+            massIndex.getRecordIds(15.995, 0.01, false, 0, "Anywhere");
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        UnimodMassIndex massIndex = unimodMarshaller.getAverageMassIndex();
+        Random random = new Random(2);
+        double[] massShifts = new double[1000];
+        double[] precursorMasses = new double[massShifts.length];
+        for (int i = 0; i < massShifts.length; i++) {
+            massShifts[i] = random.nextDouble() * 200;
+            precursorMasses[i] = 500 + random.nextDouble() * 3000;
+        }
+        Arrays.sort(massShifts);
+
+        for (boolean ppm : new boolean[]{false, true}) {
+            double tolerance = ppm ? 20 : 0.05;
+            List<Set<Integer>> matches = new ArrayList<>();
+            for (int i = 0; i < massShifts.length; i++) {
+                matches.add(new HashSet<>());
+            }
+            massIndex.forEach(massShifts, precursorMasses, tolerance, ppm, "N-term", (query, index) -> matches.get(query).add(massIndex.getRecordId(index)));
+            for (int i = 0; i < massShifts.length; i++) {
+                double delta = ppm ? precursorMasses[i] * tolerance / 1_000_000 : tolerance;
+                Assert.assertEquals(bruteForce(massShifts[i] - delta, massShifts[i] + delta, "N-term", true), matches.get(i));
+            }
+        }
+    }
+
+    private Set<Integer> bruteForce(double minMass, double maxMass, String site, boolean average) {
+        Set<Integer> recordIds = new HashSet<>();
+        for (UnimodModification modification : unimodMarshaller.getModifications().values()) {
+            double mass = average ? modification.getAverageMassShift() : modification.getMonoIsotopicMassShift();
+            if (mass >= minMass && mass <= maxMass && (site == null || modification.getAffectedAminoAcids().containsKey(site))) {
+                recordIds.add(modification.getAccession());
+            }
+        }
+        return recordIds;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        return Arrays.stream(values).anyMatch(element -> element == value);
+    }
+
+    private static Set<Integer> toSet(int[] values) {
+        Set<Integer> set = new HashSet<>();
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnimodModificationTableTest {
+
+    private UnimodMarshaller unimodMarshaller;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+    }
+
+    @Test
+    public void testTable() {
+        UnimodModificationTable modificationTable = unimodMarshaller.getModificationTable();
+        Assert.assertEquals(unimodMarshaller.getModifications().size(), modificationTable.size());
+        for (int index = 0; index < modificationTable.size(); index++) {
+            UnimodModification modification = modificationTable.getModification(index);
+            Assert.assertEquals(modification.getAccession().intValue(), modificationTable.getRecordId(index));
+            Assert.assertEquals(index, modificationTable.indexOf(modificationTable.getRecordId(index)));
+            Assert.assertEquals(modification.getMonoIsotopicMassShift(), modificationTable.getMonoIsotopicMassShift(index), 0.0);
+            Assert.assertEquals(modification.getAverageMassShift(), modificationTable.getAverageMassShift(index), 0.0);
+            if (index > 0) {
+                Assert.assertTrue(modificationTable.getRecordId(index - 1) < modificationTable.getRecordId(index));
+            }
+        }
+        Assert.assertEquals(-1, modificationTable.indexOf(-1));
+        Assert.assertEquals(-1, modificationTable.indexOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testHasSpecificity() {
+        UnimodModificationTable modificationTable = unimodMarshaller.getModificationTable();
+        for (int index = 0; index < modificationTable.size(); index++) {
+            UnimodModification modification = modificationTable.getModification(index);
+            for (UnimodPosition position : UnimodPosition.values()) {
+                for (String site : new String[]{"K", "S", "N-term", "C-term"}) {
+                    boolean expected = modification.getSpecificities().stream()
+                            .anyMatch(specificity -> !specificity.isHidden() && specificity.getSite().equals(site) && specificity.getPosition() == position);
+                    Assert.assertEquals(expected, modificationTable.hasSpecificity(index, site, position));
+                }
+                Assert.assertEquals(modificationTable.hasSpecificity(index, "K", position), modificationTable.hasSpecificity(index, (byte) 'K', position));
+            }
+        }
+        int acetyl = modificationTable.indexOf(1);
+        Assert.assertTrue(modificationTable.hasSpecificity(acetyl, "N-term", UnimodPosition.PROTEIN_N_TERM));
+        Assert.assertFalse(modificationTable.hasSpecificity(acetyl, (byte) 'T', UnimodPosition.ANYWHERE));
+        Assert.assertFalse(modificationTable.hasSpecificity(acetyl, (byte) '*', UnimodPosition.ANYWHERE));
+    }
+
+    @Test
+    public void testElementCounts() {
+        UnimodModificationTable modificationTable = unimodMarshaller.getModificationTable();
+        UnimodElementTable elementTable = unimodMarshaller.getElementTable();
+        int phospho = modificationTable.indexOf(21);
+        UnimodModification modification = modificationTable.getModification(phospho);
+        int[] elementCounts = new int[elementTable.size()];
+        modificationTable.addElementCounts(phospho, elementCounts, 2);
+        for (int element = 0; element < elementTable.size(); element++) {
+            Assert.assertEquals(modification.getElementCount(element), modificationTable.getElementCount(phospho, element));
+            Assert.assertEquals(2 * modification.getElementCount(element), elementCounts[element]);
+        }
+        Assert.assertEquals(modification.getMonoIsotopicMassShift(), modificationTable.getMonoIsotopicMassShift(phospho, elementTable), 0.0001);
+    }
+
+}
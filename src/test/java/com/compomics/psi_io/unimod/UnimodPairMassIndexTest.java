@@ -0,0 +1,79 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class UnimodPairMassIndexTest {
+
+    private UnimodMassIndex massIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        massIndex = new UnimodMarshaller().getMonoIsotopicMassIndex();
+    }
+
+    @Test
+    public void testBuild() {
+        UnimodPairMassIndex pairMassIndex = UnimodPairMassIndex.build(massIndex);
+        int n = massIndex.size();
+        Assert.assertEquals((long) n * (n + 1) / 2, pairMassIndex.size());
+        for (int i = 1; i < pairMassIndex.size(); i++) {
+            Assert.assertTrue(pairMassIndex.getMass(i - 1) <= pairMassIndex.getMass(i));
+        }
+        for (int i = 0; i < pairMassIndex.size(); i += 997) {
+            int first = pairMassIndex.getFirst(i);
+            int second = pairMassIndex.getSecond(i);
+            Assert.assertTrue(first <= second);
+            Assert.assertEquals(massIndex.getMass(first) + massIndex.getMass(second), pairMassIndex.getMass(i), 0);
+        }
+
+        //oxidation and phosphorylation
+        Set<String> pairs = new HashSet<>();
+        pairMassIndex.forEach(15.994915 + 79.966331, 0.001, false, 0, index -> pairs.add(pairMassIndex.getFirstRecordId(index) + "+" + pairMassIndex.getSecondRecordId(index)));
+        Assert.assertTrue(pairs.contains("35+21"));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            double massShift = random.nextDouble() * 300;
+            double precursorMass = 1000 + random.nextDouble() * 2000;
+            Set<Integer> expected = bruteForce(massShift - precursorMass * 10 / 1_000_000, massShift + precursorMass * 10 / 1_000_000, null);
+            Set<Integer> found = new HashSet<>();
+            pairMassIndex.forEach(massShift, 10, true, precursorMass, index -> found.add(pairMassIndex.getFirst(index) << 16 | pairMassIndex.getSecond(index)));
+            Assert.assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void testSiteCompatible() {
+        UnimodPairMassIndex.PairFilter pairFilter = UnimodPairMassIndex.siteCompatible(massIndex);
+        UnimodPairMassIndex pairMassIndex = UnimodPairMassIndex.build(massIndex, pairFilter);
+        Assert.assertTrue(pairMassIndex.size() < (long) massIndex.size() * (massIndex.size() + 1) / 2);
+
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            double massShift = random.nextDouble() * 300;
+            Set<Integer> found = new HashSet<>();
+            pairMassIndex.forEach(massShift, 0.05, false, 0, index -> found.add(pairMassIndex.getFirst(index) << 16 | pairMassIndex.getSecond(index)));
+            Assert.assertEquals(bruteForce(massShift - 0.05, massShift + 0.05, pairFilter), found);
+        }
+    }
+
+    private Set<Integer> bruteForce(double minMass, double maxMass, UnimodPairMassIndex.PairFilter pairFilter) {
+        Set<Integer> pairs = new HashSet<>();
+        for (int first = 0; first < massIndex.size(); first++) {
+            for (int second = first; second < massIndex.size(); second++) {
+                double sum = massIndex.getMass(first) + massIndex.getMass(second);
+                if (sum >= minMass && sum <= maxMass && (pairFilter == null || pairFilter.accept(first, second))) {
+                    pairs.add(first << 16 | second);
+                }
+            }
+        }
+        return pairs;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class UnimodSpecificityIndexTest {
+
+    private UnimodMarshaller unimodMarshaller;
+
+    @Before
+    public void setUp() throws Exception {
+        unimodMarshaller = new UnimodMarshaller();
+    }
+
+    @Test
+    public void testSpecificities() {
+        //acetyl has 9 specificities, N-term on two positions
+        UnimodModification acetyl = unimodMarshaller.getModificationByName("Acetyl");
+        List<UnimodSpecificity> specificities = acetyl.getSpecificities();
+        Assert.assertEquals(9, specificities.size());
+        long nTermPositions = specificities.stream().filter(specificity -> specificity.getSite().equals("N-term")).count();
+        Assert.assertEquals(2, nTermPositions);
+        Assert.assertEquals(acetyl.getAffectedAminoAcids().size() + 1, specificities.stream().filter(specificity -> !specificity.isHidden()).count());
+
+        //the neutral losses of phosphorylation on S
+        UnimodSpecificity phosphoSerine = unimodMarshaller.getModificationByName("Phospho").getSpecificities().stream()
+                .filter(specificity -> specificity.getSite().equals("S"))
+                .findFirst()
+                .get();
+        Assert.assertEquals("Post-translational", phosphoSerine.getClassification());
+        Assert.assertEquals(UnimodPosition.ANYWHERE, phosphoSerine.getPosition());
+        Assert.assertTrue(phosphoSerine.getNumberOfNeutralLosses() > 0);
+        boolean phosphoricAcidLoss = false;
+        for (int i = 0; i < phosphoSerine.getNumberOfNeutralLosses(); i++) {
+            phosphoricAcidLoss |= Math.abs(phosphoSerine.getNeutralLossMonoIsotopicMass(i) - 97.976896) < 0.0001;
+        }
+        Assert.assertTrue(phosphoricAcidLoss);
+    }
+
+    @Test
+    public void testGetRecordIds() {
+        UnimodSpecificityIndex specificityIndex = unimodMarshaller.getSpecificityIndex();
+        for (UnimodPosition position : UnimodPosition.values()) {
+            for (String site : Arrays.asList("K", "S", "N-term", "C-term")) {
+                Assert.assertArrayEquals(bruteForce(site, EnumSet.of(position)), specificityIndex.getRecordIds(site, position));
+            }
+        }
+        Assert.assertArrayEquals(specificityIndex.getRecordIds("K", UnimodPosition.ANYWHERE), specificityIndex.getRecordIds((byte) 'K', UnimodPosition.ANYWHERE));
+        Assert.assertTrue(contains(specificityIndex.getRecordIds("N-term", UnimodPosition.PROTEIN_N_TERM), 1));
+        Assert.assertFalse(contains(specificityIndex.getRecordIds("T", UnimodPosition.ANYWHERE), 1));
+        Assert.assertTrue(contains(UnimodSpecificityIndex.build(unimodMarshaller.getModifications().values(), true).getRecordIds("T", UnimodPosition.ANYWHERE), 1));
+    }
+
+    @Test
+    public void testGetCandidates() {
+        UnimodSpecificityIndex specificityIndex = unimodMarshaller.getSpecificityIndex();
+        int[] expected = merge(bruteForce("K", EnumSet.of(UnimodPosition.ANYWHERE, UnimodPosition.ANY_N_TERM, UnimodPosition.PROTEIN_N_TERM)),
+                bruteForce("N-term", EnumSet.of(UnimodPosition.ANY_N_TERM, UnimodPosition.PROTEIN_N_TERM)));
+        Assert.assertArrayEquals(expected, specificityIndex.getCandidates((byte) 'K', UnimodPosition.PROTEIN_N_TERM));
+
+        expected = merge(bruteForce("K", EnumSet.of(UnimodPosition.ANYWHERE, UnimodPosition.ANY_C_TERM)), bruteForce("C-term", EnumSet.of(UnimodPosition.ANY_C_TERM)));
+        Assert.assertArrayEquals(expected, specificityIndex.getCandidates((byte) 'K', UnimodPosition.ANY_C_TERM));
+        Assert.assertArrayEquals(bruteForce("M", EnumSet.of(UnimodPosition.ANYWHERE)), specificityIndex.getCandidates((byte) 'M', UnimodPosition.ANYWHERE));
+        Assert.assertEquals(0, specificityIndex.getCandidates((byte) '*', UnimodPosition.ANYWHERE).length);
+    }
+
+    @Test
+    public void testForEach() {
+        UnimodSpecificityIndex specificityIndex = unimodMarshaller.getSpecificityIndex();
+        for (UnimodPosition position : UnimodPosition.values()) {
+            List<Integer> candidates = new ArrayList<>();
+            specificityIndex.forEachCandidate((byte) 'K', position, candidates::add);
+            Assert.assertArrayEquals(specificityIndex.getCandidates((byte) 'K', position), candidates.stream().mapToInt(Integer::intValue).toArray());
+            List<Integer> recordIds = new ArrayList<>();
+            specificityIndex.forEachRecordId((byte) 'K', position, recordIds::add);
+            Assert.assertArrayEquals(specificityIndex.getRecordIds((byte) 'K', position), recordIds.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        //the returned arrays are copies
+        int[] candidates = specificityIndex.getCandidates((byte) 'K', UnimodPosition.ANYWHERE);
+        int[] expected = candidates.clone();
+        Arrays.fill(candidates, -1);
+        Assert.assertArrayEquals(expected, specificityIndex.getCandidates((byte) 'K', UnimodPosition.ANYWHERE));
+        int[] recordIds = specificityIndex.getRecordIds("N-term", UnimodPosition.ANY_N_TERM);
+        expected = recordIds.clone();
+        Arrays.fill(recordIds, -1);
+        Assert.assertArrayEquals(expected, specificityIndex.getRecordIds("N-term", UnimodPosition.ANY_N_TERM));
+    }
+
+    private int[] bruteForce(String site, Set<UnimodPosition> positions) {
+        return unimodMarshaller.getModifications().values().stream()
+                .filter(modification -> modification.getSpecificities().stream()
+                        .anyMatch(specificity -> !specificity.isHidden() && specificity.getSite().equals(site) && positions.contains(specificity.getPosition())))
+                .mapToInt(UnimodModification::getAccession)
+                .sorted()
+                .toArray();
+    }
+
+    private static int[] merge(int[] first, int[] second) {
+        return Arrays.stream(new int[][]{first, second}).flatMapToInt(Arrays::stream).distinct().sorted().toArray();
+    }
+
+    private static boolean contains(int[] values, int value) {
+        return Arrays.stream(values).anyMatch(element -> element == value);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.compomics.psi_io.unimod;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnimodUtilsTest {
+
+    @Test
+    public void testGetSiteIndex() {
+        Assert.assertEquals(0, UnimodUtils.getSiteIndex("A"));
+        Assert.assertEquals(25, UnimodUtils.getSiteIndex("Z"));
+        Assert.assertEquals(UnimodUtils.N_TERM_SITE, UnimodUtils.getSiteIndex("N-term"));
+        Assert.assertEquals(UnimodUtils.C_TERM_SITE, UnimodUtils.getSiteIndex("C-term"));
+        for (String site : new String[]{"a", "KR", "", "Anywhere"}) {
+            try {
+                UnimodUtils.getSiteIndex(site);
+                Assert.fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testComposition() {
+        //two compositions of two elements
+        int[] elementCounts = {1, 2, 3, -1};
+        double[] masses = {10, 100};
+        Assert.assertEquals(210, UnimodUtils.getMass(elementCounts, 0, 2, masses), 0.0);
+        Assert.assertEquals(-70, UnimodUtils.getMass(elementCounts, 2, 2, masses), 0.0);
+
+        int[] target = {1, 1};
+        UnimodUtils.add(target, elementCounts, 2, 2, 2);
+        Assert.assertArrayEquals(new int[]{7, -1}, target);
+
+        try {
+            UnimodUtils.getMass(elementCounts, 0, 3, masses);
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            UnimodUtils.add(target, elementCounts, 0, 3, 1);
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.compomics.psi_io.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+public class FileUtilsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCreateTempFile() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        Path tempPath = FileUtils.createTempFile(directory, "test.bin", ".tmp");
+        Assert.assertTrue(Files.isRegularFile(tempPath));
+        Assert.assertEquals(0, Files.size(tempPath));
+        Assert.assertTrue(tempPath.getFileName().toString().startsWith("test.bin"));
+        Assert.assertTrue(tempPath.getFileName().toString().endsWith(".tmp"));
+        Assert.assertNotEquals(tempPath, FileUtils.createTempFile(directory, "test.bin", ".tmp"));
+
+        //the file gets the default permissions instead of owner only ones
+        if (Files.getFileAttributeView(tempPath, PosixFileAttributeView.class) != null) {
+            Path path = Files.createFile(directory.resolve("test.txt"));
+            Assert.assertEquals(Files.getPosixFilePermissions(path), Files.getPosixFilePermissions(tempPath));
+        }
+    }
+
+}